@@ -0,0 +1,191 @@
+/* Spatial Operations & Editing Tools for uDig
+ * 
+ * Axios Engineering under a funding contract with: 
+ *      Diputación Foral de Gipuzkoa, Ordenación Territorial 
+ *
+ *      http://b5m.gipuzkoa.net
+ *      http://www.axios.es 
+ *
+ * (C) 2006, Diputación Foral de Gipuzkoa, Ordenación Territorial (DFG-OT). 
+ * DFG-OT agrees to licence under Lesser General Public License (LGPL).
+ * 
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * (http://www.eclipse.org/legal/epl-v10.html), and the Axios BSD
+ * License v1.0 (http://udig.refractions.net/files/asd3-v10.html).
+ */
+package es.udig.tools.geometry.merge;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Ignore;
+import org.junit.Test;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.GeometryFactory;
+import com.vividsolutions.jts.geom.LineString;
+import com.vividsolutions.jts.geom.MultiLineString;
+import com.vividsolutions.jts.io.WKTReader;
+
+import eu.udig.tools.geometry.merge.MergeStrategy;
+
+/**
+ * Test for the merge of a collection of geometries.
+ * 
+ * @since 1.4.0
+ */
+@SuppressWarnings("nls")
+public class MergeStrategyTest {
+
+	private static final GeometryFactory FACTORY = new GeometryFactory();
+
+	@Test
+	public void testEmpty() throws Exception {
+
+		assertNull(MergeStrategy.mergeOp(new ArrayList<Geometry>()));
+	}
+
+	@Test
+	public void testPolygons() throws Exception {
+
+		List<Geometry> parcels = createParcels(20, 20, 1);
+
+		Geometry merged = MergeStrategy.mergeOp(parcels, false);
+
+		assertTrue(merged.isValid());
+		assertEquals(1, merged.getNumGeometries());
+		assertEquals(mergeOneByOne(parcels).getArea(), merged.getArea(), 1e-6);
+	}
+
+	@Test
+	public void testParallel() throws Exception {
+
+		List<Geometry> parcels = createParcels(60, 60, 2);
+
+		Geometry sequential = MergeStrategy.mergeOp(parcels, false);
+		Geometry parallel = MergeStrategy.mergeOp(parcels, true);
+
+		assertTrue(parallel.isValid());
+		assertEquals(sequential.getArea(), parallel.getArea(), 1e-6);
+		assertTrue(sequential.symDifference(parallel).getArea() < 1e-6);
+	}
+
+	@Test
+	public void testLines() throws Exception {
+
+		WKTReader reader = new WKTReader();
+		List<Geometry> lines = new ArrayList<Geometry>();
+		lines.add(reader.read("LINESTRING(2 0, 3 0)"));
+		lines.add(reader.read("LINESTRING(0 0, 1 0)"));
+		lines.add(reader.read("LINESTRING(1 0, 2 0)"));
+
+		Geometry merged = MergeStrategy.mergeOp(lines);
+
+		assertTrue(merged instanceof LineString);
+		assertEquals(3, merged.getLength(), 0);
+
+		lines.add(reader.read("LINESTRING(5 5, 6 6)"));
+		merged = MergeStrategy.mergeOp(lines);
+
+		assertTrue(merged instanceof MultiLineString);
+		assertEquals(2, merged.getNumGeometries());
+	}
+
+	/**
+	 * Compares merging parcels one by one with the cascaded and parallel
+	 * union; ignored as it is a benchmark rather than a test.
+	 */
+	@Ignore
+	@Test
+	public void benchmarkMerge() throws Exception {
+
+		List<Geometry> parcels = createParcels(70, 70, 3);
+
+		long start = System.nanoTime();
+		Geometry oneByOne = mergeOneByOne(parcels);
+		long pairwise = System.nanoTime() - start;
+
+		start = System.nanoTime();
+		Geometry cascaded = MergeStrategy.mergeOp(parcels, false);
+		long sequential = System.nanoTime() - start;
+
+		start = System.nanoTime();
+		MergeStrategy.mergeOp(parcels, true);
+		long parallel = System.nanoTime() - start;
+
+		assertEquals(oneByOne.getArea(), cascaded.getArea(), 1e-6);
+
+		System.out.println(parcels.size() + " parcels");
+		System.out.println("one by one: " + pairwise / 1000000 + " ms");
+		System.out.println("cascaded:   " + sequential / 1000000 + " ms");
+		System.out.println("parallel:   " + parallel / 1000000 + " ms");
+	}
+
+	private static Geometry mergeOneByOne(List<Geometry> geometries) {
+
+		Geometry result = null;
+		for (Geometry geometry : geometries) {
+			result = result == null ? geometry : MergeStrategy.mergeOp(result, geometry);
+		}
+		return result;
+	}
+
+	/**
+	 * Makes parcels like the ones of a cadastre: a grid whose nodes are moved
+	 * at random, so the parcels are irregular quadrilaterals that share their
+	 * boundaries, whose edges are split by a few extra vertices. The parcels
+	 * are shuffled as the features of a selection are not in spatial order.
+	 */
+	private static List<Geometry> createParcels(int columns, int rows, long seed) {
+
+		Random random = new Random(seed);
+		Coordinate[][] nodes = new Coordinate[columns + 1][rows + 1];
+		for (int x = 0; x <= columns; x++) {
+			for (int y = 0; y <= rows; y++) {
+				double dx = x == 0 || x == columns ? 0 : random.nextDouble() * 0.6 - 0.3;
+				double dy = y == 0 || y == rows ? 0 : random.nextDouble() * 0.6 - 0.3;
+				nodes[x][y] = new Coordinate((x + dx) * 20, (y + dy) * 20);
+			}
+		}
+		List<Geometry> parcels = new ArrayList<Geometry>(columns * rows);
+		for (int x = 0; x < columns; x++) {
+			for (int y = 0; y < rows; y++) {
+				List<Coordinate> ring = new ArrayList<Coordinate>();
+				addEdge(ring, nodes[x][y], nodes[x + 1][y]);
+				addEdge(ring, nodes[x + 1][y], nodes[x + 1][y + 1]);
+				addEdge(ring, nodes[x + 1][y + 1], nodes[x][y + 1]);
+				addEdge(ring, nodes[x][y + 1], nodes[x][y]);
+				ring.add(nodes[x][y]);
+				parcels.add(FACTORY.createPolygon(
+						FACTORY.createLinearRing(ring.toArray(new Coordinate[ring.size()])), null));
+			}
+		}
+		Collections.shuffle(parcels, random);
+		return parcels;
+	}
+
+	/**
+	 * Adds the start of the edge and 3 vertices on it, the same for both
+	 * parcels sharing the edge.
+	 */
+	private static void addEdge(List<Coordinate> ring, Coordinate from, Coordinate to) {
+
+		ring.add(from);
+		// computed from the same end whatever the direction of the edge
+		boolean reverse = from.compareTo(to) > 0;
+		Coordinate start = reverse ? to : from;
+		Coordinate end = reverse ? from : to;
+		for (int i = 1; i < 4; i++) {
+			double f = (reverse ? 4 - i : i) / 4.0;
+			ring.add(new Coordinate(start.x + (end.x - start.x) * f, start.y + (end.y - start.y) * f));
+		}
+	}
+}
@@ -79,7 +79,7 @@ public class GeometryUtil {
 	 */
 	public static Geometry geometryUnion(final FeatureCollection<SimpleFeatureType, SimpleFeature> featureCollection) {
 
-		Geometry resultGeom = null;
+		List<Geometry> geometries = new ArrayList<Geometry>();
 		FeatureIterator<SimpleFeature>  iterator = featureCollection.features();
 		try {
 			SimpleFeature currFeature;
@@ -90,17 +90,15 @@ public class GeometryUtil {
 				assert featureGeom != null : "the feature must have almost one geometry"; //$NON-NLS-1$
 
 				featureGeom.normalize();
-				if (resultGeom == null) {
-					resultGeom = featureGeom;
-				} else {
-					resultGeom = MergeStrategy.mergeOp(resultGeom, featureGeom);
-				}
+				geometries.add(featureGeom);
 			}
 
 		} finally {
 			iterator.close();
 		}
-		return resultGeom;
+		// merges all the geometries at once, merging them one by one with
+		// the growing result is too slow when many features are selected
+		return MergeStrategy.mergeOp(geometries);
 	}
 
 	/**
@@ -18,13 +18,22 @@ package eu.udig.tools.geometry.merge;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import com.vividsolutions.jts.geom.Geometry;
 import com.vividsolutions.jts.geom.GeometryFactory;
 import com.vividsolutions.jts.geom.LineString;
 import com.vividsolutions.jts.geom.MultiLineString;
 import com.vividsolutions.jts.operation.linemerge.LineMerger;
+import com.vividsolutions.jts.operation.union.UnaryUnionOp;
 
 /**
  * <p>
@@ -51,6 +60,15 @@ import com.vividsolutions.jts.operation.linemerge.LineMerger;
  */
 public class MergeStrategy {
 
+	/**
+	 * Number of geometries from which {@link #mergeOp(Collection)} makes the
+	 * union on several threads.
+	 */
+	public static final int PARALLEL_THRESHOLD = 2000;
+
+	/* Minimum number of geometries given to each thread. */
+	private static final int MIN_PARTITION_SIZE = 500;
+
 	/* One of the geometries to merge. */
 	private Geometry	mergeGeometry	= null;
 
@@ -88,6 +106,59 @@ public class MergeStrategy {
 		return merged;
 	}
 
+	/**
+	 * Realize merge operation between all the given geometries at once.
+	 * <p>
+	 * The result is the same as merging the geometries one by one with
+	 * {@link #mergeOp(Geometry, Geometry)} but lines are merged in one
+	 * {@link LineMerger} pass and the other geometries with a cascaded union,
+	 * which avoids making the union of a growing result with each geometry.
+	 * From {@link #PARALLEL_THRESHOLD} geometries the union is made on several
+	 * threads.
+	 * </p>
+	 * 
+	 * @param geometries
+	 *            The geometries to merge.
+	 * @return The merged geometry or null if there is not any geometry.
+	 */
+	public static Geometry mergeOp(Collection<? extends Geometry> geometries) {
+
+		boolean parallel = geometries.size() >= PARALLEL_THRESHOLD && Runtime.getRuntime().availableProcessors() > 1;
+		return mergeOp(geometries, parallel);
+	}
+
+	/**
+	 * Realize merge operation between all the given geometries at once.
+	 * 
+	 * @see #mergeOp(Collection)
+	 * @param geometries
+	 *            The geometries to merge.
+	 * @param parallel
+	 *            True to make the union of the polygons and points on several
+	 *            threads.
+	 * @return The merged geometry or null if there is not any geometry.
+	 */
+	public static Geometry mergeOp(Collection<? extends Geometry> geometries, boolean parallel) {
+
+		if (geometries.isEmpty()) {
+			return null;
+		}
+		Geometry first = geometries.iterator().next();
+		if (geometries.size() == 1) {
+			return first;
+		}
+		// as mergeOp(Geometry, Geometry) the kind of merge depends on the
+		// first geometry
+		if (first.getClass().equals(MultiLineString.class) || first.getClass().equals(LineString.class)) {
+
+			return mergeLines(geometries, first.getFactory());
+		}
+		if (parallel) {
+			return unionParallel(geometries);
+		}
+		return UnaryUnionOp.union(geometries);
+	}
+
 	/**
 	 * Realize the merge between the mergeGeometry (given on the constructor)
 	 * and this geometry.
@@ -126,12 +197,31 @@ public class MergeStrategy {
 	 */
 	private Geometry unionLines(Geometry withGeometry) {
 
+		List<Geometry> lines = new ArrayList<Geometry>(2);
+		lines.add(mergeGeometry);
+		lines.add(withGeometry);
+
+		return mergeLines(lines, mergeGeometry.getFactory());
+	}
+
+	/**
+	 * Merges the lineStrings of all the geometries in one {@link LineMerger}
+	 * pass.
+	 * 
+	 * @param geometries
+	 *            LineStrings or MultiLineStrings to merge.
+	 * @param gf
+	 *            Factory used to make the MultiLineString.
+	 * @return A LineString if all the lines could be merged, otherwise a
+	 *         MultiLineString.
+	 */
+	private static Geometry mergeLines(Collection<? extends Geometry> geometries, GeometryFactory gf) {
+
 		Geometry result = null;
 
 		LineMerger merger = new LineMerger();
 
-		merger.add(mergeGeometry);
-		merger.add(withGeometry);
+		merger.add(geometries);
 
 		Collection<? extends LineString> mergedLineStrings = merger.getMergedLineStrings();
 
@@ -140,7 +230,6 @@ public class MergeStrategy {
 		if (mergedLineStrings.size() == 1) {
 			result = it.next();
 		} else {
-			GeometryFactory gf = mergeGeometry.getFactory();
 			ArrayList<LineString> lineList = new ArrayList<LineString>(mergedLineStrings);
 			LineString[] lineStrings = lineList.toArray(new LineString[mergedLineStrings.size()]);
 			result = gf.createMultiLineString(lineStrings);
@@ -148,4 +237,62 @@ public class MergeStrategy {
 
 		return result;
 	}
+
+	/**
+	 * Makes the union of the geometries on several threads: the geometries
+	 * are sorted from west to east and cut in partitions whose union is made
+	 * at the same time, then the union of the partitions is made.
+	 * <p>
+	 * As the partitions cover separate areas their unions stay small.
+	 * </p>
+	 * 
+	 * @param geometries
+	 *            The geometries to merge.
+	 * @return The union of the geometries.
+	 */
+	private static Geometry unionParallel(Collection<? extends Geometry> geometries) {
+
+		List<Geometry> sorted = new ArrayList<Geometry>(geometries);
+		Collections.sort(sorted, new Comparator<Geometry>() {
+			public int compare(Geometry g1, Geometry g2) {
+				return Double.compare(g1.getEnvelopeInternal().getMinX(), g2.getEnvelopeInternal().getMinX());
+			}
+		});
+
+		int threads = Runtime.getRuntime().availableProcessors();
+		int size = Math.max(MIN_PARTITION_SIZE, (sorted.size() + threads - 1) / threads);
+		if (size >= sorted.size()) {
+			return UnaryUnionOp.union(sorted);
+		}
+
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try {
+			List<Future<Geometry>> partitions = new ArrayList<Future<Geometry>>();
+			for (int i = 0; i < sorted.size(); i += size) {
+				final List<Geometry> partition = sorted.subList(i, Math.min(i + size, sorted.size()));
+				partitions.add(executor.submit(new Callable<Geometry>() {
+					public Geometry call() throws Exception {
+						return UnaryUnionOp.union(partition);
+					}
+				}));
+			}
+			List<Geometry> unions = new ArrayList<Geometry>(partitions.size());
+			for (Future<Geometry> partition : partitions) {
+				unions.add(partition.get());
+			}
+			return UnaryUnionOp.union(unions);
+
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException(e);
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+			throw new IllegalStateException(cause);
+		} finally {
+			executor.shutdown();
+		}
+	}
 }
@@ -45,6 +45,8 @@ public class PostgisGeoResource2 extends IGeoResource {
     private final URL identifier;
     private final PostgisSchemaFolder parent;
     private Boolean readOnly = null; // we won't know until we try
+    /** extent and row count, kept in the persistent properties */
+    final PostgisResourceStatistics statistics = new PostgisResourceStatistics(this);
     
     public PostgisGeoResource2( PostgisService2 service, PostgisSchemaFolder postgisSchemaFolder, TableDescriptor desc ) {        
             this.service = service;
@@ -19,15 +19,9 @@ import net.refractions.udig.catalog.postgis.internal.Messages;
 import net.refractions.udig.ui.graphics.Glyph;
 
 import org.eclipse.core.runtime.IStatus;
-import org.eclipse.core.runtime.NullProgressMonitor;
-import org.geotools.data.DataSourceException;
-import org.geotools.data.FeatureSource;
-import org.geotools.data.simple.SimpleFeatureSource;
-import org.geotools.feature.FeatureIterator;
 import org.geotools.geometry.jts.ReferencedEnvelope;
 import org.geotools.referencing.CRS;
 import org.geotools.referencing.crs.DefaultGeographicCRS;
-import org.opengis.feature.simple.SimpleFeature;
 import org.opengis.feature.simple.SimpleFeatureType;
 import org.opengis.feature.type.Name;
 import org.opengis.referencing.crs.CoordinateReferenceSystem;
@@ -49,55 +43,27 @@ class PostgisResourceInfo extends IGeoResourceInfo {
 				owner.typename };
 	}
 
+	/**
+	 * Returns the extent saved with the catalog or estimated from the statistics of the database;
+	 * the exact extent is computed in the background and replaces it when it is known.
+	 */
 	@Override
 	public synchronized ReferencedEnvelope getBounds() {
         if (bounds == null) {
-            SimpleFeatureSource source = null;
-            try {
-                source = owner.resolve(SimpleFeatureSource.class, new NullProgressMonitor());
-            } catch (IOException e) {
-                PostgisPlugin.log("Could not establish bounds of dataset.", e); //$NON-NLS-1$
-                bounds = new ReferencedEnvelope(new Envelope(), null);
-                return bounds;
-            }
-            try {
-                ReferencedEnvelope temp = source.getBounds();
-                bounds = temp;
-            } catch (Exception e) {
-                PostgisPlugin.log("PostGIS unable to calculate bounds directly: "+e, e); //$NON-NLS-1$
-            }
+            CoordinateReferenceSystem crs = getCRS();
+            bounds = owner.statistics.getBounds(crs);
             if (bounds == null) {
+                // no statistics yet, use the area of the crs until the exact extent is known
                 try {
-                    CoordinateReferenceSystem crs = getCRS();
-                    // try getting an envelope out of the crs
                     org.opengis.geometry.Envelope envelope = CRS.getEnvelope(crs);
-
                     if (envelope != null) {
                         bounds = new ReferencedEnvelope(new Envelope(envelope.getLowerCorner()
                                 .getOrdinate(0), envelope.getUpperCorner().getOrdinate(0), envelope
                                 .getLowerCorner().getOrdinate(1), envelope.getUpperCorner()
                                 .getOrdinate(1)), crs);
                     } else {
-                        // TODO: perhaps access a preference which indicates
-                        // whether to do a full table scan
-                        // bounds = new ReferencedEnvelope(new Envelope(),crs);
-                        // as a last resort do the full scan
                         bounds = new ReferencedEnvelope(new Envelope(), crs);
-                        FeatureIterator<SimpleFeature> iter = source.getFeatures().features();
-                        try {
-                            while (iter.hasNext()) {
-                                SimpleFeature element = iter.next();
-                                if (bounds.isNull())
-                                    bounds.init(element.getBounds());
-                                else
-                                    bounds.include(element.getBounds());
-                            }
-                        } finally {
-                            iter.close();
-                        }
                     }
-                } catch (DataSourceException e) {
-                    PostgisPlugin.log("Could not establish bounds of dataset.", e); //$NON-NLS-1$
                 } catch (Exception e) {
                     CatalogPlugin
                             .getDefault()
@@ -112,6 +78,24 @@ class PostgisResourceInfo extends IGeoResourceInfo {
         return bounds;
     }
 
+	/**
+	 * Replaces the bounds once the exact extent of the table is known.
+	 */
+	synchronized void setBounds(ReferencedEnvelope bounds) {
+		this.bounds = bounds;
+	}
+
+	/**
+	 * Returns the number of rows of the table, estimated from the statistics of the database until
+	 * the exact count is known.
+	 * 
+	 * @return the number of rows or -1 if it is not known
+	 * @since 1.4.0
+	 */
+	public long getCount() {
+		return owner.statistics.getCount();
+	}
+
 	public CoordinateReferenceSystem getCRS() {
 		SimpleFeatureType ft = getFeatureType();
 		if (ft == null) {
@@ -0,0 +1,457 @@
+/*
+ *    uDig - User Friendly Desktop Internet GIS client
+ *    http://udig.refractions.net
+ *    (C) 2012, Refractions Research Inc.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * (http://www.eclipse.org/legal/epl-v10.html), and the Refractions BSD
+ * License v1.0 (http://udig.refractions.net/files/bsd3-v10.html).
+ */
+package net.refractions.udig.catalog;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import net.refractions.udig.catalog.internal.CatalogImpl;
+import net.refractions.udig.catalog.internal.ResolveChangeEvent;
+import net.refractions.udig.catalog.internal.ResolveDelta;
+import net.refractions.udig.catalog.internal.postgis.PostgisPlugin;
+import net.refractions.udig.catalog.service.database.TableDescriptor;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.NullProgressMonitor;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.ISchedulingRule;
+import org.eclipse.core.runtime.jobs.Job;
+import org.geotools.data.DataStore;
+import org.geotools.geometry.jts.ReferencedEnvelope;
+import org.geotools.jdbc.JDBCDataStore;
+import org.opengis.referencing.crs.CoordinateReferenceSystem;
+
+import com.vividsolutions.jts.geom.Envelope;
+
+/**
+ * The extent and row count of a PostGIS table, read from the statistics of the database rather
+ * than by scanning the table.
+ * <p>
+ * The estimates are kept in the persistent properties of the resource so they are saved with the
+ * catalog; the first time they are used a job computes the exact values with
+ * <code>ST_Extent</code> and <code>count(*)</code> in the database, replaces the estimates and
+ * tells the catalog the resource changed.
+ * </p>
+ * <p>
+ * The exact values are saved with the number of rows inserted, updated and deleted in the table
+ * so far (from <code>pg_stat_all_tables</code>). In each session the job compares that number
+ * with the current one and computes the values again if the table changed since, or if they are
+ * older than {@link #MAX_AGE} in case the database does not count changes.
+ * </p>
+ *
+ * @since 1.4.0
+ */
+final class PostgisResourceStatistics {
+
+    private static final String BOUNDS_KEY = "postgis.bounds"; //$NON-NLS-1$
+    private static final String COUNT_KEY = "postgis.count"; //$NON-NLS-1$
+    private static final String EXACT_KEY = "postgis.exact"; //$NON-NLS-1$
+    private static final String MODIFICATIONS_KEY = "postgis.modifications"; //$NON-NLS-1$
+    private static final String TIME_KEY = "postgis.time"; //$NON-NLS-1$
+
+    /** milliseconds after which exact values are computed again even if the table did not change */
+    static final long MAX_AGE = 7 * 24 * 60 * 60 * 1000L;
+
+    /** SQLSTATE of a call to a function that does not exist */
+    private static final String UNDEFINED_FUNCTION = "42883"; //$NON-NLS-1$
+
+    private final PostgisGeoResource2 owner;
+    private volatile Job exactJob;
+
+    PostgisResourceStatistics( PostgisGeoResource2 owner ) {
+        this.owner = owner;
+    }
+
+    /**
+     * Returns the extent of the table: the saved one if any, otherwise the one estimated by the
+     * database, and schedules the check of the exact extent once per session.
+     *
+     * @param crs the crs of the geometry column
+     * @return the extent or null if the database has no statistics for the table
+     */
+    ReferencedEnvelope getBounds( CoordinateReferenceSystem crs ) {
+        Envelope envelope = parseEnvelope(owner.getPersistentProperties().get(BOUNDS_KEY));
+        if (envelope == null) {
+            try {
+                envelope = estimate();
+            } catch (Exception e) {
+                PostgisPlugin.log("Unable to estimate the extent of " + owner.typename, e); //$NON-NLS-1$
+            }
+        }
+        scheduleExact();
+        return envelope == null ? null : new ReferencedEnvelope(envelope, crs);
+    }
+
+    /**
+     * @return the number of rows of the table, exact or estimated, or -1 if it is not known
+     */
+    long getCount() {
+        Serializable count = owner.getPersistentProperties().get(COUNT_KEY);
+        return count instanceof Long ? ((Long) count).longValue() : -1;
+    }
+
+    /**
+     * @return true if the extent and count are exact rather than estimated
+     */
+    boolean isExact() {
+        return Boolean.TRUE.equals(owner.getPersistentProperties().get(EXACT_KEY));
+    }
+
+    /**
+     * Reads the estimated extent and row count of the table and saves them. The row count is saved
+     * even if the extent can not be estimated, for example because the table was never analyzed.
+     *
+     * @return the estimated extent or null if the database has no statistics for the geometries
+     */
+    private Envelope estimate() throws IOException, SQLException {
+        TableDescriptor table = owner.desc;
+        Connection connection = getConnection();
+        try {
+            long count = -1;
+            PreparedStatement statement = connection
+                    .prepareStatement("SELECT c.reltuples FROM pg_class c JOIN pg_namespace n ON n.oid = c.relnamespace WHERE n.nspname = ? AND c.relname = ?"); //$NON-NLS-1$
+            try {
+                statement.setString(1, table.schema);
+                statement.setString(2, table.name);
+                ResultSet result = statement.executeQuery();
+                if (result.next() && result.getFloat(1) >= 0) {
+                    count = (long) result.getFloat(1);
+                }
+                result.close();
+            } finally {
+                statement.close();
+            }
+            Envelope envelope = null;
+            if (table.geometryColumn != null) {
+                try {
+                    envelope = estimateExtent(connection, "ST_EstimatedExtent", table); //$NON-NLS-1$
+                } catch (SQLException e) {
+                    if (!connection.getAutoCommit()) {
+                        connection.rollback();
+                    }
+                    if (UNDEFINED_FUNCTION.equals(e.getSQLState())) {
+                        // before PostGIS 2.1 the function had another name
+                        try {
+                            envelope = estimateExtent(connection, "ST_Estimated_Extent", table); //$NON-NLS-1$
+                        } catch (SQLException e2) {
+                            PostgisPlugin.trace("No estimated extent for " + owner.typename, e2); //$NON-NLS-1$
+                        }
+                    } else {
+                        PostgisPlugin.trace("No estimated extent for " + owner.typename, e); //$NON-NLS-1$
+                    }
+                }
+            }
+            Map<String, Serializable> values = new LinkedHashMap<String, Serializable>();
+            store(values, envelope, count, false);
+            update(values);
+            return envelope;
+        } finally {
+            connection.close();
+        }
+    }
+
+    private static Envelope estimateExtent( Connection connection, String function,
+            TableDescriptor table ) throws SQLException {
+        PreparedStatement statement = connection
+                .prepareStatement("SELECT ST_XMin(e), ST_XMax(e), ST_YMin(e), ST_YMax(e) FROM (SELECT " //$NON-NLS-1$
+                        + function + "(?, ?, ?) AS e) AS t"); //$NON-NLS-1$
+        try {
+            statement.setString(1, table.schema);
+            statement.setString(2, table.name);
+            statement.setString(3, table.geometryColumn);
+            ResultSet result = statement.executeQuery();
+            try {
+                if (!result.next()) {
+                    return null;
+                }
+                double minX = result.getDouble(1);
+                if (result.wasNull()) {
+                    return null;
+                }
+                return new Envelope(minX, result.getDouble(2), result.getDouble(3),
+                        result.getDouble(4));
+            } finally {
+                result.close();
+            }
+        } finally {
+            statement.close();
+        }
+    }
+
+    /**
+     * @return the number of rows inserted, updated and deleted in the table since the statistics
+     *         of the database were reset, or -1 if the database does not tell
+     */
+    private static long queryModifications( Connection connection, TableDescriptor table )
+            throws SQLException {
+        PreparedStatement statement = connection
+                .prepareStatement("SELECT n_tup_ins + n_tup_upd + n_tup_del FROM pg_stat_all_tables WHERE schemaname = ? AND relname = ?"); //$NON-NLS-1$
+        try {
+            statement.setString(1, table.schema);
+            statement.setString(2, table.name);
+            ResultSet result = statement.executeQuery();
+            try {
+                if (!result.next()) {
+                    return -1;
+                }
+                long modifications = result.getLong(1);
+                return result.wasNull() ? -1 : modifications;
+            } finally {
+                result.close();
+            }
+        } finally {
+            statement.close();
+        }
+    }
+
+    /**
+     * @return true if the saved exact values are recent and the table did not change since
+     */
+    private boolean isCurrent() throws IOException, SQLException {
+        Map<String, Serializable> properties = getProperties();
+        if (!Boolean.TRUE.equals(properties.get(EXACT_KEY))) {
+            return false;
+        }
+        Serializable time = properties.get(TIME_KEY);
+        if (!(time instanceof Long)
+                || System.currentTimeMillis() - ((Long) time).longValue() > MAX_AGE) {
+            return false;
+        }
+        Serializable saved = properties.get(MODIFICATIONS_KEY);
+        if (!(saved instanceof Long)) {
+            return false;
+        }
+        Connection connection = getConnection();
+        try {
+            long modifications = queryModifications(connection, owner.desc);
+            return modifications >= 0 && modifications == ((Long) saved).longValue();
+        } finally {
+            connection.close();
+        }
+    }
+
+    /**
+     * Schedules the job checking the exact extent and count, once per session.
+     */
+    private synchronized void scheduleExact() {
+        if (exactJob != null) {
+            return;
+        }
+        exactJob = new ExactStatisticsJob();
+        exactJob.schedule();
+    }
+
+    /**
+     * Computes the exact extent and count of the table and saves them.
+     *
+     * @return the exact extent or null if the table has no geometry
+     */
+    Envelope computeExact() throws IOException, SQLException {
+        TableDescriptor table = owner.desc;
+        String name = quote(table.schema) + "." + quote(table.name); //$NON-NLS-1$
+        Connection connection = getConnection();
+        try {
+            // read first so changes made during the computation are seen next time
+            long modifications = queryModifications(connection, table);
+            Map<String, Serializable> values = new LinkedHashMap<String, Serializable>();
+            Statement statement = connection.createStatement();
+            try {
+                Envelope envelope = null;
+                if (table.geometryColumn != null) {
+                    String column = quote(table.geometryColumn);
+                    ResultSet result = statement
+                            .executeQuery("SELECT ST_XMin(e), ST_XMax(e), ST_YMin(e), ST_YMax(e), n FROM (SELECT ST_Extent(" //$NON-NLS-1$
+                                    + column + ") AS e, count(*) AS n FROM " + name + ") AS t"); //$NON-NLS-1$ //$NON-NLS-2$
+                    try {
+                        result.next();
+                        double minX = result.getDouble(1);
+                        if (!result.wasNull()) {
+                            envelope = new Envelope(minX, result.getDouble(2),
+                                    result.getDouble(3), result.getDouble(4));
+                        }
+                        store(values, envelope, result.getLong(5), true);
+                    } finally {
+                        result.close();
+                    }
+                } else {
+                    ResultSet result = statement.executeQuery("SELECT count(*) FROM " + name); //$NON-NLS-1$
+                    try {
+                        result.next();
+                        store(values, null, result.getLong(1), true);
+                    } finally {
+                        result.close();
+                    }
+                }
+                if (modifications >= 0) {
+                    values.put(MODIFICATIONS_KEY, Long.valueOf(modifications));
+                }
+                values.put(TIME_KEY, Long.valueOf(System.currentTimeMillis()));
+                update(values);
+                return envelope;
+            } finally {
+                statement.close();
+            }
+        } finally {
+            connection.close();
+        }
+    }
+
+    private Connection getConnection() throws IOException, SQLException {
+        DataStore dataStore = owner.resolve(DataStore.class, new NullProgressMonitor());
+        if (!(dataStore instanceof JDBCDataStore)) {
+            throw new IOException("No connection to the database of " + owner.typename); //$NON-NLS-1$
+        }
+        return ((JDBCDataStore) dataStore).getDataSource().getConnection();
+    }
+
+    /**
+     * Puts the statistics in values, a null value means the property is removed.
+     */
+    private static void store( Map<String, Serializable> values, Envelope envelope, long count,
+            boolean exact ) {
+        if (envelope != null) {
+            values.put(BOUNDS_KEY, envelope.getMinX() + "," + envelope.getMaxX() + "," //$NON-NLS-1$ //$NON-NLS-2$
+                    + envelope.getMinY() + "," + envelope.getMaxY()); //$NON-NLS-1$
+        } else if (exact) {
+            values.put(BOUNDS_KEY, null);
+        }
+        if (count >= 0) {
+            values.put(COUNT_KEY, Long.valueOf(count));
+        }
+        values.put(EXACT_KEY, Boolean.valueOf(exact));
+        if (!exact) {
+            values.put(MODIFICATIONS_KEY, null);
+            values.put(TIME_KEY, null);
+        }
+    }
+
+    /**
+     * Saves the values in the persistent properties of the resource at once. The properties are a
+     * synchronized map that the UI thread reads and the catalog iterates when it is saved, so they
+     * are changed while holding its lock rather than one by one from the job.
+     *
+     * @param values the values to save, a null value removes the property
+     */
+    private void update( Map<String, Serializable> values ) {
+        Map<String, Serializable> properties = owner.getPersistentProperties();
+        synchronized (properties) {
+            for( Map.Entry<String, Serializable> entry : values.entrySet() ) {
+                if (entry.getValue() == null) {
+                    properties.remove(entry.getKey());
+                } else {
+                    properties.put(entry.getKey(), entry.getValue());
+                }
+            }
+        }
+    }
+
+    /**
+     * @return a copy of the persistent properties of the resource, taken while holding their lock
+     *         so the values read together were saved together
+     */
+    private Map<String, Serializable> getProperties() {
+        Map<String, Serializable> properties = owner.getPersistentProperties();
+        synchronized (properties) {
+            return new HashMap<String, Serializable>(properties);
+        }
+    }
+
+    private static Envelope parseEnvelope( Serializable value ) {
+        if (value == null) {
+            return null;
+        }
+        String[] parts = value.toString().split(","); //$NON-NLS-1$
+        if (parts.length != 4) {
+            return null;
+        }
+        try {
+            return new Envelope(Double.parseDouble(parts[0]), Double.parseDouble(parts[1]),
+                    Double.parseDouble(parts[2]), Double.parseDouble(parts[3]));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private static String quote( String identifier ) {
+        return "\"" + identifier.replace("\"", "\"\"") + "\""; //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$
+    }
+
+    /**
+     * Checks and computes the exact statistics in the background; the jobs of a database run one at a time
+     * so opening a database with hundreds of tables does not start hundreds of scans.
+     */
+    private class ExactStatisticsJob extends Job {
+
+        ExactStatisticsJob() {
+            super("Computing the extent of " + owner.typename); //$NON-NLS-1$
+            setSystem(true);
+            setPriority(DECORATE);
+            try {
+                setRule(new ServiceRule(owner.service(new NullProgressMonitor())));
+            } catch (IOException e) {
+                // runs without a rule
+            }
+        }
+
+        @Override
+        protected IStatus run( IProgressMonitor monitor ) {
+            if (monitor.isCanceled()) {
+                return Status.CANCEL_STATUS;
+            }
+            try {
+                if (isCurrent()) {
+                    return Status.OK_STATUS;
+                }
+                Envelope envelope = computeExact();
+                IGeoResourceInfo info = owner.getInfo(null);
+                if (envelope != null && info instanceof PostgisResourceInfo) {
+                    ((PostgisResourceInfo) info).setBounds(new ReferencedEnvelope(envelope,
+                            info.getCRS()));
+                }
+                IResolveDelta delta = new ResolveDelta(owner, IResolveDelta.Kind.CHANGED);
+                ((CatalogImpl) CatalogPlugin.getDefault().getLocalCatalog())
+                        .fire(new ResolveChangeEvent(owner, IResolveChangeEvent.Type.POST_CHANGE,
+                                delta));
+            } catch (Exception e) {
+                PostgisPlugin.log("Unable to compute the extent of " + owner.typename, e); //$NON-NLS-1$
+            }
+            return Status.OK_STATUS;
+        }
+    }
+
+    /**
+     * Rule that conflicts with the rules of the same database.
+     */
+    private static class ServiceRule implements ISchedulingRule {
+        private final IService service;
+
+        ServiceRule( IService service ) {
+            this.service = service;
+        }
+
+        public boolean contains( ISchedulingRule rule ) {
+            return rule == this;
+        }
+
+        public boolean isConflicting( ISchedulingRule rule ) {
+            return rule instanceof ServiceRule && ((ServiceRule) rule).service == service;
+        }
+    }
+}
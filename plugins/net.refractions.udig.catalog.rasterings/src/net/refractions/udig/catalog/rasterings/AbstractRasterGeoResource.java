@@ -21,17 +21,26 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.concurrent.locks.Lock;
 
+import net.refractions.udig.catalog.CatalogPlugin;
 import net.refractions.udig.catalog.ID;
 import net.refractions.udig.catalog.IGeoResource;
 import net.refractions.udig.catalog.IGeoResourceInfo;
 import net.refractions.udig.catalog.IService;
+import net.refractions.udig.catalog.IResolveChangeEvent;
+import net.refractions.udig.catalog.IResolveDelta;
 import net.refractions.udig.catalog.URLUtils;
+import net.refractions.udig.catalog.internal.CatalogImpl;
+import net.refractions.udig.catalog.internal.ResolveChangeEvent;
+import net.refractions.udig.catalog.internal.ResolveDelta;
 import net.refractions.udig.catalog.rasterings.internal.Messages;
 import net.refractions.udig.ui.ProgressManager;
 import net.refractions.udig.ui.UDIGDisplaySafeLock;
 
 import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
 import org.eclipse.core.runtime.NullProgressMonitor;
+import org.eclipse.core.runtime.jobs.Job;
+import org.eclipse.osgi.util.NLS;
 import org.geotools.coverage.grid.GridCoverage2D;
 import org.geotools.coverage.grid.GridEnvelope2D;
 import org.geotools.coverage.grid.GridGeometry2D;
@@ -77,6 +86,8 @@ public abstract class AbstractRasterGeoResource extends IGeoResource {
 
 	final protected ID id;
 
+	private RasterPyramid pyramid;
+
 	/**
 	 * Construct <code>AbstractRasterGeoResource</code>.
 	 * 
@@ -205,6 +216,13 @@ public abstract class AbstractRasterGeoResource extends IGeoResource {
             if (adaptee.isAssignableFrom(GridCoverageLoader.class)) {
                 return adaptee.cast(new GridCoverageLoader(this));
             }
+            if (adaptee.isAssignableFrom(RasterPyramid.class)) {
+                RasterPyramid built = getPyramid();
+                if (built != null && built.getLevels() > 0) {
+                    return adaptee.cast(built);
+                }
+                return null;
+            }
             if (adaptee.isAssignableFrom(AbstractGridCoverage2DReader.class)) {
                 AbstractGridCoverage2DReader reader = service(monitor).getReader(monitor);
                 return adaptee.cast(reader);
@@ -237,6 +255,62 @@ public abstract class AbstractRasterGeoResource extends IGeoResource {
         }
     }
 	
+	/**
+	 * The overviews stored next to the raster file; they may not be built yet.
+	 * 
+	 * @return the overviews or null if the raster is not a file
+	 */
+	public synchronized RasterPyramid getPyramid() {
+	    if (pyramid == null) {
+	        File file = URLUtils.urlToFile(service.getIdentifier());
+	        if (file == null || !file.isFile()) {
+	            return null;
+	        }
+	        pyramid = new RasterPyramid(this, file);
+	    }
+	    return pyramid;
+	}
+
+	/**
+	 * Creates a job building the overviews of the raster in the background; the job has to be
+	 * scheduled. The job can be canceled and scheduled again later, the tiles already built are
+	 * kept. Once done the catalog is told that the resource changed.
+	 * 
+	 * @return the job or null if the raster is not a file
+	 */
+	public Job buildPyramid() {
+	    final RasterPyramid target = getPyramid();
+	    if (target == null) {
+	        return null;
+	    }
+	    Job job = new Job(NLS.bind(Messages.AbstractRasterGeoResource_buildPyramid, fileName)){
+	        @Override
+	        protected IStatus run( IProgressMonitor monitor ) {
+	            try {
+	                target.build(monitor);
+	            } catch (IOException e) {
+	                // Status alone is IResolve.Status here
+	                return new org.eclipse.core.runtime.Status(IStatus.ERROR, RasteringsPlugin
+	                        .getDefault().getBundle().getSymbolicName(), NLS.bind(
+	                        Messages.AbstractRasterGeoResource_pyramidError, fileName), e);
+	            }
+	            if (monitor.isCanceled()) {
+	                return org.eclipse.core.runtime.Status.CANCEL_STATUS;
+	            }
+	            info = null; // the description lists the overviews
+	            AbstractRasterGeoResource resource = AbstractRasterGeoResource.this;
+	            ((CatalogImpl) CatalogPlugin.getDefault().getLocalCatalog())
+	                    .fire(new ResolveChangeEvent(resource,
+	                            IResolveChangeEvent.Type.POST_CHANGE, new ResolveDelta(resource,
+	                                    IResolveDelta.Kind.CHANGED)));
+	            return org.eclipse.core.runtime.Status.OK_STATUS;
+	        }
+	    };
+	    job.setRule(target);
+	    job.setUser(true);
+	    return job;
+	}
+
 	public Style style( IProgressMonitor monitor ) {
         URL url = service.getIdentifier();
         File file = URLUtils.urlToFile(url);
@@ -279,6 +353,7 @@ public abstract class AbstractRasterGeoResource extends IGeoResource {
 				|| adaptee.isAssignableFrom(GridCoverage.class)
                 || adaptee.isAssignableFrom(AbstractGridCoverage2DReader.class)
                 || adaptee.isAssignableFrom(GridCoverageLoader.class)
+                || adaptee.isAssignableFrom(RasterPyramid.class)
                 || adaptee.isAssignableFrom(Style.class)
 				|| super.canResolve(adaptee);
 	}
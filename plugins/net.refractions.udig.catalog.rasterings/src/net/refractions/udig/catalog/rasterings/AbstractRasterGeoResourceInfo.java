@@ -10,12 +10,16 @@
  */
 package net.refractions.udig.catalog.rasterings;
 
+import java.io.IOException;
+
 import net.refractions.udig.catalog.CatalogPlugin;
 import net.refractions.udig.catalog.ID;
 import net.refractions.udig.catalog.IGeoResourceInfo;
+import net.refractions.udig.catalog.rasterings.internal.Messages;
 
 import org.eclipse.core.runtime.IStatus;
 import org.eclipse.core.runtime.NullProgressMonitor;
+import org.eclipse.osgi.util.NLS;
 import org.geotools.coverage.grid.io.AbstractGridCoverage2DReader;
 import org.geotools.geometry.GeneralEnvelope;
 import org.geotools.geometry.jts.ReferencedEnvelope;
@@ -50,7 +54,19 @@ public class AbstractRasterGeoResourceInfo extends IGeoResourceInfo {
     
     @Override
     public String getDescription() {
-        return resource.getIdentifier().toString();
+        String description = resource.getIdentifier().toString();
+        RasterPyramid pyramid = resource.getPyramid();
+        int levels = pyramid == null ? 0 : pyramid.getLevels();
+        if (levels > 0) {
+            try {
+                long speedup = Math.round(pyramid.getEstimatedSpeedup());
+                return NLS.bind(Messages.AbstractRasterGeoResourceInfo_pyramid, new Object[]{
+                        description, levels, speedup});
+            } catch (IOException e) {
+                RasteringsPlugin.log("Unable to read the overviews of " + description, e); //$NON-NLS-1$
+            }
+        }
+        return description;
     }
 
     @Override
@@ -46,6 +46,15 @@ public class GridCoverageLoader {
     }
     
     public GridCoverage load( GeneralGridGeometry geom, IProgressMonitor monitor ) throws IOException {
+        // zoomed out rasters are read from the overviews if they were built
+        RasterPyramid pyramid = resource.resolve(RasterPyramid.class, monitor);
+        if (pyramid != null && geom != null && geom.getEnvelope() != null) {
+            GridCoverage2D overview = pyramid.read(geom.getEnvelope(), geom.getGridRange()
+                    .getSpan(0), geom.getGridRange().getSpan(1));
+            if (overview != null) {
+                return overview;
+            }
+        }
 
         ParameterValueGroup group = resource.resolve(ParameterValueGroup.class, monitor);
 
@@ -0,0 +1,714 @@
+/*
+ *    uDig - User Friendly Desktop Internet GIS client
+ *    http://udig.refractions.net
+ *    (C) 2012, Refractions Research Inc.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * (http://www.eclipse.org/legal/epl-v10.html), and the Refractions BSD
+ * License v1.0 (http://udig.refractions.net/files/bsd3-v10.html).
+ *
+ */
+package net.refractions.udig.catalog.rasterings;
+
+import java.awt.Rectangle;
+import java.awt.image.ColorModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.IndexColorModel;
+import java.awt.image.Raster;
+import java.awt.image.RenderedImage;
+import java.awt.image.SampleModel;
+import java.awt.image.WritableRaster;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import javax.media.jai.PlanarImage;
+import javax.media.jai.TiledImage;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.jobs.ISchedulingRule;
+import org.geotools.coverage.CoverageFactoryFinder;
+import org.geotools.coverage.GridSampleDimension;
+import org.geotools.coverage.grid.GridCoverage2D;
+import org.geotools.coverage.grid.GridEnvelope2D;
+import org.geotools.coverage.grid.GridGeometry2D;
+import org.geotools.coverage.grid.io.AbstractGridCoverage2DReader;
+import org.geotools.coverage.grid.io.AbstractGridFormat;
+import org.geotools.gce.geotiff.GeoTiffReader;
+import org.geotools.gce.geotiff.GeoTiffWriter;
+import org.geotools.geometry.GeneralEnvelope;
+import org.geotools.geometry.jts.ReferencedEnvelope;
+import org.geotools.referencing.CRS;
+import org.opengis.coverage.grid.GridEnvelope;
+import org.opengis.parameter.GeneralParameterValue;
+import org.opengis.parameter.ParameterValue;
+import org.opengis.referencing.crs.CoordinateReferenceSystem;
+
+import com.vividsolutions.jts.geom.Envelope;
+
+/**
+ * Overviews of a raster file stored next to the file, used to draw large rasters that have no
+ * overviews of their own.
+ * <p>
+ * Level <code>n</code> has half the resolution of level <code>n-1</code>, level 0 being the
+ * raster itself; each pixel is the average of the 2x2 pixels below it, or the top left one for
+ * rasters with a palette. Each level is cut into GeoTIFF tiles of {@link #TILE_SIZE} pixels stored in
+ * <code>&lt;file&gt;.overviews/&lt;level&gt;/&lt;column&gt;_&lt;row&gt;.tif</code>; levels are
+ * added until the whole raster fits in one tile.
+ * </p>
+ * <p>
+ * {@link #build(IProgressMonitor)} builds the tiles of each level from the level below using a
+ * thread per processor. Tiles that already exist are kept so a build that was canceled carries
+ * on where it stopped. A level is only used once all of its tiles are built. The overviews are
+ * thrown away if the raster file changes.
+ * </p>
+ *
+ * @since 1.4.0
+ */
+public class RasterPyramid implements ISchedulingRule {
+
+    /** width and height of a tile in pixels */
+    public static final int TILE_SIZE = 512;
+
+    private static final String PROPERTIES = "pyramid.properties"; //$NON-NLS-1$
+    private static final String COMPLETE = "complete"; //$NON-NLS-1$
+    private static final String SOURCE_LENGTH = "source.length"; //$NON-NLS-1$
+    private static final String SOURCE_MODIFIED = "source.modified"; //$NON-NLS-1$
+    private static final String TILE = "tile.size"; //$NON-NLS-1$
+
+    private final AbstractRasterGeoResource resource;
+    private final File file;
+    private final File directory;
+
+    /** native envelope, grid size and CRS of the raster; read the first time they are needed */
+    private Envelope bounds;
+    private int width;
+    private int height;
+    private CoordinateReferenceSystem crs;
+
+    private volatile boolean canceled;
+
+    /**
+     * @param resource the raster
+     * @param file the file of the raster
+     */
+    RasterPyramid( AbstractRasterGeoResource resource, File file ) {
+        this.resource = resource;
+        this.file = file;
+        this.directory = new File(file.getPath() + ".overviews"); //$NON-NLS-1$
+    }
+
+    private synchronized void init() throws IOException {
+        if (bounds != null) {
+            return;
+        }
+        AbstractGridCoverage2DReader reader = resource.service(null).getReader(null);
+        if (reader == null) {
+            throw new IOException("Unable to read " + file); //$NON-NLS-1$
+        }
+        GeneralEnvelope original = reader.getOriginalEnvelope();
+        GridEnvelope range = reader.getOriginalGridRange();
+        crs = original.getCoordinateReferenceSystem();
+        width = range.getSpan(0);
+        height = range.getSpan(1);
+        bounds = new Envelope(original.getMinimum(0), original.getMaximum(0), original
+                .getMinimum(1), original.getMaximum(1));
+    }
+
+    /**
+     * @return number of levels needed for the whole raster to fit in a tile
+     */
+    public int getMaxLevel() throws IOException {
+        init();
+        return getMaxLevel(width, height);
+    }
+
+    /**
+     * @param rasterWidth width of a raster in pixels
+     * @param rasterHeight height of a raster in pixels
+     * @return number of levels needed for the whole raster to fit in a tile
+     */
+    public static int getMaxLevel( int rasterWidth, int rasterHeight ) {
+        int level = 0;
+        while( levelSize(rasterWidth, level) > TILE_SIZE
+                || levelSize(rasterHeight, level) > TILE_SIZE ) {
+            level++;
+        }
+        return level;
+    }
+
+    /**
+     * @return the number of levels that are built and can be used, 0 if there are none
+     */
+    public int getLevels() {
+        if (!isCurrent()) {
+            return 0;
+        }
+        int level = 0;
+        while( new File(levelDirectory(level + 1), COMPLETE).exists() ) {
+            level++;
+        }
+        return level;
+    }
+
+    /**
+     * Estimates how many times fewer pixels are read to draw the whole raster using the overviews.
+     *
+     * @return the ratio of the pixels of the raster to the pixels of the coarsest level built
+     */
+    public double getEstimatedSpeedup() throws IOException {
+        init();
+        int levels = getLevels();
+        return ((double) width * height) / ((double) levelWidth(levels) * levelHeight(levels));
+    }
+
+    /**
+     * Reads the area from the coarsest level that still has at least the requested resolution.
+     *
+     * @param area the area to read, in any CRS
+     * @param areaWidth requested width in pixels
+     * @param areaHeight requested height in pixels
+     * @return the coverage or null if the raster itself should be read
+     * @throws IOException
+     */
+    public GridCoverage2D read( org.opengis.geometry.Envelope area, int areaWidth, int areaHeight )
+            throws IOException {
+        int levels = getLevels();
+        if (levels == 0) {
+            return null;
+        }
+        init();
+        ReferencedEnvelope requested = new ReferencedEnvelope(area.getMinimum(0), area
+                .getMaximum(0), area.getMinimum(1), area.getMaximum(1), area
+                .getCoordinateReferenceSystem());
+        try {
+            if (requested.getCoordinateReferenceSystem() != null && crs != null
+                    && !CRS.equalsIgnoreMetadata(requested.getCoordinateReferenceSystem(), crs)) {
+                requested = requested.transform(crs, true);
+            }
+        } catch (Exception e) {
+            RasteringsPlugin.log("Unable to transform " + area + " to the CRS of " + file, e); //$NON-NLS-1$ //$NON-NLS-2$
+            return null;
+        }
+        double resolution = Math.min(requested.getWidth() / areaWidth, requested.getHeight()
+                / areaHeight);
+        int level = 0;
+        while( level < levels && resolutionX(level + 1) <= resolution
+                && resolutionY(level + 1) <= resolution ) {
+            level++;
+        }
+        if (level == 0) {
+            return null;
+        }
+        Envelope intersection = requested.intersection(bounds);
+        if (intersection.isNull()) {
+            return null;
+        }
+        return readLevel(level, pixels(level, intersection));
+    }
+
+    /**
+     * The pixels of the level covering the area, rounded out to whole tiles.
+     */
+    private Rectangle pixels( int level, Envelope area ) {
+        int span = TILE_SIZE;
+        int columns = columns(level);
+        int rows = rows(level);
+        int minColumn = clamp((int) Math.floor((area.getMinX() - bounds.getMinX())
+                / (span * resolutionX(level))), columns);
+        int maxColumn = clamp((int) Math.floor((area.getMaxX() - bounds.getMinX())
+                / (span * resolutionX(level))), columns);
+        int minRow = clamp((int) Math.floor((bounds.getMaxY() - area.getMaxY())
+                / (span * resolutionY(level))), rows);
+        int maxRow = clamp((int) Math.floor((bounds.getMaxY() - area.getMinY())
+                / (span * resolutionY(level))), rows);
+        Rectangle pixels = new Rectangle(minColumn * span, minRow * span, (maxColumn - minColumn + 1)
+                * span, (maxRow - minRow + 1) * span);
+        return pixels.intersection(new Rectangle(levelWidth(level), levelHeight(level)));
+    }
+
+    private static int clamp( int value, int count ) {
+        return Math.max(0, Math.min(count - 1, value));
+    }
+
+    /**
+     * Puts the tiles of a level covering the pixels together.
+     */
+    private GridCoverage2D readLevel( int level, Rectangle pixels ) throws IOException {
+        Tile target = null;
+        for( int row = pixels.y / TILE_SIZE; row * TILE_SIZE < pixels.getMaxY(); row++ ) {
+            for( int column = pixels.x / TILE_SIZE; column * TILE_SIZE < pixels.getMaxX(); column++ ) {
+                GridCoverage2D tile = readTile(tileFile(level, column, row));
+                if (tile == null) {
+                    continue;
+                }
+                try {
+                    Raster data = tile.getRenderedImage().getData();
+                    if (target == null) {
+                        target = new Tile(tile, pixels.width, pixels.height);
+                    }
+                    target.raster.setRect(column * TILE_SIZE - pixels.x, row * TILE_SIZE
+                            - pixels.y, data.createTranslatedChild(0, 0));
+                } finally {
+                    tile.dispose(true);
+                }
+            }
+        }
+        if (target == null) {
+            return null;
+        }
+        return target.toCoverage(envelope(level, pixels));
+    }
+
+    private GridCoverage2D readTile( File tileFile ) throws IOException {
+        if (!tileFile.exists()) {
+            return null;
+        }
+        GeoTiffReader reader = new GeoTiffReader(tileFile);
+        try {
+            return reader.read(null);
+        } finally {
+            reader.dispose();
+        }
+    }
+
+    /**
+     * Builds the levels that are missing, using a thread per processor. Blocks until the levels
+     * are built or the monitor is canceled.
+     *
+     * @param monitor reports progress and is checked for cancellation
+     * @throws IOException if a tile could not be built
+     */
+    public void build( IProgressMonitor monitor ) throws IOException {
+        init();
+        canceled = false;
+        if (!isCurrent()) {
+            delete(directory);
+        }
+        if (!directory.exists() && !directory.mkdirs()) {
+            throw new IOException("Unable to create " + directory); //$NON-NLS-1$
+        }
+        writeProperties();
+
+        int maxLevel = getMaxLevel();
+        int total = 0;
+        for( int level = 1; level <= maxLevel; level++ ) {
+            total += columns(level) * rows(level);
+        }
+        monitor.beginTask(file.getName(), total);
+        int threads = Runtime.getRuntime().availableProcessors();
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        final List<AbstractGridCoverage2DReader> readers = Collections
+                .synchronizedList(new ArrayList<AbstractGridCoverage2DReader>());
+        final ThreadLocal<AbstractGridCoverage2DReader> sources = new ThreadLocal<AbstractGridCoverage2DReader>(){
+            @Override
+            protected AbstractGridCoverage2DReader initialValue() {
+                // readers are not shared between threads
+                AbstractGridCoverage2DReader reader;
+                try {
+                    reader = resource.service(null).getFormat().getReader(file);
+                } catch (IOException e) {
+                    return null;
+                }
+                readers.add(reader);
+                return reader;
+            }
+        };
+        try {
+            for( int level = 1; level <= maxLevel; level++ ) {
+                File levelDirectory = levelDirectory(level);
+                if (new File(levelDirectory, COMPLETE).exists()) {
+                    monitor.worked(columns(level) * rows(level));
+                    continue;
+                }
+                if (!levelDirectory.exists() && !levelDirectory.mkdirs()) {
+                    throw new IOException("Unable to create " + levelDirectory); //$NON-NLS-1$
+                }
+                List<Future< ? >> tiles = new ArrayList<Future< ? >>();
+                for( int row = 0; row < rows(level); row++ ) {
+                    for( int column = 0; column < columns(level); column++ ) {
+                        if (tileFile(level, column, row).exists()) {
+                            monitor.worked(1);
+                            continue;
+                        }
+                        final int tileLevel = level;
+                        final int tileColumn = column;
+                        final int tileRow = row;
+                        tiles.add(pool.submit(new Callable<Object>(){
+                            public Object call() throws Exception {
+                                if (!canceled) {
+                                    buildTile(tileLevel, tileColumn, tileRow, sources);
+                                }
+                                return null;
+                            }
+                        }));
+                    }
+                }
+                for( Future< ? > tile : tiles ) {
+                    if (!waitFor(tile, monitor)) {
+                        return;
+                    }
+                    monitor.worked(1);
+                }
+                new File(levelDirectory, COMPLETE).createNewFile();
+            }
+        } finally {
+            canceled = true;
+            pool.shutdownNow();
+            try {
+                pool.awaitTermination(30, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                // the readers are disposed anyway
+            }
+            for( AbstractGridCoverage2DReader reader : readers ) {
+                reader.dispose();
+            }
+            monitor.done();
+        }
+    }
+
+    /**
+     * @return false if the monitor was canceled
+     */
+    private boolean waitFor( Future< ? > tile, IProgressMonitor monitor ) throws IOException {
+        while( true ) {
+            if (monitor.isCanceled()) {
+                canceled = true;
+                return false;
+            }
+            try {
+                tile.get(500, TimeUnit.MILLISECONDS);
+                return true;
+            } catch (TimeoutException e) {
+                // check the monitor again
+            } catch (InterruptedException e) {
+                canceled = true;
+                return false;
+            } catch (ExecutionException e) {
+                canceled = true;
+                IOException exception = new IOException("Unable to build the overviews of " + file); //$NON-NLS-1$
+                exception.initCause(e.getCause());
+                throw exception;
+            }
+        }
+    }
+
+    /**
+     * Builds a tile, level 1 from the raster and the other levels from the four tiles of the
+     * level below, by averaging the pixels of the level below.
+     */
+    private void buildTile( int level, int column, int row,
+            ThreadLocal<AbstractGridCoverage2DReader> sources ) throws IOException {
+        Rectangle pixels = new Rectangle(column * TILE_SIZE, row * TILE_SIZE, TILE_SIZE, TILE_SIZE)
+                .intersection(new Rectangle(levelWidth(level), levelHeight(level)));
+        Envelope envelope = envelope(level, pixels);
+        // the pixels of the level below covered by the tile
+        Rectangle below = new Rectangle(pixels.x * 2, pixels.y * 2, pixels.width * 2,
+                pixels.height * 2).intersection(new Rectangle(levelWidth(level - 1),
+                levelHeight(level - 1)));
+        Envelope belowEnvelope = envelope(level - 1, below);
+        List<GridCoverage2D> coverages = new ArrayList<GridCoverage2D>();
+        try {
+            if (level == 1) {
+                AbstractGridCoverage2DReader reader = sources.get();
+                if (reader == null) {
+                    throw new IOException("Unable to read " + file); //$NON-NLS-1$
+                }
+                GridCoverage2D coverage = readSource(reader, belowEnvelope, below.width,
+                        below.height);
+                if (coverage != null)
+                    coverages.add(coverage);
+            } else {
+                for( int r = row * 2; r <= row * 2 + 1; r++ ) {
+                    for( int c = column * 2; c <= column * 2 + 1; c++ ) {
+                        GridCoverage2D coverage = readTile(tileFile(level - 1, c, r));
+                        if (coverage != null)
+                            coverages.add(coverage);
+                    }
+                }
+            }
+            if (coverages.isEmpty()) {
+                return;
+            }
+            Tile source = new Tile(coverages.get(0), below.width, below.height);
+            for( GridCoverage2D coverage : coverages ) {
+                copy(coverage, source.raster, belowEnvelope);
+            }
+            Tile tile = new Tile(coverages.get(0), pixels.width, pixels.height);
+            // averaging palette indices would give unrelated colours
+            downsample(source.raster, tile.raster, !(source.colorModel instanceof IndexColorModel));
+            write(tile.toCoverage(envelope), tileFile(level, column, row));
+        } finally {
+            for( GridCoverage2D coverage : coverages ) {
+                coverage.dispose(true);
+            }
+        }
+    }
+
+    private GridCoverage2D readSource( AbstractGridCoverage2DReader reader, Envelope envelope,
+            int sourceWidth, int sourceHeight ) throws IOException {
+        ParameterValue<GridGeometry2D> gridGeometry = AbstractGridFormat.READ_GRIDGEOMETRY2D
+                .createValue();
+        gridGeometry.setValue(new GridGeometry2D(new GridEnvelope2D(0, 0, sourceWidth,
+                sourceHeight), (org.opengis.geometry.Envelope) new ReferencedEnvelope(envelope,
+                crs)));
+        return (GridCoverage2D) reader.read(new GeneralParameterValue[]{gridGeometry});
+    }
+
+    /**
+     * Copies the pixels of the coverage that fall in the envelope using the nearest pixel, a row
+     * at a time. The tiles of the level below line up with the target so this is a plain copy
+     * unless a reader returned another grid than requested.
+     */
+    private static void copy( GridCoverage2D coverage, WritableRaster target, Envelope envelope ) {
+        RenderedImage image = coverage.getRenderedImage();
+        org.opengis.geometry.Envelope source = coverage.getEnvelope();
+        double sourceResolutionX = (source.getMaximum(0) - source.getMinimum(0)) / image.getWidth();
+        double sourceResolutionY = (source.getMaximum(1) - source.getMinimum(1)) / image.getHeight();
+        double resolutionX = envelope.getWidth() / target.getWidth();
+        double resolutionY = envelope.getHeight() / target.getHeight();
+
+        // columns of the source for each column of the target, the ones covered are contiguous
+        int[] columns = new int[target.getWidth()];
+        int first = -1;
+        int last = -1;
+        for( int i = 0; i < columns.length; i++ ) {
+            double x = envelope.getMinX() + (i + 0.5) * resolutionX;
+            int column = (int) Math.floor((x - source.getMinimum(0)) / sourceResolutionX);
+            if (column >= 0 && column < image.getWidth()) {
+                columns[i] = column;
+                if (first == -1)
+                    first = i;
+                last = i;
+            }
+        }
+        if (first == -1) {
+            return;
+        }
+        Raster data = image.getData();
+        int bands = data.getNumBands();
+        double[] line = new double[image.getWidth() * bands];
+        double[] out = new double[(last - first + 1) * bands];
+        for( int j = 0; j < target.getHeight(); j++ ) {
+            double y = envelope.getMaxY() - (j + 0.5) * resolutionY;
+            int row = (int) Math.floor((source.getMaximum(1) - y) / sourceResolutionY);
+            if (row < 0 || row >= image.getHeight())
+                continue;
+            data.getPixels(image.getMinX(), image.getMinY() + row, image.getWidth(), 1, line);
+            for( int i = first; i <= last; i++ ) {
+                System.arraycopy(line, columns[i] * bands, out, (i - first) * bands, bands);
+            }
+            target.setPixels(first, j, last - first + 1, 1, out);
+        }
+    }
+
+    /**
+     * Halves the resolution of a raster, a row of the target at a time.
+     * 
+     * @param source raster with twice the width and height of the target, or one less on the last
+     *        column and row when the size of the level below is odd
+     * @param target the raster to fill
+     * @param average true to average each 2x2 block, false to take its top left pixel
+     */
+    public static void downsample( Raster source, WritableRaster target, boolean average ) {
+        int bands = source.getNumBands();
+        int sourceWidth = source.getWidth();
+        int sourceHeight = source.getHeight();
+        int targetWidth = Math.min(target.getWidth(), (sourceWidth + 1) / 2);
+        int targetHeight = Math.min(target.getHeight(), (sourceHeight + 1) / 2);
+        int type = source.getTransferType();
+        boolean round = type != DataBuffer.TYPE_FLOAT && type != DataBuffer.TYPE_DOUBLE;
+
+        double[] upper = new double[sourceWidth * bands];
+        double[] lower = new double[sourceWidth * bands];
+        double[] out = new double[targetWidth * bands];
+        for( int j = 0; j < targetHeight; j++ ) {
+            int y = source.getMinY() + 2 * j;
+            source.getPixels(source.getMinX(), y, sourceWidth, 1, upper);
+            boolean twoRows = average && 2 * j + 1 < sourceHeight;
+            if (twoRows) {
+                source.getPixels(source.getMinX(), y + 1, sourceWidth, 1, lower);
+            }
+            for( int i = 0; i < targetWidth; i++ ) {
+                int left = 2 * i * bands;
+                boolean twoColumns = average && 2 * i + 1 < sourceWidth;
+                for( int b = 0; b < bands; b++ ) {
+                    double sum = upper[left + b];
+                    int count = 1;
+                    if (twoColumns) {
+                        sum += upper[left + bands + b];
+                        count++;
+                    }
+                    if (twoRows) {
+                        sum += lower[left + b];
+                        count++;
+                        if (twoColumns) {
+                            sum += lower[left + bands + b];
+                            count++;
+                        }
+                    }
+                    double value = sum / count;
+                    out[i * bands + b] = round ? Math.floor(value + 0.5) : value;
+                }
+            }
+            target.setPixels(target.getMinX(), target.getMinY() + j, targetWidth, 1, out);
+        }
+    }
+
+    private void write( GridCoverage2D coverage, File tileFile ) throws IOException {
+        // written under another name so that a canceled build does not leave half a tile
+        File temp = new File(tileFile.getPath() + ".tmp"); //$NON-NLS-1$
+        GeoTiffWriter writer = new GeoTiffWriter(temp);
+        try {
+            writer.write(coverage, null);
+        } finally {
+            writer.dispose();
+        }
+        if (!temp.renameTo(tileFile)) {
+            temp.delete();
+            throw new IOException("Unable to write " + tileFile); //$NON-NLS-1$
+        }
+    }
+
+    /**
+     * A raster with the same bands and sample model as another coverage.
+     */
+    private final class Tile {
+        final WritableRaster raster;
+        final ColorModel colorModel;
+        final GridSampleDimension[] bands;
+        final CharSequence name;
+
+        Tile( GridCoverage2D like, int tileWidth, int tileHeight ) {
+            RenderedImage image = like.getRenderedImage();
+            SampleModel sampleModel = image.getSampleModel().createCompatibleSampleModel(
+                    tileWidth, tileHeight);
+            ColorModel model = image.getColorModel();
+            this.colorModel = model != null ? model : PlanarImage.createColorModel(sampleModel);
+            this.raster = Raster.createWritableRaster(sampleModel, null);
+            this.bands = like.getSampleDimensions();
+            this.name = like.getName();
+        }
+
+        GridCoverage2D toCoverage( Envelope envelope ) {
+            TiledImage image = new TiledImage(0, 0, raster.getWidth(), raster.getHeight(), 0, 0,
+                    raster.getSampleModel(), colorModel);
+            image.setData(raster);
+            return CoverageFactoryFinder.getGridCoverageFactory(null).create(name, image,
+                    new ReferencedEnvelope(envelope, crs), bands, null, null);
+        }
+    }
+
+    private Envelope envelope( int level, Rectangle pixels ) {
+        double minX = bounds.getMinX() + pixels.x * resolutionX(level);
+        double maxY = bounds.getMaxY() - pixels.y * resolutionY(level);
+        return new Envelope(minX, minX + pixels.width * resolutionX(level), maxY - pixels.height
+                * resolutionY(level), maxY);
+    }
+
+    private double resolutionX( int level ) {
+        return bounds.getWidth() / width * (1 << level);
+    }
+
+    private double resolutionY( int level ) {
+        return bounds.getHeight() / height * (1 << level);
+    }
+
+    private int levelWidth( int level ) {
+        return levelSize(width, level);
+    }
+
+    private int levelHeight( int level ) {
+        return levelSize(height, level);
+    }
+
+    private static int levelSize( int size, int level ) {
+        return (int) Math.ceil(size / (double) (1 << level));
+    }
+
+    private int columns( int level ) {
+        return (levelWidth(level) + TILE_SIZE - 1) / TILE_SIZE;
+    }
+
+    private int rows( int level ) {
+        return (levelHeight(level) + TILE_SIZE - 1) / TILE_SIZE;
+    }
+
+    private File levelDirectory( int level ) {
+        return new File(directory, String.valueOf(level));
+    }
+
+    private File tileFile( int level, int column, int row ) {
+        return new File(levelDirectory(level), column + "_" + row + ".tif"); //$NON-NLS-1$ //$NON-NLS-2$
+    }
+
+    /**
+     * @return true if the overviews were built from the current raster file
+     */
+    private boolean isCurrent() {
+        File properties = new File(directory, PROPERTIES);
+        if (!properties.exists()) {
+            return false;
+        }
+        Properties values = new Properties();
+        try {
+            InputStream in = new FileInputStream(properties);
+            try {
+                values.load(in);
+            } finally {
+                in.close();
+            }
+        } catch (IOException e) {
+            return false;
+        }
+        return String.valueOf(file.length()).equals(values.getProperty(SOURCE_LENGTH))
+                && String.valueOf(file.lastModified()).equals(values.getProperty(SOURCE_MODIFIED))
+                && String.valueOf(TILE_SIZE).equals(values.getProperty(TILE));
+    }
+
+    private void writeProperties() throws IOException {
+        Properties values = new Properties();
+        values.setProperty(SOURCE_LENGTH, String.valueOf(file.length()));
+        values.setProperty(SOURCE_MODIFIED, String.valueOf(file.lastModified()));
+        values.setProperty(TILE, String.valueOf(TILE_SIZE));
+        OutputStream out = new FileOutputStream(new File(directory, PROPERTIES));
+        try {
+            values.store(out, "Overviews of " + file.getName()); //$NON-NLS-1$
+        } finally {
+            out.close();
+        }
+    }
+
+    private static void delete( File toDelete ) {
+        File[] children = toDelete.listFiles();
+        if (children != null) {
+            for( File child : children ) {
+                delete(child);
+            }
+        }
+        toDelete.delete();
+    }
+
+    public boolean contains( ISchedulingRule rule ) {
+        return rule == this;
+    }
+
+    public boolean isConflicting( ISchedulingRule rule ) {
+        return rule == this;
+    }
+}
@@ -0,0 +1,41 @@
+/*
+ *    uDig - User Friendly Desktop Internet GIS client
+ *    http://udig.refractions.net
+ *    (C) 2012, Refractions Research Inc.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * (http://www.eclipse.org/legal/epl-v10.html), and the Refractions BSD
+ * License v1.0 (http://udig.refractions.net/files/bsd3-v10.html).
+ *
+ */
+package net.refractions.udig.catalog.rasterings.internal;
+
+import net.refractions.udig.catalog.rasterings.AbstractRasterGeoResource;
+import net.refractions.udig.ui.operations.IOp;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.jobs.Job;
+import org.eclipse.swt.widgets.Display;
+
+/**
+ * Builds the overviews of the selected rasters in the background.
+ * 
+ * @see AbstractRasterGeoResource#buildPyramid()
+ * @since 1.4.0
+ */
+public class BuildPyramidOp implements IOp {
+
+    public void op( Display display, Object target, IProgressMonitor monitor ) throws Exception {
+        Object[] targets = target instanceof Object[] ? (Object[]) target : new Object[]{target};
+        for( Object resource : targets ) {
+            if (resource instanceof AbstractRasterGeoResource) {
+                Job job = ((AbstractRasterGeoResource) resource).buildPyramid();
+                if (job != null) {
+                    job.schedule();
+                }
+            }
+        }
+    }
+
+}
@@ -15,7 +15,10 @@ import org.eclipse.osgi.util.NLS;
 
 public class Messages extends NLS {
 	private static final String BUNDLE_NAME = "net.refractions.udig.catalog.rasterings.internal.messages"; //$NON-NLS-1$
+	public static String AbstractRasterGeoResource_buildPyramid;
+	public static String AbstractRasterGeoResource_pyramidError;
 	public static String AbstractRasterGeoResource_resolve;
+	public static String AbstractRasterGeoResourceInfo_pyramid;
 	public static String AbstractRasterService_resolve;
 	static {
 		// initialize resource bundle
@@ -0,0 +1,83 @@
+/*
+ *    uDig - User Friendly Desktop Internet GIS client
+ *    http://udig.refractions.net
+ *    (C) 2012, Refractions Research Inc.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * (http://www.eclipse.org/legal/epl-v10.html), and the Refractions BSD
+ * License v1.0 (http://udig.refractions.net/files/bsd3-v10.html).
+ */
+package net.refractions.udig.catalog.tests.internal.geotiff;
+
+import static org.junit.Assert.assertEquals;
+
+import java.awt.image.BandedSampleModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.Raster;
+import java.awt.image.WritableRaster;
+
+import net.refractions.udig.catalog.rasterings.RasterPyramid;
+
+import org.junit.Test;
+
+public class RasterPyramidTest {
+
+    private static final double[] PIXELS = {
+            1, 3, 5, 7,
+            1, 3, 6, 8,
+            10, 20, 30, 40};
+
+    @Test
+    public void testMaxLevel() {
+        assertEquals(0, RasterPyramid.getMaxLevel(1, 1));
+        assertEquals(0, RasterPyramid.getMaxLevel(RasterPyramid.TILE_SIZE,
+                RasterPyramid.TILE_SIZE));
+        assertEquals(1, RasterPyramid.getMaxLevel(RasterPyramid.TILE_SIZE + 1, 10));
+        assertEquals(3, RasterPyramid.getMaxLevel(10, RasterPyramid.TILE_SIZE * 8));
+        assertEquals(4, RasterPyramid.getMaxLevel(RasterPyramid.TILE_SIZE * 8 + 1,
+                RasterPyramid.TILE_SIZE));
+    }
+
+    @Test
+    public void testAverage() {
+        WritableRaster target = raster(DataBuffer.TYPE_INT, 2, 2);
+        RasterPyramid.downsample(source(DataBuffer.TYPE_INT), target, true);
+
+        assertEquals(2, target.getSample(0, 0, 0));
+        // 6.5 is rounded
+        assertEquals(7, target.getSample(1, 0, 0));
+        // the last row of the source has no row below it
+        assertEquals(15, target.getSample(0, 1, 0));
+        assertEquals(35, target.getSample(1, 1, 0));
+    }
+
+    @Test
+    public void testAverageFloat() {
+        WritableRaster target = raster(DataBuffer.TYPE_FLOAT, 2, 2);
+        RasterPyramid.downsample(source(DataBuffer.TYPE_FLOAT), target, true);
+
+        assertEquals(6.5, target.getSampleDouble(1, 0, 0), 0);
+    }
+
+    @Test
+    public void testNearest() {
+        WritableRaster target = raster(DataBuffer.TYPE_INT, 2, 2);
+        RasterPyramid.downsample(source(DataBuffer.TYPE_INT), target, false);
+
+        assertEquals(1, target.getSample(0, 0, 0));
+        assertEquals(5, target.getSample(1, 0, 0));
+        assertEquals(10, target.getSample(0, 1, 0));
+        assertEquals(30, target.getSample(1, 1, 0));
+    }
+
+    private Raster source( int type ) {
+        WritableRaster source = raster(type, 4, 3);
+        source.setPixels(0, 0, 4, 3, PIXELS);
+        return source;
+    }
+
+    private WritableRaster raster( int type, int width, int height ) {
+        return Raster.createWritableRaster(new BandedSampleModel(type, width, height, 1), null);
+    }
+}
@@ -0,0 +1,121 @@
+/* uDig - User Friendly Desktop Internet GIS client
+ * http://udig.refractions.net
+ * (C) 2012, Refractions Research Inc.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * (http://www.eclipse.org/legal/epl-v10.html), and the Refractions BSD
+ * License v1.0 (http://udig.refractions.net/files/bsd3-v10.html).
+ */
+package net.refractions.udig.catalog.wmsc.server;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Set;
+
+import javax.imageio.ImageIO;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class SingleFileTileStoreTest {
+
+    private static final String SCALE = "1000.0"; //$NON-NLS-1$
+
+    private File directory;
+
+    @Before
+    public void setUp() throws Exception {
+        directory = File.createTempFile("tilestore", ""); //$NON-NLS-1$ //$NON-NLS-2$
+        directory.delete();
+        directory.mkdirs();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        SingleFileTileStore.closeStores(directory);
+        delete(directory);
+    }
+
+    private void delete( File file ) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for( File child : children ) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+
+    private BufferedImage createImage() {
+        return new BufferedImage(16, 16, BufferedImage.TYPE_INT_ARGB);
+    }
+
+    @Test
+    public void testBatchRead() throws Exception {
+        SingleFileTileStore store = SingleFileTileStore.getStore(new File(directory, "set." //$NON-NLS-1$
+                + SingleFileTileStore.EXTENSION));
+        store.writeTile(SCALE, "0_0", createImage(), "png", null); //$NON-NLS-1$ //$NON-NLS-2$
+        store.writeTile(SCALE, "0_1", createImage(), "png", null); //$NON-NLS-1$ //$NON-NLS-2$
+        // already expired
+        store.writeTile(SCALE, "1_1", createImage(), "png", "-1"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+
+        Map<String, BufferedImage> images = store.readTiles(SCALE,
+                Arrays.asList("0_0", "0_1", "1_1", "2_2"), false); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$
+        assertEquals(2, images.size());
+        assertNotNull(images.get("0_1")); //$NON-NLS-1$
+
+        Set<String> found = store.containsTiles(SCALE, Arrays.asList("0_0", "1_1")); //$NON-NLS-1$ //$NON-NLS-2$
+        assertEquals(1, found.size());
+        assertTrue(found.contains("0_0")); //$NON-NLS-1$
+        assertNotNull(store.readTile(SCALE, "1_1", true)); //$NON-NLS-1$
+        assertNull(store.readTile("2000.0", "0_0", true)); //$NON-NLS-1$ //$NON-NLS-2$
+    }
+
+    @Test
+    public void testImportDirectory() throws Exception {
+        // the file per tile layout: a directory per scale, an image and max age file per tile
+        File tileSet = new File(directory, "set"); //$NON-NLS-1$
+        File scaleDir = new File(tileSet, SCALE.replace('.', '_'));
+        scaleDir.mkdirs();
+        ImageIO.write(createImage(), "png", new File(scaleDir, "0_0.png")); //$NON-NLS-1$ //$NON-NLS-2$
+        ImageIO.write(createImage(), "png", new File(scaleDir, "0_1.png")); //$NON-NLS-1$ //$NON-NLS-2$
+        FileUtils.writeStringToFile(new File(scaleDir, "0_1.txt"), "-1"); //$NON-NLS-1$ //$NON-NLS-2$
+
+        File file = new File(directory, "set." + SingleFileTileStore.EXTENSION); //$NON-NLS-1$
+        SingleFileTileStore store = SingleFileTileStore.getStore(file);
+        assertFalse(store.isImported());
+        assertEquals(2, store.importDirectory(tileSet, "png")); //$NON-NLS-1$
+        store.setImported();
+        assertNotNull(store.readTile(SCALE, "0_0", false)); //$NON-NLS-1$
+        // expired like the file it was imported from
+        assertNull(store.readTile(SCALE, "0_1", false)); //$NON-NLS-1$
+
+        SingleFileTileStore.closeStores(directory);
+        assertTrue(SingleFileTileStore.getStore(file).isImported());
+    }
+
+    @Test
+    public void testCopyStores() throws Exception {
+        File source = new File(directory, "source"); //$NON-NLS-1$
+        File target = new File(directory, "target"); //$NON-NLS-1$
+        SingleFileTileStore store = SingleFileTileStore.getStore(new File(source, "server/set." //$NON-NLS-1$
+                + SingleFileTileStore.EXTENSION));
+        store.writeTile(SCALE, "0_0", createImage(), "png", null); //$NON-NLS-1$ //$NON-NLS-2$
+
+        assertEquals(1, SingleFileTileStore.copyStores(source, target));
+        SingleFileTileStore copy = SingleFileTileStore.getStore(new File(target, "server/set." //$NON-NLS-1$
+                + SingleFileTileStore.EXTENSION));
+        assertNotNull(copy.readTile(SCALE, "0_0", false)); //$NON-NLS-1$
+    }
+}
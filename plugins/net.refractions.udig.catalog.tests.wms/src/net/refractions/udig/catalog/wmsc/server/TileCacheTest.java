@@ -0,0 +1,87 @@
+/* uDig - User Friendly Desktop Internet GIS client
+ * http://udig.refractions.net
+ * (C) 2012, Refractions Research Inc.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * (http://www.eclipse.org/legal/epl-v10.html), and the Refractions BSD
+ * License v1.0 (http://udig.refractions.net/files/bsd3-v10.html).
+ */
+package net.refractions.udig.catalog.wmsc.server;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.awt.image.BufferedImage;
+
+import org.junit.Test;
+
+import com.vividsolutions.jts.geom.Envelope;
+
+public class TileCacheTest {
+
+    /** bytes used by one 256x256 ARGB tile */
+    private static final long TILE_BYTES = 256 * 256 * 4;
+
+    private WMSTile createTile( int x ) {
+        WMSTile tile = new WMSTile(null, null, new Envelope(x, x + 1, 0, 1), 1);
+        tile.setBufferedImage(new BufferedImage(256, 256, BufferedImage.TYPE_INT_ARGB));
+        return tile;
+    }
+
+    @Test
+    public void testPutReturnsExisting() {
+        TileCache cache = new TileCache(10 * TILE_BYTES);
+        WMSTile tile = createTile(0);
+        assertSame(tile, cache.put(tile.getId(), tile));
+        assertSame(tile, cache.put(tile.getId(), createTile(0)));
+        assertEquals(1, cache.getTileCount());
+        assertEquals(TILE_BYTES, cache.getSize());
+    }
+
+    @Test
+    public void testEvictsLeastRecentlyUsed() {
+        TileCache cache = new TileCache(3 * TILE_BYTES);
+        WMSTile first = createTile(0);
+        WMSTile second = createTile(1);
+        cache.put(first.getId(), first);
+        cache.put(second.getId(), second);
+        cache.put("2", createTile(2)); //$NON-NLS-1$
+
+        // the first tile was used, the second was not
+        assertNotNull(cache.get(first.getId()));
+        cache.put("3", createTile(3)); //$NON-NLS-1$
+
+        assertNull(cache.get(second.getId()));
+        assertNotNull(cache.get(first.getId()));
+        assertEquals(1, cache.getEvictions());
+        assertEquals(3 * TILE_BYTES, cache.getSize());
+    }
+
+    @Test
+    public void testUpdateAccountsForLoadedImage() {
+        TileCache cache = new TileCache(TILE_BYTES);
+        WMSTile tile = new WMSTile(null, null, new Envelope(0, 1, 0, 1), 1);
+        cache.put(tile.getId(), tile);
+        assertEquals(0, cache.getSize());
+        // a tile without image counts as a miss
+        cache.get(tile.getId());
+        assertEquals(1, cache.getMisses());
+
+        tile.setBufferedImage(new BufferedImage(256, 256, BufferedImage.TYPE_INT_ARGB));
+        cache.update(tile.getId());
+        assertEquals(TILE_BYTES, cache.getSize());
+        cache.get(tile.getId());
+        assertEquals(1, cache.getHits());
+        // peeking is not a lookup
+        assertEquals(tile, cache.peek(tile.getId()));
+        assertEquals(1, cache.getHits());
+        assertEquals(1, cache.getMisses());
+
+        cache.setMaximumSize(TILE_BYTES / 2);
+        assertEquals(0, cache.getTileCount());
+        assertEquals(0, cache.getSize());
+    }
+}
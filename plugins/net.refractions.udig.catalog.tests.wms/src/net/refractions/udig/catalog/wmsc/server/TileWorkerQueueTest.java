@@ -0,0 +1,100 @@
+/* uDig - User Friendly Desktop Internet GIS client
+ * http://udig.refractions.net
+ * (C) 2012, Refractions Research Inc.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * (http://www.eclipse.org/legal/epl-v10.html), and the Refractions BSD
+ * License v1.0 (http://udig.refractions.net/files/bsd3-v10.html).
+ */
+package net.refractions.udig.catalog.wmsc.server;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.NullProgressMonitor;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TileWorkerQueueTest {
+
+    private TileWorkerQueue queue;
+    private CountDownLatch blocked;
+    private List<String> order;
+
+    @Before
+    public void setUp() throws Exception {
+        queue = new TileWorkerQueue(1);
+        order = Collections.synchronizedList(new ArrayList<String>());
+        // keep the only thread busy until all the work is queued
+        blocked = new CountDownLatch(1);
+        queue.execute(new Runnable(){
+            public void run() {
+                try {
+                    blocked.await();
+                } catch (InterruptedException e) {
+                    // done
+                }
+            }
+        });
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        queue.dispose();
+    }
+
+    private Runnable record( final String name ) {
+        return new Runnable(){
+            public void run() {
+                order.add(name);
+            }
+        };
+    }
+
+    private void runQueued( int expected ) throws InterruptedException {
+        final CountDownLatch done = new CountDownLatch(1);
+        queue.execute(new Runnable(){
+            public void run() {
+                done.countDown();
+            }
+        });
+        blocked.countDown();
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals(expected, order.size());
+    }
+
+    @Test
+    public void testNewestBatchAndClosestTileFirst() throws Exception {
+        long oldBatch = queue.newBatch();
+        queue.execute(record("old-near"), oldBatch, 1, null); //$NON-NLS-1$
+        long newBatch = queue.newBatch();
+        queue.execute(record("new-far"), newBatch, 10, null); //$NON-NLS-1$
+        queue.execute(record("new-near"), newBatch, 1, null); //$NON-NLS-1$
+        queue.execute(record("new-near-2"), newBatch, 1, null); //$NON-NLS-1$
+
+        runQueued(4);
+        assertEquals(Arrays.asList("new-near", "new-near-2", "new-far", "old-near"), order); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$
+    }
+
+    @Test
+    public void testCanceledWorkIsDropped() throws Exception {
+        IProgressMonitor superseded = new NullProgressMonitor();
+        long batch = queue.newBatch();
+        queue.execute(record("stale"), batch, 0, superseded); //$NON-NLS-1$
+        queue.execute(record("visible"), queue.newBatch(), 0, new NullProgressMonitor()); //$NON-NLS-1$
+        superseded.setCanceled(true);
+
+        runQueued(1);
+        assertEquals(Collections.singletonList("visible"), order); //$NON-NLS-1$
+    }
+}
@@ -9,13 +9,26 @@
  */
 package net.refractions.udig.catalog.tests.internal;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
 import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 
+import net.refractions.udig.catalog.ID;
+import net.refractions.udig.catalog.IGeoResource;
+import net.refractions.udig.catalog.IResolve;
+import net.refractions.udig.catalog.IService;
 import net.refractions.udig.catalog.URLUtils;
+import net.refractions.udig.catalog.internal.CatalogImpl;
+import net.refractions.udig.catalog.tests.DummyService;
 
+import org.eclipse.core.runtime.NullProgressMonitor;
 import org.eclipse.core.runtime.Platform;
 import org.junit.Ignore;
 import org.junit.Test;
@@ -57,4 +70,58 @@ public class CatalogImplTest {
     public void testAquire() {
         
     }
+
+    @Test
+    public void testFindById() throws Exception {
+        CatalogImpl catalog = new CatalogImpl();
+        List<List<Object>> resolveTos = new ArrayList<List<Object>>();
+        for( int i = 0; i < 3; i++ ) {
+            resolveTos.add(Collections.<Object> emptyList());
+        }
+        List<IService> services = new ArrayList<IService>();
+        for( int i = 0; i < 50; i++ ) {
+            IService service = DummyService.createService(new URL(
+                    "file://dummy.refractions.net/dummy" + i), null, resolveTos); //$NON-NLS-1$
+            services.add(catalog.add(service));
+        }
+        IService service = services.get(25);
+        IGeoResource resource = service.resources(null).get(1);
+        NullProgressMonitor monitor = new NullProgressMonitor();
+
+        List<IResolve> found = catalog.find(resource.getID(), monitor);
+        assertEquals(1, found.size());
+        assertSame(resource, found.get(0));
+        assertSame(resource, catalog.find(resource.getID(), monitor).get(0));
+        assertSame(service, catalog.find(service.getID(), monitor).get(0));
+        assertSame(service, catalog.getById(IService.class, service.getID(), monitor));
+        assertSame(resource, catalog.getById(IGeoResource.class, resource.getID(), monitor));
+
+        catalog.remove(service);
+        assertTrue(catalog.find(resource.getID(), monitor).isEmpty());
+        assertNull(catalog.getById(IService.class, service.getID(), monitor));
+        assertNull(catalog.getById(IGeoResource.class, resource.getID(), monitor));
+    }
+
+    @Test
+    public void testFindPartialURL() throws Exception {
+        CatalogImpl catalog = new CatalogImpl();
+        IService wms = catalog.add(DummyService.createService(new URL(
+                "http://dummy.refractions.net/wms"), null, null)); //$NON-NLS-1$
+        IService capabilities = catalog.add(DummyService.createService(new URL(
+                "http://dummy.refractions.net/wms?service=WMS"), null, null)); //$NON-NLS-1$
+        catalog.add(DummyService.createService(new URL("http://other.refractions.net/wms"), //$NON-NLS-1$
+                null, null));
+        NullProgressMonitor monitor = new NullProgressMonitor();
+
+        // the service without a query matches any query on the same path
+        List<IResolve> found = catalog.find(capabilities.getID(), monitor);
+        assertEquals(2, found.size());
+        assertSame(capabilities, found.get(0));
+        assertSame(wms, found.get(1));
+
+        found = catalog.find(new ID(new URL(
+                "http://dummy.refractions.net/wms?service=WMS&request=GetCapabilities")), monitor); //$NON-NLS-1$
+        assertEquals(1, found.size());
+        assertSame(wms, found.get(0));
+    }
 }
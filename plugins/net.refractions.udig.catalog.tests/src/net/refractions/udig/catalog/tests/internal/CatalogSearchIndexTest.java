@@ -0,0 +1,117 @@
+/* uDig - User Friendly Desktop Internet GIS client
+ * http://udig.refractions.net
+ * (C) 2012, Refractions Research Inc.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * (http://www.eclipse.org/legal/epl-v10.html), and the Refractions BSD
+ * License v1.0 (http://udig.refractions.net/files/bsd3-v10.html).
+ */
+package net.refractions.udig.catalog.tests.internal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import net.refractions.udig.catalog.IGeoResource;
+import net.refractions.udig.catalog.IResolve;
+import net.refractions.udig.catalog.IService;
+import net.refractions.udig.catalog.internal.CatalogImpl;
+import net.refractions.udig.catalog.internal.CatalogSearchIndex;
+import net.refractions.udig.catalog.tests.DummyService;
+import net.refractions.udig.catalog.util.ASTFactory;
+
+import org.eclipse.core.runtime.NullProgressMonitor;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.vividsolutions.jts.geom.Envelope;
+
+public class CatalogSearchIndexTest {
+
+    private CatalogImpl catalog;
+    private CatalogSearchIndex index;
+    private IService first;
+    private IService second;
+
+    @Before
+    public void setUp() throws Exception {
+        catalog = new CatalogImpl();
+        index = new CatalogSearchIndex(catalog);
+        first = createService("file://dummy.refractions.net/first", 2); //$NON-NLS-1$
+        second = createService("file://dummy.refractions.net/second", 3); //$NON-NLS-1$
+        catalog.add(first);
+        catalog.add(second);
+    }
+
+    private IService createService( String url, int resources ) throws Exception {
+        List<List<Object>> resolveTos = new ArrayList<List<Object>>();
+        for( int i = 0; i < resources; i++ ) {
+            resolveTos.add(Collections.<Object> emptyList());
+        }
+        return DummyService.createService(new URL(url), null, resolveTos);
+    }
+
+    private List<IResolve> search( CatalogSearchIndex searchIndex, String pattern, Envelope bbox ) {
+        return searchIndex.search(Arrays.asList(first, second), ASTFactory.parse(pattern), bbox,
+                new NullProgressMonitor());
+    }
+
+    @Test
+    public void testSearch() throws Exception {
+        assertFalse(index.isIndexed(first));
+        index.index(first, new NullProgressMonitor());
+        index.index(second, new NullProgressMonitor());
+        assertTrue(index.isIndexed(first));
+
+        List<IResolve> found = search(index, "second#DummyResource.3", null); //$NON-NLS-1$
+        assertEquals(1, found.size());
+        assertEquals(second.resources(null).get(2), found.get(0));
+
+        // substrings shorter than a trigram and patterns with NOT are checked against every entry
+        assertEquals(2, search(index, "1", null).size()); //$NON-NLS-1$
+        assertEquals(2, search(index, "second AND !DummyResource.1", null).size()); //$NON-NLS-1$
+        assertEquals(5, search(index, "first OR second", new Envelope(0, 1, 0, 1)).size()); //$NON-NLS-1$
+        assertEquals(0, search(index, "third", null).size()); //$NON-NLS-1$
+    }
+
+    @Test
+    public void testRemove() throws Exception {
+        index.index(first, new NullProgressMonitor());
+        index.index(second, new NullProgressMonitor());
+        index.remove(first.getID());
+        assertFalse(index.isIndexed(first));
+        assertEquals(0, search(index, "first", null).size()); //$NON-NLS-1$
+
+        IGeoResource resource = second.resources(null).get(0);
+        index.remove(resource);
+        assertEquals(2, search(index, "second", null).size()); //$NON-NLS-1$
+    }
+
+    @Test
+    public void testSaveAndLoad() throws Exception {
+        index.index(first, new NullProgressMonitor());
+        index.index(second, new NullProgressMonitor());
+        File file = File.createTempFile("catalog", ".index"); //$NON-NLS-1$ //$NON-NLS-2$
+        try {
+            index.save(file);
+            CatalogSearchIndex loaded = new CatalogSearchIndex(catalog);
+            loaded.load(file);
+            assertTrue(loaded.isIndexed(second));
+
+            // results are looked up in the catalog without indexing again
+            List<IResolve> found = search(loaded, "first#DummyResource.1", null); //$NON-NLS-1$
+            assertEquals(1, found.size());
+            assertEquals(first.resources(null).get(0).getID(), found.get(0).getID());
+        } finally {
+            file.delete();
+        }
+    }
+}
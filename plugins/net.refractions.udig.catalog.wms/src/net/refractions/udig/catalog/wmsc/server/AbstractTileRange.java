@@ -49,6 +49,7 @@ public abstract class AbstractTileRange implements TileRange {
     protected TileSet tileset;
     protected TileWorkerQueue requestTileWorkQueue; // queue of threads for requesting tiles
     protected boolean using_threadpools = false;  // set in the constructor
+    protected long requestBatch; // batch of the requests in the requestTileWorkQueue
     
     protected final static boolean testing = false;  // for testing output
  
@@ -140,6 +141,11 @@ public abstract class AbstractTileRange implements TileRange {
                 return;
             }
             
+            // tiles of this range are fetched before the tiles of any older range
+            if (using_threadpools) {
+                requestBatch = requestTileWorkQueue.newBatch();
+            }
+            
             Set<Entry<String, Tile>> entrySet = tilesWaitingToLoad.entrySet();
             for( Entry<String, Tile> set : entrySet ) {
                 String tileid = set.getKey();
@@ -148,7 +154,7 @@ public abstract class AbstractTileRange implements TileRange {
                 // only send a request to get the tile if we don't have it already
                 if (tile.getBufferedImage() == null) {
                     try {
-                        loadTile(tile, new NullProgressMonitor());
+                        loadTile(tile, monitor);
                     } catch (Exception e) {
                         // there was some error getting the tile, so instead of blocking
                         // forever because of the error, set the tile to be removed
@@ -267,9 +273,14 @@ public abstract class AbstractTileRange implements TileRange {
      * This method will see if we are using thread pools and either create a runnable 
      * to load the tile using the pool or create a single thread to do it.  It will
      * lock on the tile.  
+     * <p>
+     * Tiles closest to the centre of the range are requested first.  If the monitor 
+     * is canceled before the request is sent (ie: the user panned away) the request
+     * is dropped; requests already sent are completed so the tile ends up cached.
+     * </p>
      * 
      * @param tile
-     * @param monitor
+     * @param monitor monitor of the job the tiles are loaded for
      * @throws Exception
      */
     protected void loadTile( final Tile tile, final IProgressMonitor monitor ) throws Exception {
@@ -277,22 +288,37 @@ public abstract class AbstractTileRange implements TileRange {
     	if (using_threadpools) {
 	    	Runnable r = new Runnable() {
 	            public void run() {
-	            	internalLoadTile(tile, monitor);
+	            	internalLoadTile(tile, new NullProgressMonitor());
 	            }
 	        };
-	        requestTileWorkQueue.execute(r);
+	        requestTileWorkQueue.execute(r, requestBatch, distanceToCentre(tile), monitor);
     	}
     	else {
     		Thread t = new Thread() {
     			@Override
     			public void run() {
-    				internalLoadTile(tile, monitor);
+    				internalLoadTile(tile, new NullProgressMonitor());
     			}
     		};
     		t.start();
     	}
     }
     
+    /**
+     * Distance of the tile to the centre of the range, used to
+     * request the tiles in the middle of the screen first.
+     * 
+     * @param tile
+     * @return distance in the units of the tileset, 0 if unknown
+     */
+    protected double distanceToCentre( Tile tile ) {
+        Envelope tileBounds = tile.getBounds();
+        if (bounds == null || bounds.isNull() || tileBounds == null || tileBounds.isNull()) {
+            return 0;
+        }
+        return bounds.centre().distance(tileBounds.centre());
+    }
+    
     /**
      * Do the work of loading a tile
      * 
@@ -308,9 +334,20 @@ public abstract class AbstractTileRange implements TileRange {
         // in the rendering to wait blocked forever for missing tiles)
         tileLoaded(tile); 
         removeTileFromLoadingList(tile);
+        updateTileCache(tile);
         cacheTile(tile);  // cache the tile with whatever method is setup
     }
     
+    /**
+     * Let the shared in-memory TileCache know the image of the tile has been
+     * loaded so it can account for its size.
+     * 
+     * @param tile
+     */
+    protected void updateTileCache( Tile tile ) {
+        TileCache.getInstance().update(TileCache.createKey(tile.getTileSet(), tile.getId()));
+    }
+    
     protected BufferedImage createErrorImage(){
         BufferedImage bf = new BufferedImage(tileset.getWidth(), tileset.getHeight(), BufferedImage.TYPE_INT_ARGB);
         Graphics2D g = bf.createGraphics();
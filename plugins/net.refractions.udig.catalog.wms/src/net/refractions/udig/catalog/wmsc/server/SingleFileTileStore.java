@@ -0,0 +1,570 @@
+/* uDig - User Friendly Desktop Internet GIS client
+ * http://udig.refractions.net
+ * (C) 2012, Refractions Research Inc.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * (http://www.eclipse.org/legal/epl-v10.html), and the Refractions BSD
+ * License v1.0 (http://udig.refractions.net/files/bsd3-v10.html).
+ */
+package net.refractions.udig.catalog.wmsc.server;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileFilter;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+
+import javax.imageio.ImageIO;
+
+import net.refractions.udig.catalog.CatalogPlugin;
+
+import org.apache.commons.io.FileUtils;
+
+/**
+ * Stores all the tiles of a tileset in one indexed file instead of a file per tile.
+ * <p>
+ * The file is an SQLite database with a <code>tile_images</code> table holding the encoded
+ * tile images and a <code>store_properties</code> table. It is not an MBTiles file: WMS-C
+ * tiles are identified by scale and position rather than a zoom level and row, so the tiles
+ * are keyed by the scale and position strings used by {@link TileImageReadWriter} for its
+ * directories and file names.
+ * </p>
+ * <p>
+ * Tiles cached a file per tile before the store was used are imported once, the first time
+ * the store is opened by {@link TileImageReadWriter}; see {@link #isImported()}.
+ * </p>
+ * <p>
+ * There is one store, and one connection, per file; use {@link #getStore(File)}.
+ * </p>
+ *
+ * @since 1.4.0
+ */
+public class SingleFileTileStore {
+
+    /** file extension of the single file stores */
+    public static final String EXTENSION = "tilestore"; //$NON-NLS-1$
+
+    /** property recording that the file per tile cache was imported */
+    private static final String IMPORTED = "directory_imported"; //$NON-NLS-1$
+
+    /** SQLite limits the number of parameters of a statement to 999 */
+    private static final int MAX_BATCH = 500;
+
+    private static final Map<File, SingleFileTileStore> stores = new HashMap<File, SingleFileTileStore>();
+
+    private final File file;
+    private Connection connection;
+    private volatile boolean imported;
+
+    private SingleFileTileStore( File file ) {
+        this.file = file;
+    }
+
+    /**
+     * Returns the store for the given file, opening it (and creating the file) if required.
+     *
+     * @param file
+     * @return store for the file
+     * @throws IOException if the file could not be opened
+     */
+    public static SingleFileTileStore getStore( File file ) throws IOException {
+        synchronized (stores) {
+            File key = file.getAbsoluteFile();
+            SingleFileTileStore store = stores.get(key);
+            if (store == null) {
+                store = new SingleFileTileStore(key);
+                store.open();
+                stores.put(key, store);
+            }
+            return store;
+        }
+    }
+
+    /**
+     * Closes all the stores in (or below) the given directory; used before
+     * the directory is deleted.
+     *
+     * @param directory
+     */
+    public static void closeStores( File directory ) {
+        String path = directory.getAbsolutePath();
+        synchronized (stores) {
+            for( Iterator<SingleFileTileStore> iterator = stores.values().iterator(); iterator.hasNext(); ) {
+                SingleFileTileStore store = iterator.next();
+                if (store.file.getPath().startsWith(path)) {
+                    store.close();
+                    iterator.remove();
+                }
+            }
+        }
+    }
+
+    private synchronized void open() throws IOException {
+        try {
+            file.getParentFile().mkdirs();
+            connection = new org.sqlite.JDBC().connect(
+                    "jdbc:sqlite:" + file.getPath(), new Properties()); //$NON-NLS-1$
+            Statement statement = connection.createStatement();
+            try {
+                // WAL keeps readers going while tiles are written
+                statement.execute("PRAGMA journal_mode=WAL"); //$NON-NLS-1$
+                statement.execute("PRAGMA synchronous=NORMAL"); //$NON-NLS-1$
+                statement.execute("CREATE TABLE IF NOT EXISTS store_properties (name TEXT PRIMARY KEY, value TEXT)"); //$NON-NLS-1$
+                statement.execute("CREATE TABLE IF NOT EXISTS tile_images (" //$NON-NLS-1$
+                        + "scale TEXT NOT NULL, tile_position TEXT NOT NULL, " //$NON-NLS-1$
+                        + "tile_data BLOB NOT NULL, created INTEGER NOT NULL, max_age INTEGER, " //$NON-NLS-1$
+                        + "PRIMARY KEY (scale, tile_position))"); //$NON-NLS-1$
+            } finally {
+                statement.close();
+            }
+            imported = getProperty(IMPORTED) != null;
+        } catch (SQLException e) {
+            throw toIOException(e);
+        }
+    }
+
+    /**
+     * @return true once the tiles cached a file per tile have been imported, see
+     *         {@link #setImported()}
+     */
+    public boolean isImported() {
+        return imported;
+    }
+
+    /**
+     * Records that the tiles cached a file per tile have been imported so they are not imported
+     * again the next time the store is opened.
+     *
+     * @throws IOException
+     */
+    public synchronized void setImported() throws IOException {
+        try {
+            PreparedStatement statement = connection.prepareStatement(
+                    "INSERT OR REPLACE INTO store_properties (name, value) VALUES (?, ?)"); //$NON-NLS-1$
+            try {
+                statement.setString(1, IMPORTED);
+                statement.setString(2, Long.toString(System.currentTimeMillis()));
+                statement.executeUpdate();
+            } finally {
+                statement.close();
+            }
+        } catch (SQLException e) {
+            throw toIOException(e);
+        }
+        imported = true;
+    }
+
+    private String getProperty( String name ) throws SQLException {
+        PreparedStatement statement = connection.prepareStatement(
+                "SELECT value FROM store_properties WHERE name = ?"); //$NON-NLS-1$
+        try {
+            statement.setString(1, name);
+            ResultSet results = statement.executeQuery();
+            try {
+                return results.next() ? results.getString(1) : null;
+            } finally {
+                results.close();
+            }
+        } finally {
+            statement.close();
+        }
+    }
+
+    /**
+     * Closes the connection to the file.
+     */
+    public synchronized void close() {
+        if (connection != null) {
+            try {
+                connection.close();
+            } catch (SQLException e) {
+                CatalogPlugin.log("Unable to close tile store " + file, e); //$NON-NLS-1$
+            }
+            connection = null;
+        }
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * Writes the tile image, replacing any image stored for the tile before.
+     *
+     * @param scale
+     * @param position
+     * @param image
+     * @param filetype image format, ie: png
+     * @param maxCacheAge maximum age in seconds, null if the tile does not expire
+     * @throws IOException
+     */
+    public void writeTile( String scale, String position, BufferedImage image,
+            String filetype, String maxCacheAge ) throws IOException {
+        writeTile(scale, position, image, filetype, maxCacheAge, System.currentTimeMillis());
+    }
+
+    private synchronized void writeTile( String scale, String position, BufferedImage image,
+            String filetype, String maxCacheAge, long created ) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(image, filetype, out);
+        try {
+            PreparedStatement statement = connection.prepareStatement(
+                    "INSERT OR REPLACE INTO tile_images (scale, tile_position, tile_data, created, max_age) " //$NON-NLS-1$
+                    + "VALUES (?, ?, ?, ?, ?)"); //$NON-NLS-1$
+            try {
+                statement.setString(1, scale);
+                statement.setString(2, position);
+                statement.setBytes(3, out.toByteArray());
+                statement.setLong(4, created);
+                Long maxAge = parseMaxAge(maxCacheAge);
+                if (maxAge == null) {
+                    statement.setNull(5, java.sql.Types.INTEGER);
+                } else {
+                    statement.setLong(5, maxAge);
+                }
+                statement.executeUpdate();
+            } finally {
+                statement.close();
+            }
+        } catch (SQLException e) {
+            throw toIOException(e);
+        }
+    }
+
+    /**
+     * Reads the tile image.
+     *
+     * @param scale
+     * @param position
+     * @param includeStale if false, tiles older than their maximum cache age are ignored
+     * @return the image or null if the tile is not stored
+     * @throws IOException
+     */
+    public BufferedImage readTile( String scale, String position, boolean includeStale )
+            throws IOException {
+        Map<String, BufferedImage> images = readTiles(scale,
+                Collections.singleton(position), includeStale);
+        return images.get(position);
+    }
+
+    /**
+     * Reads the images of many tiles of one scale with as few queries as possible.
+     *
+     * @param scale
+     * @param positions
+     * @param includeStale if false, tiles older than their maximum cache age are ignored
+     * @return images by position for the tiles that were found
+     * @throws IOException
+     */
+    public synchronized Map<String, BufferedImage> readTiles( String scale,
+            Collection<String> positions, boolean includeStale ) throws IOException {
+        Map<String, BufferedImage> images = new HashMap<String, BufferedImage>();
+        List<String> remaining = new ArrayList<String>(positions);
+        long now = System.currentTimeMillis();
+        try {
+            for( int start = 0; start < remaining.size(); start += MAX_BATCH ) {
+                List<String> batch = remaining.subList(start, Math.min(remaining.size(), start
+                        + MAX_BATCH));
+                PreparedStatement statement = connection.prepareStatement(
+                        "SELECT tile_position, tile_data, created, max_age FROM tile_images " //$NON-NLS-1$
+                        + "WHERE scale = ? AND tile_position IN (" + parameters(batch.size()) + ")"); //$NON-NLS-1$ //$NON-NLS-2$
+                try {
+                    statement.setString(1, scale);
+                    int index = 2;
+                    for( String position : batch ) {
+                        statement.setString(index++, position);
+                    }
+                    ResultSet results = statement.executeQuery();
+                    try {
+                        while( results.next() ) {
+                            long maxAge = results.getLong(4);
+                            boolean expires = !results.wasNull();
+                            if (!includeStale && expires && results.getLong(3) + maxAge * 1000 < now) {
+                                continue;
+                            }
+                            BufferedImage image = ImageIO.read(new ByteArrayInputStream(
+                                    results.getBytes(2)));
+                            if (image != null) {
+                                images.put(results.getString(1), image);
+                            }
+                        }
+                    } finally {
+                        results.close();
+                    }
+                } finally {
+                    statement.close();
+                }
+            }
+        } catch (SQLException e) {
+            throw toIOException(e);
+        }
+        return images;
+    }
+
+    /**
+     * Returns the positions of the tiles of the scale that are stored and not stale.
+     *
+     * @param scale
+     * @param positions positions to check
+     * @return the stored positions
+     * @throws IOException
+     */
+    public synchronized Set<String> containsTiles( String scale, Collection<String> positions )
+            throws IOException {
+        Set<String> found = new HashSet<String>();
+        List<String> remaining = new ArrayList<String>(positions);
+        long now = System.currentTimeMillis();
+        try {
+            for( int start = 0; start < remaining.size(); start += MAX_BATCH ) {
+                List<String> batch = remaining.subList(start, Math.min(remaining.size(), start
+                        + MAX_BATCH));
+                PreparedStatement statement = connection.prepareStatement(
+                        "SELECT tile_position FROM tile_images WHERE scale = ? AND tile_position IN (" //$NON-NLS-1$
+                        + parameters(batch.size()) + ") AND (max_age IS NULL OR created + max_age * 1000 >= ?)"); //$NON-NLS-1$
+                try {
+                    statement.setString(1, scale);
+                    int index = 2;
+                    for( String position : batch ) {
+                        statement.setString(index++, position);
+                    }
+                    statement.setLong(index, now);
+                    ResultSet results = statement.executeQuery();
+                    try {
+                        while( results.next() ) {
+                            found.add(results.getString(1));
+                        }
+                    } finally {
+                        results.close();
+                    }
+                } finally {
+                    statement.close();
+                }
+            }
+        } catch (SQLException e) {
+            throw toIOException(e);
+        }
+        return found;
+    }
+
+    /**
+     * Copies all tiles of the other store file into this store, replacing tiles
+     * that exist in both.  This is used to seed a cache with tiles prepared elsewhere.
+     *
+     * @param source file of another store
+     * @return number of tiles now in the store
+     * @throws IOException
+     */
+    public synchronized int importFrom( File source ) throws IOException {
+        try {
+            Statement statement = connection.createStatement();
+            try {
+                statement.execute("ATTACH DATABASE '" + escape(source.getAbsolutePath()) + "' AS source"); //$NON-NLS-1$ //$NON-NLS-2$
+                try {
+                    statement.execute("INSERT OR REPLACE INTO tile_images SELECT scale, tile_position, tile_data, created, max_age FROM source.tile_images"); //$NON-NLS-1$
+                    statement.execute("INSERT OR IGNORE INTO store_properties SELECT name, value FROM source.store_properties"); //$NON-NLS-1$
+                } finally {
+                    statement.execute("DETACH DATABASE source"); //$NON-NLS-1$
+                }
+                ResultSet results = statement.executeQuery("SELECT count(*) FROM tile_images"); //$NON-NLS-1$
+                try {
+                    return results.next() ? results.getInt(1) : 0;
+                } finally {
+                    results.close();
+                }
+            } finally {
+                statement.close();
+            }
+        } catch (SQLException e) {
+            throw toIOException(e);
+        }
+    }
+
+    /**
+     * Copies all tiles of this store into the given file, merging them with the
+     * tiles already stored in that file.
+     *
+     * @param target
+     * @throws IOException
+     */
+    public void exportTo( File target ) throws IOException {
+        SingleFileTileStore targetStore = getStore(target);
+        synchronized (this) {
+            // make sure everything written so far is in the main database file
+            try {
+                Statement statement = connection.createStatement();
+                try {
+                    statement.execute("PRAGMA wal_checkpoint"); //$NON-NLS-1$
+                } finally {
+                    statement.close();
+                }
+            } catch (SQLException e) {
+                throw toIOException(e);
+            }
+        }
+        targetStore.importFrom(file);
+    }
+
+    /**
+     * Imports a tileset from the file per tile layout of {@link TileImageReadWriter}: a directory
+     * per scale holding an image and optional max cache age file per tile.
+     *
+     * @param tileSetDirectory directory holding the scale directories
+     * @param filetype image format, ie: png
+     * @return number of tiles imported
+     * @throws IOException
+     */
+    public int importDirectory( File tileSetDirectory, final String filetype ) throws IOException {
+        int count = 0;
+        File[] scaleDirs = tileSetDirectory.listFiles(new FileFilter(){
+            public boolean accept( File pathname ) {
+                return pathname.isDirectory();
+            }
+        });
+        if (scaleDirs == null) {
+            return 0;
+        }
+        final String suffix = "." + filetype; //$NON-NLS-1$
+        for( File scaleDir : scaleDirs ) {
+            File[] tileFiles = scaleDir.listFiles(new FileFilter(){
+                public boolean accept( File pathname ) {
+                    return pathname.getName().endsWith(suffix);
+                }
+            });
+            if (tileFiles == null) {
+                continue;
+            }
+            String scale = scaleDir.getName().replace('_', '.');
+            for( File tileFile : tileFiles ) {
+                String name = tileFile.getName();
+                String position = name.substring(0, name.length() - suffix.length());
+                File cacheFile = new File(scaleDir, position + ".txt"); //$NON-NLS-1$
+                if (importTile(tileFile, cacheFile, scale, position, filetype)) {
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Imports one tile cached in its own file.
+     *
+     * @param tileFile the tile image
+     * @param cacheFile file holding the maximum cache age of the tile, may not exist
+     * @param scale
+     * @param position
+     * @param filetype image format, ie: png
+     * @return false if the file could not be read as an image
+     * @throws IOException
+     */
+    public boolean importTile( File tileFile, File cacheFile, String scale, String position,
+            String filetype ) throws IOException {
+        BufferedImage image = ImageIO.read(tileFile);
+        if (image == null) {
+            return false;
+        }
+        String maxCacheAge = null;
+        if (cacheFile != null && cacheFile.exists()) {
+            maxCacheAge = FileUtils.readFileToString(cacheFile);
+        }
+        // the age of the tile is the age of its file
+        writeTile(scale, position, image, filetype, maxCacheAge, tileFile.lastModified());
+        return true;
+    }
+
+    /**
+     * Merges every store found below the source directory into the store with the same
+     * relative path below the target directory.  Used to export a whole tile cache
+     * directory, or to import (seed) one.
+     *
+     * @param sourceDirectory
+     * @param targetDirectory
+     * @return number of store files copied
+     * @throws IOException
+     */
+    public static int copyStores( File sourceDirectory, File targetDirectory ) throws IOException {
+        int count = 0;
+        File[] files = sourceDirectory.listFiles();
+        if (files == null) {
+            return 0;
+        }
+        for( File source : files ) {
+            File target = new File(targetDirectory, source.getName());
+            if (source.isDirectory()) {
+                count += copyStores(source, target);
+            } else if (source.getName().endsWith("." + EXTENSION)) { //$NON-NLS-1$
+                getStore(source).exportTo(target);
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Removes all tiles from the store.
+     *
+     * @throws IOException
+     */
+    public synchronized void clear() throws IOException {
+        try {
+            Statement statement = connection.createStatement();
+            try {
+                statement.execute("DELETE FROM tile_images"); //$NON-NLS-1$
+            } finally {
+                statement.close();
+            }
+        } catch (SQLException e) {
+            throw toIOException(e);
+        }
+    }
+
+    private static Long parseMaxAge( String maxCacheAge ) {
+        if (maxCacheAge == null || "".equals(maxCacheAge.trim())) { //$NON-NLS-1$
+            return null;
+        }
+        try {
+            return Long.parseLong(maxCacheAge.trim());
+        } catch (NumberFormatException e) {
+            // treated like a corrupt cache file: expired right away
+            return 0L;
+        }
+    }
+
+    private static String parameters( int count ) {
+        StringBuilder builder = new StringBuilder();
+        for( int i = 0; i < count; i++ ) {
+            if (i > 0) {
+                builder.append(',');
+            }
+            builder.append('?');
+        }
+        return builder.toString();
+    }
+
+    private static String escape( String path ) {
+        return path.replace("'", "''"); //$NON-NLS-1$ //$NON-NLS-2$
+    }
+
+    private IOException toIOException( SQLException e ) {
+        IOException ioException = new IOException("Tile store " + file + ": " + e.getMessage()); //$NON-NLS-1$ //$NON-NLS-2$
+        ioException.initCause(e);
+        return ioException;
+    }
+}
@@ -0,0 +1,267 @@
+/* uDig - User Friendly Desktop Internet GIS client
+ * http://udig.refractions.net
+ * (C) 2012, Refractions Research Inc.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * (http://www.eclipse.org/legal/epl-v10.html), and the Refractions BSD
+ * License v1.0 (http://udig.refractions.net/files/bsd3-v10.html).
+ */
+package net.refractions.udig.catalog.wmsc.server;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map.Entry;
+
+import net.refractions.udig.catalog.CatalogPlugin;
+import net.refractions.udig.catalog.internal.PreferenceConstants;
+
+/**
+ * Process wide in-memory cache of tiles shared by the WMS-C and WMT renderers.
+ * <p>
+ * The cache is bounded by the number of bytes used by the decoded tile images
+ * (see {@link PreferenceConstants#P_WMSCTILE_MEMORY_CACHE_SIZE}) and evicts the least
+ * recently used tiles first; a tile that was hit since it was last considered for
+ * eviction gets a second chance and is moved to the back of the queue.
+ * </p>
+ * <p>
+ * Tiles are keyed by tileset and tile id, the tile id encoding the zoom level and
+ * the position of the tile. When on-disk caching is selected a {@link TileRangeOnDisk}
+ * acts as the second tier: tiles evicted here are read back from the disk cache
+ * rather than fetched again from the server.
+ * </p>
+ *
+ * @since 1.4.0
+ */
+public class TileCache {
+
+    /** default size of the cache in megabytes */
+    public static final int defaultCacheSize = 64;
+
+    private static final long MEGABYTE = 1024 * 1024;
+
+    private static TileCache instance;
+
+    private final LinkedHashMap<String, CacheEntry> entries = new LinkedHashMap<String, CacheEntry>(
+            256, 0.75f, true);
+
+    private long maxBytes;
+    private long currentBytes;
+
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    /**
+     * Creates a cache of the given size; use {@link #getInstance()} for the
+     * cache shared by the renderers.
+     *
+     * @param maxBytes maximum number of bytes the cached tile images may use
+     */
+    public TileCache( long maxBytes ) {
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * The cache shared by all tile sets, sized by the catalog preferences.
+     *
+     * @return shared tile cache
+     */
+    public static synchronized TileCache getInstance() {
+        if (instance == null) {
+            int size = CatalogPlugin.getDefault().getPreferenceStore().getInt(
+                    PreferenceConstants.P_WMSCTILE_MEMORY_CACHE_SIZE);
+            if (size <= 0) size = defaultCacheSize;
+            instance = new TileCache(size * MEGABYTE);
+        }
+        return instance;
+    }
+
+    /**
+     * Builds the key for a tile of a tileset; tile ids are only unique within
+     * their tileset.
+     *
+     * @param tileset tileset of the tile, may be null if the tile id is globally unique
+     * @param tileId
+     * @return key for the cache
+     */
+    public static String createKey( TileSet tileset, String tileId ) {
+        if (tileset == null) {
+            return tileId;
+        }
+        return tileset.getId() + "_" + tileId; //$NON-NLS-1$
+    }
+
+    /**
+     * Looks up a tile.
+     *
+     * @param key see {@link #createKey(TileSet, String)}
+     * @return the tile or null if it is not in the cache
+     */
+    public synchronized Tile get( String key ) {
+        CacheEntry entry = entries.get(key);
+        if (entry == null) {
+            misses++;
+            return null;
+        }
+        entry.referenced = true;
+        if (entry.tile.getBufferedImage() != null) {
+            hits++;
+        } else {
+            misses++;
+        }
+        return entry.tile;
+    }
+
+    /**
+     * Looks up a tile without counting a hit or miss, for callers that already
+     * looked the tile up with {@link #get(String)}.
+     *
+     * @param key see {@link #createKey(TileSet, String)}
+     * @return the tile or null if it is not in the cache
+     */
+    public synchronized Tile peek( String key ) {
+        CacheEntry entry = entries.get(key);
+        return entry == null ? null : entry.tile;
+    }
+
+    /**
+     * Adds the tile unless the cache already contains a tile for the key.
+     *
+     * @param key see {@link #createKey(TileSet, String)}
+     * @param tile
+     * @return the cached tile, which is the existing tile if there was one
+     */
+    public synchronized Tile put( String key, Tile tile ) {
+        CacheEntry entry = entries.get(key);
+        if (entry != null) {
+            return entry.tile;
+        }
+        entry = new CacheEntry(tile);
+        entries.put(key, entry);
+        currentBytes += entry.bytes;
+        evict();
+        return tile;
+    }
+
+    /**
+     * Called once the image of a cached tile has been loaded (or replaced)
+     * so the size of the tile is accounted for.
+     *
+     * @param key see {@link #createKey(TileSet, String)}
+     */
+    public synchronized void update( String key ) {
+        CacheEntry entry = entries.get(key);
+        if (entry == null) {
+            return;
+        }
+        long bytes = sizeOf(entry.tile.getBufferedImage());
+        currentBytes += bytes - entry.bytes;
+        entry.bytes = bytes;
+        evict();
+    }
+
+    /**
+     * Removes all tiles from the cache, the statistics are kept.
+     */
+    public synchronized void clear() {
+        entries.clear();
+        currentBytes = 0;
+    }
+
+    /**
+     * Changes the size of the cache, evicting tiles if required.
+     *
+     * @param maxBytes
+     */
+    public synchronized void setMaximumSize( long maxBytes ) {
+        this.maxBytes = maxBytes;
+        evict();
+    }
+
+    public synchronized long getMaximumSize() {
+        return maxBytes;
+    }
+
+    public synchronized long getSize() {
+        return currentBytes;
+    }
+
+    public synchronized int getTileCount() {
+        return entries.size();
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    /**
+     * Walks the tiles from least to most recently used and drops them until the
+     * cache fits; referenced tiles get a second chance.
+     */
+    private void evict() {
+        if (currentBytes <= maxBytes) {
+            return;
+        }
+        // tiles given a second chance are re-inserted at the end and visited
+        // at most once more, so this terminates
+        int visits = entries.size() * 2;
+        Iterator<Entry<String, CacheEntry>> iterator = entries.entrySet().iterator();
+        LinkedHashMap<String, CacheEntry> secondChance = new LinkedHashMap<String, CacheEntry>();
+        while( currentBytes > maxBytes && visits-- > 0 ) {
+            if (!iterator.hasNext()) {
+                entries.putAll(secondChance);
+                secondChance.clear();
+                iterator = entries.entrySet().iterator();
+                if (!iterator.hasNext()) break;
+            }
+            Entry<String, CacheEntry> next = iterator.next();
+            CacheEntry entry = next.getValue();
+            iterator.remove();
+            if (entry.referenced) {
+                entry.referenced = false;
+                secondChance.put(next.getKey(), entry);
+            } else {
+                currentBytes -= entry.bytes;
+                evictions++;
+            }
+        }
+        entries.putAll(secondChance);
+    }
+
+    /**
+     * Estimates the number of bytes used by the decoded image.
+     *
+     * @param image may be null
+     * @return number of bytes
+     */
+    static long sizeOf( BufferedImage image ) {
+        if (image == null) {
+            return 0;
+        }
+        DataBuffer buffer = image.getRaster().getDataBuffer();
+        long elementSize = DataBuffer.getDataTypeSize(buffer.getDataType()) / 8;
+        return buffer.getSize() * (long) buffer.getNumBanks() * Math.max(1, elementSize);
+    }
+
+    private static class CacheEntry {
+        final Tile tile;
+        long bytes;
+        boolean referenced;
+
+        CacheEntry( Tile tile ) {
+            this.tile = tile;
+            this.bytes = sizeOf(tile.getBufferedImage());
+        }
+    }
+}
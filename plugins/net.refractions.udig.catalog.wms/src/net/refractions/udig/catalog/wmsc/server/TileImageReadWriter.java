@@ -16,10 +16,18 @@ import java.io.FileInputStream;
 import java.io.IOException;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
 
 import javax.imageio.ImageIO;
 
+import net.refractions.udig.catalog.CatalogPlugin;
+
 import org.apache.commons.io.FileUtils;
 import org.geotools.data.ows.AbstractOpenWebService;
 
@@ -34,15 +42,36 @@ public class TileImageReadWriter {
     private String baseTileFolder = ""; //$NON-NLS-1$
     private static final String baseSubTileFolder = "tilecache"; //$NON-NLS-1$
     private URL server;
+    
+    /** store all tiles of a tileset in one file rather than a file per tile */
+    private boolean singleFile;
 
     public TileImageReadWriter( AbstractOpenWebService< ? , ? > service, String baseDir ) {
-        try {
-            server = service.getInfo().getSource().toURL();
-        } catch (MalformedURLException e) {
-            // TODO Auto-generated catch block
-            e.printStackTrace();
+        this(service, baseDir, false);
+    }
+    
+    /**
+     * @param service server of the tiles, may be null if subclasses do not use it for the paths
+     * @param baseDir directory of the disk cache
+     * @param singleFile if true all tiles of a tileset are stored in one indexed file
+     *        (see {@link SingleFileTileStore}) rather than a file per tile
+     */
+    public TileImageReadWriter( AbstractOpenWebService< ? , ? > service, String baseDir,
+            boolean singleFile ) {
+        if (service != null) {
+            try {
+                server = service.getInfo().getSource().toURL();
+            } catch (MalformedURLException e) {
+                // TODO Auto-generated catch block
+                e.printStackTrace();
+            }
         }
         this.baseTileFolder = baseDir + File.separator + baseSubTileFolder;
+        this.singleFile = singleFile;
+    }
+    
+    public boolean isSingleFile() {
+        return singleFile;
     }
 
     /**
@@ -88,6 +117,19 @@ public class TileImageReadWriter {
      * @return
      */
     public String getTileDirectoryPath( Tile tile ) {
+        return getTileSetPath(tile) + File.separator + getScaleName(tile).replace('.', '_')
+                + File.separator;
+    }
+    
+    /**
+     * Fetch the path of the tileset of the given tile, this is the directory holding the scale
+     * directories or, when storing tiles in a single file, the name of that file without
+     * extension: <tile folder>\<server>\<layer names>_<EPSG code>_<image format>
+     * 
+     * @param tile
+     * @return
+     */
+    public String getTileSetPath( Tile tile ) {
         String serverURL = this.server.getHost() + "_" + this.server.getPath(); //$NON-NLS-1$
         serverURL = serverURL.replace('\\', '_');
         serverURL = serverURL.replace('/', '_');
@@ -99,11 +141,60 @@ public class TileImageReadWriter {
         layers = layers.replace('\\', '_');
         layers = layers.replace('/', '_');
         layers = layers.replace(File.separator, "_"); //$NON-NLS-1$
-        Double scale = tile.getScale();
-        String scaleStr = scale.toString();
-        scaleStr = scaleStr.replace('.', '_');
-        return baseTileFolder + File.separator + serverURL + File.separator + layers
-                + File.separator + scaleStr + File.separator;
+        return baseTileFolder + File.separator + serverURL + File.separator + layers;
+    }
+    
+    /**
+     * Name of the scale of the tile as used to index the tiles
+     * 
+     * @param tile
+     * @return
+     */
+    protected String getScaleName( Tile tile ) {
+        return Double.toString(tile.getScale());
+    }
+    
+    /**
+     * The single file store holding the tiles of the tileset of the given tile. The first time
+     * the store is opened the tiles cached a file per tile are imported into it.
+     * 
+     * @param tile
+     * @param filetype
+     * @return
+     * @throws IOException
+     */
+    protected SingleFileTileStore getStore( Tile tile, String filetype ) throws IOException {
+        SingleFileTileStore store = SingleFileTileStore.getStore(new File(getTileSetPath(tile)
+                + "." + SingleFileTileStore.EXTENSION)); //$NON-NLS-1$
+        if (!store.isImported()) {
+            synchronized (store) {
+                if (!store.isImported()) {
+                    try {
+                        importTiles(store, tile, filetype);
+                    } catch (IOException e) {
+                        // not imported again, the tiles will be fetched from the server
+                        CatalogPlugin.log("Unable to import the cached tiles into " //$NON-NLS-1$
+                                + store.getFile(), e);
+                    }
+                    store.setImported();
+                }
+            }
+        }
+        return store;
+    }
+
+    /**
+     * Imports the tiles of the tileset of the given tile that were cached a file per tile.
+     * 
+     * @param store
+     * @param tile
+     * @param filetype
+     * @return number of tiles imported
+     * @throws IOException
+     */
+    protected int importTiles( SingleFileTileStore store, Tile tile, String filetype )
+            throws IOException {
+        return store.importDirectory(new File(getTileSetPath(tile)), filetype);
     }
 
     /**
@@ -118,6 +209,11 @@ public class TileImageReadWriter {
             // lock on the tile so we aren't trying to read it as it is being written to
             Object lock = tile.getTileLock();
             synchronized (lock) {
+                if (singleFile) {
+                    getStore(tile, filetype).writeTile(getScaleName(tile), tile.getPosition(),
+                            tile.getBufferedImage(), filetype, tile.getMaxCacheAge());
+                    return true;
+                }
                 // write the image out
                 ImageIO.write(tile.getBufferedImage(), filetype, getTileFile(tile, filetype));
                 // write the updated metadata file out
@@ -149,6 +245,16 @@ public class TileImageReadWriter {
      * @return does file already exist
      */
     public boolean tileFileExists( Tile tile, String filetype ) {
+        if (singleFile) {
+            // the store does not report stale tiles
+            try {
+                return !getStore(tile, filetype).containsTiles(getScaleName(tile),
+                        Collections.singleton(tile.getPosition())).isEmpty();
+            } catch (IOException e) {
+                e.printStackTrace();
+                return false;
+            }
+        }
         String filename = getTileFileName(tile, filetype);
         File file = new File(filename);
         return file.exists();
@@ -163,6 +269,10 @@ public class TileImageReadWriter {
      * @return true if the tile is considered out-dated, false otherwise
      */
     public boolean isTileStale( Tile tile, String filetype ) {
+        if (singleFile) {
+            // stale tiles are skipped by the store
+            return !tileFileExists(tile, filetype);
+        }
         String filename = getTileFileName(tile, filetype);
         File tileFile = new File(filename);
 
@@ -219,8 +329,13 @@ public class TileImageReadWriter {
             // lock on the tile so we aren't trying to write to it as it is being read
             Object lock = tile.getTileLock();
             synchronized (lock) {
-                bis = new BufferedInputStream(new FileInputStream(getTileFile(tile, filetype)));
-                image = ImageIO.read(bis);
+                if (singleFile) {
+                    image = getStore(tile, filetype).readTile(getScaleName(tile), tile.getPosition(), true);
+                } else {
+                    bis = new BufferedInputStream(new FileInputStream(getTileFile(tile, filetype)));
+                    image = ImageIO.read(bis);
+                    bis.close();
+                }
             }
         } catch (IOException e) {
             e.printStackTrace();
@@ -233,6 +348,55 @@ public class TileImageReadWriter {
         return false;
     }
 
+    /**
+     * Reads the images of all the given tiles that are on disk and not stale; when storing
+     * tiles in a single file this takes one query per scale rather than several file
+     * system calls per tile.
+     * 
+     * @param tiles tiles to read
+     * @param filetype
+     * @return the ids of the tiles that were read
+     */
+    public Set<String> readTiles( Collection<Tile> tiles, String filetype ) {
+        Set<String> loaded = new HashSet<String>();
+        if (!singleFile) {
+            for( Tile tile : tiles ) {
+                if (tileFileExists(tile, filetype) && !isTileStale(tile, filetype)
+                        && readTile(tile, filetype)) {
+                    loaded.add(tile.getId());
+                }
+            }
+            return loaded;
+        }
+        
+        // group the tiles by store and scale
+        Map<String, Map<String, Tile>> groups = new HashMap<String, Map<String, Tile>>();
+        for( Tile tile : tiles ) {
+            String group = getTileSetPath(tile) + File.pathSeparator + getScaleName(tile);
+            Map<String, Tile> byPosition = groups.get(group);
+            if (byPosition == null) {
+                byPosition = new HashMap<String, Tile>();
+                groups.put(group, byPosition);
+            }
+            byPosition.put(tile.getPosition(), tile);
+        }
+        for( Map<String, Tile> byPosition : groups.values() ) {
+            Tile first = byPosition.values().iterator().next();
+            try {
+                Map<String, BufferedImage> images = getStore(first, filetype).readTiles(getScaleName(first),
+                        byPosition.keySet(), false);
+                for( Map.Entry<String, BufferedImage> entry : images.entrySet() ) {
+                    Tile tile = byPosition.get(entry.getKey());
+                    tile.setBufferedImage(entry.getValue());
+                    loaded.add(tile.getId());
+                }
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+        return loaded;
+    }
+
     /**
      * Clear the entire tile cache for for the base dir of these tiles
      * 
@@ -240,8 +404,18 @@ public class TileImageReadWriter {
      */
     public boolean clearCache() {
         File file = new File(baseTileFolder);
+        SingleFileTileStore.closeStores(file);
         return deleteDir(file);
     }
+    
+    /**
+     * The base directory of the tile cache.
+     * 
+     * @return
+     */
+    public File getCacheDirectory() {
+        return new File(baseTileFolder);
+    }
 
     /**
      * Recursively deletes all subdirs and files of a directory and then deletes the given
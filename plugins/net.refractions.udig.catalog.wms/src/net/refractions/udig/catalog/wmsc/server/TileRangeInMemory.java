@@ -33,7 +33,7 @@ import com.vividsolutions.jts.geom.Envelope;
 public class TileRangeInMemory extends AbstractTileRange {
      
     /**
-     * TileRange that holds the tiles in memory using a soft hash map.
+     * TileRange that holds the tiles in memory using the shared TileCache.
      * 
      * @param server The Server to fetch the tiles from
      * @param tileset TileSet of rendered content
@@ -47,11 +47,12 @@ public class TileRangeInMemory extends AbstractTileRange {
     }
 
     /**
-     * Cache the tile in the required method, but we are not caching anything beyong
-     * what is currently on screen, so nothing to cache here.
+     * Cache the tile in the required method; the tiles are kept in memory by the
+     * shared TileCache (bounded by its memory budget) so nothing more to do here.
+     * 
+     * @see TileCache
      */
 	public void cacheTile(Tile tile) {
-		// TODO: cache in memory more than just the tiles on screen 
 	}
 
 
@@ -8,10 +8,10 @@
  * License v1.0 (http://udig.refractions.net/files/bsd3-v10.html).
  */
 package net.refractions.udig.catalog.wmsc.server;
-import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Set;
 
 import net.refractions.udig.catalog.CatalogPlugin;
 import net.refractions.udig.catalog.internal.PreferenceConstants;
@@ -98,22 +98,17 @@ public class TileRangeOnDisk extends AbstractTileRange {
             tilesWaitingToLoad_lock.writeLock().lock();      	
 		
 			String filetype = getFileType();
-			Map<String, Tile> tilesToRemove = new HashMap<String, Tile>();
+			// read all tiles at once, so a single file store can batch the reads
+			Set<String> loadedIds = tileReadWriter.readTiles(tilesWaitingToLoad.values(), filetype);
+	        // Remove any tiles we were able to load
 	        for( Iterator<Entry<String, Tile>> iterator = tilesWaitingToLoad.entrySet().iterator(); iterator.hasNext(); ) {
 	            Entry<String, Tile> tileentry = (Entry<String, Tile>) iterator.next();
 	            Tile tile = tileentry.getValue();
-	            if (tileReadWriter.tileFileExists(tile, filetype) && !tileReadWriter.isTileStale(tile, filetype)) {
-	            	boolean success = tileReadWriter.readTile(tile, filetype);
-	            	if (success) {
-	            		tilesToRemove.put(tileentry.getKey(), tile);
-	            	}
+	            if (loadedIds.contains(tile.getId())) {
+	                updateTileCache(tile);
+	                iterator.remove();
 	            }
 	        }
-	        // Remove any tiles we were able to load
-	        for( Iterator<Entry<String, Tile>> iterator = tilesToRemove.entrySet().iterator(); iterator.hasNext(); ) {
-	            Entry<String, Tile> tileentry = (Entry<String, Tile>) iterator.next();
-	            tilesWaitingToLoad.remove(tileentry.getKey());
-	        }
 	        
         } finally {
             // unlock the write lock
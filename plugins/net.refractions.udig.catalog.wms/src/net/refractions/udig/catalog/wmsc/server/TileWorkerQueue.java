@@ -9,31 +9,44 @@
  */
 package net.refractions.udig.catalog.wmsc.server;
 
-import java.util.LinkedList;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import net.refractions.udig.catalog.CatalogPlugin;
 import net.refractions.udig.catalog.internal.PreferenceConstants;
 
+import org.eclipse.core.runtime.IProgressMonitor;
+
 /**
  * This is a work queue for re-using a group of threads to do Tile work.  An example use
  * is the work of saving tiles to disk.  When preloading all tiles in a tileset, the number of
  * threads originally got out of hand for saving tiles.  This queue allows a group
  * of threads to be reused to do the work.  It can also be used to manage the threads
  * for sending tile requests out, but there should be a separate queue for each.
- * 
+ * <p>
+ * Work is not run in the order it was queued: work of the most recent batch (usually the
+ * tile range of the current viewport, see {@link #newBatch()}) runs first, within a batch
+ * the work with the lowest priority value (usually the distance to the viewport centre)
+ * runs first.  Work queued with a progress monitor is dropped without running if the
+ * monitor has been canceled by the time a thread picks it up, so requests of a
+ * superseded render do not delay the visible tiles.
+ * </p>
  * NOTE: This class is not intended to be subclassed or extended.
  * 
- * The base of this class was copied from IBM's online resource
- * "Java theory and practice: Thread pools and work queues"
- * @see http://www.ibm.com/developerworks/library/j-jtp0730.html
- * 
  * @author GDavis
  *
  */
 public class TileWorkerQueue {
     private final int nThreads;
-    private final PoolWorker[] threads;
-    private final LinkedList<Runnable> queue;
+    private final ThreadPoolExecutor executor;
+    
+    /** orders work queued with the same batch and priority first in, first out */
+    private final AtomicLong sequence = new AtomicLong();
+    private final AtomicLong batches = new AtomicLong();
 
     /**
      * Max size could be larger, but beware that larger numbers of threads
@@ -43,84 +56,148 @@ public class TileWorkerQueue {
     public static final int minWorkingQueueSize = 1;
     public static final int defaultWorkingQueueSize = 16;
     
-    private boolean isTerminated = false;
+    /**
+     * Writing tiles to disk is not visible to the user, a few low priority
+     * threads are enough.
+     */
+    public static final int defaultWriteQueueSize = 2;
     
     public TileWorkerQueue() {
     	// check if a preference is set for the max number of threads
-    	int nThreads = CatalogPlugin.getDefault().getPreferenceStore().getInt(PreferenceConstants.P_WMSCTILE_MAX_CON_REQUESTS);
-    	if (nThreads <= 0) nThreads = defaultWorkingQueueSize;
-        this.nThreads = nThreads;
-        queue = new LinkedList<Runnable>();
-        threads = new PoolWorker[nThreads];
-        initThreads();
+    	this(getPreferredThreadCount(), Thread.NORM_PRIORITY);
     }    
 
     public TileWorkerQueue(int nThreads) {
+        this(nThreads, Thread.NORM_PRIORITY);
+    }
+    
+    /**
+     * @param nThreads number of threads
+     * @param threadPriority priority of the threads, use {@link Thread#MIN_PRIORITY} for
+     *        background work such as writing tiles to disk
+     */
+    public TileWorkerQueue(int nThreads, final int threadPriority) {
     	if (nThreads > maxWorkingQueueSize) nThreads = maxWorkingQueueSize;
     	if (nThreads < minWorkingQueueSize) nThreads = minWorkingQueueSize;
         this.nThreads = nThreads;
-        queue = new LinkedList<Runnable>();
-        threads = new PoolWorker[nThreads];
-        initThreads();
+        
+        ThreadFactory threadFactory = new ThreadFactory(){
+            private final AtomicInteger count = new AtomicInteger();
+            public Thread newThread( Runnable r ) {
+                Thread thread = new Thread(r, "TileWorkerQueue-" + count.incrementAndGet()); //$NON-NLS-1$
+                thread.setDaemon(true);
+                thread.setPriority(threadPriority);
+                return thread;
+            }
+        };
+        executor = new ThreadPoolExecutor(nThreads, nThreads, 0L, TimeUnit.MILLISECONDS,
+                new PriorityBlockingQueue<Runnable>(), threadFactory);
     }
     
-    private void initThreads() {
-        for (int i=0; i<this.nThreads; i++) {
-            threads[i] = new PoolWorker();
-            threads[i].start();
-        }
+    /**
+     * Creates the queue used to write tiles out to disk; it runs with a few low
+     * priority threads so it does not compete with fetching the visible tiles.
+     * 
+     * @return new write queue
+     */
+    public static TileWorkerQueue createWriteQueue() {
+        return new TileWorkerQueue(defaultWriteQueueSize, Thread.MIN_PRIORITY);
+    }
+    
+    private static int getPreferredThreadCount() {
+        int nThreads = CatalogPlugin.getDefault().getPreferenceStore().getInt(PreferenceConstants.P_WMSCTILE_MAX_CON_REQUESTS);
+        if (nThreads <= 0) nThreads = defaultWorkingQueueSize;
+        return nThreads;
     }
     
     public int getThreadPoolSize() {
     	return this.nThreads;
     }
 
+    /**
+     * Starts a new batch of work; work of a newer batch is run before the
+     * work of all older batches.
+     * 
+     * @return batch id to pass to {@link #execute(Runnable, long, double, IProgressMonitor)}
+     */
+    public long newBatch() {
+        return batches.incrementAndGet();
+    }
+    
+    /**
+     * Queue the work behind all other work of the default batch.
+     * 
+     * @param r
+     */
     public void execute(Runnable r) {
-        synchronized(queue) {
-            queue.addLast(r);
-            queue.notify();
+        execute(r, 0, 0, null);
+    }
+    
+    /**
+     * Queue the work.
+     * 
+     * @param r work to do
+     * @param batch batch from {@link #newBatch()}, or 0 for the oldest batch
+     * @param priority lower values run first within a batch
+     * @param monitor optional, the work is dropped if it is canceled before the work starts
+     */
+    public void execute(Runnable r, long batch, double priority, IProgressMonitor monitor) {
+        if (executor.isShutdown()) {
+            return;
         }
+        executor.execute(new PrioritizedWork(r, batch, priority, sequence.incrementAndGet(), monitor));
     }
     
     public boolean isQueueEmpty() {
-        synchronized(queue) {
-            return queue.isEmpty();
-        }
+        return executor.getQueue().isEmpty();
     }
 
-    private class PoolWorker extends Thread {
+    /**
+     * Work ordered by batch (newest first), priority and sequence; it checks
+     * the monitor before running.
+     */
+    private static class PrioritizedWork implements Runnable, Comparable<PrioritizedWork> {
+        private final Runnable work;
+        private final long batch;
+        private final double priority;
+        private final long sequence;
+        private final IProgressMonitor monitor;
+        
+        PrioritizedWork( Runnable work, long batch, double priority, long sequence,
+                IProgressMonitor monitor ) {
+            this.work = work;
+            this.batch = batch;
+            this.priority = priority;
+            this.sequence = sequence;
+            this.monitor = monitor;
+        }
+        
         public void run() {
-            Runnable r;
-
-            while (!isTerminated) {
-                synchronized(queue) {
-                    while (queue.isEmpty() && !isTerminated) {
-                        try
-                        {
-                            queue.wait();
-                        }
-                        catch (InterruptedException ignored)
-                        {
-                        }
-                    }
-
-                    if (!queue.isEmpty()) {
-                    	r = (Runnable) queue.removeFirst();
-                    }
-                    else {
-                    	r = null;
-                    }
-                }
-
-                // If we don't catch RuntimeException, 
-                // the pool could leak threads
-                try {
-                    r.run();
-                }
-                catch (RuntimeException e) {
-                    // You might want to log something here
-                }
+            if (monitor != null && monitor.isCanceled()) {
+                // superseded, don't bother
+                return;
+            }
+            // If we don't catch RuntimeException, 
+            // the pool could leak threads
+            try {
+                work.run();
+            }
+            catch (RuntimeException e) {
+                CatalogPlugin.trace("Tile work failed", e); //$NON-NLS-1$
+            }
+        }
+        
+        public int compareTo( PrioritizedWork other ) {
+            if (batch != other.batch) {
+                return batch > other.batch ? -1 : 1;
+            }
+            if (priority != other.priority) {
+                return priority < other.priority ? -1 : 1;
+            }
+            if (sequence != other.sequence) {
+                return sequence < other.sequence ? -1 : 1;
             }
+            return 0;
         }
     }
     
@@ -128,14 +205,6 @@ public class TileWorkerQueue {
      * Stop and delete all the threads
      */
     public void dispose() {
-    	this.isTerminated = true;
-        for (int i=0; i<this.nThreads; i++) {
-            threads[i] = null;
-        }
-        synchronized(queue) {
-            queue.clear();
-            queue.notifyAll();
-        }        
+        executor.shutdownNow();
     }
 }
-
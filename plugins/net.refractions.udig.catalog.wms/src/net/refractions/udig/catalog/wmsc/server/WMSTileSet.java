@@ -18,8 +18,6 @@ import org.geotools.data.ows.AbstractOpenWebService;
 import org.geotools.data.ows.CRSEnvelope;
 import org.geotools.geometry.jts.ReferencedEnvelope;
 import org.geotools.referencing.CRS;
-import org.geotools.util.ObjectCache;
-import org.geotools.util.ObjectCaches;
 import org.opengis.referencing.crs.CoordinateReferenceSystem;
 
 import com.vividsolutions.jts.geom.Envelope;
@@ -82,11 +80,10 @@ public class WMSTileSet implements TileSet {
     private String styles;
 
     /** map of tiles 
-     * NOTE:  This is a WEAKHashMap because we don't want to run out of
-     * memory storing all the tiles.  The garbage collector should clean
-     * up less-used keys and their objects as necessary. 
+     * NOTE:  This is the process wide TileCache, which is bounded by the memory
+     * used by the tile images so we don't run out of memory storing all the tiles.
      **/
-    ObjectCache tiles = ObjectCaches.create("soft", 50); //Tiles that are on the screen //$NON-NLS-1$  
+    TileCache tiles = TileCache.getInstance();
 
     public WMSTileSet() {
         updateID();
@@ -274,10 +271,11 @@ public class WMSTileSet implements TileSet {
                     // tile is within the bounds, create it if necessary and
                     // add it to the map
                     String tileid = WMSTile.buildId(e, zoom);
-                    Tile tile;
-                    if (tiles.peek(tileid) == null || tiles.get(tileid) == null) {
+                    String cacheKey = TileCache.createKey(this, tileid);
+                    Tile tile = tiles.get(cacheKey);
+                    if (tile == null) {
                         tile = new WMSTile(server, this, e, zoom);
-                        tiles.put(tileid, tile);
+                        tiles.put(cacheKey, tile);
                         // create the tile position within the tilerange grid for this scale
                         double topleft_x = bboxSrs.getMinX();
                         double topleft_y = bboxSrs.getMaxY();
@@ -292,8 +290,6 @@ public class WMSTileSet implements TileSet {
 
                         String position = posx + "_" + posy; //$NON-NLS-1$
                         tile.setPosition(position);
-                    } else {
-                        tile = (Tile) tiles.get(tileid);
                     }
                     viewportTiles.put(tileid, tile);
                 }
@@ -15,8 +15,10 @@ import net.refractions.udig.catalog.internal.wmt.wmtsource.WMTSource;
 import org.geotools.geometry.jts.JTS;
 import org.geotools.geometry.jts.ReferencedEnvelope;
 import org.geotools.referencing.CRS;
+import org.geotools.referencing.operation.LinearTransform;
 import org.opengis.referencing.crs.CoordinateReferenceSystem;
 import org.opengis.referencing.operation.MathTransform;
+import org.opengis.referencing.operation.Matrix;
 
 /**
  * This class wraps together the information needed to 
@@ -41,6 +43,8 @@ public class WMTRenderJob {
     
     private WMTScaleZoomLevelMatcher zoomLevelMatcher;
     
+    /** true if TilesProjectedCrs -> MapCrs only scales and translates */
+    private boolean tilesProjectedToMapAxisAligned;
     
     public WMTRenderJob(
             CoordinateReferenceSystem crsTilesProjected, 
@@ -52,6 +56,7 @@ public class WMTRenderJob {
         this.crsTilesProjected = crsTilesProjected;
         this.transformTileCrsToTilesProjected = transformTileCrsToTilesProjected;
         this.transformTilesProjectedToMap = transformTilesProjectedToMap;
+        this.tilesProjectedToMapAxisAligned = isAxisAligned(transformTilesProjectedToMap);
     }
        
     public static WMTRenderJob createRenderJob(ReferencedEnvelope mapExtentMapCrs, 
@@ -107,6 +112,18 @@ public class WMTRenderJob {
         return zoomLevelMatcher.getCrsMap();
     }
 
+    /**
+     * Returns true if a tile image can be drawn onto the map by a plain scaled 
+     * <code>drawImage</code>, because the transformation from the CRS the tiles were
+     * projected in to the map CRS is a pure scale and translation (most commonly
+     * the map is already in Google's Mercator).
+     * 
+     * @return true if no real reprojection of the tile images is required
+     */
+    public boolean isTilesProjectedToMapAxisAligned() {
+        return tilesProjectedToMapAxisAligned;
+    }
+    
     public ReferencedEnvelope projectTileToMapCrs(ReferencedEnvelope boundsInTileCrs) throws Exception {
         return zoomLevelMatcher.projectTileToMapCrs(boundsInTileCrs);
     } 
@@ -155,6 +172,30 @@ public class WMTRenderJob {
         }
     }
     
+    /**
+     * Checks if the given transformation maps rectangles to rectangles without
+     * rotating, shearing or swapping axes.
+     *
+     * @param transformation transformation or null for no transformation
+     * @return true if the transformation only scales and translates
+     */
+    public static boolean isAxisAligned(MathTransform transformation) {
+        if (transformation == null || transformation.isIdentity()) {
+            return true;
+        }
+        
+        if (!(transformation instanceof LinearTransform) 
+                || transformation.getSourceDimensions() != 2
+                || transformation.getTargetDimensions() != 2) {
+            return false;
+        }
+        
+        Matrix matrix = ((LinearTransform) transformation).getMatrix();
+        
+        return matrix.getElement(0, 1) == 0 && matrix.getElement(1, 0) == 0 
+            && matrix.getElement(0, 0) > 0 && matrix.getElement(1, 1) > 0;
+    }
+    
     /**
      * Returns the transformation to convert between these two CRS's.
      *
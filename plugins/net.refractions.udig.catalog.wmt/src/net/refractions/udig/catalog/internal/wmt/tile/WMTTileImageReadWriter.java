@@ -10,14 +10,25 @@
 package net.refractions.udig.catalog.internal.wmt.tile;
 
 import java.io.File;
+import java.io.FileFilter;
+import java.io.IOException;
 
+import net.refractions.udig.catalog.wmsc.server.SingleFileTileStore;
 import net.refractions.udig.catalog.wmsc.server.Tile;
 import net.refractions.udig.catalog.wmsc.server.TileImageReadWriter;
 
 public class WMTTileImageReadWriter extends TileImageReadWriter {
     private String baseDir;
     public WMTTileImageReadWriter(String baseDir) {
-        super(null, baseDir);
+        this(baseDir, false);
+    }
+    
+    /**
+     * @param baseDir directory of the disk cache
+     * @param singleFile if true all tiles of a source are stored in one indexed file
+     */
+    public WMTTileImageReadWriter(String baseDir, boolean singleFile) {
+        super(null, baseDir, singleFile);
         
         this.baseDir = WMTTileImageReadWriter.pathCombine(baseDir, "wmt-tile-cache"); //$NON-NLS-1$
     }
@@ -30,6 +41,14 @@ public class WMTTileImageReadWriter extends TileImageReadWriter {
             return super.getTileDirectoryPath(tile);
         
     }
+    
+    @Override
+    public String getTileSetPath(Tile tile) {
+        if (tile instanceof WMTTile)
+            return getTileDirectoryPath((WMTTile) tile);
+        else
+            return super.getTileSetPath(tile);
+    }
 
     public String getTileDirectoryPath(WMTTile tile) {        
         return WMTTileImageReadWriter.pathCombine(baseDir, tile.getReleatedSourceId());
@@ -48,6 +67,50 @@ public class WMTTileImageReadWriter extends TileImageReadWriter {
                 tile.getPosition() + "." + filetype); //$NON-NLS-1$
     }
     
+    /**
+     * Imports the tiles of the source of the tile; they are all in the directory of the source
+     * and their position holds the zoom level used as scale.
+     */
+    @Override
+    protected int importTiles( SingleFileTileStore store, Tile tile, String filetype )
+            throws IOException {
+        if (!(tile instanceof WMTTile)) {
+            return super.importTiles(store, tile, filetype);
+        }
+        File directory = new File(getTileDirectoryPath(tile));
+        final String suffix = "." + filetype; //$NON-NLS-1$
+        File[] tileFiles = directory.listFiles(new FileFilter(){
+            public boolean accept( File pathname ) {
+                return pathname.getName().endsWith(suffix);
+            }
+        });
+        if (tileFiles == null) {
+            return 0;
+        }
+        int count = 0;
+        for( File tileFile : tileFiles ) {
+            String name = tileFile.getName();
+            String position = name.substring(0, name.length() - suffix.length());
+            // <source id>_<zoom>_<x>_<y>
+            String[] parts = position.split(WMTTileName.ID_DIVIDER);
+            if (parts.length < 4) {
+                continue;
+            }
+            double zoomLevel;
+            try {
+                zoomLevel = Integer.parseInt(parts[parts.length - 3]);
+            } catch (NumberFormatException e) {
+                continue;
+            }
+            File cacheFile = new File(directory.getPath() + position + ".txt"); //$NON-NLS-1$
+            if (store.importTile(tileFile, cacheFile, Double.toString(zoomLevel), position,
+                    filetype)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
     /**
      * Concatenates two paths.
      *
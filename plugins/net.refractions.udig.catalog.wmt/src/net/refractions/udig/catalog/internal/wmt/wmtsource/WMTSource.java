@@ -26,13 +26,12 @@ import net.refractions.udig.catalog.internal.wmt.tile.WMTTile.WMTTileFactory;
 import net.refractions.udig.catalog.internal.wmt.tile.WMTTile.WMTZoomLevel;
 import net.refractions.udig.catalog.internal.wmt.ui.properties.WMTLayerProperties;
 import net.refractions.udig.catalog.wmsc.server.Tile;
+import net.refractions.udig.catalog.wmsc.server.TileCache;
 import net.refractions.udig.core.internal.CorePlugin;
 
 import org.geotools.geometry.jts.ReferencedEnvelope;
 import org.geotools.referencing.CRS;
 import org.geotools.referencing.crs.DefaultGeographicCRS;
-import org.geotools.util.ObjectCache;
-import org.geotools.util.ObjectCaches;
 import org.opengis.referencing.crs.CoordinateReferenceSystem;
 
 import com.vividsolutions.jts.geom.Envelope;
@@ -47,11 +46,12 @@ public abstract class WMTSource {
     private String name;
     
     /** 
-     * This WeakHashMap acts as a memory cache.
-     * Because we are using SoftReference, we won't run
-     * out of Memory, the GC will free space.
+     * The process wide TileCache acts as a memory cache.
+     * It is bounded by the size of the tile images, so we won't run
+     * out of Memory. The tile ids contain the source id, so the tiles
+     * of all sources can share it.
      **/
-    private ObjectCache tiles = ObjectCaches.create("soft", 50); //$NON-NLS-1$
+    private TileCache tiles = TileCache.getInstance();
     
     private WMTService wmtService;
     
@@ -154,22 +154,25 @@ public abstract class WMTSource {
 
     //region Methods to access the tile-list (cache)
     public boolean listContainsTile(String tileId) {
-        return !(tiles.peek(tileId) == null || tiles.get(tileId) == null);
+        return tiles.peek(tileId) != null;
     }
     
+    /**
+     * Returns the cached tile with the id of the given tile, adding the tile if there is none.
+     * This is the lookup of a tile, so it is where the hit or miss is counted.
+     */
     public WMTTile addTileToList(WMTTile tile) {
-        if (listContainsTile(tile.getId())){
+        WMTTile cachedTile = (WMTTile) tiles.get(tile.getId());
+        if (cachedTile != null){
             WMTPlugin.debug("[WMTSource.addTileToList] Already in cache: " + tile.getId(), Trace.REQUEST); //$NON-NLS-1$
-            return getTileFromList(tile.getId());
-        } else {
-            WMTPlugin.debug("[WMTSource.addTileToList] Was not in cache: " + tile.getId(), Trace.REQUEST); //$NON-NLS-1$
-            tiles.put(tile.getId(), tile);
-            return tile;            
+            return cachedTile;
         }
+        WMTPlugin.debug("[WMTSource.addTileToList] Was not in cache: " + tile.getId(), Trace.REQUEST); //$NON-NLS-1$
+        return (WMTTile) tiles.put(tile.getId(), tile);
     }
     
     public WMTTile getTileFromList(String tileId) {
-        return (WMTTile) tiles.get(tileId);
+        return (WMTTile) tiles.peek(tileId);
     }
     //endregion
     
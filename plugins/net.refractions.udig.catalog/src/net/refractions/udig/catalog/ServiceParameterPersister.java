@@ -525,8 +525,12 @@ public class ServiceParameterPersister {
      */
     private void storeProperties( Preferences prefs,
             Map<String, Serializable> properties ) {
-        
-        for ( Map.Entry<String, Serializable> entry : properties.entrySet()) {
+        // the properties are synchronized maps that jobs may change while the catalog is saved
+        Map<String, Serializable> copy;
+        synchronized (properties) {
+            copy = new HashMap<String, Serializable>(properties);
+        }
+        for ( Map.Entry<String, Serializable> entry : copy.entrySet()) {
             
             final String KEY = entry.getKey().toString();            
             Serializable object = entry.getValue();
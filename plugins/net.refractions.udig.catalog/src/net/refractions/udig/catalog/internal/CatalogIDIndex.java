@@ -0,0 +1,263 @@
+/*
+ *    uDig - User Friendly Desktop Internet GIS client
+ *    http://udig.refractions.net
+ *    (C) 2012, Refractions Research Inc.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * (http://www.eclipse.org/legal/epl-v10.html), and the Refractions BSD
+ * License v1.0 (http://udig.refractions.net/files/bsd3-v10.html).
+ *
+ */
+package net.refractions.udig.catalog.internal;
+
+import java.io.IOException;
+import java.net.URL;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import net.refractions.udig.catalog.CatalogPlugin;
+import net.refractions.udig.catalog.ID;
+import net.refractions.udig.catalog.IGeoResource;
+import net.refractions.udig.catalog.IResolve;
+import net.refractions.udig.catalog.IResolveChangeEvent;
+import net.refractions.udig.catalog.IResolveDelta;
+import net.refractions.udig.catalog.IService;
+import net.refractions.udig.catalog.URLUtils;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+
+/**
+ * Lookup tables used by {@link CatalogImpl} to find services and resources by ID without
+ * checking every service in the catalog.
+ * <p>
+ * Services are looked up by ID and by their identifier without the reference; no connection is
+ * needed for either. {@link URLUtils#urlEquals(URL, URL, boolean)} also matches an identifier
+ * that starts with the other and compares file URLs by their canonical path, so the services
+ * whose identifier is a prefix of the one looked up, or starts with it, and all file services
+ * for a file URL, are returned as well. The members of a service are listed once, the first time a resource of the
+ * service is asked for, and are listed again after the service or one of its resources changes.
+ * </p>
+ * <p>
+ * The catalog checks each handle returned from here against the ID being looked up, these tables
+ * only narrow down which handles are checked.
+ * </p>
+ *
+ * @since 1.4.0
+ */
+final class CatalogIDIndex {
+
+    private final Map<ID, IService> servicesById = new ConcurrentHashMap<ID, IService>();
+
+    /** sorted so that identifiers starting with another are next to it */
+    private final ConcurrentNavigableMap<String, List<IService>> servicesByURL = new ConcurrentSkipListMap<String, List<IService>>();
+
+    /** services by their ID without the child reference, see {@link ID#equals(ID, boolean)} */
+    private final Map<String, List<IService>> servicesByIdText = new ConcurrentHashMap<String, List<IService>>();
+
+    /** file URLs are compared by canonical path, which is not known up front */
+    private final List<IService> fileServices = new CopyOnWriteArrayList<IService>();
+
+    /** resources of a service by ID and by the ID of their identifier */
+    private final Map<ID, Map<ID, IResolve>> members = new ConcurrentHashMap<ID, Map<ID, IResolve>>();
+
+    /**
+     * Called when the service is added to the catalog.
+     *
+     * @param service
+     */
+    synchronized void add( IService service ) {
+        servicesById.put(service.getID(), service);
+        add(servicesByURL, key(service.getIdentifier()), service);
+        add(servicesByIdText, stripChildRef(service.getID()), service);
+        if (isFile(service.getIdentifier())) {
+            fileServices.add(service);
+        }
+    }
+
+    private static void add( Map<String, List<IService>> table, String key, IService service ) {
+        List<IService> matches = table.get(key);
+        if (matches == null) {
+            matches = new CopyOnWriteArrayList<IService>();
+            table.put(key, matches);
+        }
+        matches.add(service);
+    }
+
+    /**
+     * Called when the service is removed from the catalog.
+     *
+     * @param service
+     */
+    synchronized void remove( IService service ) {
+        if (servicesById.get(service.getID()) == service) {
+            servicesById.remove(service.getID());
+        }
+        remove(servicesByURL, key(service.getIdentifier()), service);
+        remove(servicesByIdText, stripChildRef(service.getID()), service);
+        fileServices.remove(service);
+        members.remove(service.getID());
+    }
+
+    private static void remove( Map<String, List<IService>> table, String key, IService service ) {
+        List<IService> matches = table.get(key);
+        if (matches != null) {
+            matches.remove(service);
+            if (matches.isEmpty())
+                table.remove(key);
+        }
+    }
+
+    /**
+     * @param id
+     * @return the service with the ID or null
+     */
+    IService getService( ID id ) {
+        return servicesById.get(id);
+    }
+
+    /**
+     * The services that may match the id, either by
+     * {@link URLUtils#urlEquals(URL, URL, boolean) urlEquals} on the URL of the id with the
+     * reference removed or by {@link ID#equals(ID, boolean)} without the child reference.
+     * Services with the same identifier come first; every service is still to be checked by the
+     * caller.
+     *
+     * @param id
+     * @return the services that can match, may be empty
+     */
+    Collection<IService> getServices( ID id ) {
+        Set<IService> candidates = new LinkedHashSet<IService>();
+        URL url = id.toURL();
+        if (url != null) {
+            String key = key(url);
+            addAll(candidates, servicesByURL.get(key));
+            // urlEquals matches if either identifier starts with the other
+            for( int i = key.length() - 1; i > 0; i-- ) {
+                addAll(candidates, servicesByURL.get(key.substring(0, i)));
+            }
+            for( Map.Entry<String, List<IService>> entry : servicesByURL.tailMap(key, false)
+                    .entrySet() ) {
+                if (!entry.getKey().startsWith(key))
+                    break;
+                candidates.addAll(entry.getValue());
+            }
+            if (isFile(url)) {
+                candidates.addAll(fileServices);
+            }
+        }
+        addAll(candidates, servicesByIdText.get(stripChildRef(id)));
+        return candidates;
+    }
+
+    private static void addAll( Set<IService> candidates, List<IService> services ) {
+        if (services != null) {
+            candidates.addAll(services);
+        }
+    }
+
+    /**
+     * Finds a resource of the service, listing the members of the service the first time.
+     *
+     * @param service
+     * @param id
+     * @param roughMatch if true the resource is found by the identifier of the id only
+     * @param monitor
+     * @return a resource with a matching ID or identifier, or null
+     */
+    IResolve getMember( IService service, ID id, boolean roughMatch, IProgressMonitor monitor ) {
+        Map<ID, IResolve> resources = members.get(service.getID());
+        if (resources == null) {
+            resources = new HashMap<ID, IResolve>();
+            collectMembers(service, resources, monitor);
+            members.put(service.getID(), resources);
+        }
+        return resources.get(roughMatch ? new ID(id.toURL()) : id);
+    }
+
+    private void collectMembers( IResolve handle, Map<ID, IResolve> resources,
+            IProgressMonitor monitor ) {
+        try {
+            List< ? extends IResolve> children = handle.members(monitor);
+            if (children == null) {
+                return;
+            }
+            for( IResolve child : children ) {
+                // the first match wins just like a walk over the members
+                ID urlId = new ID(child.getIdentifier());
+                if (!resources.containsKey(urlId))
+                    resources.put(urlId, child);
+                if (!resources.containsKey(child.getID()))
+                    resources.put(child.getID(), child);
+                collectMembers(child, resources, null);
+            }
+        } catch (IOException e) {
+            CatalogPlugin.log("Could not search children of " + handle.getIdentifier(), e); //$NON-NLS-1$
+        }
+    }
+
+    /**
+     * Forgets the members of services that changed.
+     *
+     * @param event
+     */
+    void changed( IResolveChangeEvent event ) {
+        if (event.getDelta() != null) {
+            changed(event.getDelta());
+        }
+    }
+
+    private void changed( IResolveDelta delta ) {
+        if (delta.getKind() != IResolveDelta.Kind.NO_CHANGE) {
+            IResolve resolve = delta.getResolve();
+            if (resolve instanceof IService) {
+                members.remove(((IService) resolve).getID());
+            } else if (resolve instanceof IGeoResource) {
+                IService service = ((IGeoResource) resolve).service(null);
+                if (service != null)
+                    members.remove(service.getID());
+            }
+        }
+        if (delta.getChildren() != null) {
+            for( IResolveDelta child : delta.getChildren() ) {
+                changed(child);
+            }
+        }
+    }
+
+    private static boolean isFile( URL url ) {
+        return url != null && "file".equals(url.getProtocol()); //$NON-NLS-1$
+    }
+
+    /**
+     * The same as the private ID.stripChildRef used by {@link ID#equals(ID, boolean)}.
+     */
+    private static String stripChildRef( ID id ) {
+        String text = id.toString();
+        if (text == null) {
+            return ""; //$NON-NLS-1$
+        }
+        int splitHash = text.indexOf("#"); //$NON-NLS-1$
+        if (splitHash != -1) {
+            int splitSlash = text.indexOf("/", splitHash); //$NON-NLS-1$
+            return text.substring(0, splitSlash != -1 ? splitSlash : splitHash);
+        }
+        return text;
+    }
+
+    private static String key( URL url ) {
+        if (url == null) {
+            return ""; //$NON-NLS-1$
+        }
+        // the same clean up as URLUtils.urlEquals
+        return URLUtils.urlToString(url, true).replace("%20", " ").toLowerCase(); //$NON-NLS-1$ //$NON-NLS-2$
+    }
+}
@@ -23,6 +23,7 @@ import java.lang.reflect.InvocationTargetException;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashSet;
@@ -102,6 +103,12 @@ public class CatalogImpl extends ICatalog {
     /** @see getTemporaryDescriptorClasses */
     private String[] descriptors;
 
+    /** Used by search, kept up to date by fire */
+    private final CatalogSearchIndex searchIndex = new CatalogSearchIndex(this);
+
+    /** Used by find and getById, kept up to date with services */
+    private final CatalogIDIndex idIndex = new CatalogIDIndex();
+
     public CatalogImpl() {
         CatalogInfoImpl metadata = new CatalogInfoImpl();
         metadata.setTitle(Messages.CatalogImpl_localCatalog_title);
@@ -160,6 +167,7 @@ public class CatalogImpl extends ICatalog {
         }
 
         services.add(service);
+        idIndex.add(service);
         runInterceptor(service, ServiceInterceptor.ADDED_ID);
         
         IResolveDelta deltaAdded = new ResolveDelta(service, IResolveDelta.Kind.ADDED);
@@ -184,6 +192,7 @@ public class CatalogImpl extends ICatalog {
                 deltaChanged));
         
         services.remove(entry);
+        idIndex.remove(entry);
         runInterceptor(entry, ServiceInterceptor.REMOVED_ID);
         
         fire(new ResolveChangeEvent(CatalogImpl.this, IResolveChangeEvent.Type.POST_CHANGE,
@@ -222,6 +231,7 @@ public class CatalogImpl extends ICatalog {
                 IResolveChangeEvent.Type.PRE_DELETE, deltas);
         fire(event);
         services.remove(service);
+        idIndex.remove(service);
         runInterceptor(service, ServiceInterceptor.REMOVED_ID);
 
         PlatformGIS.run(new IRunnableWithProgress(){
@@ -238,6 +248,7 @@ public class CatalogImpl extends ICatalog {
         });
 
         services.add(replacement);
+        idIndex.add(replacement);
         runInterceptor(replacement, ServiceInterceptor.ADDED_ID);
         event = new ResolveChangeEvent(this, IResolveChangeEvent.Type.POST_CHANGE, deltas);
 
@@ -245,6 +256,7 @@ public class CatalogImpl extends ICatalog {
             // the service has actually moved
             IService moved = new MovedService(id, replacement.getID());
             services.add(moved);
+            idIndex.add(moved);
             runInterceptor(moved, ServiceInterceptor.ADDED_ID);
         }
         fire(event);
@@ -377,11 +389,12 @@ public class CatalogImpl extends ICatalog {
     public List<IResolve> find( ID id, IProgressMonitor monitor ) {
         URL query = id.toURL();
         Set<IResolve> found = new LinkedHashSet<IResolve>();
-        
-        //ID id1 = new ID(query);
+
+        // only the services that can match are checked, same identifier first
+        Collection<IService> scope = idIndex.getServices(id);
 
         // first pass 1.1- use urlEquals on CONNECTED service for subset check
-        for( IService service : services ) {
+        for( IService service : scope ) {
             if (service.getStatus() != CONNECTED)
                 continue; // skip non connected service
             
@@ -394,7 +407,7 @@ public class CatalogImpl extends ICatalog {
                     found.add(service);
                     found.addAll(friends(service));
                 } else {
-                    IResolve res = getChildById(service, id, true, monitor);
+                    IResolve res = getMemberById(service, id, true, monitor);
                     if (res != null) {
                         found.add(res);
                         found.addAll(friends(res));
@@ -403,7 +416,7 @@ public class CatalogImpl extends ICatalog {
             }
         }
         // first pass 1.2 - use urlEquals on unCONNECTED service for subset check
-        for( IService service : services ) {
+        for( IService service : scope ) {
             if (service.getStatus() == CONNECTED)
                 continue; // already checked in pass 1.1
             URL identifier = service.getIdentifier();
@@ -414,7 +427,7 @@ public class CatalogImpl extends ICatalog {
                     found.add(service);
                     found.addAll(friends(service));
                 } else {
-                    IResolve res = getChildById(service, id, true, monitor);
+                    IResolve res = getMemberById(service, id, true, monitor);
                     if (res != null) {
                         found.add(res);
                         found.addAll(friends(res));
@@ -425,7 +438,7 @@ public class CatalogImpl extends ICatalog {
         // first pass 1.3 - use urlEquals on BROKEN or RESTRICTED_ACCESS service for subset check
         // the hope here is that a "friend" will still have data! May be tough for friends
         // to negotiate a match w/ a broken services - but there is still hope...
-        for( IService service : services ) {
+        for( IService service : scope ) {
             if (service.getStatus() == CONNECTED || service.getStatus() == NOTCONNECTED) {
                 continue; // already checked in pass 1.1-1.2
             }
@@ -435,7 +448,7 @@ public class CatalogImpl extends ICatalog {
                     found.add(service);
                     found.addAll(friends(service));
                 } else {
-                    IResolve res = getChildById(service, id, true, monitor);
+                    IResolve res = getMemberById(service, id, true, monitor);
                     if (res != null) {
                         found.add(res);
                         found.addAll(friends(res));
@@ -557,12 +570,25 @@ public class CatalogImpl extends ICatalog {
     private IService getServiceById( final ID id ) {
         if (id == null)
             return null;
-        for( IService service : services ) {
-            if (id.equals(service.getID())) {
-                return service;
-            }
+        return idIndex.getService(id);
+    }
+
+    /**
+     * Same as {@link #getChildById(IResolve, ID, boolean, IProgressMonitor)} for a service in the
+     * catalog; the members of the service are looked up by ID rather than walked each time.
+     */
+    private IResolve getMemberById( IService service, final ID id, boolean roughMatch,
+            IProgressMonitor monitor ) {
+        if (roughMatch ? new ID(id.toURL()).equals(new ID(service.getIdentifier())) : id
+                .equals(service.getID())) {
+            return service;
         }
-        return null;
+        IResolve member = idIndex.getMember(service, id, roughMatch, monitor);
+        if (member != null) {
+            return member;
+        }
+        // the service may have new members without telling the catalog
+        return getChildById(service, id, roughMatch, monitor);
     }
 
     public <T extends IResolve> T getById( Class<T> type, final ID id, IProgressMonitor monitor ) {
@@ -582,9 +608,9 @@ public class CatalogImpl extends ICatalog {
 
         URL url = id.toURL();
         if (IResolve.class.isAssignableFrom(type)) {
-            for( IService service : services ) {
+            for( IService service : idIndex.getServices(id) ) {
                 if (URLUtils.urlEquals(url, service.getIdentifier(), true)) {
-                    IResolve child = getChildById(service, id, false, monitor2);
+                    IResolve child = getMemberById(service, id, false, monitor2);
                     if (child != null)
                         return type.cast(child);
                 }
@@ -671,7 +697,7 @@ public class CatalogImpl extends ICatalog {
      * @param bbox used for an intersection test
      * @return
      */
-    public synchronized List<IResolve> search( String pattern, Envelope bbox,
+    public List<IResolve> search( String pattern, Envelope bbox,
             IProgressMonitor monitor2 ) {
         
         if( CatalogPlugin.getDefault().isDebugging() ){
@@ -692,39 +718,33 @@ public class CatalogImpl extends ICatalog {
         if (ast == null) {
             return result;
         }
-        HashSet<IService> searchScope = new HashSet<IService>();
-        searchScope.addAll(this.services);
+        List<IService> searchScope = new ArrayList<IService>(this.services);
+        List<IService> notIndexed = new ArrayList<IService>();
+        for( IService service : searchScope ) {
+            if (!searchIndex.isIndexed(service)) {
+                notIndexed.add(service);
+            }
+        }
         try {
-            monitor.beginTask(Messages.CatalogImpl_finding, searchScope.size() * 10);
-            SERVICE: for( IService service : searchScope ) {
-                ID serviceID = service.getID();
-                if (check(service, ast)) {
-                    result.add(service);
-                }
-                //Iterator< ? extends IGeoResource> resources;
+            monitor.beginTask(Messages.CatalogImpl_finding, notIndexed.size() * 10 + 10);
+            // services not seen before are connected to once, after that the index is used
+            for( IService service : notIndexed ) {
                 SubProgressMonitor submonitor = new SubProgressMonitor(monitor, 10);
                 try {
-                    List< ? extends IGeoResource> members = service.resources(submonitor);
-                    if (members == null) {
-                        continue SERVICE;
-                    }
-                    for( IGeoResource resource : members ) {
-                        ID resoruceID = resource.getID();
-                        try {
-                            if (check(resource, ast, bbox)) {
-                                result.add(resource);
-                            }
-                        } catch (Throwable t) {
-                            CatalogPlugin.log("Could not search in resource:" + resoruceID, t);
-                        }
-                    }
+                    searchIndex.index(service, submonitor);
                 } catch (IOException e) {
-                    CatalogPlugin.log("Could not search in service:" + serviceID, e);
+                    CatalogPlugin.log("Could not search in service:" + service.getID(), e); //$NON-NLS-1$
                 } finally {
                     submonitor.done();
                 }
                 Thread.yield(); // allow other threads to have a go... makes search view more responsive
             }
+            SubProgressMonitor submonitor = new SubProgressMonitor(monitor, 10);
+            try {
+                result.addAll(searchIndex.search(searchScope, ast, bbox, submonitor));
+            } finally {
+                submonitor.done();
+            }
             return result;
         } finally {
             monitor.done();
@@ -835,6 +855,8 @@ public class CatalogImpl extends ICatalog {
      *         resource, ICatalogChangeEvent.Type.POST_CHANGE, cDelta ) ); }
      */
     public void fire( IResolveChangeEvent event ) {
+        searchIndex.changed(event);
+        idIndex.changed(event);
         if (catalogListeners.size() == 0)
             return;
 
@@ -1005,6 +1027,15 @@ public class CatalogImpl extends ICatalog {
             ServiceParameterPersister persister = new ServiceParameterPersister(this, factory, catalogLocation);
             Preferences parameterNode = findParameterNode(paramsNode);
             
+            // services restored below that were indexed last session are not indexed again
+            File indexLocation = getSearchIndexLocation(catalogLocation);
+            if (indexLocation.exists()) {
+                try {
+                    searchIndex.load(indexLocation);
+                } catch (IOException e) {
+                    CatalogPlugin.trace("Unable to restore catalog search index", e); //$NON-NLS-1$
+                }
+            }
             persister.restore(parameterNode);
         } catch (Throwable e) {
             CatalogPlugin.trace("Unable to restore catalog:"+e, e); //$NON-NLS-1$
@@ -1067,6 +1098,18 @@ public class CatalogImpl extends ICatalog {
         } catch (Throwable t) {
             CatalogPlugin.log("Error saving services for the local catalog", t); //$NON-NLS-1$ 
         }
+        try {
+            searchIndex.save(getSearchIndexLocation(catalogLocation));
+        } catch (Throwable t) {
+            CatalogPlugin.log("Error saving the search index for the local catalog", t); //$NON-NLS-1$
+        }
+    }
+
+    /**
+     * The search index is saved next to the catalog.
+     */
+    private static File getSearchIndexLocation( File catalogLocation ) {
+        return new File(catalogLocation.getParentFile(), catalogLocation.getName() + ".index"); //$NON-NLS-1$
     }
     //
     // Interceptors
@@ -0,0 +1,689 @@
+/*
+ *    uDig - User Friendly Desktop Internet GIS client
+ *    http://udig.refractions.net
+ *    (C) 2012, Refractions Research Inc.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * (http://www.eclipse.org/legal/epl-v10.html), and the Refractions BSD
+ * License v1.0 (http://udig.refractions.net/files/bsd3-v10.html).
+ *
+ */
+package net.refractions.udig.catalog.internal;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.lang.reflect.InvocationTargetException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import net.refractions.udig.catalog.CatalogPlugin;
+import net.refractions.udig.catalog.ID;
+import net.refractions.udig.catalog.IGeoResource;
+import net.refractions.udig.catalog.IGeoResourceInfo;
+import net.refractions.udig.catalog.IResolve;
+import net.refractions.udig.catalog.IResolveChangeEvent;
+import net.refractions.udig.catalog.IResolveDelta;
+import net.refractions.udig.catalog.IService;
+import net.refractions.udig.catalog.IServiceInfo;
+import net.refractions.udig.catalog.util.AST;
+import net.refractions.udig.catalog.util.ASTFactory;
+import net.refractions.udig.ui.PlatformGIS;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.jface.operation.IRunnableWithProgress;
+import org.geotools.geometry.jts.ReferencedEnvelope;
+import org.geotools.referencing.crs.DefaultGeographicCRS;
+
+import com.vividsolutions.jts.geom.Envelope;
+import com.vividsolutions.jts.index.quadtree.Quadtree;
+
+/**
+ * Search index used by {@link CatalogImpl#search(String, Envelope, IProgressMonitor)} so a search
+ * does not need to connect to every service in the catalog.
+ * <p>
+ * The text of the service and resource info (title, name, keywords, schema, abstract and
+ * description) is kept for each entry together with an inverted index from trigrams of that text
+ * to the entries, and a quadtree over the bounds of the resources in lat long. A search pattern
+ * is matched as a substring, just like {@link AST#accept(String)}; the trigrams of the literals in
+ * the pattern narrow down the entries the pattern is evaluated against.
+ * </p>
+ * <p>
+ * The index is kept up to date from the catalog events and is saved next to the local catalog
+ * so it is available straight after startup.
+ * </p>
+ *
+ * @since 1.4.0
+ */
+public class CatalogSearchIndex {
+
+    /** literals shorter than this cannot be looked up in the trigram index */
+    private static final int GRAM = 3;
+
+    private final CatalogImpl catalog;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    /** entries by service id, the service first followed by its resources */
+    private final Map<String, Map<String, Entry>> services = new HashMap<String, Map<String, Entry>>();
+
+    private final Map<String, Set<Entry>> trigrams = new HashMap<String, Set<Entry>>();
+
+    /** resources with known bounds, by lat long bounds */
+    private final Quadtree bounds = new Quadtree();
+
+    /** resources with unknown bounds, these match every area */
+    private final Set<Entry> unknownBounds = new HashSet<Entry>();
+
+    public CatalogSearchIndex( CatalogImpl catalog ) {
+        this.catalog = catalog;
+    }
+
+    /**
+     * Checks if the service (and its resources) have been indexed.
+     *
+     * @param service
+     * @return true if the service can be searched using the index
+     */
+    public boolean isIndexed( IService service ) {
+        lock.readLock().lock();
+        try {
+            return services.containsKey(key(service));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Indexes the service and its resources, replacing what was indexed for the service before.
+     * This connects to the service.
+     *
+     * @param service
+     * @param monitor
+     * @throws IOException if the resources of the service could not be listed
+     */
+    public void index( IService service, IProgressMonitor monitor ) throws IOException {
+        List<Entry> entries = new ArrayList<Entry>();
+        entries.add(createEntry(service));
+        List< ? extends IGeoResource> members = service.resources(monitor);
+        if (members != null) {
+            for( IGeoResource resource : members ) {
+                try {
+                    entries.add(createEntry(resource, key(service)));
+                } catch (Throwable t) {
+                    CatalogPlugin.log("Could not index resource:" + resource.getID(), t); //$NON-NLS-1$
+                }
+            }
+        }
+        lock.writeLock().lock();
+        try {
+            removeInternal(key(service));
+            Map<String, Entry> serviceEntries = new LinkedHashMap<String, Entry>();
+            for( Entry entry : entries ) {
+                serviceEntries.put(entry.id, entry);
+                addInternal(entry);
+            }
+            services.put(key(service), serviceEntries);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Re-indexes a single resource of an indexed service.
+     *
+     * @param resource
+     */
+    public void index( IGeoResource resource ) {
+        IService service = resource.service(null);
+        if (service == null) {
+            return;
+        }
+        Entry entry = createEntry(resource, key(service));
+        lock.writeLock().lock();
+        try {
+            Map<String, Entry> serviceEntries = services.get(key(service));
+            if (serviceEntries == null) {
+                return; // the service will be indexed as a whole
+            }
+            Entry old = serviceEntries.put(entry.id, entry);
+            if (old != null) {
+                removeInternal(old);
+            }
+            addInternal(entry);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Removes the service and its resources from the index.
+     *
+     * @param serviceID
+     */
+    public void remove( ID serviceID ) {
+        lock.writeLock().lock();
+        try {
+            removeInternal(serviceID.toString());
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Removes a single resource from the index.
+     *
+     * @param resource
+     */
+    public void remove( IGeoResource resource ) {
+        lock.writeLock().lock();
+        try {
+            for( Map<String, Entry> serviceEntries : services.values() ) {
+                Entry old = serviceEntries.remove(resource.getID().toString());
+                if (old != null) {
+                    removeInternal(old);
+                    return;
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Searches the indexed entries of the given services.
+     *
+     * @param scope the services to search, all of them must be indexed
+     * @param ast search pattern
+     * @param bbox area in lat long the resources must intersect, may be null
+     * @param monitor
+     * @return matching services and resources, each service before its resources
+     */
+    public List<IResolve> search( Collection<IService> scope, AST ast, Envelope bbox,
+            IProgressMonitor monitor ) {
+        List<Entry> matches = new ArrayList<Entry>();
+        lock.readLock().lock();
+        try {
+            Set<Entry> candidates = candidates(ast);
+            Set<Entry> inArea = null;
+            if (bbox != null && !bbox.isNull()) {
+                inArea = new HashSet<Entry>(unknownBounds);
+                for( Object found : bounds.query(bbox) ) {
+                    Entry entry = (Entry) found;
+                    if (bbox.intersects(entry.getBounds())) {
+                        inArea.add(entry);
+                    }
+                }
+            }
+            for( IService service : scope ) {
+                Map<String, Entry> serviceEntries = services.get(key(service));
+                if (serviceEntries == null) {
+                    continue;
+                }
+                for( Entry entry : serviceEntries.values() ) {
+                    if (candidates != null && !candidates.contains(entry)) {
+                        continue;
+                    }
+                    if (!entry.service && inArea != null && !inArea.contains(entry)) {
+                        continue;
+                    }
+                    if (entry.accept(ast)) {
+                        matches.add(entry);
+                    }
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        // only connect to the services with matching resources
+        List<IResolve> result = new ArrayList<IResolve>(matches.size());
+        for( Entry entry : matches ) {
+            IResolve resolve = resolve(entry, monitor);
+            if (resolve != null) {
+                result.add(resolve);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Keeps the index up to date; services are indexed in the background when they are added
+     * or changed.
+     *
+     * @param event
+     */
+    public void changed( IResolveChangeEvent event ) {
+        if (event.getType() != IResolveChangeEvent.Type.POST_CHANGE || event.getDelta() == null) {
+            return;
+        }
+        List<IService> toIndex = new ArrayList<IService>();
+        List<IGeoResource> resourcesToIndex = new ArrayList<IGeoResource>();
+        collectChanges(event.getDelta(), toIndex, resourcesToIndex);
+        if (!toIndex.isEmpty() || !resourcesToIndex.isEmpty()) {
+            scheduleIndex(toIndex, resourcesToIndex);
+        }
+    }
+
+    private void collectChanges( IResolveDelta delta, List<IService> toIndex,
+            List<IGeoResource> resourcesToIndex ) {
+        IResolve resolve = delta.getResolve();
+        if (resolve instanceof IService) {
+            IService service = (IService) resolve;
+            switch( delta.getKind() ) {
+            case ADDED:
+                // services restored from the saved catalog are already indexed
+                if (!isIndexed(service))
+                    toIndex.add(service);
+                return;
+            case REMOVED:
+                remove(service.getID());
+                return;
+            case REPLACED:
+                remove(service.getID());
+                if (delta.getNewResolve() instanceof IService)
+                    toIndex.add((IService) delta.getNewResolve());
+                return;
+            case CHANGED:
+                toIndex.add(service);
+                return;
+            default:
+                break;
+            }
+        } else if (resolve instanceof IGeoResource) {
+            IGeoResource resource = (IGeoResource) resolve;
+            switch( delta.getKind() ) {
+            case ADDED:
+            case CHANGED:
+            case REPLACED:
+                resourcesToIndex.add(resource);
+                return;
+            case REMOVED:
+                remove(resource);
+                return;
+            default:
+                break;
+            }
+        }
+        if (delta.getChildren() != null) {
+            for( IResolveDelta child : delta.getChildren() ) {
+                collectChanges(child, toIndex, resourcesToIndex);
+            }
+        }
+    }
+
+    private void scheduleIndex( final List<IService> toIndex,
+            final List<IGeoResource> resourcesToIndex ) {
+        PlatformGIS.run(new IRunnableWithProgress(){
+            public void run( IProgressMonitor monitor ) throws InvocationTargetException,
+                    InterruptedException {
+                for( IService service : toIndex ) {
+                    try {
+                        index(service, monitor);
+                    } catch (Throwable t) {
+                        CatalogPlugin.trace("Could not index service:" + service.getID(), t); //$NON-NLS-1$
+                    }
+                }
+                for( IGeoResource resource : resourcesToIndex ) {
+                    try {
+                        index(resource);
+                    } catch (Throwable t) {
+                        CatalogPlugin.trace("Could not index resource:" + resource.getID(), t); //$NON-NLS-1$
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * Writes the index to the file.
+     *
+     * @param file
+     * @throws IOException
+     */
+    public void save( File file ) throws IOException {
+        // services removed from the catalog while they were being indexed are left out
+        Set<String> members = new HashSet<String>();
+        for( IResolve member : catalog.members(null) ) {
+            if (member instanceof IService)
+                members.add(key((IService) member));
+        }
+        List<Entry> entries = new ArrayList<Entry>();
+        lock.readLock().lock();
+        try {
+            for( Map.Entry<String, Map<String, Entry>> service : services.entrySet() ) {
+                if (members.contains(service.getKey()))
+                    entries.addAll(service.getValue().values());
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        ObjectOutputStream out = new ObjectOutputStream(new BufferedOutputStream(
+                new FileOutputStream(file)));
+        try {
+            out.writeObject(entries);
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Reads an index written by {@link #save(File)}, replacing the current content.
+     *
+     * @param file
+     * @throws IOException
+     */
+    @SuppressWarnings("unchecked")
+    public void load( File file ) throws IOException {
+        List<Entry> entries;
+        ObjectInputStream in = new ObjectInputStream(new BufferedInputStream(
+                new FileInputStream(file)));
+        try {
+            entries = (List<Entry>) in.readObject();
+        } catch (ClassNotFoundException e) {
+            throw (IOException) new IOException("Unknown search index format").initCause(e); //$NON-NLS-1$
+        } finally {
+            in.close();
+        }
+        lock.writeLock().lock();
+        try {
+            services.clear();
+            trigrams.clear();
+            unknownBounds.clear();
+            for( Object item : bounds.queryAll() ) {
+                Entry entry = (Entry) item;
+                bounds.remove(entry.getBounds(), entry);
+            }
+            for( Entry entry : entries ) {
+                Map<String, Entry> serviceEntries = services.get(entry.serviceId);
+                if (serviceEntries == null) {
+                    serviceEntries = new LinkedHashMap<String, Entry>();
+                    services.put(entry.serviceId, serviceEntries);
+                }
+                serviceEntries.put(entry.id, entry);
+                addInternal(entry);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private static String key( IService service ) {
+        return service.getID().toString();
+    }
+
+    private Entry createEntry( IService service ) {
+        IServiceInfo info;
+        try {
+            info = service.getInfo(null);
+        } catch (IOException e) {
+            info = null;
+            CatalogPlugin.log(null, e);
+        }
+        // same fields as CatalogImpl.check(IService, AST), which skips missing values
+        List<String> text = new ArrayList<String>();
+        if (info != null) {
+            addIfNotNull(text, info.getTitle());
+            if (info.getKeywords() != null) {
+                for( String keyword : info.getKeywords() ) {
+                    addIfNotNull(text, keyword);
+                }
+            }
+            if (info.getSchema() != null)
+                text.add(info.getSchema().toString());
+            addIfNotNull(text, info.getAbstract());
+            addIfNotNull(text, info.getDescription());
+        }
+        Entry entry = new Entry(key(service), key(service), true, text);
+        entry.handle = service;
+        return entry;
+    }
+
+    private Entry createEntry( IGeoResource resource, String serviceId ) {
+        IGeoResourceInfo info;
+        try {
+            info = resource.getInfo(null);
+        } catch (IOException e) {
+            CatalogPlugin.log(null, e);
+            info = null;
+        }
+        // same fields as CatalogImpl.check(IGeoResource, AST), missing values are checked too
+        // as a NOT pattern accepts them
+        List<String> text = null;
+        Entry entry;
+        if (info != null) {
+            text = new ArrayList<String>();
+            text.add(info.getTitle());
+            text.add(info.getName());
+            if (info.getKeywords() != null) {
+                Collections.addAll(text, info.getKeywords());
+            }
+            if (info.getSchema() != null)
+                text.add(info.getSchema().toString());
+            text.add(info.getDescription());
+        }
+        entry = new Entry(resource.getID().toString(), serviceId, false, text);
+        entry.url = resource.getIdentifier().toExternalForm();
+        entry.handle = resource;
+        if (info != null) {
+            try {
+                ReferencedEnvelope area = info.getBounds();
+                if (area != null) {
+                    area = area.transform(DefaultGeographicCRS.WGS84, true);
+                    entry.setBounds(area);
+                }
+            } catch (Throwable e) {
+                // CatalogImpl.check does not match resources with bounds it cannot transform
+                entry.boundsFailed = true;
+            }
+        }
+        return entry;
+    }
+
+    private static void addIfNotNull( List<String> text, String value ) {
+        if (value != null)
+            text.add(value);
+    }
+
+    private void addInternal( Entry entry ) {
+        for( String gram : entry.trigrams() ) {
+            Set<Entry> entries = trigrams.get(gram);
+            if (entries == null) {
+                entries = new HashSet<Entry>();
+                trigrams.put(gram, entries);
+            }
+            entries.add(entry);
+        }
+        if (!entry.service && !entry.boundsFailed) {
+            Envelope area = entry.getBounds();
+            if (area == null) {
+                unknownBounds.add(entry);
+            } else {
+                bounds.insert(area, entry);
+            }
+        }
+    }
+
+    private void removeInternal( String serviceId ) {
+        Map<String, Entry> serviceEntries = services.remove(serviceId);
+        if (serviceEntries != null) {
+            for( Entry entry : serviceEntries.values() ) {
+                removeInternal(entry);
+            }
+        }
+    }
+
+    private void removeInternal( Entry entry ) {
+        for( String gram : entry.trigrams() ) {
+            Set<Entry> entries = trigrams.get(gram);
+            if (entries != null) {
+                entries.remove(entry);
+                if (entries.isEmpty())
+                    trigrams.remove(gram);
+            }
+        }
+        unknownBounds.remove(entry);
+        if (entry.getBounds() != null) {
+            bounds.remove(entry.getBounds(), entry);
+        }
+    }
+
+    /**
+     * The entries that may match the pattern, worked out from the trigrams of its literals.
+     *
+     * @return candidate entries or null if every entry is a candidate
+     */
+    private Set<Entry> candidates( AST ast ) {
+        if (ast == null) {
+            return null;
+        }
+        switch( ast.type() ) {
+        case AST.LITERAL:
+            String value = ASTFactory.getLiteral(ast);
+            if (value == null) {
+                return Collections.emptySet();
+            }
+            Set<Entry> result = null;
+            for( String gram : Entry.trigrams(value) ) {
+                Set<Entry> entries = trigrams.get(gram);
+                if (entries == null) {
+                    return Collections.emptySet();
+                }
+                if (result == null) {
+                    result = new HashSet<Entry>(entries);
+                } else {
+                    result.retainAll(entries);
+                }
+            }
+            return result; // null for literals too short to index
+        case AST.AND: {
+            Set<Entry> left = candidates(ast.getLeft());
+            Set<Entry> right = candidates(ast.getRight());
+            if (left == null)
+                return right;
+            if (right == null)
+                return left;
+            Set<Entry> and = new HashSet<Entry>(left);
+            and.retainAll(right);
+            return and;
+        }
+        case AST.OR: {
+            Set<Entry> left = candidates(ast.getLeft());
+            Set<Entry> right = candidates(ast.getRight());
+            if (left == null || right == null)
+                return null;
+            Set<Entry> or = new HashSet<Entry>(left);
+            or.addAll(right);
+            return or;
+        }
+        default:
+            // a NOT pattern matches text the index knows nothing about
+            return null;
+        }
+    }
+
+    private IResolve resolve( Entry entry, IProgressMonitor monitor ) {
+        IResolve handle = entry.handle;
+        if (handle != null) {
+            return handle;
+        }
+        // entries read from disk are looked up in the catalog
+        try {
+            if (entry.service) {
+                for( IResolve member : catalog.members(monitor) ) {
+                    if (member instanceof IService && entry.id.equals(key((IService) member))) {
+                        handle = member;
+                    }
+                }
+            } else {
+                handle = catalog.getById(IGeoResource.class, new ID(new URL(entry.url)), monitor);
+            }
+        } catch (Throwable t) {
+            CatalogPlugin.log("Could not find search result:" + entry.id, t); //$NON-NLS-1$
+        }
+        entry.handle = handle;
+        return handle;
+    }
+
+    /**
+     * The indexed text and bounds of a service or resource.
+     */
+    private static class Entry implements Serializable {
+        private static final long serialVersionUID = 2375611340934468817L;
+
+        final String id;
+        final String serviceId;
+        final boolean service;
+        /** text matched against the pattern, null if the info was not available */
+        final String[] text;
+        String url;
+        /** lat long bounds as minx, maxx, miny, maxy */
+        double[] area;
+        boolean boundsFailed;
+        transient volatile IResolve handle;
+
+        Entry( String id, String serviceId, boolean service, List<String> text ) {
+            this.id = id;
+            this.serviceId = serviceId;
+            this.service = service;
+            this.text = text == null ? null : text.toArray(new String[text.size()]);
+        }
+
+        void setBounds( Envelope bounds ) {
+            area = new double[]{bounds.getMinX(), bounds.getMaxX(), bounds.getMinY(),
+                    bounds.getMaxY()};
+        }
+
+        Envelope getBounds() {
+            return area == null ? null : new Envelope(area[0], area[1], area[2], area[3]);
+        }
+
+        boolean accept( AST ast ) {
+            if (text == null) {
+                return false;
+            }
+            for( String value : text ) {
+                if (ast.accept(value)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        Set<String> trigrams() {
+            Set<String> grams = new HashSet<String>();
+            if (text != null) {
+                for( String value : text ) {
+                    if (value != null)
+                        grams.addAll(trigrams(value));
+                }
+            }
+            return grams;
+        }
+
+        static Set<String> trigrams( String value ) {
+            String upper = value.toUpperCase();
+            Set<String> grams = new HashSet<String>();
+            for( int i = 0; i + GRAM <= upper.length(); i++ ) {
+                grams.add(upper.substring(i, i + GRAM));
+            }
+            return grams;
+        }
+    }
+}
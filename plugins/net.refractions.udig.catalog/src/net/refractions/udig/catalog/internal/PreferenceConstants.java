@@ -26,4 +26,7 @@ public class PreferenceConstants {
     
     public static final String P_WMSCTILE_MAX_CON_REQUESTS = "P_WMSCTILE_MAX_CON_REQUESTS"; //$NON-NLS-1$
     
+    /** size of the shared in-memory tile cache in megabytes */
+    public static final String P_WMSCTILE_MEMORY_CACHE_SIZE = "P_WMSCTILE_MEMORY_CACHE_SIZE"; //$NON-NLS-1$
+    
 }
@@ -30,6 +30,7 @@ public class PreferenceInitializer extends AbstractPreferenceInitializer {
 		
 		store.setDefault(PreferenceConstants.P_TEMP_FT, false);
 		store.setDefault(PreferenceConstants.P_WMSCTILE_MAX_CON_REQUESTS, 16);
+		store.setDefault(PreferenceConstants.P_WMSCTILE_MEMORY_CACHE_SIZE, 64);
 	}
 
 }
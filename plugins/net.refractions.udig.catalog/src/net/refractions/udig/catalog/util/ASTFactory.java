@@ -20,6 +20,19 @@ public class ASTFactory {
     private ASTFactory() {/* not used */
     }
 
+    /**
+     * The text matched by a literal node, so the pattern can be looked up in an index.
+     *
+     * @param ast node created by {@link #parse(String)}
+     * @return the text of a literal node, or null for any other node
+     */
+    public static String getLiteral( AST ast ) {
+        if (ast instanceof Literal) {
+            return ((Literal) ast).value;
+        }
+        return null;
+    }
+
     /**
      * Creates an AST for the pattern The pattern uses the following conventions: use " " to
      * surround a phase use + to represent 'AND' use - to represent 'OR' use ! to represent 'NOT'
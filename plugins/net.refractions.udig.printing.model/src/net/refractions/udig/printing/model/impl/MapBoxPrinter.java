@@ -56,10 +56,15 @@ import com.vividsolutions.jts.geom.Envelope;
  * @since 1.1.0
  */
 public class MapBoxPrinter extends AbstractBoxPrinter implements IAdaptable {
+    /** memory used by the images of a band when printing (see DrawMapParameter#setBandBufferSize) */
+    private static final long BAND_BUFFER_SIZE = Math.min(32L * 1024 * 1024, Runtime.getRuntime()
+            .maxMemory() / 16);
+
     Map map;
     
     private double scaleDenom;
     private SelectionStyle selectionStyle; 
+    private boolean vectorOutput = true;
     
     /**
      * draw a map at the current scale
@@ -201,6 +206,24 @@ public class MapBoxPrinter extends AbstractBoxPrinter implements IAdaptable {
         }
     }
 
+    /**
+     * @return true if vector layers are printed as shapes, false if they are printed as images
+     */
+    public boolean isVectorOutput() {
+        return vectorOutput;
+    }
+
+    /**
+     * Sets how vector layers are printed. Shapes are sharper and can be edited in the PDF while
+     * images keep the size of the file down for layers with a lot of features.
+     * 
+     * @param vectorOutput true to print vector layers as shapes (the default), false to print
+     *        them as images
+     */
+    public void setVectorOutput( boolean vectorOutput ) {
+        this.vectorOutput = vectorOutput;
+    }
+
     public void draw( Graphics2D graphics, IProgressMonitor monitor ) {
         super.draw(graphics, monitor);
         
@@ -214,15 +237,19 @@ public class MapBoxPrinter extends AbstractBoxPrinter implements IAdaptable {
             
             java.awt.Dimension awtSize = new java.awt.Dimension(
                     size.width, size.height);
-            IMap modifiedMap = null;
+            DrawMapParameter parameters;
             if (scaleDenom == -1) {
                 //ApplicationGIS.drawMap(new DrawMapParameter(graphics, awtSize, getMap(), monitor, true));
-                modifiedMap = ApplicationGIS.drawMap(new DrawMapParameter(graphics, awtSize, getMap(), null /*use current scale*/, 90, selectionStyle, monitor, true, true));
+                parameters = new DrawMapParameter(graphics, awtSize, getMap(), null /*use current scale*/, 90, selectionStyle, monitor, true, true);
             }
             else {
                 BoundsStrategy boundsStrategy = new BoundsStrategy(scaleDenom);
-                modifiedMap = ApplicationGIS.drawMap(new DrawMapParameter(graphics, awtSize, getMap(), boundsStrategy, 90, selectionStyle, monitor, true, true));
+                parameters = new DrawMapParameter(graphics, awtSize, getMap(), boundsStrategy, 90, selectionStyle, monitor, true, true);
             }
+            // raster layers are drawn in bands so a large page does not need a page sized image
+            parameters.setBandBufferSize(BAND_BUFFER_SIZE);
+            parameters.setRasterizeVectors(!vectorOutput);
+            IMap modifiedMap = ApplicationGIS.drawMap(parameters);
 
             //ApplicationGIS.drawMap makes a copy of the map, and may change its bounds.  If it does change
             //the bounds then update the original map to match (this will force the mapgraphics to update too)
@@ -11,6 +11,7 @@
  */
 package net.refractions.udig.project.command;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
@@ -19,6 +20,8 @@ import net.refractions.udig.project.internal.Map;
 import net.refractions.udig.project.internal.commands.DefaultErrorHandler;
 import net.refractions.udig.project.tests.support.AbstractProjectTestCase;
 
+import java.util.concurrent.atomic.AtomicInteger;
+
 import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.swt.widgets.Display;
 import org.junit.Test;
@@ -360,6 +363,55 @@ public class CommandManagerTest extends AbstractProjectTestCase {
         assertFalse(manager.canUndo());
     }
     
+    @Test
+    public void testBatch() throws Exception {
+        final AtomicInteger executed = new AtomicInteger();
+        CommandManager manager=new CommandManager("test", new DefaultErrorHandler(), new CommandListener(){ //$NON-NLS-1$
+
+            public void commandExecuted( int commandType ) {
+                executed.incrementAndGet();
+            }
+            
+        });
+        final AtomicInteger value = new AtomicInteger();
+        manager.beginBatch();
+        for( int i = 0; i < 100; i++ ) {
+            manager.aSyncExecute(new IncrementCommand(value));
+        }
+        manager.endBatch(false);
+
+        assertEquals(100, value.get());
+        assertEquals(1, executed.get());
+
+        // the whole batch is undone and redone at once
+        manager.undo(false);
+        assertEquals(0, value.get());
+        assertFalse(manager.canUndo());
+
+        manager.redo(false);
+        assertEquals(100, value.get());
+    }
+
+    private static class IncrementCommand extends AbstractCommand implements UndoableMapCommand {
+        private final AtomicInteger value;
+
+        IncrementCommand( AtomicInteger value ) {
+            this.value = value;
+        }
+
+        public void run( IProgressMonitor monitor ) throws Exception {
+            value.incrementAndGet();
+        }
+
+        public void rollback( IProgressMonitor monitor ) throws Exception {
+            value.decrementAndGet();
+        }
+
+        public String getName() {
+            return "increment"; //$NON-NLS-1$
+        }
+    }
+
     @Test
     public void testRedo() {
     }
@@ -0,0 +1,210 @@
+/*
+ *    uDig - User Friendly Desktop Internet GIS client
+ *    http://udig.refractions.net
+ *    (C) 2012, Refractions Research Inc.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * (http://www.eclipse.org/legal/epl-v10.html), and the Refractions BSD
+ * License v1.0 (http://udig.refractions.net/files/bsd3-v10.html).
+ */
+package net.refractions.udig.project.internal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.geotools.data.DataUtilities;
+import org.geotools.factory.CommonFactoryFinder;
+import org.geotools.feature.simple.SimpleFeatureBuilder;
+import org.junit.Ignore;
+import org.junit.Test;
+import org.opengis.feature.simple.SimpleFeatureType;
+import org.opengis.filter.FilterFactory;
+import org.opengis.filter.Id;
+import org.opengis.filter.identity.Identifier;
+
+@SuppressWarnings("nls")
+public class FidSelectionTest {
+
+    @Test
+    public void testAddRemoveToggle() throws Exception {
+        FidSelection selection = new FidSelection();
+        assertTrue(selection.isEmpty());
+
+        assertTrue(selection.add("roads.1"));
+        assertFalse(selection.add("roads.1"));
+        assertTrue(selection.add("roads.70000"));
+        assertTrue(selection.add("rivers.1"));
+        assertEquals(3, selection.size());
+        assertTrue(selection.contains("roads.70000"));
+        assertFalse(selection.contains("roads.2"));
+        assertFalse(selection.contains("lakes.1"));
+
+        assertTrue(selection.remove("roads.1"));
+        assertFalse(selection.remove("roads.1"));
+        assertFalse(selection.contains("roads.1"));
+        assertEquals(2, selection.size());
+
+        assertTrue(selection.toggle("roads.5"));
+        assertTrue(selection.contains("roads.5"));
+        assertFalse(selection.toggle("roads.5"));
+        assertFalse(selection.contains("roads.5"));
+        assertEquals(2, selection.size());
+    }
+
+    @Test
+    public void testOtherIds() throws Exception {
+        FidSelection selection = new FidSelection(Arrays.asList("roads.007", "roads.7",
+                "fid-4a3b", "17", "roads."));
+        assertEquals(5, selection.size());
+        // leading zeros are kept as they are
+        assertTrue(selection.contains("roads.007"));
+        assertTrue(selection.contains("roads.7"));
+        assertTrue(selection.contains("fid-4a3b"));
+        assertTrue(selection.contains("17"));
+        assertTrue(selection.contains("roads."));
+
+        Set<String> ids = new HashSet<String>();
+        for( String fid : selection ) {
+            ids.add(fid);
+        }
+        assertEquals(new HashSet<String>(Arrays.asList("roads.007", "roads.7", "fid-4a3b", "17",
+                "roads.")), ids);
+    }
+
+    @Test
+    public void testIterationOrder() throws Exception {
+        FidSelection selection = new FidSelection(Arrays.asList("roads.200000", "roads.3",
+                "roads.64", "roads.65536", "roads.63"));
+        List<String> ids = new ArrayList<String>();
+        for( String fid : selection ) {
+            ids.add(fid);
+        }
+        assertEquals(Arrays.asList("roads.3", "roads.63", "roads.64", "roads.65536",
+                "roads.200000"), ids);
+    }
+
+    @Test
+    public void testIdFilter() throws Exception {
+        FilterFactory ff = CommonFactoryFinder.getFilterFactory(null);
+        FidSelection selection = new FidSelection(Arrays.asList("parcel.1", "parcel.3"));
+
+        Set<String> identifiers = new HashSet<String>();
+        for( Identifier id : selection.getIdentifiers() ) {
+            identifiers.add(id.getID().toString());
+        }
+        assertEquals(new HashSet<String>(Arrays.asList("parcel.1", "parcel.3")), identifiers);
+
+        Id filter = ff.id(new HashSet<Identifier>(Arrays.asList(ff.featureId("parcel.1"),
+                ff.featureId("parcel.3"))));
+        assertEquals(selection, filter);
+
+        SimpleFeatureType type = DataUtilities.createType("parcel", "name:String");
+        assertTrue(selection.evaluate(SimpleFeatureBuilder.build(type, new Object[]{"a"},
+                "parcel.3")));
+        assertFalse(selection.evaluate(SimpleFeatureBuilder.build(type, new Object[]{"b"},
+                "parcel.2")));
+    }
+
+    @Test
+    public void testCombine() throws Exception {
+        FidSelection selection = new FidSelection(Arrays.asList("a.1", "a.2", "a.3"));
+        FidSelection other = new FidSelection(Arrays.asList("a.2", "a.3", "a.4"));
+
+        FidSelection union = selection.copy();
+        union.addAll(other);
+        assertEquals(4, union.size());
+        assertEquals(3, selection.size());
+
+        FidSelection intersection = FidSelection.valueOf(selection);
+        intersection.retainAll(other);
+        assertEquals(new FidSelection(Arrays.asList("a.2", "a.3")), intersection);
+
+        FidSelection difference = selection.copy();
+        difference.removeAll(other);
+        assertEquals(new FidSelection(Arrays.asList("a.1")), difference);
+
+        // a selection combined with itself
+        difference.addAll(difference);
+        assertEquals(1, difference.size());
+    }
+
+    @Test
+    public void testArrayAndBitmapBlocks() throws Exception {
+        FidSelection selection = new FidSelection();
+        // past 4096 rows the block turns into a bitmap
+        for( int i = 0; i < 5000; i++ ) {
+            assertTrue(selection.add("roads." + (i * 3)));
+        }
+        FidSelection copy = selection.copy();
+        assertEquals(5000, selection.size());
+        assertTrue(selection.contains("roads.14997"));
+        assertFalse(selection.contains("roads.14998"));
+
+        // and back into an array once enough rows are removed
+        for( int i = 0; i < 2000; i++ ) {
+            assertTrue(selection.remove("roads." + (i * 3)));
+        }
+        assertEquals(3000, selection.size());
+        assertFalse(selection.contains("roads.0"));
+        assertTrue(selection.contains("roads.6000"));
+        List<String> ids = new ArrayList<String>();
+        for( String fid : selection ) {
+            ids.add(fid);
+        }
+        assertEquals(3000, ids.size());
+        assertEquals("roads.6000", ids.get(0));
+        assertEquals("roads.14997", ids.get(2999));
+
+        for( int i = 0; i < 2000; i++ ) {
+            selection.add("roads." + (i * 3));
+        }
+        assertEquals(copy, selection);
+    }
+
+    @Test
+    public void testHashCode() throws Exception {
+        FidSelection selection = new FidSelection(Arrays.asList("roads.0", "roads.7",
+                "roads.1234567", "rivers.70000", "fid-4a3b", "roads.007"));
+        assertEquals(new HashSet<Object>(selection.getIDs()).hashCode(), selection.hashCode());
+        selection.remove("roads.7");
+        assertEquals(new HashSet<Object>(selection.getIDs()).hashCode(), selection.hashCode());
+        assertEquals(new FidSelection(Arrays.asList("roads.0", "roads.1234567", "rivers.70000",
+                "fid-4a3b", "roads.007")).hashCode(), selection.hashCode());
+    }
+
+    /**
+     * Measures selecting, testing and turning into identifiers a large selection; ignored as it
+     * is a benchmark rather than a test.
+     */
+    @Ignore
+    @Test
+    public void benchmarkSelection() throws Exception {
+        int count = 1000000;
+        long start = System.nanoTime();
+        FidSelection selection = new FidSelection();
+        for( int i = 0; i < count; i += 2 ) {
+            selection.add("parcel." + i);
+        }
+        long added = System.nanoTime();
+        int found = 0;
+        for( int i = 0; i < count; i++ ) {
+            if (selection.contains("parcel." + i)) {
+                found++;
+            }
+        }
+        long tested = System.nanoTime();
+        int identifiers = selection.getIdentifiers().size();
+        long end = System.nanoTime();
+        System.out.println("add " + (count / 2) + ": " + (added - start) / 1000000 + " ms, contains "
+                + count + ": " + (tested - added) / 1000000 + " ms (" + found + " found), "
+                + identifiers + " identifiers: " + (end - tested) / 1000000 + " ms");
+    }
+}
@@ -0,0 +1,166 @@
+/*
+ *    uDig - User Friendly Desktop Internet GIS client
+ *    http://udig.refractions.net
+ *    (C) 2012, Refractions Research Inc.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * (http://www.eclipse.org/legal/epl-v10.html), and the Refractions BSD
+ * License v1.0 (http://udig.refractions.net/files/bsd3-v10.html).
+ */
+package net.refractions.udig.project.internal.commands.edit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+
+import java.io.InterruptedIOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import net.refractions.udig.core.internal.FeatureUtils;
+import net.refractions.udig.project.command.MapCommand;
+import net.refractions.udig.project.command.UndoableCommand;
+
+import org.eclipse.core.runtime.NullProgressMonitor;
+import org.geotools.data.DataUtilities;
+import org.geotools.data.FeatureStore;
+import org.geotools.data.memory.MemoryDataStore;
+import org.geotools.feature.FeatureCollection;
+import org.geotools.feature.FeatureIterator;
+import org.geotools.feature.simple.SimpleFeatureBuilder;
+import org.geotools.geometry.jts.JTSFactoryFinder;
+import org.geotools.referencing.CRS;
+import org.geotools.referencing.crs.DefaultGeographicCRS;
+import org.junit.Before;
+import org.junit.Test;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+import org.opengis.filter.identity.FeatureId;
+import org.opengis.referencing.operation.MathTransform;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.GeometryFactory;
+
+@SuppressWarnings("nls")
+public class FeatureCopyPipelineTest {
+
+    private static final int COUNT = FeatureCopyPipeline.BATCH_SIZE * 3 + 7;
+
+    private SimpleFeatureType sourceType;
+    private SimpleFeatureType targetType;
+    private List<SimpleFeature> sourceFeatures;
+    private MathTransform mt;
+
+    @Before
+    public void setUp() throws Exception {
+        sourceType = DataUtilities.createType("source", "geom:Point:srid=4326,name:String");
+        targetType = DataUtilities.createType("target", "geom:Point:srid=4326,name:String");
+        GeometryFactory factory = JTSFactoryFinder.getGeometryFactory(null);
+        sourceFeatures = new ArrayList<SimpleFeature>();
+        for( int i = 0; i < COUNT; i++ ) {
+            sourceFeatures.add(SimpleFeatureBuilder.build(sourceType, new Object[]{
+                    factory.createPoint(new Coordinate(i % 100, i / 100)), "f" + i}, "source." + i));
+        }
+        mt = CRS.findMathTransform(DefaultGeographicCRS.WGS84, DefaultGeographicCRS.WGS84);
+    }
+
+    @SuppressWarnings("unchecked")
+    private FeatureStore<SimpleFeatureType, SimpleFeature> createDestination() throws Exception {
+        MemoryDataStore store = new MemoryDataStore();
+        store.createSchema(targetType);
+        return (FeatureStore<SimpleFeatureType, SimpleFeature>) store.getFeatureSource("target");
+    }
+
+    private FeatureCopyPipeline createPipeline() {
+        return new FeatureCopyPipeline(DataUtilities.collection(sourceFeatures), targetType,
+                FeatureUtils.createAttributeMapping(sourceType, targetType), mt);
+    }
+
+    @Test
+    public void testCopy() throws Exception {
+        FeatureStore<SimpleFeatureType, SimpleFeature> destination = createDestination();
+        FeatureCopyPipeline pipeline = createPipeline();
+
+        Set<FeatureId> ids = pipeline.copy(destination, true, new NullProgressMonitor());
+
+        assertEquals(COUNT, ids.size());
+        assertEquals(COUNT, pipeline.getCount());
+        assertEquals(COUNT, destination.getFeatures().size());
+        assertEquals(0, pipeline.getBounds().getMinX(), 0);
+        assertEquals(99, pipeline.getBounds().getMaxX(), 0);
+        assertEquals((COUNT - 1) / 100, pipeline.getBounds().getMaxY(), 0);
+    }
+
+    @Test
+    public void testCopyWithoutIds() throws Exception {
+        FeatureStore<SimpleFeatureType, SimpleFeature> destination = createDestination();
+        FeatureCopyPipeline pipeline = createPipeline();
+
+        assertNull(pipeline.copy(destination, false, new NullProgressMonitor()));
+        assertEquals(COUNT, destination.getFeatures().size());
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    public void testCopyInOrder() throws Exception {
+        final List<Object> names = new ArrayList<Object>();
+        // records the features in the order they are added
+        FeatureStore<SimpleFeatureType, SimpleFeature> destination = (FeatureStore<SimpleFeatureType, SimpleFeature>) Proxy
+                .newProxyInstance(getClass().getClassLoader(), new Class[]{FeatureStore.class},
+                        new InvocationHandler(){
+                            public Object invoke( Object proxy, Method method, Object[] args ) {
+                                if (!method.getName().equals("addFeatures")) {
+                                    throw new UnsupportedOperationException(method.getName());
+                                }
+                                List<FeatureId> ids = new ArrayList<FeatureId>();
+                                FeatureIterator<SimpleFeature> iter = ((FeatureCollection<SimpleFeatureType, SimpleFeature>) args[0])
+                                        .features();
+                                try {
+                                    while( iter.hasNext() ) {
+                                        SimpleFeature feature = iter.next();
+                                        names.add(feature.getAttribute("name"));
+                                        ids.add(feature.getIdentifier());
+                                    }
+                                } finally {
+                                    iter.close();
+                                }
+                                return ids;
+                            }
+                        });
+
+        FeatureCollection<SimpleFeatureType, SimpleFeature> source = DataUtilities
+                .collection(sourceFeatures);
+        List<Object> expected = new ArrayList<Object>();
+        FeatureIterator<SimpleFeature> iter = source.features();
+        try {
+            while( iter.hasNext() ) {
+                expected.add(iter.next().getAttribute("name"));
+            }
+        } finally {
+            iter.close();
+        }
+        new FeatureCopyPipeline(source, targetType, FeatureUtils.createAttributeMapping(
+                sourceType, targetType), mt).copy(destination, false, new NullProgressMonitor());
+
+        assertEquals(COUNT, names.size());
+        assertEquals(expected, names);
+    }
+
+    @Test(expected = InterruptedIOException.class)
+    public void testCancel() throws Exception {
+        NullProgressMonitor monitor = new NullProgressMonitor();
+        monitor.setCanceled(true);
+        createPipeline().copy(createDestination(), true, monitor);
+    }
+
+    @Test
+    public void testCopyWithoutUndo() throws Exception {
+        MapCommand command = CopyFeaturesCommand.createWithoutUndo(null, null, null);
+        assertFalse(command instanceof UndoableCommand);
+    }
+}
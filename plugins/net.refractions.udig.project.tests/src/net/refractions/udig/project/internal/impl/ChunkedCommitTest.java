@@ -0,0 +1,142 @@
+/*
+ *    uDig - User Friendly Desktop Internet GIS client
+ *    http://udig.refractions.net
+ *    (C) 2012, Refractions Research Inc.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * (http://www.eclipse.org/legal/epl-v10.html), and the Refractions BSD
+ * License v1.0 (http://udig.refractions.net/files/bsd3-v10.html).
+ */
+package net.refractions.udig.project.internal.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+
+import org.geotools.data.DataUtilities;
+import org.geotools.data.memory.MemoryDataStore;
+import org.geotools.data.simple.SimpleFeatureSource;
+import org.geotools.data.simple.SimpleFeatureStore;
+import org.geotools.factory.CommonFactoryFinder;
+import org.geotools.feature.simple.SimpleFeatureBuilder;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+import org.opengis.filter.FilterFactory;
+import org.opengis.filter.Id;
+import org.opengis.filter.identity.FeatureId;
+
+@SuppressWarnings("nls")
+public class ChunkedCommitTest {
+
+    private FilterFactory ff = CommonFactoryFinder.getFilterFactory(null);
+    private SimpleFeatureType type;
+    private MemoryDataStore data;
+    private UDIGTransaction transaction;
+    private SimpleFeatureStore store;
+
+    @Before
+    public void setUp() throws Exception {
+        type = DataUtilities.createType("road", "name:String");
+        SimpleFeature[] features = new SimpleFeature[5];
+        for( int i = 0; i < features.length; i++ ) {
+            features[i] = SimpleFeatureBuilder.build(type, new Object[]{"road" + i}, "road." + i);
+        }
+        data = new MemoryDataStore(features);
+        transaction = new UDIGTransaction();
+        store = (SimpleFeatureStore) data.getFeatureSource("road");
+        store.setTransaction(transaction);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        transaction.closeInternal();
+    }
+
+    @Test
+    public void testCommitInChunks() throws Exception {
+        transaction.setChunkSize(2);
+
+        Id modified = ff.id(new HashSet<FeatureId>(Arrays.asList(ff.featureId("road.1"), ff
+                .featureId("road.2"), ff.featureId("road.3"))));
+        ChunkedCommit.modified(store, modified);
+        store.modifyFeatures("name", "renamed", modified);
+
+        Id removed = ff.id(Collections.singleton(ff.featureId("road.4")));
+        ChunkedCommit.removed(store, removed);
+        store.removeFeatures(removed);
+
+        List<FeatureId> added = store.addFeatures(DataUtilities.collection(SimpleFeatureBuilder
+                .build(type, new Object[]{"new"}, "road.new")));
+        ChunkedCommit.added(store, added);
+
+        ChunkedCommit chunks = transaction.getChunkedCommit();
+        assertTrue(chunks.isChunked());
+        assertEquals(5, chunks.getPending());
+        chunks.commit();
+        assertEquals(0, chunks.getPending());
+        assertEquals(5, chunks.getWritten());
+        // the map keeps its edits until the chunks are written
+        assertEquals(3, store.getFeatures(ff.equals(ff.property("name"), ff.literal("renamed")))
+                .size());
+        transaction.rollbackInternal();
+
+        SimpleFeatureSource source = data.getFeatureSource("road");
+        assertEquals(5, source.getFeatures().size());
+        assertEquals(3, source.getFeatures(
+                ff.equals(ff.property("name"), ff.literal("renamed"))).size());
+        assertEquals(1, source.getFeatures(ff.equals(ff.property("name"), ff.literal("new")))
+                .size());
+        assertEquals(0, source.getFeatures(removed).size());
+    }
+
+    @Test
+    public void testCommitAtOnce() throws Exception {
+        Id modified = ff.id(Collections.singleton(ff.featureId("road.1")));
+        ChunkedCommit.modified(store, modified);
+        store.modifyFeatures("name", "renamed", modified);
+        // no chunk size
+        assertFalse(transaction.getChunkedCommit().isChunked());
+
+        transaction.setChunkSize(2);
+        ChunkedCommit.unjournaled(transaction);
+        assertFalse(transaction.getChunkedCommit().isChunked());
+
+        transaction.commitInternal();
+        assertEquals(1, data.getFeatureSource("road").getFeatures(
+                ff.equals(ff.property("name"), ff.literal("renamed"))).size());
+    }
+
+    @Test
+    public void testEditAfterChunksWritten() throws Exception {
+        transaction.setChunkSize(2);
+        List<FeatureId> added = store.addFeatures(DataUtilities.collection(SimpleFeatureBuilder
+                .build(type, new Object[]{"new"}, "road.new")));
+        ChunkedCommit.added(store, added);
+        ChunkedCommit chunks = transaction.getChunkedCommit();
+        assertTrue(chunks.isChunked());
+        chunks.commit();
+
+        // as if a later chunk failed: the map still has the added feature and is edited again
+        Id filter = ff.id(Collections.singleton(added.get(0)));
+        ChunkedCommit.modified(store, filter);
+        store.modifyFeatures("name", "edited", filter);
+        assertEquals(1, chunks.getPending());
+        assertTrue(chunks.isChunked());
+        chunks.commit();
+        transaction.rollbackInternal();
+
+        SimpleFeatureSource source = data.getFeatureSource("road");
+        assertEquals(6, source.getFeatures().size());
+        assertEquals(1, source.getFeatures(ff.equals(ff.property("name"), ff.literal("edited")))
+                .size());
+    }
+}
@@ -0,0 +1,103 @@
+/*
+ *    uDig - User Friendly Desktop Internet GIS client
+ *    http://udig.refractions.net
+ *    (C) 2012, Refractions Research Inc.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * (http://www.eclipse.org/legal/epl-v10.html), and the Refractions BSD
+ * License v1.0 (http://udig.refractions.net/files/bsd3-v10.html).
+ */
+package net.refractions.udig.project.internal.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import net.refractions.udig.project.internal.Map;
+import net.refractions.udig.project.tests.support.MapTests;
+
+import org.eclipse.core.runtime.NullProgressMonitor;
+import org.geotools.data.FeatureEvent;
+import org.geotools.data.FeatureSource;
+import org.geotools.factory.CommonFactoryFinder;
+import org.geotools.geometry.jts.ReferencedEnvelope;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.opengis.filter.FilterFactory;
+import org.opengis.filter.Id;
+import org.opengis.filter.identity.Identifier;
+
+@SuppressWarnings("nls")
+public class EditBatchTest {
+
+    private FilterFactory ff = CommonFactoryFinder.getFilterFactory(null);
+    private LayerImpl layer;
+    private FeatureSource< ? , ? > source;
+
+    @Before
+    public void setUp() throws Exception {
+        Map map = MapTests.createDefaultMap("typename", 4, true, null);
+        layer = (LayerImpl) map.getLayersInternal().get(0);
+        source = layer.getResource(FeatureSource.class, new NullProgressMonitor());
+        if (source instanceof UDIGStore) {
+            source = ((UDIGStore) source).wrapped();
+        }
+        layer.getFeatureChanges().clear();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        while( EditBatch.isActive() ) {
+            EditBatch.end();
+        }
+    }
+
+    @Test
+    public void testMergedEventHasAllIds() throws Exception {
+        EditBatch.begin();
+        layer.featureListener.changed(added("typename.1", 0));
+        layer.featureListener.changed(added("typename.2", 10));
+        assertTrue(layer.getFeatureChanges().isEmpty());
+
+        EditBatch.end();
+        assertEquals(1, layer.getFeatureChanges().size());
+        FeatureEvent event = layer.getFeatureChanges().get(0);
+        assertEquals(ids("typename.1", "typename.2"), ((Id) event.getFilter()).getIdentifiers());
+        assertEquals(new ReferencedEnvelope(0, 11, 0, 11, null), new ReferencedEnvelope(event
+                .getBounds()));
+    }
+
+    @Test
+    public void testFlushFeatureChanges() throws Exception {
+        EditBatch.begin();
+        layer.featureListener.changed(added("typename.1", 0));
+        EditBatch.flushFeatureChanges(layer);
+        assertEquals(1, layer.getFeatureChanges().size());
+        assertTrue(EditBatch.isActive());
+
+        // later events are still held back and not sent twice
+        layer.featureListener.changed(added("typename.2", 10));
+        assertEquals(1, layer.getFeatureChanges().size());
+        EditBatch.end();
+        assertEquals(2, layer.getFeatureChanges().size());
+        assertFalse(EditBatch.isActive());
+    }
+
+    private FeatureEvent added( String fid, double min ) {
+        ReferencedEnvelope bounds = new ReferencedEnvelope(min, min + 1, min, min + 1, null);
+        return new FeatureEvent(source, FeatureEvent.Type.ADDED, bounds, ff.id(ids(fid)));
+    }
+
+    private Set<Identifier> ids( String... fids ) {
+        Set<Identifier> ids = new HashSet<Identifier>();
+        for( String fid : fids ) {
+            ids.add(ff.featureId(fid));
+        }
+        return ids;
+    }
+}
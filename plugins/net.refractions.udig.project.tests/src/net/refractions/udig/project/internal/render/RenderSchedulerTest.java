@@ -0,0 +1,107 @@
+/* uDig - User Friendly Desktop Internet GIS client
+ * http://udig.refractions.net
+ * (C) 2012, Refractions Research Inc.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * (http://www.eclipse.org/legal/epl-v10.html), and the Refractions BSD
+ * License v1.0 (http://udig.refractions.net/files/bsd3-v10.html).
+ */
+package net.refractions.udig.project.internal.render;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.eclipse.core.runtime.NullProgressMonitor;
+import org.junit.Test;
+
+@SuppressWarnings("nls")
+public class RenderSchedulerTest {
+
+    private final List<String> order = new CopyOnWriteArrayList<String>();
+
+    private Thread render( final RenderScheduler scheduler, final String name, final long cost ) {
+        Thread thread = new Thread(){
+            public void run() {
+                try {
+                    RenderScheduler.Slot slot = scheduler.acquire(name, cost,
+                            new NullProgressMonitor());
+                    order.add(name);
+                    scheduler.release(slot);
+                } catch (InterruptedException e) {
+                    // test fails
+                }
+            }
+        };
+        thread.start();
+        return thread;
+    }
+
+    private void waitFor( RenderScheduler scheduler, int waiting ) throws InterruptedException {
+        long start = System.currentTimeMillis();
+        while( scheduler.getWaiting() < waiting && System.currentTimeMillis() - start < 5000 ) {
+            Thread.sleep(10);
+        }
+        assertEquals(waiting, scheduler.getWaiting());
+    }
+
+    @Test
+    public void testCheapestFirst() throws Exception {
+        RenderScheduler scheduler = new RenderScheduler(1);
+        RenderScheduler.Slot slot = scheduler.acquire("first", 0, null);
+        assertEquals(1, scheduler.getRunning());
+
+        Thread network = render(scheduler, "network", RenderScheduler.DEFAULT_COST * 2);
+        waitFor(scheduler, 1);
+        Thread memory = render(scheduler, "memory", 0);
+        Thread local = render(scheduler, "local", RenderScheduler.DEFAULT_COST);
+        waitFor(scheduler, 3);
+
+        scheduler.release(slot);
+        network.join(5000);
+        memory.join(5000);
+        local.join(5000);
+
+        assertEquals(Arrays.asList("memory", "local", "network"), order);
+        assertEquals(0, scheduler.getRunning());
+        assertTrue(scheduler.getTimeToFirstPaint() >= 0);
+        assertTrue(scheduler.getRenderTime("network") >= 0);
+        assertEquals(-1, scheduler.getRenderTime("unknown"));
+    }
+
+    @Test
+    public void testBounded() throws Exception {
+        RenderScheduler scheduler = new RenderScheduler(2);
+        RenderScheduler.Slot slot1 = scheduler.acquire("1", 0, null);
+        RenderScheduler.Slot slot2 = scheduler.acquire("2", 0, null);
+        Thread third = render(scheduler, "3", 0);
+        waitFor(scheduler, 1);
+        assertEquals(Collections.emptyList(), order);
+        assertEquals(2, scheduler.getRunning());
+
+        scheduler.release(slot1);
+        third.join(5000);
+        assertEquals(Collections.singletonList("3"), order);
+        scheduler.release(slot2);
+        assertEquals(0, scheduler.getRunning());
+    }
+
+    @Test
+    public void testCanceledWhileWaiting() throws Exception {
+        RenderScheduler scheduler = new RenderScheduler(1);
+        RenderScheduler.Slot slot = scheduler.acquire("1", 0, null);
+        NullProgressMonitor monitor = new NullProgressMonitor();
+        monitor.setCanceled(true);
+        assertNull(scheduler.acquire("2", 0, monitor));
+        assertEquals(0, scheduler.getWaiting());
+        scheduler.release(slot);
+        assertNotNull(scheduler.acquire("2", 0, monitor));
+    }
+}
@@ -0,0 +1,170 @@
+/* uDig - User Friendly Desktop Internet GIS client
+ * http://udig.refractions.net
+ * (C) 2012, Refractions Research Inc.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * (http://www.eclipse.org/legal/epl-v10.html), and the Refractions BSD
+ * License v1.0 (http://udig.refractions.net/files/bsd3-v10.html).
+ */
+package net.refractions.udig.project.internal.render.impl;
+
+import static org.junit.Assert.assertEquals;
+
+import java.awt.Rectangle;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Rectangle2D;
+import java.util.List;
+
+import org.geotools.data.DataUtilities;
+import org.geotools.feature.simple.SimpleFeatureBuilder;
+import org.geotools.geometry.jts.JTSFactoryFinder;
+import org.geotools.geometry.jts.LiteShape2;
+import org.geotools.styling.StyleBuilder;
+import org.geotools.styling.TextSymbolizer;
+import org.junit.Before;
+import org.junit.Test;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.Envelope;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.GeometryFactory;
+import com.vividsolutions.jts.geom.util.AffineTransformation;
+
+@SuppressWarnings("nls")
+public class UDIGLabelCacheTest {
+
+    private static final String LAYER = "layer";
+
+    private static final Rectangle SCREEN = new Rectangle(0, 0, 300, 100);
+
+    private UDIGLabelCache cache;
+    private SimpleFeatureType type;
+    private TextSymbolizer symbolizer;
+    private GeometryFactory factory;
+    private AffineTransform worldToScreen;
+
+    @Before
+    public void setUp() throws Exception {
+        cache = new UDIGLabelCache();
+        type = DataUtilities.createType("label", "geom:Geometry,name:String");
+        symbolizer = new StyleBuilder().createTextSymbolizer(null, "name");
+        factory = JTSFactoryFinder.getGeometryFactory(null);
+        worldToScreen = new AffineTransform();
+        cache.start();
+    }
+
+    /**
+     * Starts rendering the layer with the current transform, the viewport is the world area of
+     * the screen.
+     */
+    private void startLayer( Envelope area ) throws Exception {
+        Rectangle2D world = worldToScreen.createInverse().createTransformedShape(SCREEN)
+                .getBounds2D();
+        Envelope viewport = new Envelope(world.getMinX(), world.getMaxX(), world.getMinY(), world
+                .getMaxY());
+        cache.clear(LAYER, worldToScreen, viewport, area);
+        cache.startLayer(LAYER);
+    }
+
+    private void put( String name, Geometry world ) throws Exception {
+        SimpleFeature feature = SimpleFeatureBuilder.build(type, new Object[]{world, name}, name);
+        Geometry screen = new AffineTransformation(worldToScreen.getScaleX(), worldToScreen
+                .getShearX(), worldToScreen.getTranslateX(), worldToScreen.getShearY(),
+                worldToScreen.getScaleY(), worldToScreen.getTranslateY()).transform(world);
+        cache.put(LAYER, symbolizer, feature, new LiteShape2(screen, null, null, false), null);
+    }
+
+    private void put( String name, double x, double y ) throws Exception {
+        put(name, factory.createPoint(new Coordinate(x, y)));
+    }
+
+    @Test
+    public void testLabelsOutsideRefreshAreKept() throws Exception {
+        startLayer(null);
+        put("left", 10, 10);
+        put("right", 200, 10);
+        cache.endLayer(LAYER, null, SCREEN);
+        assertEquals(2, cache.orderedLabels().size());
+
+        // only the right part of the layer is rendered again
+        startLayer(new Envelope(150, 300, 0, 100));
+        put("right2", 210, 10);
+        cache.endLayer(LAYER, null, SCREEN);
+        assertEquals(2, cache.orderedLabels().size());
+
+        cache.clear(LAYER);
+        assertEquals(0, cache.orderedLabels().size());
+    }
+
+    @Test
+    public void testOnlyFeaturesInRefreshAreRemoved() throws Exception {
+        startLayer(null);
+        // the bounds of the line contain the refreshed area but the line does not cross it
+        put("line", factory.createLineString(new Coordinate[]{new Coordinate(0, 90),
+                new Coordinate(100, 90), new Coordinate(100, 0)}));
+        put("point", 20, 20);
+        cache.endLayer(LAYER, null, SCREEN);
+        assertEquals(2, cache.orderedLabels().size());
+
+        startLayer(new Envelope(0, 40, 0, 40));
+        cache.endLayer(LAYER, null, SCREEN);
+        assertEquals(1, cache.orderedLabels().size());
+    }
+
+    @Test
+    public void testPanKeepsLabels() throws Exception {
+        startLayer(null);
+        put("a", 10, 10);
+        put("b", 250, 10);
+        cache.endLayer(LAYER, null, SCREEN);
+        List< ? > before = cache.orderedLabels();
+        assertEquals(2, before.size());
+
+        // pan right by 100, "a" leaves the screen and "b" moves with the map
+        worldToScreen = AffineTransform.getTranslateInstance(-100, 0);
+        startLayer(null);
+        // the label of "b" put again at the same place is dropped, "c" is new
+        put("b", 250, 10);
+        put("c", 350, 10);
+        cache.endLayer(LAYER, null, SCREEN);
+        List< ? > after = cache.orderedLabels();
+        assertEquals(3, after.size());
+        // the labels in the wrapped cache were not put again
+        assertEquals(2, countSame(before, after));
+
+        // pan again, most labels are off the screen now and are dropped
+        worldToScreen = AffineTransform.getTranslateInstance(-300, 0);
+        startLayer(null);
+        put("c", 350, 10);
+        cache.endLayer(LAYER, null, SCREEN);
+        assertEquals(1, cache.orderedLabels().size());
+    }
+
+    private static int countSame( List< ? > before, List< ? > after ) {
+        int same = 0;
+        for( Object item : after ) {
+            for( Object old : before ) {
+                if (item == old) {
+                    same++;
+                }
+            }
+        }
+        return same;
+    }
+
+    @Test
+    public void testZoomClearsLabels() throws Exception {
+        startLayer(null);
+        put("a", 10, 10);
+        cache.endLayer(LAYER, null, SCREEN);
+        assertEquals(1, cache.orderedLabels().size());
+
+        worldToScreen = AffineTransform.getScaleInstance(2, 2);
+        startLayer(null);
+        assertEquals(0, cache.orderedLabels().size());
+        cache.endLayer(LAYER, null, SCREEN);
+    }
+}
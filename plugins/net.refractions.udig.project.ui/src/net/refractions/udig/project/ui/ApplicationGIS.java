@@ -27,6 +27,13 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.SortedSet;
 import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
 
 import net.refractions.udig.catalog.IGeoResource;
 import net.refractions.udig.core.internal.ExtensionPointList;
@@ -80,11 +87,13 @@ import net.refractions.udig.ui.PlatformGIS;
 import org.eclipse.core.runtime.IConfigurationElement;
 import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.core.runtime.ISafeRunnable;
+import org.eclipse.core.runtime.NullProgressMonitor;
 import org.eclipse.emf.common.util.URI;
 import org.eclipse.emf.ecore.EObject;
 import org.eclipse.emf.ecore.resource.Resource;
 import org.eclipse.emf.ecore.util.EcoreUtil;
 import org.eclipse.jface.operation.IRunnableWithProgress;
+import org.eclipse.swt.widgets.Display;
 import org.eclipse.ui.IViewPart;
 import org.eclipse.ui.IViewReference;
 import org.eclipse.ui.IWorkbenchPage;
@@ -93,6 +102,8 @@ import org.eclipse.ui.PlatformUI;
 import org.geotools.geometry.jts.ReferencedEnvelope;
 import org.opengis.coverage.grid.GridCoverage;
 
+import com.vividsolutions.jts.geom.Envelope;
+
 /**
  * A facade into udig to simplify operations such as getting the active map and
  * openning a map editor.
@@ -633,6 +644,10 @@ public class ApplicationGIS {
         final int dpi;
         final boolean transparent;
         final boolean doBufferedImageForGrids;
+        long bandBufferSize;
+        boolean rasterizeVectors;
+        ConcurrentMap<String, AtomicLong> layerTimes;
+        boolean copyMap = true;
 
         /**
          * New instance
@@ -744,6 +759,77 @@ public class ApplicationGIS {
                     params2.destinationSize), params2.toDraw,
                     params2.boundsStrategy, params2.dpi,  params2.selectionStyle,
                     params2.monitor,params2.transparent, params2.doBufferedImageForGrids);
+            this.bandBufferSize = params2.bandBufferSize;
+            this.rasterizeVectors = params2.rasterizeVectors;
+            this.layerTimes = params2.layerTimes;
+            this.copyMap = params2.copyMap;
+        }
+
+        /**
+         * Draws raster layers in horizontal bands, rendering the layers of a band in parallel.
+         * <p>
+         * Each layer of a band is drawn into its own image and the images are drawn on the
+         * graphics in layer order once they are all done, so the graphics (for instance a PDF
+         * page) is only used by the calling thread. The bands are sized so that the images of a
+         * band use at most <code>bytes</code> of memory, whatever the size of the page.
+         * </p>
+         * 
+         * @param bytes memory used by the images of a band, 0 to draw each layer straight on the
+         *        graphics (the default)
+         * @since 1.4.0
+         */
+        public void setBandBufferSize( long bytes ) {
+            this.bandBufferSize = bytes;
+        }
+
+        /**
+         * Draws vector layers into the bands too rather than as shapes on the graphics. Only used
+         * if a band buffer size is set.
+         * 
+         * @param rasterizeVectors true to draw vector layers as images
+         * @see #setBandBufferSize(long)
+         * @since 1.4.0
+         */
+        public void setRasterizeVectors( boolean rasterizeVectors ) {
+            this.rasterizeVectors = rasterizeVectors;
+        }
+
+        /**
+         * Sets whether the map is copied before it is drawn. Drawing changes the viewport of the
+         * map, so only a map made with {@link ApplicationGIS#copyMap(IMap)} that nothing else uses
+         * during the draw should be drawn without being copied; it saves copying the map and its
+         * styles for each draw.
+         * 
+         * @param copyMap false to draw the map itself, true by default
+         * @since 1.4.0
+         */
+        public void setCopyMap( boolean copyMap ) {
+            this.copyMap = copyMap;
+        }
+
+        /**
+         * Adds the time (in ms) spent rendering each layer to the provided map, by layer name.
+         * Several draws can share the same map to add up the time of each layer.
+         * 
+         * @param layerTimes the map to add the times to, null to not record them
+         * @since 1.4.0
+         */
+        public void setLayerTimes( ConcurrentMap<String, AtomicLong> layerTimes ) {
+            this.layerTimes = layerTimes;
+        }
+
+        void addLayerTime( ILayer layer, long start ) {
+            if (layerTimes == null) {
+                return;
+            }
+            AtomicLong time = layerTimes.get(layer.getName());
+            if (time == null) {
+                AtomicLong created = new AtomicLong();
+                time = layerTimes.putIfAbsent(layer.getName(), created);
+                if (time == null)
+                    time = created;
+            }
+            time.addAndGet(System.currentTimeMillis() - start);
         }
         
     }
@@ -761,15 +847,20 @@ public class ApplicationGIS {
         final DrawMapParameter params = new DrawMapParameter( drawMapParams );
         IProgressMonitor monitor = params.monitor;
         
-        final Map map = (Map) EcoreUtil.copy((EObject) params.toDraw);
-        
-        map.getBlackboard().addAll(drawMapParams.toDraw.getBlackboard());
-        
-        for (int i = 0; i < map.getMapLayers().size(); i++) {
-            ILayer source = params.toDraw.getMapLayers().get(i);
-            Layer dest = map.getLayersInternal().get(i);
-            dest.setFilter(source.getFilter());
-            dest.getBlackboard().addAll(source.getBlackboard());
+        final Map map;
+        if (params.copyMap) {
+            map = (Map) EcoreUtil.copy((EObject) params.toDraw);
+            
+            map.getBlackboard().addAll(drawMapParams.toDraw.getBlackboard());
+            
+            for (int i = 0; i < map.getMapLayers().size(); i++) {
+                ILayer source = params.toDraw.getMapLayers().get(i);
+                Layer dest = map.getLayersInternal().get(i);
+                dest.setFilter(source.getFilter());
+                dest.getBlackboard().addAll(source.getBlackboard());
+            }
+        } else {
+            map = (Map) params.toDraw;
         }
         
         IRunnableWithProgress runnable = new IRunnableWithProgress() {
@@ -814,7 +905,7 @@ public class ApplicationGIS {
             private void render(final DrawMapParameter params,
                     IProgressMonitor monitor, RendererCreator decisive,
                     SortedSet<RenderContext> sortedContexts)
-                    throws InvocationTargetException {
+                    throws InvocationTargetException, InterruptedException {
                 
                 monitor.beginTask("Rendering map", sortedContexts.size());
                 RenderContext mainContext = decisive.getContext();
@@ -824,6 +915,8 @@ public class ApplicationGIS {
                 labelPainter.start();
                 
                 Dimension displaySize = params.destinationSize;
+                // consecutive layers drawn in bands
+                List<RenderContext> banded = new ArrayList<RenderContext>();
                 Iterator<RenderContext> iter = sortedContexts.iterator();
                 while (iter.hasNext()) {
                     RenderContext context = (RenderContext) iter.next();
@@ -832,6 +925,15 @@ public class ApplicationGIS {
                     boolean isLayerFromGrid = layer.getGeoResource().canResolve(GridCoverage.class);
                     String layerId = getLayerId(layer);
 
+                    if (params.bandBufferSize > 0 && (isLayerFromGrid || params.rasterizeVectors)) {
+                        if (isVisible(context)) {
+                            banded.add(context);
+                        }
+                        continue;
+                    }
+                    renderBands(params, monitor, decisive, banded, labelPainter);
+                    banded.clear();
+
                     if( !(layer instanceof SelectionLayer) ||
                             ((layer instanceof SelectionLayer) && params.selectionStyle.getShowLabels()) ){
                         labelPainter.startLayer(layerId);
@@ -853,6 +955,7 @@ public class ApplicationGIS {
                                 .trace(
                                         ApplicationGIS.class,
                                         "Issuing render call to " + renderer.getName(), null); //$NON-NLS-1$
+                        long start = System.currentTimeMillis();
                         try {
                             Graphics2D graphics = (Graphics2D) params.graphics.create();
                             if (params.doBufferedImageForGrids && isLayerFromGrid) {
@@ -869,18 +972,115 @@ public class ApplicationGIS {
                             
                         } catch (RenderException e) {
                             throw new InvocationTargetException(e);
+                        } finally {
+                            params.addLayerTime(layer, start);
                         }
                     } finally {
                         labelPainter.endLayer(layerId, params.graphics,
                                 new Rectangle(displaySize));
                     }
                 }
+                renderBands(params, monitor, decisive, banded, labelPainter);
+
                 labelPainter.end(
                         params.graphics,
                         new Rectangle(displaySize));
                 labelPainter.clear();
             }
 
+            private boolean isVisible( RenderContext context ) {
+                if (context instanceof CompositeRenderContext) {
+                    for (ILayer tmpLayer : ((CompositeRenderContext) context).getLayers()) {
+                        if (tmpLayer.isVisible())
+                            return true;
+                    }
+                    return false;
+                }
+                return context.getLayer().isVisible();
+            }
+
+            /**
+             * Draws the layers band by band, the layers of a band in parallel.
+             */
+            private void renderBands(final DrawMapParameter params,
+                    final IProgressMonitor monitor, RendererCreator decisive,
+                    List<RenderContext> contexts, ILabelPainter labelPainter)
+                    throws InvocationTargetException, InterruptedException {
+                if (contexts.isEmpty()) {
+                    return;
+                }
+                Dimension size = params.destinationSize;
+                long rowBytes = (long) Math.max(1, size.width) * 4 * contexts.size();
+                int bandHeight = (int) Math.max(1,
+                        Math.min(size.height, params.bandBufferSize / rowBytes));
+
+                final List<Renderer> renderers = new ArrayList<Renderer>(contexts.size());
+                List<String> layerIds = new ArrayList<String>(contexts.size());
+                for (RenderContext context : contexts) {
+                    renderers.add(decisive.getRenderer(context));
+                    ILayer layer = context.getLayer();
+                    if (!(layer instanceof SelectionLayer) || params.selectionStyle.getShowLabels()) {
+                        String layerId = getLayerId(layer);
+                        labelPainter.startLayer(layerId);
+                        layerIds.add(layerId);
+                    }
+                }
+                // progress monitors are not thread safe; the renderers only check for cancel
+                final IProgressMonitor bandMonitor = new NullProgressMonitor(){
+                    @Override
+                    public boolean isCanceled() {
+                        return monitor.isCanceled();
+                    }
+                };
+                ExecutorService pool = Executors.newFixedThreadPool(Math.min(contexts.size(),
+                        Runtime.getRuntime().availableProcessors()));
+                try {
+                    for (int y = 0; y < size.height && !monitor.isCanceled(); y += bandHeight) {
+                        final Rectangle band = new Rectangle(0, y, size.width,
+                                Math.min(bandHeight, size.height - y));
+                        List<Future<BufferedImage>> images = new ArrayList<Future<BufferedImage>>();
+                        for (int i = 0; i < renderers.size(); i++) {
+                            final Renderer renderer = renderers.get(i);
+                            final ILayer layer = contexts.get(i).getLayer();
+                            images.add(pool.submit(new Callable<BufferedImage>(){
+                                public BufferedImage call() throws Exception {
+                                    long start = System.currentTimeMillis();
+                                    BufferedImage image = new BufferedImage(band.width,
+                                            band.height, BufferedImage.TYPE_INT_ARGB);
+                                    Graphics2D graphics = image.createGraphics();
+                                    try {
+                                        graphics.translate(0, -band.y);
+                                        graphics.setClip(band);
+                                        renderer.setRenderBounds(band);
+                                        renderer.render(graphics, bandMonitor);
+                                    } finally {
+                                        graphics.dispose();
+                                        params.addLayerTime(layer, start);
+                                    }
+                                    return image;
+                                }
+                            }));
+                        }
+                        for (Future<BufferedImage> image : images) {
+                            params.graphics.drawImage(image.get(), 0, band.y, null);
+                        }
+                    }
+                } catch (ExecutionException e) {
+                    Throwable cause = e.getCause();
+                    throw new InvocationTargetException(cause instanceof RenderException
+                            ? cause
+                            : new RenderException(cause));
+                } finally {
+                    pool.shutdownNow();
+                    for (Renderer renderer : renderers) {
+                        renderer.setRenderBounds((Envelope) null);
+                    }
+                    for (String layerId : layerIds) {
+                        labelPainter.endLayer(layerId, params.graphics, new Rectangle(size));
+                    }
+                }
+            }
+
             private String getLayerId(ILayer layer ) {
                 String layerId = layer.getID().toString();
                 if ( layer instanceof SelectionLayer )
@@ -891,7 +1091,13 @@ public class ApplicationGIS {
         };
 
         try {
-            PlatformGIS.runBlockingOperation(runnable, monitor);
+            if (Display.getCurrent() == null) {
+                // not called from the display thread (a job or a batch export); nothing to keep
+                // responsive so the map is drawn right here, without needing a workbench
+                runnable.run(monitor == null ? new NullProgressMonitor() : monitor);
+            } else {
+                PlatformGIS.runBlockingOperation(runnable, monitor);
+            }
         } catch (InvocationTargetException e) {
             throw (RenderException) e.getCause();
         } catch (InterruptedException e) {
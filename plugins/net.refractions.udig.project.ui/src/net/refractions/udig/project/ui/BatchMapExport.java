@@ -0,0 +1,426 @@
+/*
+ *    uDig - User Friendly Desktop Internet GIS client
+ *    http://udig.refractions.net
+ *    (C) 2012, Refractions Research Inc.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * (http://www.eclipse.org/legal/epl-v10.html), and the Refractions BSD
+ * License v1.0 (http://udig.refractions.net/files/bsd3-v10.html).
+ */
+package net.refractions.udig.project.ui;
+
+import java.awt.Dimension;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import net.refractions.udig.project.ILayer;
+import net.refractions.udig.project.IMap;
+import net.refractions.udig.project.internal.Project;
+import net.refractions.udig.project.internal.ProjectPlugin;
+import net.refractions.udig.project.internal.render.ViewportModel;
+import net.refractions.udig.project.render.RenderException;
+import net.refractions.udig.project.ui.ApplicationGIS.DrawMapParameter;
+import net.refractions.udig.project.ui.internal.ProjectUIPlugin;
+import net.refractions.udig.project.ui.wizard.export.image.GeotiffImageExportFormat;
+import net.refractions.udig.project.ui.wizard.export.image.ImageExportFormat;
+import net.refractions.udig.project.ui.wizard.export.image.WorldImageExportFormat;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.NullProgressMonitor;
+import org.geotools.geometry.jts.ReferencedEnvelope;
+
+import com.lowagie.text.Document;
+import com.lowagie.text.DocumentException;
+import com.lowagie.text.Rectangle;
+import com.lowagie.text.pdf.PdfContentByte;
+import com.lowagie.text.pdf.PdfWriter;
+
+/**
+ * Draws maps to files without a workbench, for instance a map of each district every night.
+ * <p>
+ * Each {@link Request} names a map, the area to draw, the size of the image and the file to
+ * write. The requests are drawn by a pool of threads. The format is chosen from the extension of
+ * the file: <code>png</code>, <code>jpg</code>, <code>gif</code> and <code>bmp</code> files get a
+ * world file and a projection file, <code>tif</code> files are written as GeoTIFF and
+ * <code>pdf</code> files get a page the size of the image with the vector layers as shapes.
+ * </p>
+ * <p>
+ * Each thread makes one copy of each map and draws all the requests for that map from it without
+ * {@link ApplicationGIS#drawMap(DrawMapParameter)} copying it again, so the map and its styles are
+ * copied once per thread rather than once per request; the layers of all the copies use the
+ * services of the local catalog, so connections are shared as well.
+ * </p>
+ * <p>
+ * Example:
+ *
+ * <pre><code>
+ * IMap map = BatchMapExport.loadMaps(new File(&quot;districts.udig&quot;)).get(0);
+ * List&lt;BatchMapExport.Request&gt; requests = new ArrayList&lt;BatchMapExport.Request&gt;();
+ * for( ReferencedEnvelope district : districts ) {
+ *     requests.add(new BatchMapExport.Request(map, district, new Dimension(1024, 768), -1,
+ *             new File(output, name + &quot;.png&quot;)));
+ * }
+ * BatchMapExport.Statistics statistics = new BatchMapExport(4).export(requests, monitor);
+ * </code></pre>
+ *
+ * </p>
+ *
+ * @since 1.4.0
+ */
+public class BatchMapExport {
+
+    /**
+     * A map to draw to a file.
+     */
+    public static final class Request {
+        private final IMap map;
+        private final ReferencedEnvelope bounds;
+        private final Dimension size;
+        private final double scaleDenominator;
+        private final File destination;
+
+        /**
+         * @param map the map to draw
+         * @param bounds the area to draw, null for the current area of the map
+         * @param size size of the image in pixels
+         * @param scaleDenominator scale to draw at, centered on the bounds; -1 to fit the bounds
+         * @param destination file to write, its extension gives the format
+         */
+        public Request( IMap map, ReferencedEnvelope bounds, Dimension size,
+                double scaleDenominator, File destination ) {
+            this.map = map;
+            this.bounds = bounds;
+            this.size = size;
+            this.scaleDenominator = scaleDenominator;
+            this.destination = destination;
+        }
+
+        public IMap getMap() {
+            return map;
+        }
+
+        public ReferencedEnvelope getBounds() {
+            return bounds;
+        }
+
+        public Dimension getSize() {
+            return size;
+        }
+
+        public double getScaleDenominator() {
+            return scaleDenominator;
+        }
+
+        public File getDestination() {
+            return destination;
+        }
+    }
+
+    /**
+     * How long an export took and where the time went.
+     */
+    public static final class Statistics {
+        private final AtomicInteger exported = new AtomicInteger();
+        private final AtomicInteger failed = new AtomicInteger();
+        private final ConcurrentMap<String, AtomicLong> layerTimes = new ConcurrentHashMap<String, AtomicLong>();
+        private long elapsed;
+
+        /**
+         * @return number of maps written
+         */
+        public int getExported() {
+            return exported.get();
+        }
+
+        /**
+         * @return number of maps that could not be written; the errors are logged
+         */
+        public int getFailed() {
+            return failed.get();
+        }
+
+        /**
+         * @return time taken by the export in ms
+         */
+        public long getElapsed() {
+            return elapsed;
+        }
+
+        /**
+         * @return maps written per minute
+         */
+        public double getMapsPerMinute() {
+            return elapsed == 0 ? 0 : exported.get() * 60000.0 / elapsed;
+        }
+
+        /**
+         * The time spent rendering each layer, by layer name, added up over all the maps. The
+         * layers are rendered in parallel so the total can be more than the elapsed time.
+         *
+         * @return time in ms by layer name
+         */
+        public Map<String, Long> getLayerTimes() {
+            Map<String, Long> times = new HashMap<String, Long>();
+            for( Map.Entry<String, AtomicLong> entry : layerTimes.entrySet() ) {
+                times.put(entry.getKey(), entry.getValue().get());
+            }
+            return times;
+        }
+
+        @Override
+        public String toString() {
+            return exported + " maps in " + elapsed + "ms (" + Math.round(getMapsPerMinute()) //$NON-NLS-1$ //$NON-NLS-2$
+                    + " per minute), " + failed + " failed, layers " + getLayerTimes(); //$NON-NLS-1$ //$NON-NLS-2$
+        }
+    }
+
+    /** memory used by the images of a band when writing PDF files */
+    private static final long PDF_BAND_BUFFER_SIZE = 16L * 1024 * 1024;
+
+    private final int threads;
+    private int dpi = 90;
+    private SelectionStyle selectionStyle = SelectionStyle.IGNORE;
+
+    /**
+     * @param threads number of maps drawn at the same time
+     */
+    public BatchMapExport( int threads ) {
+        this.threads = Math.max(1, threads);
+    }
+
+    /**
+     * @param dpi the dpi the maps are drawn at, 90 by default
+     */
+    public void setDPI( int dpi ) {
+        this.dpi = dpi;
+    }
+
+    /**
+     * @param selectionStyle how the selection is drawn, not at all by default
+     */
+    public void setSelectionStyle( SelectionStyle selectionStyle ) {
+        this.selectionStyle = selectionStyle;
+    }
+
+    /**
+     * Loads a project, for instance <code>districts.udig</code>, and returns its maps.
+     *
+     * @param project the directory of the project
+     * @return the maps of the project
+     * @throws IOException if the project cannot be loaded
+     */
+    public static List<IMap> loadMaps( File project ) throws IOException {
+        Project loaded = ProjectPlugin.getPlugin().getProjectRegistry().getProject(
+                project.getAbsolutePath());
+        if (loaded == null) {
+            throw new IOException("Unable to load project " + project); //$NON-NLS-1$
+        }
+        return loaded.getElements(IMap.class);
+    }
+
+    /**
+     * Draws the maps and writes the files. Blocks until all the requests are done or the monitor
+     * is canceled; a request that fails is logged and the others go on.
+     *
+     * @param requests the maps to draw
+     * @param monitor reports progress, may be null
+     * @return how long the export took
+     * @throws InterruptedException
+     */
+    public Statistics export( List<Request> requests, IProgressMonitor monitor )
+            throws InterruptedException {
+        if (monitor == null) {
+            monitor = new NullProgressMonitor();
+        }
+        final Statistics statistics = new Statistics();
+        long start = System.currentTimeMillis();
+        monitor.beginTask("Exporting maps", requests.size()); //$NON-NLS-1$
+
+        // connect each map to its resources once, before the threads need them
+        Map<IMap, IMap> prepared = new IdentityHashMap<IMap, IMap>();
+        for( Request request : requests ) {
+            if (prepared.put(request.map, request.map) == null) {
+                for( ILayer layer : request.map.getMapLayers() ) {
+                    layer.getGeoResources();
+                }
+            }
+        }
+
+        // the copies of the maps made by each thread
+        final ThreadLocal<Map<IMap, IMap>> copies = new ThreadLocal<Map<IMap, IMap>>(){
+            @Override
+            protected Map<IMap, IMap> initialValue() {
+                return new IdentityHashMap<IMap, IMap>();
+            }
+        };
+        final IProgressMonitor cancel = monitor;
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future< ? >> futures = new ArrayList<Future< ? >>(requests.size());
+            for( final Request request : requests ) {
+                futures.add(pool.submit(new Callable<Object>(){
+                    public Object call() throws Exception {
+                        if (cancel.isCanceled()) {
+                            return null;
+                        }
+                        Map<IMap, IMap> threadCopies = copies.get();
+                        IMap copy = threadCopies.get(request.map);
+                        if (copy == null) {
+                            synchronized (request.map) {
+                                copy = ApplicationGIS.copyMap(request.map);
+                            }
+                            threadCopies.put(request.map, copy);
+                        }
+                        export(request, copy, statistics.layerTimes);
+                        return null;
+                    }
+                }));
+            }
+            for( int i = 0; i < futures.size(); i++ ) {
+                if (!waitFor(futures.get(i), requests.get(i), statistics, monitor)) {
+                    break;
+                }
+                monitor.worked(1);
+            }
+        } finally {
+            pool.shutdownNow();
+            statistics.elapsed = System.currentTimeMillis() - start;
+            ProjectUIPlugin.trace(BatchMapExport.class, statistics.toString(), null);
+            monitor.done();
+        }
+        return statistics;
+    }
+
+    /**
+     * @return false if the monitor was canceled
+     */
+    private boolean waitFor( Future< ? > future, Request request, Statistics statistics,
+            IProgressMonitor monitor ) throws InterruptedException {
+        while( true ) {
+            if (monitor.isCanceled()) {
+                return false;
+            }
+            try {
+                future.get(500, TimeUnit.MILLISECONDS);
+                statistics.exported.incrementAndGet();
+                return true;
+            } catch (TimeoutException e) {
+                // check the monitor again
+            } catch (ExecutionException e) {
+                statistics.failed.incrementAndGet();
+                ProjectUIPlugin.log("Unable to export " + request.destination, e.getCause()); //$NON-NLS-1$
+                return true;
+            }
+        }
+    }
+
+    private void export( Request request, IMap map, ConcurrentMap<String, AtomicLong> layerTimes )
+            throws RenderException, IOException, DocumentException {
+        File destination = request.destination;
+        String name = destination.getName();
+        String extension = name.substring(name.lastIndexOf('.') + 1).toLowerCase();
+        if (extension.equals("pdf")) { //$NON-NLS-1$
+            exportPdf(request, map, layerTimes);
+            return;
+        }
+        ImageExportFormat format;
+        if (extension.equals("tif") || extension.equals("tiff")) { //$NON-NLS-1$ //$NON-NLS-2$
+            format = new GeotiffImageExportFormat();
+        } else {
+            format = new WorldImageExportFormat(extension, extension);
+        }
+        // RGB rather than ARGB so the background is kept by formats without alpha
+        BufferedImage image = new BufferedImage(request.size.width, request.size.height,
+                BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = image.createGraphics();
+        IMap drawn;
+        try {
+            drawn = draw(request, map, graphics, false, layerTimes);
+        } finally {
+            graphics.dispose();
+        }
+        format.write(drawn, image, destination);
+    }
+
+    private void exportPdf( Request request, IMap map, ConcurrentMap<String, AtomicLong> layerTimes )
+            throws RenderException, IOException, DocumentException {
+        Rectangle page = new Rectangle(request.size.width, request.size.height);
+        Document document = new Document(page, 0f, 0f, 0f, 0f);
+        OutputStream out = new FileOutputStream(request.destination);
+        try {
+            PdfWriter writer = PdfWriter.getInstance(document, out);
+            document.open();
+            PdfContentByte content = writer.getDirectContent();
+            Graphics2D graphics = content.createGraphics(page.getWidth(), page.getHeight());
+            try {
+                draw(request, map, graphics, true, layerTimes);
+            } finally {
+                graphics.dispose();
+            }
+            document.close();
+        } finally {
+            out.close();
+        }
+    }
+
+    private IMap draw( Request request, IMap map, Graphics2D graphics, boolean banded,
+            ConcurrentMap<String, AtomicLong> layerTimes ) throws RenderException {
+        DrawMapParameter parameters = new DrawMapParameter(graphics, request.size, map,
+                boundsStrategy(request), dpi, selectionStyle, new NullProgressMonitor(),
+                false, false);
+        if (banded) {
+            parameters.setBandBufferSize(PDF_BAND_BUFFER_SIZE);
+        }
+        parameters.setLayerTimes(layerTimes);
+        // the map is the copy of this thread
+        parameters.setCopyMap(false);
+        return ApplicationGIS.drawMap(parameters);
+    }
+
+    private static BoundsStrategy boundsStrategy( Request request ) {
+        final double scaleDenominator = request.scaleDenominator;
+        if (request.bounds == null) {
+            // the copy drawn was moved by the requests drawn before, use the area of the map
+            final ReferencedEnvelope mapBounds = new ReferencedEnvelope(request.map
+                    .getViewportModel().getBounds());
+            return new BoundsStrategy(scaleDenominator > 0 ? scaleDenominator : request.map
+                    .getViewportModel().getScaleDenominator()){
+                @Override
+                public void setBounds( ViewportModel model, ReferencedEnvelope currentBounds ) {
+                    super.setBounds(model, mapBounds);
+                }
+            };
+        }
+        return new BoundsStrategy(request.bounds){
+            @Override
+            public void setBounds( ViewportModel model, ReferencedEnvelope currentBounds ) {
+                super.setBounds(model, currentBounds);
+                if (scaleDenominator > 0) {
+                    model.setScale(scaleDenominator);
+                }
+            }
+        };
+    }
+
+}
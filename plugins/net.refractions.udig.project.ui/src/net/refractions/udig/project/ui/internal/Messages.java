@@ -63,8 +63,10 @@ public class Messages extends NLS {
 	public static String NewProjectWizardPage_label_projectName;
 	public static String NewProjectWizardPage_default_name;
     public static String ProjectPreferencePage_maxundo;
+    public static String ProjectPreferencePage_commitChunkSize;
     public static String RenderPreferences_animations;
     public static String RenderPreferences_labelOverlappings;
+    public static String RenderPreferences_tileImageCacheSize;
 	public static String StylePreferencePage_perpendicularOffset;
 	public static String StartupOpenMaps_processingTask;
 	public static String StartupOpenMaps_openMapDialogTitle;
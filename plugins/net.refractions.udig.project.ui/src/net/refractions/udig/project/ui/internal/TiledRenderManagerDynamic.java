@@ -690,6 +690,7 @@ public class TiledRenderManagerDynamic extends RenderManagerImpl {
             ViewportPaneTiledSWT tiledpane = (ViewportPaneTiledSWT) getMapDisplay();
             tiledpane.clearCachedTiles();
             tiledpane.clearReadyTiles();
+            tiledpane.clearTileImageCache();
         }
         
         //remove all existing images so everything will be recreated
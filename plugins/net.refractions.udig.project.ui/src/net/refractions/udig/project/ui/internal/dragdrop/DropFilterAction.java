@@ -9,20 +9,27 @@
  */
 package net.refractions.udig.project.ui.internal.dragdrop;
 
+import java.io.IOException;
+
 import net.refractions.udig.core.internal.FeatureUtils;
 import net.refractions.udig.project.ILayer;
 import net.refractions.udig.project.IMap;
 import net.refractions.udig.project.command.MapCommand;
 import net.refractions.udig.project.command.factory.EditCommandFactory;
 import net.refractions.udig.project.internal.Layer;
+import net.refractions.udig.project.internal.commands.edit.CopyFeaturesCommand;
 import net.refractions.udig.project.ui.internal.Messages;
+import net.refractions.udig.project.ui.internal.ProjectUIPlugin;
 import net.refractions.udig.ui.IDropAction;
 
 import org.eclipse.core.runtime.IAdaptable;
 import org.eclipse.core.runtime.IProgressMonitor;
+import org.geotools.data.FeatureSource;
+import org.geotools.data.Query;
 import org.geotools.factory.CommonFactoryFinder;
 import org.geotools.factory.GeoTools;
 import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
 import org.opengis.filter.Filter;
 import org.opengis.filter.FilterFactory;
 
@@ -80,7 +87,7 @@ public class DropFilterAction extends IDropAction {
             if( layer==null){
                 setSelection(filter==null?(Filter)getData():filter, destinationLayer, monitor);
             }else{
-                MapCommand c=EditCommandFactory.getInstance().createCopyFeaturesCommand( layer, filter, destinationLayer);
+                MapCommand c=createCopyCommand(layer, filter, destinationLayer, monitor);
                 destinationMap.sendCommandASync(c);
             }
         }else{
@@ -88,6 +95,30 @@ public class DropFilterAction extends IDropAction {
         }
     }
 
+    /**
+     * Copies more than {@link CopyFeaturesCommand#UNDO_LIMIT} features without keeping the ids
+     * for undo; if the number of features is not known cheaply the copy can be undone.
+     */
+    @SuppressWarnings("unchecked")
+    private MapCommand createCopyCommand( ILayer layer, Filter filter, Layer destinationLayer,
+            IProgressMonitor monitor ) {
+        int count = -1;
+        try {
+            FeatureSource<SimpleFeatureType, SimpleFeature> source = layer.getResource(
+                    FeatureSource.class, monitor);
+            if (source != null) {
+                count = source.getCount(new Query(source.getSchema().getTypeName(), filter));
+            }
+        } catch (IOException e) {
+            ProjectUIPlugin.log("", e); //$NON-NLS-1$
+        }
+        if (count > CopyFeaturesCommand.UNDO_LIMIT) {
+            return CopyFeaturesCommand.createWithoutUndo(layer, filter, destinationLayer);
+        }
+        return EditCommandFactory.getInstance().createCopyFeaturesCommand(layer, filter,
+                destinationLayer);
+    }
+
     private void setSelection( Filter filter, Layer layer, IProgressMonitor monitor ) {
         monitor.beginTask(Messages.DropFilterAction_taskname, 2); 
         monitor.worked(1);
@@ -0,0 +1,177 @@
+/*
+ *    uDig - User Friendly Desktop Internet GIS client
+ *    http://udig.refractions.net
+ *    (C) 2012, Refractions Research Inc.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * (http://www.eclipse.org/legal/epl-v10.html), and the Refractions BSD
+ * License v1.0 (http://udig.refractions.net/files/bsd3-v10.html).
+ */
+package net.refractions.udig.project.ui.internal.render.displayAdapter.impl;
+
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+import net.refractions.udig.project.render.IRenderer;
+import net.refractions.udig.project.render.Tile;
+
+import com.vividsolutions.jts.geom.Envelope;
+
+/**
+ * A bounded cache of the SWT images of the tiles that left the viewport of a
+ * {@link ViewportPaneTiledSWT}, so a tile coming back on screen is drawn with the image it
+ * already has rather than a new one. At most {@link #getCapacity()} images are kept; past that
+ * the images of the tiles that are the farthest from the viewport are disposed.
+ * <p>
+ * Only the images of tiles that are done rendering are kept, the image of a tile being rendered
+ * has to be created again to show the progress.
+ * </p>
+ * <p>
+ * This is not a pool of tile sized images handed from one tile to another: an image can be
+ * redrawn through a {@link org.eclipse.swt.graphics.GC}, but the pixels of a tile are in a
+ * {@link java.awt.image.BufferedImage} that would first have to be turned into an SWT image
+ * to be drawn, so each tile would still create a native image.
+ * </p>
+ *
+ * @since 1.4.0
+ */
+final class TileImageCache {
+
+    /** tiles off screen that still have their image */
+    private final Set<Tile> released = new LinkedHashSet<Tile>();
+    private int capacity;
+
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    /**
+     * @param capacity maximum number of images kept for tiles that are off screen
+     */
+    TileImageCache( int capacity ) {
+        this.capacity = capacity;
+    }
+
+    /**
+     * @return maximum number of images kept for tiles that are off screen
+     */
+    synchronized int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Sets the maximum number of images kept for tiles that are off screen, images over the new
+     * capacity are disposed the next time a tile is released.
+     */
+    synchronized void setCapacity( int capacity ) {
+        this.capacity = Math.max(0, capacity);
+    }
+
+    /**
+     * Takes a tile that is going on screen out of the cache.
+     */
+    synchronized void acquire( Tile tile ) {
+        released.remove(tile);
+        if (tile.hasSWTImage()) {
+            hits++;
+        } else {
+            misses++;
+        }
+    }
+
+    /**
+     * Disposes the image of a tile that stays on screen if it is still being rendered, so the
+     * image is created again with the progress of the rendering.
+     */
+    synchronized void update( Tile tile ) {
+        if (!isDone(tile)) {
+            tile.disposeSWTImage();
+        }
+    }
+
+    /**
+     * Puts a tile that left the screen in the cache if its image can be reused, otherwise its
+     * image is disposed.
+     *
+     * @param viewport the bounds of the viewport, used to find the tiles to evict
+     */
+    synchronized void release( Tile tile, Envelope viewport ) {
+        if (!tile.hasSWTImage() || !isDone(tile)) {
+            tile.disposeSWTImage();
+            return;
+        }
+        released.add(tile);
+        trim(viewport);
+    }
+
+    /**
+     * Disposes the images of the tiles in the cache.
+     */
+    synchronized void clear() {
+        for( Tile tile : released ) {
+            tile.disposeSWTImage();
+        }
+        released.clear();
+    }
+
+    /**
+     * Evicts the tiles farthest from the viewport until the cache holds at most capacity images.
+     */
+    private void trim( Envelope viewport ) {
+        // tiles dispose their image themselves when they are rendered again
+        for( Iterator<Tile> iter = released.iterator(); iter.hasNext(); ) {
+            if (!iter.next().hasSWTImage()) {
+                iter.remove();
+            }
+        }
+        while( released.size() > capacity ) {
+            Tile farthest = null;
+            double distance = -1;
+            for( Tile tile : released ) {
+                double d = distance(tile.getReferencedEnvelope(), viewport);
+                if (d > distance) {
+                    distance = d;
+                    farthest = tile;
+                }
+            }
+            released.remove(farthest);
+            farthest.disposeSWTImage();
+            evictions++;
+        }
+    }
+
+    private static boolean isDone( Tile tile ) {
+        IRenderer renderer = tile.getRenderExecutor();
+        return renderer != null && renderer.getState() == IRenderer.DONE;
+    }
+
+    private static double distance( Envelope tile, Envelope viewport ) {
+        if (viewport == null || viewport.isNull()) {
+            return 0;
+        }
+        double dx = tile.centre().x - viewport.centre().x;
+        double dy = tile.centre().y - viewport.centre().y;
+        return dx * dx + dy * dy;
+    }
+
+    /**
+     * @param onScreen the tiles on screen
+     * @return the hits and misses of the cache and the number of SWT images alive
+     */
+    synchronized String getStatistics( Collection<Tile> onScreen ) {
+        int images = released.size();
+        for( Tile tile : onScreen ) {
+            if (tile.hasSWTImage()) {
+                images++;
+            }
+        }
+        long requests = hits + misses;
+        return "tile images: " + hits + " hits, " + misses + " misses (" //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+                + (requests == 0 ? 0 : hits * 100 / requests) + "% hits), " + evictions //$NON-NLS-1$
+                + " evicted, " + images + " native images (" + released.size() //$NON-NLS-1$ //$NON-NLS-2$
+                + " off screen of " + capacity + ")"; //$NON-NLS-1$ //$NON-NLS-2$
+    }
+}
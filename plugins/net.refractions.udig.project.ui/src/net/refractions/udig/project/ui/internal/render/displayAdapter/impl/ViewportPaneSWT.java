@@ -40,6 +40,7 @@ import org.eclipse.swt.events.PaintEvent;
 import org.eclipse.swt.events.PaintListener;
 import org.eclipse.swt.graphics.GC;
 import org.eclipse.swt.graphics.Image;
+import org.eclipse.swt.graphics.ImageData;
 import org.eclipse.swt.graphics.Point;
 import org.eclipse.swt.graphics.Rectangle;
 import org.eclipse.swt.widgets.Canvas;
@@ -78,6 +79,9 @@ public class ViewportPaneSWT extends Canvas implements ViewportPane {
 
     private org.eclipse.swt.graphics.Image swtImage;
 
+    /** pixels of the last frame, refilled for the next frame rather than allocated again */
+    private ImageData imageData;
+
     private Display display;
 
     private volatile Object disposeMutex;
@@ -334,7 +338,10 @@ public class ViewportPaneSWT extends Canvas implements ViewportPane {
     private org.eclipse.swt.graphics.Image createImage() {
         org.eclipse.swt.graphics.Image newImage;
         RenderedImage image = renderManager.getImage();
-        if (image != null)
+        if (image instanceof BufferedImage) {
+            imageData = AWTSWTImageUtils.createImageData((BufferedImage) image, imageData);
+            newImage = new Image(getDisplay(), imageData);
+        } else if (image != null)
             newImage = AWTSWTImageUtils.createSWTImage(image, false);
         else {
             newImage = new Image(getDisplay(), getWidth(), getHeight());
@@ -385,6 +392,7 @@ public class ViewportPaneSWT extends Canvas implements ViewportPane {
         super.dispose();
         if (swtImage != null)
             swtImage.dispose();
+        imageData = null;
     }
 
     /**
@@ -114,6 +114,13 @@ public class ViewportPaneTiledSWT extends Canvas implements ViewportPane {
      * The current list of tiles that is ready to be rendered/drawn onto screen
      */
     private Map<ReferencedEnvelope, Tile> readyTiles = new HashMap<ReferencedEnvelope, Tile>(); 
+
+    /**
+     * The images of the tiles that left the screen, kept so they are not created again when
+     * the tiles come back on screen
+     */
+    private final TileImageCache imageCache = new TileImageCache(ProjectPlugin.getPlugin()
+            .getPreferenceStore().getInt(PreferenceConstants.P_TILE_IMAGE_CACHE_SIZE));
     
     /**
      * Create a image that is compatible with this ViewportPane.
@@ -328,15 +335,30 @@ public class ViewportPaneTiledSWT extends Canvas implements ViewportPane {
         }
 
         try {
-        	// clear the previously ready tiles
-        	if (readyTiles != null) {
-        		clearReadyTiles();
-        	}
+        	// the previously ready tiles are released once the new ones are known so
+        	// the images of the tiles that stay on screen are not evicted
+        	Map<ReferencedEnvelope, Tile> previousTiles = readyTiles;
         	
         	disposeMutex = null;
         	
         	// create the new tiles and return a copy of the list (with the same objs)
         	readyTiles = createTiles();
+        	for( Tile tile : readyTiles.values() ) {
+        	    if (previousTiles != null && previousTiles.containsValue(tile)) {
+        	        imageCache.update(tile);
+        	    } else {
+        	        imageCache.acquire(tile);
+        	    }
+        	}
+        	if (previousTiles != null) {
+        	    ReferencedEnvelope viewport = getViewportBounds();
+        	    for( Tile tile : previousTiles.values() ) {
+        	        if (!readyTiles.containsValue(tile)) {
+        	            imageCache.release(tile, viewport);
+        	        }
+        	    }
+        	}
+        	ProjectUIPlugin.trace(Trace.VIEWPORT, getClass(), imageCache.getStatistics(readyTiles.values()), null);
         	Map<ReferencedEnvelope, Tile> tilesCopy = new HashMap<ReferencedEnvelope, Tile>(readyTiles);
         	//Map<ReferencedEnvelope, Tile> tilesCopy = (Map<ReferencedEnvelope, Tile>) ((HashMap)readyTiles).clone();
         	return tilesCopy;
@@ -367,44 +389,66 @@ public class ViewportPaneTiledSWT extends Canvas implements ViewportPane {
             
         }
         Map<ReferencedEnvelope, Tile> tiles =  renderManager.getTiles(newTiles);
+        for( Tile tile : tiles.values() ) {
+            imageCache.acquire(tile);
+        }
         readyTiles.putAll(tiles);
         return tiles.values();
     }
     
     /**
-     * Disposes of any SWTImages within the cached tiles that are NOT also in the
-     * ready tiles (don't want to dispose images that are still being used), then clear 
-     * the tiles from the cached hashmap.
+     * Releases the SWTImages within the cached tiles that are NOT also in the
+     * ready tiles (don't want to dispose images that are still being used) to the
+     * image cache, then clear the tiles from the cached hashmap.
      */
     public void clearCachedTiles() {
     	//Collection<Tile> values = cachedTiles.values();
     	//for (Tile tile : values) {
+        ReferencedEnvelope viewport = getViewportBounds();
         Set<Entry<ReferencedEnvelope, Tile>> entrySet = cachedTiles.entrySet();
         for( Entry<ReferencedEnvelope, Tile> set : entrySet ) {
         	Tile tile = set.getValue();
-    		// only dispose the image if this tile is not in the ready tiles
+    		// only release the image if this tile is not in the ready tiles
     		if (!readyTiles.containsValue(tile)) {
-    			tile.disposeSWTImage();
+    			imageCache.release(tile, viewport);
     		}
     	}
     	cachedTiles.clear();
     }
     
     /**
-     * Disposes of any SWTImages within the ready tiles, then clears the tiles
-     * from the ready list.
+     * Releases the SWTImages within the ready tiles to the image cache, which disposes
+     * the ones of the tiles still being rendered, then clears the tiles from the ready list.
      */
     public void clearReadyTiles() {
     	//Collection<Tile> values = readyTiles.values();
     	//for (Tile tile : values) {
+        ReferencedEnvelope viewport = getViewportBounds();
         Set<Entry<ReferencedEnvelope, Tile>> entrySet = readyTiles.entrySet();
         for( Entry<ReferencedEnvelope, Tile> set : entrySet ) {
             Tile tile = set.getValue();    		
-    		tile.disposeSWTImage();
+    		imageCache.release(tile, viewport);
     	}
     	readyTiles.clear();
     }    
 
+    /**
+     * Disposes the images kept for the tiles that left the screen.
+     */
+    public void clearTileImageCache() {
+        imageCache.clear();
+    }
+
+    /**
+     * @return the bounds of the viewport or null if the pane has no render manager
+     */
+    private ReferencedEnvelope getViewportBounds() {
+        if (renderManager == null) {
+            return null;
+        }
+        return renderManager.getViewportModelInternal().getBounds();
+    }
+
     /**
      * Creates tiles for the current viewport size, using previously cached ones if 
      * available.
@@ -437,6 +481,8 @@ public class ViewportPaneTiledSWT extends Canvas implements ViewportPane {
 		
 		Map<ReferencedEnvelope, Tile> tiles = renderManager.getTiles(bounds);
 		
+        imageCache.setCapacity(ProjectPlugin.getPlugin().getPreferenceStore().getInt(
+                PreferenceConstants.P_TILE_IMAGE_CACHE_SIZE));
         // clear the cached tiles and cache the new ones
         clearCachedTiles();
         cachedTiles.putAll(tiles);
@@ -492,6 +538,7 @@ public class ViewportPaneTiledSWT extends Canvas implements ViewportPane {
         if (cachedTiles != null) {
             clearCachedTiles();
         }        
+        imageCache.clear();
     }
 
     /**
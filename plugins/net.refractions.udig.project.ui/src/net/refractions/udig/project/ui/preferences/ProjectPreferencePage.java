@@ -45,6 +45,11 @@ public class ProjectPreferencePage extends FieldEditorPreferencePage
                 Messages.ProjectPreferencePage_maxundo,
                 getFieldEditorParent());
         addField(maxUndo);
+        IntegerFieldEditor commitChunkSize = new IntegerFieldEditor(
+                PreferenceConstants.P_COMMIT_CHUNK_SIZE, 
+                Messages.ProjectPreferencePage_commitChunkSize,
+                getFieldEditorParent());
+        addField(commitChunkSize);
     }
 
     public void init( IWorkbench workbench ) {
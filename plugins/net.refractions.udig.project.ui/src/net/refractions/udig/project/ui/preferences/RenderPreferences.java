@@ -16,6 +16,7 @@ import net.refractions.udig.project.ui.internal.Messages;
 
 import org.eclipse.jface.preference.BooleanFieldEditor;
 import org.eclipse.jface.preference.FieldEditorPreferencePage;
+import org.eclipse.jface.preference.IntegerFieldEditor;
 import org.eclipse.ui.IWorkbench;
 import org.eclipse.ui.IWorkbenchPreferencePage;
 
@@ -60,6 +61,9 @@ public class RenderPreferences extends FieldEditorPreferencePage implements
         addField(new BooleanFieldEditor(net.refractions.udig.project.preferences.PreferenceConstants.P_TILED_RENDERING, 
                 Messages.RenderPreferences_tiledRendering,
                 getFieldEditorParent()));
+        addField(new IntegerFieldEditor(net.refractions.udig.project.preferences.PreferenceConstants.P_TILE_IMAGE_CACHE_SIZE, 
+                Messages.RenderPreferences_tileImageCacheSize,
+                getFieldEditorParent()));
 	}
 
 	/*
@@ -9,6 +9,8 @@
  */
 package net.refractions.udig.project.command;
 
+import java.text.MessageFormat;
+import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.Queue;
@@ -20,6 +22,7 @@ import net.refractions.udig.project.internal.Messages;
 import net.refractions.udig.project.internal.ProjectPlugin;
 import net.refractions.udig.project.internal.commands.edit.RollbackCommand;
 import net.refractions.udig.project.internal.commands.selection.CommitCommand;
+import net.refractions.udig.project.internal.impl.EditBatch;
 import net.refractions.udig.project.internal.impl.MapImpl.MapCommandListener;
 import net.refractions.udig.project.preferences.PreferenceConstants;
 import net.refractions.udig.ui.PlatformGIS;
@@ -211,6 +214,30 @@ public class CommandManager implements CommandStack, NavCommandStack {
         doMakeRequest(null, runAsync, Request.UNDO);
     }
 
+    /**
+     * Starts coalescing the commands that are executed after this call, up to the matching
+     * {@link #endBatch(boolean)}.
+     * <p>
+     * Consecutive {@link UndoableMapCommand}s of a batch are kept in the history as one command
+     * that is undone and redone as a whole, the edit events and refreshes of the layers are sent
+     * once, merged, when the commands that are waiting to be executed have all run and the listeners
+     * are notified once at the end of the batch. Batches can be nested.
+     * </p>
+     */
+    public void beginBatch() {
+        doMakeRequest(null, true, Request.BEGIN_BATCH);
+    }
+
+    /**
+     * Ends the batch started by {@link #beginBatch()}.
+     * 
+     * @param runAsync true to return without waiting for the commands of the batch to be
+     *        executed
+     */
+    public void endBatch( boolean runAsync ) {
+        doMakeRequest(null, runAsync, Request.END_BATCH);
+    }
+
     /**
      * Adds an Errorhandler to the list of error handlers
      * 
@@ -298,27 +325,78 @@ public class CommandManager implements CommandStack, NavCommandStack {
 
         IProgressMonitor progressMonitor;
         Request currentRequest;
+
+        /** number of batches that have been started and not ended */
+        int batchDepth;
+        /** the history entry the commands of the current batch are added to */
+        BatchCommand batch;
+        /** true if a command has been executed since the current batch started */
+        boolean batchChanged;
+        /** true while this job holds back the edit events of the layers */
+        private boolean holdingEvents;
+
         @Override
         protected IStatus run( IProgressMonitor monitor ) {
             monitor.beginTask(Messages.CommandManager_ProgressMonitor, IProgressMonitor.UNKNOWN); 
-            while( !getThread().isInterrupted() ) {
-                
-                synchronized (this) {
-                    currentRequest = commands.poll();
-                    if( currentRequest==null )
-                        return Status.OK_STATUS;
-                }
-                progressMonitor = new ProgressMonitorTaskNamer(monitor, 10);
-                run(progressMonitor, currentRequest);
+            try {
+                while( !getThread().isInterrupted() ) {
 
-                if (currentRequest.isSync()) {
-                    // notify those wating for command to finish
-                    synchronized (currentRequest) {
-                        currentRequest.notifyAll();
+                    synchronized (this) {
+                        currentRequest = commands.poll();
+                        if (currentRequest == null)
+                            return Status.OK_STATUS;
                     }
+                    if (batchDepth > 0 && !holdingEvents) {
+                        EditBatch.begin();
+                        holdingEvents = true;
+                    }
+                    progressMonitor = new ProgressMonitorTaskNamer(monitor, 10);
+                    run(progressMonitor, currentRequest);
+                    if (batchDepth == 0 && holdingEvents) {
+                        releaseEvents();
+                    }
+
+                    if (currentRequest.isSync()) {
+                        // notify those wating for command to finish
+                        synchronized (currentRequest) {
+                            currentRequest.notifyAll();
+                        }
+                    }
+                }
+                return Status.OK_STATUS;
+            } finally {
+                // the job may run in another thread next time so the events can not be held
+                // any longer
+                if (holdingEvents) {
+                    releaseEvents();
                 }
             }
-            return Status.OK_STATUS;
+        }
+
+        private void releaseEvents() {
+            holdingEvents = false;
+            EditBatch.end();
+        }
+
+        /**
+         * Ends the batch that is open and notifies the listeners if its commands changed
+         * anything.
+         */
+        private void endBatch() {
+            if (batchDepth == 0)
+                return;
+            batchDepth--;
+            if (batchDepth > 0)
+                return;
+            Command last = batch;
+            batch = null;
+            if (holdingEvents) {
+                releaseEvents();
+            }
+            if (batchChanged) {
+                batchChanged = false;
+                notifyOwner(last);
+            }
         }
         private void run( IProgressMonitor monitor, Request request ) {
             switch( request.type ) {
@@ -334,6 +412,12 @@ public class CommandManager implements CommandStack, NavCommandStack {
             case Request.RERUN:
                 rerunCommands(monitor);
                 break;
+            case Request.BEGIN_BATCH:
+                batchDepth++;
+                break;
+            case Request.END_BATCH:
+                endBatch();
+                break;
             }
 
             request.completed = true;
@@ -380,6 +464,13 @@ public class CommandManager implements CommandStack, NavCommandStack {
          * @param command The command to execute
          */
         private void execute( final Command command, IProgressMonitor monitor ) {
+            if (batchDepth > 0 && command instanceof UndoableMapCommand
+                    && !(command instanceof NavCommand)) {
+                executeInBatch((UndoableMapCommand) command, monitor);
+                return;
+            }
+            // the command can not be undone with the commands of the batch
+            batch = null;
 
             long time = System.currentTimeMillis();
             if( command.getName()!=null )
@@ -421,6 +512,36 @@ public class CommandManager implements CommandStack, NavCommandStack {
             }
 
         }
+        /**
+         * Executes a command of a batch and adds it to the history entry of the batch rather than
+         * to the history. The owner is notified when the batch ends.
+         */
+        private void executeInBatch( UndoableMapCommand command, IProgressMonitor monitor ) {
+            try {
+                boolean changed = true;
+                if (command instanceof PostDeterminedEffectCommand) {
+                    changed = ((PostDeterminedEffectCommand) command)
+                            .execute(new SubProgressMonitor(monitor, 1000));
+                } else {
+                    command.run(new SubProgressMonitor(monitor, 1000));
+                }
+                if (!changed)
+                    return;
+
+                undone.clear();
+                if (batch == null || batch.getMap() != command.getMap()) {
+                    batch = new BatchCommand();
+                    batch.setMap(command.getMap());
+                    addToHistory(batch);
+                }
+                batch.add(command);
+                batchChanged = true;
+            } catch (Throwable e) {
+                undone.clear();
+                handleError(command, e);
+            }
+        }
+
         private void addToHistory( final Command command ) {
             if( history.size()>ProjectPlugin.getPlugin().getPreferenceStore().getInt(PreferenceConstants.P_MAX_UNDO))
                 history.removeFirst();
@@ -485,10 +606,12 @@ public class CommandManager implements CommandStack, NavCommandStack {
          * Executes the last undone command, if there are any commands to undo.
          */
         private void redo( IProgressMonitor monitor ) {
+            batch = null;
             if( undone.isEmpty() )
                 return;
             Command command = undone.removeLast();
             monitor.beginTask(Messages.CommandManager_redo + command.getName(), 1000); 
+            EditBatch.begin();
             try {
                 if (command instanceof PostDeterminedEffectCommand) {
                     PostDeterminedEffectCommand post = (PostDeterminedEffectCommand) command;
@@ -497,16 +620,20 @@ public class CommandManager implements CommandStack, NavCommandStack {
                     command.run(new SubProgressMonitor(monitor, 1000));
                 }
                 addToHistory(command);
-                notifyOwner(command);
             } catch (Exception e) {
                 handleError(command, e);
+                return;
+            } finally {
+                EditBatch.end();
             }
+            notifyOwner(command);
         }
 
         /**
          * Undoes the last command if possible.
          */
         private void undo( IProgressMonitor monitor ) {
+            batch = null;
             Command c;
             // First check if there's a command on the commands stack that hasn't
             // been executed and should just be removed
@@ -514,7 +641,7 @@ public class CommandManager implements CommandStack, NavCommandStack {
                 Request r;
                 synchronized (this) {
                     r = commands.peek();
-                    if( r.type!=Request.UNDO ){
+                    if( r.type==Request.RUN ){
                     commands.remove(0);
                     c = r.command;
                     if (c instanceof UndoableCommand) {
@@ -534,11 +661,14 @@ public class CommandManager implements CommandStack, NavCommandStack {
                 if (c instanceof UndoableCommand) {
                     UndoableCommand command = (UndoableCommand) c;
                     monitor.beginTask(Messages.CommandManager_undo + command.getName(), 1000); 
+                    EditBatch.begin();
                     try {
                         command.rollback(new SubProgressMonitor(monitor, 1000));
                         addToUndone(command);
                     } catch (Throwable e) {
                         handleRollbackError(command, e);
+                    } finally {
+                        EditBatch.end();
                     }
                 } else {
                     throw new RuntimeException(
@@ -579,6 +709,23 @@ public class CommandManager implements CommandStack, NavCommandStack {
             }
         }
     }
+    /**
+     * The history entry of a batch; the commands are kept in an array list since a batch may hold
+     * many thousands of them.
+     * 
+     * @since 1.4.0
+     */
+    static class BatchCommand extends UndoableComposite {
+        BatchCommand() {
+            commands = new ArrayList<MapCommand>();
+        }
+
+        @Override
+        public String getName() {
+            return MessageFormat.format(Messages.CommandManager_batch, new Object[]{commands.size()});
+        }
+    }
+
     /**
      * TODO Purpose of net.refractions.udig.project.command
      * <p>
@@ -596,6 +743,10 @@ public class CommandManager implements CommandStack, NavCommandStack {
         public static final int REDO = 2;
         /** <code>RERUN</code> field */
         public static final int RERUN = 4;
+        /** <code>BEGIN_BATCH</code> field */
+        public static final int BEGIN_BATCH = 8;
+        /** <code>END_BATCH</code> field */
+        public static final int END_BATCH = 16;
 
         /** the type of request */
         public final int type;
@@ -0,0 +1,644 @@
+/*
+ *    uDig - User Friendly Desktop Internet GIS client
+ *    http://udig.refractions.net
+ *    (C) 2012, Refractions Research Inc.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * (http://www.eclipse.org/legal/epl-v10.html), and the Refractions BSD
+ * License v1.0 (http://udig.refractions.net/files/bsd3-v10.html).
+ */
+package net.refractions.udig.project.internal;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import org.geotools.factory.CommonFactoryFinder;
+import org.opengis.feature.Feature;
+import org.opengis.filter.FilterFactory;
+import org.opengis.filter.FilterVisitor;
+import org.opengis.filter.Id;
+import org.opengis.filter.identity.Identifier;
+
+/**
+ * The features selected in a layer, kept as a compact set of feature ids.
+ * <p>
+ * Most data stores make their feature ids from the type name and a row number (for example
+ * <code>roads.1234</code>). The row numbers of each prefix are split in blocks of 65536, like a
+ * roaring bitmap: a block with few rows keeps them in a sorted array of 2 bytes per row and a
+ * block with more than 4096 rows in a bitmap of 8 kilobytes. Selecting hundreds of
+ * thousands of consecutive rows takes a few kilobytes, scattered rows a few bytes each, and testing
+ * if a feature is selected does not depend on the number of features selected. Other ids are kept
+ * as strings.
+ * </p>
+ * <p>
+ * As it is an {@link Id} filter a selection can be set as the filter of a layer; the
+ * {@link Identifier}s are only created when a data store asks for them with
+ * {@link #getIdentifiers()} to make its query. A selection set on a layer must not be modified,
+ * {@link #copy()} it and set the copy.
+ * </p>
+ *
+ * @since 1.4.0
+ */
+public final class FidSelection implements Id, Iterable<String> {
+
+    /** row numbers in a block of a bitmap */
+    private static final int BLOCK_BITS = 1 << 16;
+
+    /** most row numbers a block keeps in an array, past it a block is a bitmap */
+    private static final int ARRAY_MAX = 4096;
+
+    /** row numbers of each prefix */
+    private final Map<String, Bitmap> bitmaps = new HashMap<String, Bitmap>();
+
+    /** ids that do not end with a row number */
+    private final Set<String> others = new TreeSet<String>();
+
+    private int size;
+
+    /** the identifiers, created when a data store asks for them */
+    private volatile Set<Identifier> identifiers;
+
+    /** the hash code, 0 until computed */
+    private volatile int hash;
+
+    public FidSelection() {
+    }
+
+    /**
+     * @param fids the ids of the features selected
+     */
+    public FidSelection( Collection<String> fids ) {
+        for( String fid : fids ) {
+            add(fid);
+        }
+    }
+
+    /**
+     * Returns a selection of the features of the Id filter; the selection is a copy even if the
+     * filter is a selection.
+     *
+     * @param filter the features selected
+     * @return a new selection
+     */
+    public static FidSelection valueOf( Id filter ) {
+        if (filter instanceof FidSelection) {
+            return ((FidSelection) filter).copy();
+        }
+        FidSelection selection = new FidSelection();
+        selection.addAll(filter);
+        return selection;
+    }
+
+    /**
+     * @return a copy of the selection that can be modified
+     */
+    public FidSelection copy() {
+        FidSelection copy = new FidSelection();
+        for( Map.Entry<String, Bitmap> entry : bitmaps.entrySet() ) {
+            copy.bitmaps.put(entry.getKey(), entry.getValue().copy());
+        }
+        copy.others.addAll(others);
+        copy.size = size;
+        return copy;
+    }
+
+    /**
+     * Selects a feature.
+     *
+     * @return true if the feature was not selected
+     */
+    public boolean add( String fid ) {
+        int dot = rowIndex(fid);
+        boolean added;
+        if (dot < 0) {
+            added = others.add(fid);
+        } else {
+            String prefix = fid.substring(0, dot);
+            Bitmap bitmap = bitmaps.get(prefix);
+            if (bitmap == null) {
+                bitmap = new Bitmap();
+                bitmaps.put(prefix, bitmap);
+            }
+            added = bitmap.set(Long.parseLong(fid.substring(dot)));
+        }
+        if (added) {
+            size++;
+            identifiers = null;
+            hash = 0;
+        }
+        return added;
+    }
+
+    /**
+     * Deselects a feature.
+     *
+     * @return true if the feature was selected
+     */
+    public boolean remove( String fid ) {
+        int dot = rowIndex(fid);
+        boolean removed;
+        if (dot < 0) {
+            removed = others.remove(fid);
+        } else {
+            String prefix = fid.substring(0, dot);
+            Bitmap bitmap = bitmaps.get(prefix);
+            removed = bitmap != null && bitmap.clear(Long.parseLong(fid.substring(dot)));
+            if (removed && bitmap.isEmpty()) {
+                bitmaps.remove(prefix);
+            }
+        }
+        if (removed) {
+            size--;
+            identifiers = null;
+            hash = 0;
+        }
+        return removed;
+    }
+
+    /**
+     * Selects a feature that is not selected and deselects it otherwise.
+     *
+     * @return true if the feature is now selected
+     */
+    public boolean toggle( String fid ) {
+        if (remove(fid)) {
+            return false;
+        }
+        add(fid);
+        return true;
+    }
+
+    /**
+     * @return true if the feature is selected
+     */
+    public boolean contains( String fid ) {
+        int dot = rowIndex(fid);
+        if (dot < 0) {
+            return others.contains(fid);
+        }
+        Bitmap bitmap = bitmaps.get(fid.substring(0, dot));
+        return bitmap != null && bitmap.get(Long.parseLong(fid.substring(dot)));
+    }
+
+    /**
+     * Selects the features of the filter.
+     */
+    public void addAll( Id filter ) {
+        for( String fid : ids(filter) ) {
+            add(fid);
+        }
+    }
+
+    /**
+     * Deselects the features of the filter.
+     */
+    public void removeAll( Id filter ) {
+        for( String fid : ids(filter) ) {
+            remove(fid);
+        }
+    }
+
+    /**
+     * Deselects the features that are not in the filter.
+     */
+    public void retainAll( Id filter ) {
+        FidSelection retained = new FidSelection();
+        for( String fid : ids(filter) ) {
+            if (contains(fid)) {
+                retained.add(fid);
+            }
+        }
+        bitmaps.clear();
+        bitmaps.putAll(retained.bitmaps);
+        others.clear();
+        others.addAll(retained.others);
+        size = retained.size;
+        identifiers = null;
+        hash = 0;
+    }
+
+    /**
+     * Deselects all the features.
+     */
+    public void clear() {
+        bitmaps.clear();
+        others.clear();
+        size = 0;
+        identifiers = null;
+        hash = 0;
+    }
+
+    /**
+     * @return the number of features selected
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return true if no feature is selected
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * @return the ids of the features selected, the row numbers of a prefix in ascending order
+     */
+    public Iterator<String> iterator() {
+        final Iterator<Map.Entry<String, Bitmap>> prefixes = new TreeMap<String, Bitmap>(bitmaps)
+                .entrySet().iterator();
+        final Iterator<String> rest = others.iterator();
+        return new Iterator<String>(){
+            private String prefix;
+            private Bitmap bitmap;
+            private long next = -1;
+
+            public boolean hasNext() {
+                while( next < 0 && prefixes.hasNext() ) {
+                    Map.Entry<String, Bitmap> entry = prefixes.next();
+                    prefix = entry.getKey();
+                    bitmap = entry.getValue();
+                    next = bitmap.next(0);
+                }
+                return next >= 0 || rest.hasNext();
+            }
+
+            public String next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                if (next < 0) {
+                    return rest.next();
+                }
+                String fid = prefix + next;
+                next = bitmap.next(next + 1);
+                return fid;
+            }
+
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
+    public Set<Object> getIDs() {
+        Set<Object> ids = new LinkedHashSet<Object>();
+        for( String fid : this ) {
+            ids.add(fid);
+        }
+        return Collections.unmodifiableSet(ids);
+    }
+
+    public Set<Identifier> getIdentifiers() {
+        Set<Identifier> result = identifiers;
+        if (result == null) {
+            FilterFactory ff = CommonFactoryFinder.getFilterFactory(null);
+            Set<Identifier> ids = new LinkedHashSet<Identifier>();
+            for( String fid : this ) {
+                ids.add(ff.featureId(fid));
+            }
+            result = Collections.unmodifiableSet(ids);
+            identifiers = result;
+        }
+        return result;
+    }
+
+    public boolean evaluate( Object object ) {
+        if (object instanceof Feature) {
+            Identifier id = ((Feature) object).getIdentifier();
+            return id != null && contains(id.getID().toString());
+        }
+        return false;
+    }
+
+    public Object accept( FilterVisitor visitor, Object extraData ) {
+        return visitor.visit(this, extraData);
+    }
+
+    @Override
+    public boolean equals( Object obj ) {
+        if (this == obj) {
+            return true;
+        }
+        if (obj instanceof FidSelection) {
+            FidSelection other = (FidSelection) obj;
+            return size == other.size && bitmaps.equals(other.bitmaps)
+                    && others.equals(other.others);
+        }
+        if (obj instanceof Id) {
+            return getIDs().equals(((Id) obj).getIDs());
+        }
+        return false;
+    }
+
+    /**
+     * The hash code of {@link #getIDs()}, computed from the row numbers without making the ids.
+     */
+    @Override
+    public int hashCode() {
+        int result = hash;
+        if (result == 0) {
+            for( Map.Entry<String, Bitmap> entry : bitmaps.entrySet() ) {
+                int prefixHash = entry.getKey().hashCode();
+                Bitmap bitmap = entry.getValue();
+                for( long row = bitmap.next(0); row >= 0; row = bitmap.next(row + 1) ) {
+                    result += hash(prefixHash, row);
+                }
+            }
+            for( String fid : others ) {
+                result += fid.hashCode();
+            }
+            hash = result;
+        }
+        return result;
+    }
+
+    /**
+     * @return the {@link String#hashCode()} of the prefix followed by the row number
+     */
+    private static int hash( int prefixHash, long row ) {
+        long divisor = 1;
+        while( row / divisor >= 10 ) {
+            divisor *= 10;
+        }
+        int h = prefixHash;
+        for( ; divisor > 0; divisor /= 10 ) {
+            h = 31 * h + (char) ('0' + (row / divisor) % 10);
+        }
+        return h;
+    }
+
+    @Override
+    public String toString() {
+        return "[ selection of " + size + " features ]"; //$NON-NLS-1$ //$NON-NLS-2$
+    }
+
+    /**
+     * @return the ids of the features of the filter
+     */
+    private static Iterable<String> ids( Id filter ) {
+        if (filter instanceof FidSelection) {
+            // copied so a selection can be combined with itself
+            List<String> ids = new ArrayList<String>(((FidSelection) filter).size());
+            for( String fid : (FidSelection) filter ) {
+                ids.add(fid);
+            }
+            return ids;
+        }
+        List<String> ids = new ArrayList<String>();
+        for( Object id : filter.getIDs() ) {
+            ids.add(id.toString());
+        }
+        return ids;
+    }
+
+    /**
+     * @return the index of the row number at the end of the id or -1 if the id does not end with
+     *         a row number that can be written back as the same string
+     */
+    private static int rowIndex( String fid ) {
+        int start = fid.lastIndexOf('.') + 1;
+        int length = fid.length() - start;
+        if (length == 0 || length > 18) {
+            return -1;
+        }
+        if (length > 1 && fid.charAt(start) == '0') {
+            return -1;
+        }
+        for( int i = start; i < fid.length(); i++ ) {
+            char c = fid.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+        }
+        return start;
+    }
+
+    /**
+     * A set of row numbers kept as blocks, only the blocks that hold a row number are allocated.
+     */
+    private static final class Bitmap {
+        private final TreeMap<Long, Block> blocks = new TreeMap<Long, Block>();
+
+        boolean get( long row ) {
+            Block block = blocks.get(row / BLOCK_BITS);
+            return block != null && block.get((int) (row % BLOCK_BITS));
+        }
+
+        boolean set( long row ) {
+            Long key = row / BLOCK_BITS;
+            Block block = blocks.get(key);
+            if (block == null) {
+                block = new Block();
+                blocks.put(key, block);
+            }
+            return block.set((int) (row % BLOCK_BITS));
+        }
+
+        boolean clear( long row ) {
+            Long key = row / BLOCK_BITS;
+            Block block = blocks.get(key);
+            if (block == null || !block.clear((int) (row % BLOCK_BITS))) {
+                return false;
+            }
+            if (block.isEmpty()) {
+                blocks.remove(key);
+            }
+            return true;
+        }
+
+        boolean isEmpty() {
+            return blocks.isEmpty();
+        }
+
+        /**
+         * @return the first row number greater or equal to from or -1
+         */
+        long next( long from ) {
+            for( Map.Entry<Long, Block> entry : blocks.tailMap(from / BLOCK_BITS).entrySet() ) {
+                long base = entry.getKey() * BLOCK_BITS;
+                int next = entry.getValue().next(base < from ? (int) (from - base) : 0);
+                if (next >= 0) {
+                    return base + next;
+                }
+            }
+            return -1;
+        }
+
+        Bitmap copy() {
+            Bitmap copy = new Bitmap();
+            for( Map.Entry<Long, Block> entry : blocks.entrySet() ) {
+                copy.blocks.put(entry.getKey(), entry.getValue().copy());
+            }
+            return copy;
+        }
+
+        @Override
+        public boolean equals( Object obj ) {
+            return obj instanceof Bitmap && blocks.equals(((Bitmap) obj).blocks);
+        }
+
+        @Override
+        public int hashCode() {
+            return blocks.keySet().hashCode();
+        }
+    }
+
+    /**
+     * The row numbers of a block, relative to its start: a sorted array while there are at most
+     * {@link #ARRAY_MAX} of them and a bitmap past that, so the form of a block only depends on
+     * the number of rows it holds.
+     */
+    private static final class Block {
+        private char[] values = new char[4];
+        private long[] bits;
+        private int cardinality;
+
+        boolean get( int row ) {
+            if (bits != null) {
+                return (bits[row >>> 6] & (1L << row)) != 0;
+            }
+            return Arrays.binarySearch(values, 0, cardinality, (char) row) >= 0;
+        }
+
+        boolean set( int row ) {
+            if (bits != null) {
+                long mask = 1L << row;
+                if ((bits[row >>> 6] & mask) != 0) {
+                    return false;
+                }
+                bits[row >>> 6] |= mask;
+                cardinality++;
+                return true;
+            }
+            int index = Arrays.binarySearch(values, 0, cardinality, (char) row);
+            if (index >= 0) {
+                return false;
+            }
+            if (cardinality == ARRAY_MAX) {
+                toBitmap();
+                return set(row);
+            }
+            index = -index - 1;
+            if (cardinality == values.length) {
+                values = Arrays.copyOf(values, Math.min(ARRAY_MAX, cardinality * 2));
+            }
+            System.arraycopy(values, index, values, index + 1, cardinality - index);
+            values[index] = (char) row;
+            cardinality++;
+            return true;
+        }
+
+        boolean clear( int row ) {
+            if (bits != null) {
+                long mask = 1L << row;
+                if ((bits[row >>> 6] & mask) == 0) {
+                    return false;
+                }
+                bits[row >>> 6] &= ~mask;
+                cardinality--;
+                if (cardinality == ARRAY_MAX) {
+                    toArray();
+                }
+                return true;
+            }
+            int index = Arrays.binarySearch(values, 0, cardinality, (char) row);
+            if (index < 0) {
+                return false;
+            }
+            System.arraycopy(values, index + 1, values, index, cardinality - index - 1);
+            cardinality--;
+            return true;
+        }
+
+        boolean isEmpty() {
+            return cardinality == 0;
+        }
+
+        /**
+         * @return the first row number greater or equal to from or -1
+         */
+        int next( int from ) {
+            if (bits != null) {
+                for( int word = from >>> 6; word < bits.length; word++ ) {
+                    long next = bits[word];
+                    if (word == from >>> 6) {
+                        next &= -1L << (from & 63);
+                    }
+                    if (next != 0) {
+                        return word * 64 + Long.numberOfTrailingZeros(next);
+                    }
+                }
+                return -1;
+            }
+            int index = Arrays.binarySearch(values, 0, cardinality, (char) from);
+            if (index < 0) {
+                index = -index - 1;
+            }
+            return index < cardinality ? values[index] : -1;
+        }
+
+        private void toBitmap() {
+            bits = new long[BLOCK_BITS / 64];
+            for( int i = 0; i < cardinality; i++ ) {
+                bits[values[i] >>> 6] |= 1L << values[i];
+            }
+            values = null;
+        }
+
+        private void toArray() {
+            values = new char[cardinality];
+            int i = 0;
+            for( int row = next(0); row >= 0; row = next(row + 1) ) {
+                values[i++] = (char) row;
+            }
+            bits = null;
+        }
+
+        Block copy() {
+            Block copy = new Block();
+            copy.cardinality = cardinality;
+            copy.values = values == null ? null : values.clone();
+            copy.bits = bits == null ? null : bits.clone();
+            return copy;
+        }
+
+        @Override
+        public boolean equals( Object obj ) {
+            if (!(obj instanceof Block)) {
+                return false;
+            }
+            Block other = (Block) obj;
+            if (cardinality != other.cardinality) {
+                return false;
+            }
+            if (bits != null) {
+                return Arrays.equals(bits, other.bits);
+            }
+            for( int i = 0; i < cardinality; i++ ) {
+                if (values[i] != other.values[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public int hashCode() {
+            return cardinality;
+        }
+    }
+}
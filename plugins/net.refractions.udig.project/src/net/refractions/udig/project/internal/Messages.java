@@ -38,9 +38,11 @@ public class Messages extends NLS {
 	public static String MapImpl_NavigationCommandStack;
 	public static String CopyFeaturesCommand_undo;
 	public static String CopyFeaturesCommand_name;
+	public static String CopyFeaturesCommand_canceled;
 	public static String CommandManager_undo;
 	public static String CommandManager_redo;
 	public static String CommandManager_0;
+	public static String CommandManager_batch;
 	public static String LayerImpl_connectionFailed;
 	public static String RollbackCommand_name;
 	public static String CommitCommand_commitCommandName;
@@ -49,6 +51,9 @@ public class Messages extends NLS {
 	public static String CreateMapCommand_defaultname;
 	public static String CreateLayerCommand_badID2;
 	public static String CreateLayerCommand_badID;
+	public static String EditManagerImpl_commitProgress;
+	public static String EditManagerImpl_chunksPending;
+	public static String EditManagerImpl_chunksCommitted;
 	public static String UDIGTransaction_closeException;
 	public static String UDIGTransaction_rollbackException;
 	public static String UDIGTransaction_commitException;
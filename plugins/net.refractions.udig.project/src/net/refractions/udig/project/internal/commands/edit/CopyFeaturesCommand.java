@@ -11,12 +11,11 @@ package net.refractions.udig.project.internal.commands.edit;
 
 import java.awt.Rectangle;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.text.Format;
 import java.text.MessageFormat;
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.Iterator;
-import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
@@ -24,6 +23,7 @@ import net.refractions.udig.core.internal.FeatureUtils;
 import net.refractions.udig.project.ILayer;
 import net.refractions.udig.project.LayerEvent;
 import net.refractions.udig.project.command.AbstractCommand;
+import net.refractions.udig.project.command.MapCommand;
 import net.refractions.udig.project.command.UndoableMapCommand;
 import net.refractions.udig.project.internal.Layer;
 import net.refractions.udig.project.internal.Messages;
@@ -33,19 +33,13 @@ import net.refractions.udig.project.internal.render.ViewportModel;
 
 import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.core.runtime.SubProgressMonitor;
-import org.eclipse.swt.widgets.Display;
 import org.geotools.data.DefaultQuery;
-import org.geotools.data.FeatureEvent;
-import org.geotools.data.FeatureEvent.Type;
-import org.geotools.data.FeatureListener;
 import org.geotools.data.FeatureSource;
 import org.geotools.data.FeatureStore;
 import org.geotools.data.Query;
 import org.geotools.factory.CommonFactoryFinder;
 import org.geotools.factory.GeoTools;
 import org.geotools.feature.FeatureCollection;
-import org.geotools.feature.FeatureIterator;
-import org.geotools.feature.collection.AdaptorFeatureCollection;
 import org.geotools.geometry.jts.ReferencedEnvelope;
 import org.geotools.referencing.CRS;
 import org.geotools.referencing.crs.DefaultGeographicCRS;
@@ -58,7 +52,6 @@ import org.opengis.filter.identity.FeatureId;
 import org.opengis.referencing.FactoryException;
 import org.opengis.referencing.crs.CoordinateReferenceSystem;
 import org.opengis.referencing.operation.MathTransform;
-import org.opengis.referencing.operation.TransformException;
 
 import com.vividsolutions.jts.geom.Envelope;
 
@@ -71,19 +64,46 @@ import com.vividsolutions.jts.geom.Envelope;
  */
 public class CopyFeaturesCommand extends AbstractCommand implements UndoableMapCommand {
 
+    /**
+     * Number of features above which a copy should be made with {@link #createWithoutUndo} so the
+     * ids of the copies are not kept in memory.
+     */
+    public static final int UNDO_LIMIT = 100000;
+
     private Layer destinationLayer;
     private Filter filter;
     private ILayer sourceLayer;
 
+    private final boolean keepUndoState;
+
     // for undo
     private Id addedFeaturesFilter;
     private Filter previousDesinationLayerFilter;
     private ReferencedEnvelope previousEnvelope;
 
     public CopyFeaturesCommand( ILayer sourceLayer, Filter filter, ILayer destinationLayer ) {
+        this(sourceLayer, filter, destinationLayer, true);
+    }
+
+    private CopyFeaturesCommand( ILayer sourceLayer, Filter filter, ILayer destinationLayer,
+            boolean keepUndoState ) {
         this.sourceLayer = sourceLayer;
         this.filter = filter;
         this.destinationLayer = (Layer) destinationLayer;
+        this.keepUndoState = keepUndoState;
+    }
+
+    /**
+     * Creates a command that copies the features without keeping their ids, to save memory when
+     * very many features are copied. The command can not be undone; the copy can only be reverted
+     * by rolling back the edits of the map.
+     * 
+     * @return a command that is not undoable
+     */
+    public static MapCommand createWithoutUndo( ILayer sourceLayer, Filter filter,
+            ILayer destinationLayer ) {
+        return new NoUndoCopyFeaturesCommand(new CopyFeaturesCommand(sourceLayer, filter,
+                destinationLayer, false));
     }
 
     public void run( IProgressMonitor monitor ) throws Exception {
@@ -98,23 +118,19 @@ public class CopyFeaturesCommand extends AbstractCommand implements UndoableMapC
     @SuppressWarnings("unchecked")
     private void copyFeatures( ILayer sourceLayer, Filter filter, final Layer targetLayer,
             final IProgressMonitor monitor ) {
-        final String copyFeaturesCommand_name = Messages.CopyFeaturesCommand_name;
-		String name = MessageFormat.format(copyFeaturesCommand_name,0);
+		String name = MessageFormat.format(Messages.CopyFeaturesCommand_name,0);
 		monitor.setTaskName(name);
 		monitor.beginTask(name, 104);
-        final int[] worked = new int[]{-3};
         monitor.worked(1);
         try {
             SubProgressMonitor subProgressMonitor = new SubProgressMonitor(monitor, 2);
             FeatureStore<SimpleFeatureType, SimpleFeature> destination = targetLayer.getResource(
                     FeatureStore.class, subProgressMonitor);
             subProgressMonitor.done();
-            worked[0] += 2;
             subProgressMonitor = new SubProgressMonitor(monitor, 2);
             FeatureSource<SimpleFeatureType, SimpleFeature> source = sourceLayer.getResource(
                     FeatureSource.class, subProgressMonitor);
             subProgressMonitor.done();
-            worked[0] += 2;
             // If no FeatureStore then features can't be copied
             // If no FeatureSource then features can't be copied
             if (destination == null || source == null) {
@@ -138,44 +154,31 @@ public class CopyFeaturesCommand extends AbstractCommand implements UndoableMapC
                     .getFeatures(query);
             SimpleFeatureType schema = targetLayer.getSchema();
 
-            
-            CopyFeatureCollection c = new CopyFeatureCollection(schema, features, monitor, worked,
-                    mt, attributeMap, targetLayer.layerToMapTransform());
-            Envelope env = c.env;
+            FeatureCopyPipeline pipeline = new FeatureCopyPipeline(features, schema, attributeMap,
+                    mt);
             targetLayer.eSetDeliver(false);
-            FeatureListener listener = new FeatureListener() {
-        		long lastUpdate = System.currentTimeMillis();
-        		long count = 0;
-				public void changed(FeatureEvent event) {
-					if(event.getType() == Type.ADDED) {
-						count ++;
-		            	if(System.currentTimeMillis() - lastUpdate > 1000) {
-		            		Display.getDefault().asyncExec(new Runnable() {
-								
-								public void run() {
-									String name2 = MessageFormat.format(copyFeaturesCommand_name,0);
-				                	monitor.setTaskName(name2);
-								}
-							});
-		                	lastUpdate = System.currentTimeMillis();
-		            	}
-					}
-				}
-			};
 			boolean performedZoom = false;
+            Envelope env;
             try {
-
-            	destination.addFeatureListener(listener);
-                List<FeatureId> fids = destination.addFeatures(c);
+                Set<FeatureId> fids;
+                try {
+                    fids = pipeline.copy(destination, keepUndoState, monitor);
+                } catch (InterruptedIOException canceled) {
+                    // the features copied before the cancel are in the edits of the map
+                    targetLayer.refresh(pipeline.getBounds());
+                    throw canceled;
+                }
+                env = pipeline.getBounds();
 
                 performedZoom = displayCopiedFeatures(env);
 
-                FilterFactory filterFactory = CommonFactoryFinder.getFilterFactory(GeoTools
-                        .getDefaultHints());
-                addedFeaturesFilter = filterFactory.id(new HashSet(fids));
+                if (fids != null) {
+                    FilterFactory filterFactory = CommonFactoryFinder.getFilterFactory(GeoTools
+                            .getDefaultHints());
+                    addedFeaturesFilter = filterFactory.id(fids);
+                }
             } finally {
                 targetLayer.eSetDeliver(true);
-                destination.removeFeatureListener(listener);
             }
             if(performedZoom) {
             	getMap().getRenderManager().refresh(null);
@@ -310,100 +313,24 @@ public class CopyFeaturesCommand extends AbstractCommand implements UndoableMapC
         getMap().getViewportModelInternal().setBounds(this.previousEnvelope);
     }
 
-    private static class CopyFeatureCollection extends AdaptorFeatureCollection {
-
-        final SimpleFeatureType schema;
-        final FeatureCollection<SimpleFeatureType, SimpleFeature> features;
-        final IProgressMonitor monitor;
-        final int[] worked;
-        final MathTransform mt, toWorld;
-        final Map<String, String> attributeMap;
-        final ReferencedEnvelope env;
-
-        CopyFeatureCollection( SimpleFeatureType schema,
-                FeatureCollection<SimpleFeatureType, SimpleFeature> features,
-                IProgressMonitor monitor, int[] worked, MathTransform mt,
-                HashMap<String, String> attributeMap, MathTransform toWorld ) {
-            super("copyCollection", schema);
-            this.schema = schema;
-            this.features = features;
-            this.monitor = monitor;
-            this.worked = worked;
-            this.mt = mt;
-            this.attributeMap = attributeMap;
-            this.env = new ReferencedEnvelope(schema.getCoordinateReferenceSystem());
-            this.toWorld = toWorld;
-        }
+    /**
+     * Runs a copy that does not keep undo state; it is not an {@link UndoableMapCommand} so the
+     * command manager warns that it can not be undone and never tries to roll it back.
+     */
+    private static class NoUndoCopyFeaturesCommand extends AbstractCommand {
+        private final CopyFeaturesCommand copy;
 
-        @Override
-        public int size() {
-            return features.size();
+        NoUndoCopyFeaturesCommand( CopyFeaturesCommand copy ) {
+            this.copy = copy;
         }
-        
-        public ReferencedEnvelope getBounds() {
-            return features.getBounds();
-        }
-
-        Map<Iterator, FeatureIterator<SimpleFeature>> iterators = new HashMap<Iterator, FeatureIterator<SimpleFeature>>();
-
-        @Override
-        protected Iterator openIterator() {
-            final FeatureIterator<SimpleFeature> iter = features.features();
-            Iterator i = new Iterator(){
-
-                // for progress monitor.
-                int numberToCopyForIncrement = 1000;
-                private SimpleFeature next;
-                Iterator<SimpleFeature> copiedFeatures;
-
-                public SimpleFeature next() {
-                    SimpleFeature result = next;
-                    next = null;
-                    return result;
-                }
-
-                public boolean hasNext() {
-                    while( next == null ) {
-                        if (copiedFeatures != null && copiedFeatures.hasNext()) {
-                            next = copiedFeatures.next();
-                        } else {
-                            if (!iter.hasNext())
-                                return false;
-                            SimpleFeature source = iter.next();
-                            numberToCopyForIncrement = updateProgress(monitor,
-                                    numberToCopyForIncrement, worked);
-                            copiedFeatures = FeatureUtils.copyFeature(source, schema, attributeMap,
-                                    mt).iterator();
-                            if (!copiedFeatures.hasNext())
-                                return false;
-                            next = copiedFeatures.next();
-                            ReferencedEnvelope newbounds = new ReferencedEnvelope(next.getBounds());
-                            try {
-                                newbounds = newbounds.transform(env.crs(), true);
-                                env.expandToInclude(newbounds);
-                            } catch (TransformException e) {
-                                ProjectPlugin.log("", e); //$NON-NLS-1$
-                            } catch (FactoryException e) {
-                                ProjectPlugin.log("", e); //$NON-NLS-1$
-                            }
-
-                        }
-                    }
-                    return next != null;
-                }
-
-                public void remove() {
-                    throw new UnsupportedOperationException();
-                }
 
-            };
-            iterators.put(i, iter);
-            return i;
+        public void run( IProgressMonitor monitor ) throws Exception {
+            copy.setMap(getMap());
+            copy.run(monitor);
         }
 
-        @Override
-        protected void closeIterator( Iterator close ) {
-            iterators.get(close).close();
+        public String getName() {
+            return copy.getName();
         }
     }
 
@@ -16,6 +16,7 @@ import net.refractions.udig.project.ILayer;
 import net.refractions.udig.project.command.AbstractCommand;
 import net.refractions.udig.project.internal.Layer;
 import net.refractions.udig.project.internal.Messages;
+import net.refractions.udig.project.internal.impl.EditBatch;
 
 import org.eclipse.core.runtime.IProgressMonitor;
 import org.geotools.data.FeatureEvent;
@@ -52,6 +53,7 @@ public class DeleteManyFeaturesCommand extends AbstractCommand {
         try{
             if( layer!=null ){
                 layer.eSetDeliver(false);
+                EditBatch.flushFeatureChanges(layer);
                 events=layer.getFeatureChanges().size();
             }
         fs.removeFeatures(filter);
@@ -68,6 +70,7 @@ public class DeleteManyFeaturesCommand extends AbstractCommand {
     private void fireFeatureChangeEvent( Layer layer, int events ) {
         if ( layer!=null ){
             layer.eSetDeliver(true);
+            EditBatch.flushFeatureChanges(layer);
             List<FeatureEvent> tmp=layer.getFeatureChanges();
             List<FeatureEvent> eventList=tmp.subList(events, tmp.size());
             Envelope bounds=new Envelope();
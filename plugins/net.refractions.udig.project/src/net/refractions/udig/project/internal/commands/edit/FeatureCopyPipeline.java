@@ -0,0 +1,281 @@
+/*
+ *    uDig - User Friendly Desktop Internet GIS client
+ *    http://udig.refractions.net
+ *    (C) 2012, Refractions Research Inc.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * (http://www.eclipse.org/legal/epl-v10.html), and the Refractions BSD
+ * License v1.0 (http://udig.refractions.net/files/bsd3-v10.html).
+ */
+package net.refractions.udig.project.internal.commands.edit;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import net.refractions.udig.core.internal.FeatureUtils;
+import net.refractions.udig.project.internal.Messages;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.geotools.data.DataUtilities;
+import org.geotools.data.FeatureStore;
+import org.geotools.feature.FeatureCollection;
+import org.geotools.feature.FeatureIterator;
+import org.geotools.geometry.jts.ReferencedEnvelope;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+import org.opengis.filter.identity.FeatureId;
+import org.opengis.referencing.operation.MathTransform;
+
+import com.vividsolutions.jts.geom.Envelope;
+import com.vividsolutions.jts.geom.Geometry;
+
+/**
+ * Copies features into a feature store in three stages that run at the same time: a thread
+ * reads the source features, a few threads convert them to the destination schema (mapping the
+ * attributes and reprojecting the geometries) and the calling thread adds them to the
+ * destination in batches of {@link #BATCH_SIZE} features.
+ * <p>
+ * The stages are connected by bounded queues so only a few batches are in memory whatever the
+ * number of features copied. Batches are numbered as they are read and added in that order, so
+ * the copies are added in the order of the source features although the converters finish
+ * their batches in any order.
+ * </p>
+ *
+ * @since 1.4.0
+ */
+final class FeatureCopyPipeline {
+
+    /** number of features added to the destination at a time */
+    static final int BATCH_SIZE = 512;
+
+    /** marks the end of the features in a queue */
+    private static final Batch END = new Batch(-1, new ArrayList<SimpleFeature>(0));
+
+    private final FeatureCollection<SimpleFeatureType, SimpleFeature> features;
+    private final SimpleFeatureType schema;
+    private final Map<String, String> attributeMap;
+    private final MathTransform mt;
+    private final int converters;
+
+    private final Envelope bounds = new Envelope();
+    private volatile int count;
+    private volatile boolean stopped;
+
+    /**
+     * @param features the features to copy
+     * @param schema the schema of the destination
+     * @param attributeMap maps the attribute names of the destination to the ones of the source
+     * @param mt transform from the source CRS to the destination CRS
+     */
+    FeatureCopyPipeline( FeatureCollection<SimpleFeatureType, SimpleFeature> features,
+            SimpleFeatureType schema, Map<String, String> attributeMap, MathTransform mt ) {
+        this.features = features;
+        this.schema = schema;
+        this.attributeMap = attributeMap;
+        this.mt = mt;
+        this.converters = Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+    }
+
+    /**
+     * @return the bounds of the features copied, in the CRS of the destination
+     */
+    ReferencedEnvelope getBounds() {
+        synchronized (bounds) {
+            return new ReferencedEnvelope(bounds, schema.getCoordinateReferenceSystem());
+        }
+    }
+
+    /**
+     * @return the number of features added to the destination so far
+     */
+    int getCount() {
+        return count;
+    }
+
+    /**
+     * Copies the features.
+     *
+     * @param destination the store the features are added to
+     * @param keepIds true to return the ids of the features added
+     * @param monitor shows the number of features copied, copying stops if it is canceled
+     * @return the ids of the features added or null if keepIds is false
+     * @throws InterruptedIOException if the monitor was canceled; the features added until then
+     *         stay in the destination and their number is {@link #getCount()}
+     * @throws IOException if the features could not be read, converted or added
+     */
+    Set<FeatureId> copy( FeatureStore<SimpleFeatureType, SimpleFeature> destination,
+            boolean keepIds, IProgressMonitor monitor ) throws IOException {
+        final BlockingQueue<Batch> read = new ArrayBlockingQueue<Batch>(converters * 2);
+        final BlockingQueue<Batch> converted = new ArrayBlockingQueue<Batch>(converters * 2);
+        // batches converted ahead of the next one to add, only as many as there are in flight
+        Map<Long, List<SimpleFeature>> ahead = new TreeMap<Long, List<SimpleFeature>>();
+        long next = 0;
+        Set<FeatureId> ids = keepIds ? new HashSet<FeatureId>() : null;
+
+        ExecutorService executor = Executors.newFixedThreadPool(converters + 1);
+        List<Future<Object>> stages = new ArrayList<Future<Object>>();
+        try {
+            stages.add(executor.submit(new Callable<Object>(){
+                public Object call() throws Exception {
+                    read(read);
+                    return null;
+                }
+            }));
+            for( int i = 0; i < converters; i++ ) {
+                stages.add(executor.submit(new Callable<Object>(){
+                    public Object call() throws Exception {
+                        convert(read, converted);
+                        return null;
+                    }
+                }));
+            }
+
+            int ended = 0;
+            long lastUpdate = System.currentTimeMillis();
+            while( ended < converters ) {
+                if (monitor.isCanceled()) {
+                    throw new InterruptedIOException(MessageFormat.format(
+                            Messages.CopyFeaturesCommand_canceled, count));
+                }
+                Batch batch = converted.poll(200, TimeUnit.MILLISECONDS);
+                if (batch == null) {
+                    checkFailure(stages);
+                    continue;
+                }
+                if (batch == END) {
+                    ended++;
+                    continue;
+                }
+                ahead.put(batch.sequence, batch.features);
+                for( List<SimpleFeature> features = ahead.remove(next); features != null; features = ahead
+                        .remove(next) ) {
+                    next++;
+                    if (features.isEmpty()) {
+                        continue;
+                    }
+                    List<FeatureId> added = destination.addFeatures(DataUtilities
+                            .collection(features));
+                    if (ids != null) {
+                        ids.addAll(added);
+                    }
+                    count += features.size();
+                }
+                if (System.currentTimeMillis() - lastUpdate > 1000) {
+                    monitor.setTaskName(MessageFormat.format(Messages.CopyFeaturesCommand_name,
+                            count));
+                    lastUpdate = System.currentTimeMillis();
+                }
+            }
+            checkFailure(stages);
+            if (!ahead.isEmpty()) {
+                throw new IOException("Batches " + ahead.keySet() + " were converted but not batch " + next); //$NON-NLS-1$ //$NON-NLS-2$
+            }
+            return ids;
+        } catch (InterruptedException e) {
+            throw (IOException) new IOException(e.getLocalizedMessage()).initCause(e);
+        } finally {
+            stopped = true;
+            executor.shutdownNow();
+        }
+    }
+
+    private void read( BlockingQueue<Batch> read ) throws InterruptedException {
+        FeatureIterator<SimpleFeature> iter = features.features();
+        try {
+            long sequence = 0;
+            List<SimpleFeature> batch = new ArrayList<SimpleFeature>(BATCH_SIZE);
+            while( !stopped && iter.hasNext() ) {
+                batch.add(iter.next());
+                if (batch.size() == BATCH_SIZE) {
+                    read.put(new Batch(sequence++, batch));
+                    batch = new ArrayList<SimpleFeature>(BATCH_SIZE);
+                }
+            }
+            if (!batch.isEmpty()) {
+                read.put(new Batch(sequence++, batch));
+            }
+        } finally {
+            iter.close();
+            for( int i = 0; i < converters; i++ ) {
+                read.put(END);
+            }
+        }
+    }
+
+    private void convert( BlockingQueue<Batch> read, BlockingQueue<Batch> converted )
+            throws InterruptedException {
+        try {
+            while( !stopped ) {
+                Batch batch = read.take();
+                if (batch == END) {
+                    return;
+                }
+                List<SimpleFeature> copies = new ArrayList<SimpleFeature>(batch.features.size());
+                Envelope batchBounds = new Envelope();
+                for( SimpleFeature feature : batch.features ) {
+                    for( SimpleFeature copy : FeatureUtils.copyFeature(feature, schema,
+                            attributeMap, mt) ) {
+                        copies.add(copy);
+                        Object geometry = copy.getDefaultGeometry();
+                        if (geometry instanceof Geometry) {
+                            batchBounds.expandToInclude(((Geometry) geometry).getEnvelopeInternal());
+                        }
+                    }
+                }
+                synchronized (bounds) {
+                    bounds.expandToInclude(batchBounds);
+                }
+                converted.put(new Batch(batch.sequence, copies));
+            }
+        } finally {
+            converted.put(END);
+        }
+    }
+
+    private static void checkFailure( List<Future<Object>> stages ) throws IOException,
+            InterruptedException {
+        for( Future<Object> stage : stages ) {
+            if (!stage.isDone()) {
+                continue;
+            }
+            try {
+                stage.get();
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof IOException) {
+                    throw (IOException) cause;
+                }
+                throw (IOException) new IOException(cause.getLocalizedMessage()).initCause(cause);
+            }
+        }
+    }
+
+    /**
+     * Features of the source numbered in the order they were read.
+     */
+    private static final class Batch {
+        final long sequence;
+        final List<SimpleFeature> features;
+
+        Batch( long sequence, List<SimpleFeature> features ) {
+            this.sequence = sequence;
+            this.features = features;
+        }
+    }
+}
@@ -9,19 +9,27 @@
  */
 package net.refractions.udig.project.internal.commands.selection;
 
+import java.io.IOException;
+
 import net.refractions.udig.core.internal.FeatureUtils;
 import net.refractions.udig.project.ILayer;
 import net.refractions.udig.project.command.AbstractCommand;
 import net.refractions.udig.project.command.UndoableMapCommand;
+import net.refractions.udig.project.internal.FidSelection;
 import net.refractions.udig.project.internal.Layer;
 import net.refractions.udig.project.internal.Messages;
+import net.refractions.udig.project.internal.ProjectPlugin;
 
 import org.eclipse.core.runtime.IProgressMonitor;
+import org.geotools.data.FeatureSource;
 import org.geotools.factory.CommonFactoryFinder;
 import org.geotools.factory.GeoTools;
+import org.geotools.feature.FeatureIterator;
 import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
 import org.opengis.filter.Filter;
 import org.opengis.filter.FilterFactory;
+import org.opengis.filter.Id;
 
 /**
  * TODO Purpose of net.refractions.udig.project.internal.commands.selection
@@ -33,8 +41,21 @@ import org.opengis.filter.FilterFactory;
  */
 public class FIDSelectCommand extends AbstractCommand implements UndoableMapCommand {
 
+    /** Adds the feature to the layer's selection */
+    public final static int ADD = 1;
+
+    /** Replaces the layer's selection */
+    public final static int NONE = 0;
+
+    /** Removes the feature from the layer's selection */
+    public final static int SUBTRACT = -1;
+
+    /** Adds the feature to the layer's selection if it is not selected, removes it otherwise */
+    public final static int TOGGLE = 2;
+
     private Layer layer;
     private String id;
+    private int mode = NONE;
     private Filter oldFilter;
 
     /**
@@ -48,6 +69,19 @@ public class FIDSelectCommand extends AbstractCommand implements UndoableMapComm
         this.id = featureID;
     }
 
+    /**
+     * Changes the selection of a layer by a single feature as specified by the FID
+     * 
+     * @param layer
+     * @param featureID
+     * @param mode one of {@link #NONE}, {@link #ADD}, {@link #SUBTRACT} or {@link #TOGGLE}
+     */
+    public FIDSelectCommand( ILayer layer, String featureID, int mode ) {
+        this.layer = (Layer) layer;
+        this.id = featureID;
+        this.mode = mode;
+    }
+
     /**
      * Set the select of a layer to be a single feature as specified by the feature
      * 
@@ -72,9 +106,72 @@ public class FIDSelectCommand extends AbstractCommand implements UndoableMapComm
      */
     public void run( IProgressMonitor monitor ) {
         oldFilter = layer.getFilter();
+        if (mode == NONE) {
+            FidSelection selection = new FidSelection();
+            selection.add(id);
+            layer.setFilter(selection);
+            return;
+        }
+        FidSelection selection;
+        if (oldFilter == null || oldFilter == Filter.EXCLUDE || oldFilter.equals(Filter.EXCLUDE)) {
+            selection = new FidSelection();
+        } else if (oldFilter instanceof Id) {
+            // the old selection is kept by the undo so it is copied
+            selection = FidSelection.valueOf((Id) oldFilter);
+        } else {
+            layer.setFilter(combine(oldFilter));
+            return;
+        }
+        if (mode == ADD) {
+            selection.add(id);
+        } else if (mode == SUBTRACT) {
+            selection.remove(id);
+        } else {
+            selection.toggle(id);
+        }
+        layer.setFilter(selection.isEmpty() ? Filter.EXCLUDE : selection);
+    }
+
+    /**
+     * Combines a selection that is not made of feature ids with the feature.
+     */
+    private Filter combine( Filter filter ) {
         FilterFactory filterFactory = CommonFactoryFinder.getFilterFactory(GeoTools.getDefaultHints());
-		Filter filter = filterFactory.id(FeatureUtils.stringToId(filterFactory, id));
-        layer.setFilter(filter);
+        Filter feature = filterFactory.id(FeatureUtils.stringToId(filterFactory, id));
+        boolean selected;
+        if (mode == TOGGLE) {
+            selected = isSelected(filter, feature);
+        } else {
+            selected = mode == SUBTRACT;
+        }
+        if (selected) {
+            return filterFactory.and(filter, filterFactory.not(feature));
+        }
+        return filterFactory.or(filter, feature);
+    }
+
+    /**
+     * @return true if the feature is in the selection
+     */
+    private boolean isSelected( Filter filter, Filter feature ) {
+        FeatureIterator<SimpleFeature> iter = null;
+        try {
+            FeatureSource<SimpleFeatureType, SimpleFeature> source = layer.getResource(
+                    FeatureSource.class, null);
+            if (source == null) {
+                return false;
+            }
+            FilterFactory filterFactory = CommonFactoryFinder.getFilterFactory(GeoTools.getDefaultHints());
+            iter = source.getFeatures(filterFactory.and(filter, feature)).features();
+            return iter.hasNext();
+        } catch (IOException e) {
+            ProjectPlugin.log(null, e);
+            return false;
+        } finally {
+            if (iter != null) {
+                iter.close();
+            }
+        }
     }
 
     /**
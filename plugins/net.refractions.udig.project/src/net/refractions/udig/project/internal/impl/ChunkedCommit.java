@@ -0,0 +1,506 @@
+/*
+ *    uDig - User Friendly Desktop Internet GIS client
+ *    http://udig.refractions.net
+ *    (C) 2012, Refractions Research Inc.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * (http://www.eclipse.org/legal/epl-v10.html), and the Refractions BSD
+ * License v1.0 (http://udig.refractions.net/files/bsd3-v10.html).
+ */
+package net.refractions.udig.project.internal.impl;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.geotools.data.DataUtilities;
+import org.geotools.data.DefaultTransaction;
+import org.geotools.data.FeatureSource;
+import org.geotools.data.FeatureWriter;
+import org.geotools.data.Query;
+import org.geotools.data.Transaction;
+import org.geotools.data.simple.SimpleFeatureIterator;
+import org.geotools.data.simple.SimpleFeatureStore;
+import org.geotools.factory.CommonFactoryFinder;
+import org.geotools.factory.GeoTools;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+import org.opengis.filter.Filter;
+import org.opengis.filter.FilterFactory;
+import org.opengis.filter.Id;
+import org.opengis.filter.identity.FeatureId;
+import org.opengis.filter.identity.Identifier;
+
+/**
+ * Records which features are edited with a {@link UDIGTransaction} so that the
+ * {@link EditManagerImpl} can commit them in chunks, each chunk in a transaction of its own.
+ * <p>
+ * When the map is committed the edited features are read from the map transaction one chunk at a
+ * time and written to their stores, each chunk in its own transaction; a written chunk is dropped
+ * from the journal. The map transaction keeps all the edits until every chunk is written and is
+ * only rolled back then, as its edits are in the stores. If a chunk fails the map still shows the
+ * edits and the next commit resumes with the chunks that were not written; a rollback of the map
+ * only reverts those.
+ * </p>
+ * <p>
+ * If an edit can not be recorded (complex features, {@link SimpleFeatureStore#setFeatures}) or a
+ * store can not be written outside of the map transaction the map transaction is committed as a
+ * whole.
+ * </p>
+ *
+ * @since 1.4.0
+ */
+final class ChunkedCommit {
+
+    private static final FilterFactory FILTER_FACTORY = CommonFactoryFinder
+            .getFilterFactory(GeoTools.getDefaultHints());
+
+    private volatile int chunkSize;
+
+    /** the features edited since the last commit or rollback, by the store that edited them */
+    private final Map<SimpleFeatureStore, Journal> journals = new IdentityHashMap<SimpleFeatureStore, Journal>();
+
+    /** true if an edit was made that is not in {@link #journals} */
+    private boolean unjournaled;
+
+    /** the number of edits written in chunks since the map transaction was committed or rolled back */
+    private int written;
+
+    private volatile int total;
+
+    private volatile int committed;
+
+    private volatile long startTime;
+
+    /**
+     * @see UDIGTransaction#setChunkSize(int)
+     */
+    void setChunkSize( int chunkSize ) {
+        this.chunkSize = Math.max(0, chunkSize);
+    }
+
+    /**
+     * @see UDIGTransaction#getChunkSize()
+     */
+    int getChunkSize() {
+        return chunkSize;
+    }
+
+    /**
+     * Records the ids of features added to the store with the transaction.
+     */
+    static void added( SimpleFeatureStore store, List<FeatureId> ids ) {
+        ChunkedCommit chunks = get(store.getTransaction());
+        if (chunks != null) {
+            chunks.journal(store, ids, Kind.ADDED);
+        }
+    }
+
+    /**
+     * Records the features that a modification with the transaction is about to change; must be
+     * called before the modification as the filter may no longer match afterwards.
+     */
+    static void modified( SimpleFeatureStore store, Filter filter ) {
+        ChunkedCommit chunks = get(store.getTransaction());
+        if (chunks != null) {
+            chunks.journal(store, filter, Kind.MODIFIED);
+        }
+    }
+
+    /**
+     * Records the features that are about to be removed with the transaction.
+     */
+    static void removed( SimpleFeatureStore store, Filter filter ) {
+        ChunkedCommit chunks = get(store.getTransaction());
+        if (chunks != null) {
+            chunks.journal(store, filter, Kind.REMOVED);
+        }
+    }
+
+    /**
+     * Records that an edit was made with the transaction that can not be committed in chunks.
+     */
+    static void unjournaled( Transaction transaction ) {
+        ChunkedCommit chunks = get(transaction);
+        if (chunks != null) {
+            synchronized (chunks) {
+                chunks.unjournaled = true;
+            }
+        }
+    }
+
+    private static ChunkedCommit get( Transaction transaction ) {
+        if (transaction instanceof UDIGTransaction) {
+            ChunkedCommit chunks = ((UDIGTransaction) transaction).getChunkedCommit();
+            if (chunks.chunkSize > 0) {
+                return chunks;
+            }
+        }
+        return null;
+    }
+
+    private void journal( SimpleFeatureStore store, Filter filter, Kind kind ) {
+        List<FeatureId> ids = new ArrayList<FeatureId>();
+        try {
+            if (filter instanceof Id) {
+                for( Identifier identifier : ((Id) filter).getIdentifiers() ) {
+                    ids.add(FILTER_FACTORY.featureId(identifier.getID().toString()));
+                }
+            } else {
+                Query query = new Query(store.getSchema().getTypeName(), filter, Query.NO_NAMES);
+                SimpleFeatureIterator iter = store.getFeatures(query).features();
+                try {
+                    while( iter.hasNext() ) {
+                        ids.add(iter.next().getIdentifier());
+                    }
+                } finally {
+                    iter.close();
+                }
+            }
+        } catch (IOException e) {
+            // the edit itself will report the problem, it just can not be committed in chunks
+            synchronized (this) {
+                unjournaled = true;
+            }
+            return;
+        }
+        journal(store, ids, kind);
+    }
+
+    private synchronized void journal( SimpleFeatureStore store, List<FeatureId> ids, Kind kind ) {
+        Journal journal = journals.get(store);
+        if (journal == null) {
+            journal = new Journal();
+            journals.put(store, journal);
+        }
+        for( FeatureId id : ids ) {
+            String fid = id.getID();
+            switch( kind ) {
+            case ADDED:
+                journal.added.add(fid);
+                break;
+            case MODIFIED:
+                if (!journal.added.contains(fid)) {
+                    journal.modified.add(fid);
+                }
+                break;
+            case REMOVED:
+                // a feature added and removed again was never in the store
+                if (!journal.added.remove(fid)) {
+                    journal.modified.remove(fid);
+                    journal.removed.add(fid);
+                }
+                break;
+            }
+        }
+    }
+
+    /**
+     * Forgets the recorded edits; called when the map transaction is committed or rolled back.
+     */
+    synchronized void clear() {
+        journals.clear();
+        unjournaled = false;
+        written = 0;
+    }
+
+    /**
+     * Returns true if the recorded edits are committed with {@link #commit()}, the map
+     * transaction must be rolled back once it succeeds as the edits are then in the stores.
+     * Once chunks are written the remaining edits are always committed in chunks.
+     *
+     * @return false if the edits can not be committed in chunks and the map transaction has to be
+     *         committed instead
+     * @throws IOException if chunks were written but an edit made since can not be committed in
+     *         chunks
+     */
+    synchronized boolean isChunked() throws IOException {
+        if (written > 0) {
+            if (unjournaled) {
+                throw new IOException("The edits were partly committed in chunks, the remaining edits can only be committed at once"); //$NON-NLS-1$
+            }
+            return true;
+        }
+        if (chunkSize == 0 || unjournaled || journals.isEmpty()) {
+            return false;
+        }
+        for( SimpleFeatureStore store : journals.keySet() ) {
+            if (target(store) == null) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns a store for the features of the map store that does not use the map transaction,
+     * or null if the data store shares its feature stores.
+     */
+    private static SimpleFeatureStore target( SimpleFeatureStore store ) throws IOException {
+        FeatureSource<SimpleFeatureType, SimpleFeature> source = store.getDataStore()
+                .getFeatureSource(store.getSchema().getName());
+        if (source instanceof SimpleFeatureStore && source != store
+                && ((SimpleFeatureStore) source).getTransaction() == Transaction.AUTO_COMMIT) {
+            return (SimpleFeatureStore) source;
+        }
+        return null;
+    }
+
+    /**
+     * Writes the recorded edits to their stores, reading each chunk from the map transaction
+     * just before it is written. A chunk that fails stays recorded with the chunks after it.
+     *
+     * @throws IOException if a chunk could not be written
+     */
+    synchronized void commit() throws IOException {
+        int size = chunkSize > 0 ? chunkSize : Integer.MAX_VALUE;
+        committed = 0;
+        startTime = System.currentTimeMillis();
+        total = getPending();
+        try {
+            for( Map.Entry<SimpleFeatureStore, Journal> entry : journals.entrySet() ) {
+                SimpleFeatureStore store = entry.getKey();
+                Journal journal = entry.getValue();
+                SimpleFeatureStore target = target(store);
+                if (target == null) {
+                    throw new IOException("No store to commit " + store.getSchema().getTypeName() + " in chunks"); //$NON-NLS-1$ //$NON-NLS-2$
+                }
+                while( !journal.removed.isEmpty() ) {
+                    List<String> fids = first(journal.removed, size);
+                    new RemoveChunk(target, journal.toStore(fids)).commit();
+                    written(journal.removed, fids);
+                }
+                while( !journal.modified.isEmpty() ) {
+                    List<String> fids = first(journal.modified, size);
+                    new ModifyChunk(target, journal, read(store, fids)).commit();
+                    written(journal.modified, fids);
+                }
+                while( !journal.added.isEmpty() ) {
+                    List<String> fids = first(journal.added, size);
+                    AddChunk chunk = new AddChunk(target, read(store, fids));
+                    chunk.commit();
+                    // later edits of the features in the map go to the ids the store gave them
+                    for( int i = 0; i < chunk.ids.size() && i < chunk.features.size(); i++ ) {
+                        journal.stored.put(chunk.features.get(i).getID(), chunk.ids.get(i)
+                                .getID());
+                    }
+                    written(journal.added, fids);
+                }
+            }
+        } finally {
+            total = 0;
+        }
+    }
+
+    private void written( Set<String> journaled, List<String> fids ) {
+        journaled.removeAll(fids);
+        committed += fids.size();
+        written += fids.size();
+    }
+
+    private static List<String> first( Set<String> fids, int size ) {
+        List<String> first = new ArrayList<String>(Math.min(size, fids.size()));
+        for( String fid : fids ) {
+            if (first.size() == size) {
+                break;
+            }
+            first.add(fid);
+        }
+        return first;
+    }
+
+    /**
+     * Reads the features as they are in the map transaction.
+     */
+    private static List<SimpleFeature> read( SimpleFeatureStore store, List<String> fids )
+            throws IOException {
+        List<SimpleFeature> features = new ArrayList<SimpleFeature>(fids.size());
+        SimpleFeatureIterator iter = store.getFeatures(id(fids)).features();
+        try {
+            while( iter.hasNext() ) {
+                features.add(iter.next());
+            }
+        } finally {
+            iter.close();
+        }
+        return features;
+    }
+
+    private static Id id( List<String> fids ) {
+        Set<FeatureId> ids = new HashSet<FeatureId>();
+        for( String fid : fids ) {
+            ids.add(FILTER_FACTORY.featureId(fid));
+        }
+        return FILTER_FACTORY.id(ids);
+    }
+
+    /**
+     * @return the number of recorded edits that have not been written yet
+     */
+    synchronized int getPending() {
+        int edits = 0;
+        for( Journal journal : journals.values() ) {
+            edits += journal.added.size() + journal.modified.size() + journal.removed.size();
+        }
+        return edits;
+    }
+
+    /**
+     * @return the number of edits written in chunks since the map transaction was committed or
+     *         rolled back; a rollback of the map does not revert them
+     */
+    synchronized int getWritten() {
+        return written;
+    }
+
+    /**
+     * @return the number of edits the running commit writes, 0 if no chunks are being written
+     */
+    int getTotal() {
+        return total;
+    }
+
+    /**
+     * @return the number of edits the running commit has written so far
+     */
+    int getCommitted() {
+        return committed;
+    }
+
+    /**
+     * @return the edits written per second by the running or last commit
+     */
+    double getRate() {
+        return committed * 1000.0 / Math.max(1, System.currentTimeMillis() - startTime);
+    }
+
+    private enum Kind {
+        ADDED, MODIFIED, REMOVED
+    }
+
+    /** the ids of the features one store edited, in the order they were first edited */
+    private static class Journal {
+        final Set<String> added = new LinkedHashSet<String>();
+        final Set<String> modified = new LinkedHashSet<String>();
+        final Set<String> removed = new LinkedHashSet<String>();
+        /** the ids the store gave the added features that were written, by their id in the map */
+        final Map<String, String> stored = new HashMap<String, String>();
+
+        String toStore( String fid ) {
+            String storeFid = stored.get(fid);
+            return storeFid == null ? fid : storeFid;
+        }
+
+        List<String> toStore( List<String> fids ) {
+            List<String> storeFids = new ArrayList<String>(fids.size());
+            for( String fid : fids ) {
+                storeFids.add(toStore(fid));
+            }
+            return storeFids;
+        }
+    }
+
+    /** edits written to a store in one transaction */
+    private static abstract class Chunk {
+        final SimpleFeatureStore store;
+
+        Chunk( SimpleFeatureStore store ) {
+            this.store = store;
+        }
+
+        abstract void write( Transaction transaction ) throws IOException;
+
+        void commit() throws IOException {
+            Transaction transaction = new DefaultTransaction("chunk"); //$NON-NLS-1$
+            boolean done = false;
+            store.setTransaction(transaction);
+            try {
+                write(transaction);
+                transaction.commit();
+                done = true;
+            } finally {
+                try {
+                    if (!done) {
+                        transaction.rollback();
+                    }
+                } finally {
+                    store.setTransaction(Transaction.AUTO_COMMIT);
+                    transaction.close();
+                }
+            }
+        }
+    }
+
+    private static class RemoveChunk extends Chunk {
+        final List<String> fids;
+
+        RemoveChunk( SimpleFeatureStore store, List<String> fids ) {
+            super(store);
+            this.fids = fids;
+        }
+
+        @Override
+        void write( Transaction transaction ) throws IOException {
+            store.removeFeatures(id(fids));
+        }
+    }
+
+    /** copies the attributes of the features in one pass of a writer over their ids */
+    private static class ModifyChunk extends Chunk {
+        final Map<String, SimpleFeature> features = new HashMap<String, SimpleFeature>();
+
+        ModifyChunk( SimpleFeatureStore store, Journal journal, List<SimpleFeature> edited ) {
+            super(store);
+            for( SimpleFeature feature : edited ) {
+                features.put(journal.toStore(feature.getID()), feature);
+            }
+        }
+
+        @Override
+        void write( Transaction transaction ) throws IOException {
+            if (features.isEmpty()) {
+                return;
+            }
+            FeatureWriter<SimpleFeatureType, SimpleFeature> writer = store.getDataStore()
+                    .getFeatureWriter(store.getSchema().getTypeName(),
+                            id(new ArrayList<String>(features.keySet())), transaction);
+            try {
+                while( writer.hasNext() ) {
+                    SimpleFeature feature = writer.next();
+                    SimpleFeature edited = features.get(feature.getID());
+                    if (edited != null) {
+                        feature.setAttributes(edited.getAttributes());
+                        writer.write();
+                    }
+                }
+            } finally {
+                writer.close();
+            }
+        }
+    }
+
+    private static class AddChunk extends Chunk {
+        final List<SimpleFeature> features;
+        /** the ids the store gave the features, in the order of the features */
+        List<FeatureId> ids = new ArrayList<FeatureId>();
+
+        AddChunk( SimpleFeatureStore store, List<SimpleFeature> features ) {
+            super(store);
+            this.features = features;
+        }
+
+        @Override
+        void write( Transaction transaction ) throws IOException {
+            if (!features.isEmpty()) {
+                ids = store.addFeatures(DataUtilities.collection(features));
+            }
+        }
+    }
+}
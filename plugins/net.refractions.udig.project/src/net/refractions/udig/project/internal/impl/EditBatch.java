@@ -0,0 +1,266 @@
+/*
+ *    uDig - User Friendly Desktop Internet GIS client
+ *    http://udig.refractions.net
+ *    (C) 2012, Refractions Research Inc.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * (http://www.eclipse.org/legal/epl-v10.html), and the Refractions BSD
+ * License v1.0 (http://udig.refractions.net/files/bsd3-v10.html).
+ */
+package net.refractions.udig.project.internal.impl;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import net.refractions.udig.project.LayerEvent;
+import net.refractions.udig.project.internal.Layer;
+import net.refractions.udig.project.internal.ProjectPlugin;
+
+import org.geotools.data.FeatureEvent;
+import org.geotools.factory.CommonFactoryFinder;
+import org.geotools.geometry.jts.ReferencedEnvelope;
+import org.opengis.filter.Filter;
+import org.opengis.filter.FilterFactory2;
+import org.opengis.filter.Id;
+import org.opengis.filter.identity.Identifier;
+
+import com.vividsolutions.jts.geom.Envelope;
+
+/**
+ * Holds back the edit notifications and refreshes of the layers while a batch of edits runs on
+ * the current thread and sends them out merged when the batch ends: each layer gets one
+ * {@link FeatureEvent} per event type, one edit {@link LayerEvent} and one refresh of the union of
+ * the bounds that were changed.
+ * <p>
+ * Batches can be nested, only the outer most {@link #end()} sends the events. Commands that read
+ * {@link Layer#getFeatureChanges()} right after an edit call {@link #flushFeatureChanges(Layer)}
+ * first.
+ * </p>
+ *
+ * @since 1.4.0
+ */
+public final class EditBatch {
+
+    private static final ThreadLocal<EditBatch> CURRENT = new ThreadLocal<EditBatch>();
+
+    private final Map<LayerImpl, Pending> layers = new LinkedHashMap<LayerImpl, Pending>();
+    private int depth;
+    /** true while held back events are being sent, so they are not held back again */
+    private boolean sending;
+
+    private EditBatch() {
+    }
+
+    /**
+     * Starts holding back the edit events of the current thread.
+     */
+    public static void begin() {
+        EditBatch batch = CURRENT.get();
+        if (batch == null) {
+            batch = new EditBatch();
+            CURRENT.set(batch);
+        }
+        batch.depth++;
+    }
+
+    /**
+     * Ends the batch started by the matching {@link #begin()}; if it is the outer most batch the
+     * merged events are sent.
+     */
+    public static void end() {
+        EditBatch batch = CURRENT.get();
+        if (batch == null) {
+            return;
+        }
+        batch.depth--;
+        if (batch.depth > 0) {
+            return;
+        }
+        CURRENT.remove();
+        batch.flush();
+    }
+
+    /**
+     * @return true if the edit events of the current thread are being held back
+     */
+    public static boolean isActive() {
+        return CURRENT.get() != null;
+    }
+
+    /**
+     * @return the batch of the current thread or null, also while it sends held back events
+     */
+    static EditBatch current() {
+        EditBatch batch = CURRENT.get();
+        return batch == null || batch.sending ? null : batch;
+    }
+
+    /**
+     * Sends the feature events held back for the layer so that they are in
+     * {@link Layer#getFeatureChanges()}; does nothing if no batch runs on the current thread.
+     * 
+     * @param layer the layer whose changes are about to be read
+     */
+    public static void flushFeatureChanges( Layer layer ) {
+        EditBatch batch = CURRENT.get();
+        if (batch == null || !(layer instanceof LayerImpl)) {
+            return;
+        }
+        Pending pending = batch.layers.get(layer);
+        if (pending == null || pending.features.isEmpty()) {
+            return;
+        }
+        List<FeatureEvent> events = new ArrayList<FeatureEvent>(pending.features.values());
+        pending.features.clear();
+        batch.sending = true;
+        try {
+            for( FeatureEvent event : events ) {
+                ((LayerImpl) layer).featureListener.changed(event);
+            }
+        } finally {
+            batch.sending = false;
+        }
+    }
+
+    private Pending pending( LayerImpl layer ) {
+        Pending pending = layers.get(layer);
+        if (pending == null) {
+            pending = new Pending();
+            layers.put(layer, pending);
+        }
+        return pending;
+    }
+
+    /**
+     * Holds back a feature event that has bounds.
+     */
+    void featureChanged( LayerImpl layer, FeatureEvent event ) {
+        Pending pending = pending(layer);
+        FeatureEvent merged = pending.features.get(event.getType());
+        pending.features.put(event.getType(), merge(merged, event));
+    }
+
+    /**
+     * Holds back an edit {@link LayerEvent} of the layer.
+     */
+    void editEvent( LayerImpl layer, FeatureEvent event ) {
+        Pending pending = pending(layer);
+        pending.edit = merge(pending.edit, event);
+        pending.editCount++;
+        Filter filter = event.getFilter();
+        if (pending.ids != null && filter instanceof Id) {
+            pending.ids.addAll(((Id) filter).getIdentifiers());
+        } else {
+            pending.ids = null;
+        }
+    }
+
+    /**
+     * Holds back a refresh of the layer.
+     *
+     * @param bounds area to refresh or null for the whole layer
+     */
+    void refresh( LayerImpl layer, Envelope bounds ) {
+        Pending pending = pending(layer);
+        if (!pending.refresh) {
+            pending.refresh = true;
+            pending.refreshBounds = bounds == null ? null : new Envelope(bounds);
+        } else if (pending.refreshBounds != null) {
+            if (bounds == null) {
+                pending.refreshBounds = null;
+            } else {
+                pending.refreshBounds.expandToInclude(bounds);
+            }
+        }
+    }
+
+    private void flush() {
+        for( Map.Entry<LayerImpl, Pending> entry : layers.entrySet() ) {
+            LayerImpl layer = entry.getKey();
+            Pending pending = entry.getValue();
+            try {
+                for( FeatureEvent event : pending.features.values() ) {
+                    layer.featureListener.changed(event);
+                }
+                if (pending.edit != null) {
+                    FeatureEvent edit = pending.edit;
+                    if (pending.editCount > 1) {
+                        edit = new FeatureEvent(edit.getSource(), edit.getType(), edit.getBounds(),
+                                pending.getFilter());
+                    }
+                    layer.fireLayerChange(new LayerEvent(layer, LayerEvent.EventType.EDIT_EVENT,
+                            null, edit));
+                }
+                if (pending.refresh) {
+                    layer.refresh(pending.refreshBounds);
+                }
+            } catch (Throwable t) {
+                ProjectPlugin.log("", t); //$NON-NLS-1$
+            }
+        }
+        layers.clear();
+    }
+
+    /**
+     * Merges two events into one that covers the union of their bounds and whose filter matches
+     * the features of both.
+     */
+    private static FeatureEvent merge( FeatureEvent merged, FeatureEvent event ) {
+        if (merged == null) {
+            return event;
+        }
+        FeatureEvent.Type type = merged.getType() == event.getType()
+                ? merged.getType()
+                : FeatureEvent.Type.CHANGED;
+        ReferencedEnvelope bounds = null;
+        if (merged.getBounds() != null && event.getBounds() != null) {
+            bounds = new ReferencedEnvelope(merged.getBounds());
+            bounds.expandToInclude(event.getBounds());
+        }
+        return new FeatureEvent(merged.getSource(), type, bounds, union(merged.getFilter(),
+                event.getFilter()));
+    }
+
+    /**
+     * @return one Id filter with the ids of both filters if they are Id filters, otherwise a
+     *         filter that matches what either matches
+     */
+    private static Filter union( Filter filter1, Filter filter2 ) {
+        if (filter1 == null || filter2 == null || filter1 == Filter.INCLUDE
+                || filter2 == Filter.INCLUDE) {
+            return Filter.INCLUDE;
+        }
+        FilterFactory2 factory = CommonFactoryFinder.getFilterFactory2(null);
+        if (filter1 instanceof Id && filter2 instanceof Id) {
+            Set<Identifier> ids = new HashSet<Identifier>(((Id) filter1).getIdentifiers());
+            ids.addAll(((Id) filter2).getIdentifiers());
+            return factory.id(ids);
+        }
+        return factory.or(filter1, filter2);
+    }
+
+    private static class Pending {
+        final Map<FeatureEvent.Type, FeatureEvent> features = new LinkedHashMap<FeatureEvent.Type, FeatureEvent>();
+        /** ids of the edited features, null once an edit was not made by id */
+        Set<Identifier> ids = new HashSet<Identifier>();
+        FeatureEvent edit;
+        int editCount;
+        boolean refresh;
+        Envelope refreshBounds;
+
+        /**
+         * @return one Id filter if all the edits were made by id otherwise {@link Filter#INCLUDE}
+         */
+        Filter getFilter() {
+            if (ids == null) {
+                return Filter.INCLUDE;
+            }
+            return CommonFactoryFinder.getFilterFactory2(null).id(ids);
+        }
+    }
+}
@@ -5,6 +5,7 @@ package net.refractions.udig.project.internal.impl;
 
 import java.io.IOException;
 import java.lang.reflect.InvocationTargetException;
+import java.text.MessageFormat;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
@@ -20,9 +21,12 @@ import net.refractions.udig.project.IMap;
 import net.refractions.udig.project.internal.EditManager;
 import net.refractions.udig.project.internal.Layer;
 import net.refractions.udig.project.internal.Map;
+import net.refractions.udig.project.internal.Messages;
 import net.refractions.udig.project.internal.ProjectPackage;
 import net.refractions.udig.project.internal.ProjectPlugin;
+import net.refractions.udig.project.internal.Trace;
 import net.refractions.udig.project.internal.render.RenderManager;
+import net.refractions.udig.project.preferences.PreferenceConstants;
 import net.refractions.udig.ui.ProgressManager;
 
 import org.eclipse.core.runtime.IAdaptable;
@@ -118,6 +122,19 @@ public class EditManagerImpl extends EObjectImpl implements EditManager {
     protected EditManagerImpl() {
         super();
         eAdapters().add(eventCreator);
+        updateChunkSize();
+    }
+
+    /**
+     * Reads the number of edits to commit at a time from the preferences; called from the
+     * constructor and after each commit or rollback so a changed preference applies to the next
+     * edit session.
+     */
+    private void updateChunkSize() {
+        if (ProjectPlugin.getPlugin() != null) {
+            transaction.setChunkSize(ProjectPlugin.getPlugin().getPreferenceStore().getInt(
+                    PreferenceConstants.P_COMMIT_CHUNK_SIZE));
+        }
     }
 
     /**
@@ -287,7 +304,25 @@ public class EditManagerImpl extends EObjectImpl implements EditManager {
             public void run( IProgressMonitor monitor ) throws InvocationTargetException,
                     InterruptedException {
                 monitor.beginTask(message, IProgressMonitor.UNKNOWN);
+                ChunkedCommit chunks = transaction.getChunkedCommit();
+                int total = 0;
+                int worked = 0;
                 while( committing ) {
+                    // report the chunks written by the commit
+                    int edits = chunks.getTotal();
+                    if (edits > 0 && edits != total) {
+                        total = edits;
+                        worked = 0;
+                        monitor.beginTask(message, total);
+                    }
+                    int committed = chunks.getCommitted();
+                    if (total > 0 && committed > worked) {
+                        monitor.worked(committed - worked);
+                        worked = committed;
+                        monitor.subTask(MessageFormat.format(
+                                Messages.EditManagerImpl_commitProgress, worked, total,
+                                (int) chunks.getRate()));
+                    }
                     if (!display.readAndDispatch()) {
                         Thread.sleep(200);
                     }
@@ -355,6 +390,7 @@ public class EditManagerImpl extends EObjectImpl implements EditManager {
                 store.editComplete();
             }
         }
+        updateChunkSize();
         // the next line closes the CommitDialog
         committing = false;
     }
@@ -372,7 +408,16 @@ public class EditManagerImpl extends EObjectImpl implements EditManager {
         startCommitRollback("Comitting changes all layers in map");
 
         try {
-            transaction.commitInternal();
+            ChunkedCommit chunks = transaction.getChunkedCommit();
+            if (chunks.isChunked()) {
+                chunks.commit();
+                // the edits are in the stores now, the map reads them from there again
+                transaction.rollbackInternal();
+                ProjectPlugin.trace(Trace.MODEL, getClass(), "Committed edits at " //$NON-NLS-1$
+                        + (int) chunks.getRate() + " edits/s", null); //$NON-NLS-1$
+            } else {
+                transaction.commitInternal();
+            }
             for( Layer layer : getMapInternal().getLayersInternal() ) {
                 if (layer.getFeatureChanges().size() != 0) layer.getFeatureChanges().clear();
             }
@@ -397,6 +442,11 @@ public class EditManagerImpl extends EObjectImpl implements EditManager {
                 }
             }
             ProjectPlugin.getPlugin().log(e);
+            int pending = transaction.getChunkedCommit().getPending();
+            if (pending > 0) {
+                ProjectPlugin.log(MessageFormat.format(Messages.EditManagerImpl_chunksPending,
+                        pending));
+            }
         } finally {
             commitRollbackComplete();
         }
@@ -441,7 +491,12 @@ public class EditManagerImpl extends EObjectImpl implements EditManager {
                 }
             }
             if (selectedLayer != null) selectedLayer.setFilter(Filter.EXCLUDE);
+            int written = transaction.getChunkedCommit().getWritten();
             transaction.rollbackInternal();
+            if (written > 0) {
+                ProjectPlugin.log(MessageFormat.format(Messages.EditManagerImpl_chunksCommitted,
+                        written));
+            }
 
         } catch (IOException e) {
             throw e;
@@ -280,6 +280,11 @@ public class LayerImpl extends EObjectImpl implements Layer {
             } catch (IOException e) {
                 ProjectPlugin.log("", e); //$NON-NLS-1$
             }
+            EditBatch batch = EditBatch.current();
+            if (batch != null && featureEvent.getBounds() != null) {
+                batch.featureChanged(LayerImpl.this, featureEvent);
+                return;
+            }
             if (featureEvent.getBounds() != null) {
                 if (featureEvent.getEventType() == FeatureEvent.FEATURES_ADDED
                         || featureEvent.getEventType() == FeatureEvent.FEATURES_CHANGED) {
@@ -378,6 +383,14 @@ public class LayerImpl extends EObjectImpl implements Layer {
     }
 
     protected void fireLayerChange( LayerEvent event ) {
+        if (event.getType() == LayerEvent.EventType.EDIT_EVENT
+                && event.getNewValue() instanceof FeatureEvent) {
+            EditBatch batch = EditBatch.current();
+            if (batch != null) {
+                batch.editEvent(this, (FeatureEvent) event.getNewValue());
+                return;
+            }
+        }
         for( ILayerListener listener : listeners ) {
             try {
                 if (listener != null) listener.refresh(event);
@@ -2036,6 +2049,11 @@ public class LayerImpl extends EObjectImpl implements Layer {
 
     public void refresh( Envelope bounds ) {
         if (!isVisible()) return;
+        EditBatch batch = EditBatch.current();
+        if (batch != null) {
+            batch.refresh(this, bounds);
+            return;
+        }
         if (getMap() == null || getMap().getRenderManager() == null) return;
         Envelope transformedbounds = bounds;
         if (bounds != null) {
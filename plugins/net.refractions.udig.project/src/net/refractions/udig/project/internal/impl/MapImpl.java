@@ -39,6 +39,7 @@ import net.refractions.udig.project.internal.Blackboard;
 import net.refractions.udig.project.internal.ContextModel;
 import net.refractions.udig.project.internal.ContextModelListenerAdapter;
 import net.refractions.udig.project.internal.EditManager;
+import net.refractions.udig.project.internal.FidSelection;
 import net.refractions.udig.project.internal.Layer;
 import net.refractions.udig.project.internal.LayerFactory;
 import net.refractions.udig.project.internal.Map;
@@ -95,6 +96,7 @@ import org.opengis.feature.simple.SimpleFeatureType;
 import org.opengis.filter.And;
 import org.opengis.filter.Filter;
 import org.opengis.filter.FilterFactory;
+import org.opengis.filter.Id;
 import org.opengis.filter.Not;
 import org.opengis.filter.spatial.SpatialOperator;
 import org.opengis.geometry.Geometry;
@@ -1788,6 +1790,8 @@ public class MapImpl extends EObjectImpl implements Map {
             Filter copy;
             if (filter instanceof SpatialOperator)
                 copy = localize(schema, (SpatialOperator) filter);
+            else if (filter instanceof Id)
+                copy = FidSelection.valueOf((Id) filter);
             else
                 copy = filter;
 
@@ -1882,14 +1886,24 @@ public class MapImpl extends EObjectImpl implements Map {
 
                     FilterFactory createFilterFactory = CommonFactoryFinder
                             .getFilterFactory(GeoTools.getDefaultHints());
-
-                    if (!and) {
+                    Filter newFilter = target(layer, filter);
+
+                    if (oldFilter instanceof Id && newFilter instanceof FidSelection) {
+                        // both are feature ids, combine the ids rather than the filters
+                        FidSelection selection = FidSelection.valueOf((Id) oldFilter);
+                        if (!and) {
+                            selection.retainAll((Id) newFilter);
+                        } else {
+                            selection.addAll((Id) newFilter);
+                        }
+                        layer.setFilter(selection.isEmpty() ? Filter.EXCLUDE : selection);
+                    } else if (!and) {
                         Filter logicFilter;
-                        logicFilter = createFilterFactory.and(oldFilter, target(layer, filter));
+                        logicFilter = createFilterFactory.and(oldFilter, newFilter);
                         layer.setFilter(logicFilter);
                     } else {
                         Filter logicFilter;
-                        logicFilter = createFilterFactory.or(oldFilter, target(layer, filter));
+                        logicFilter = createFilterFactory.or(oldFilter, newFilter);
                         layer.setFilter(logicFilter);
                     }
                 }
@@ -81,6 +81,7 @@ public class UDIGFeatureStore implements FeatureStore<FeatureType,Feature>, UDIG
     public void removeFeatures( Filter filter ) throws IOException {
         setTransactionInternal();
         wrapped.removeFeatures(filter);
+        edited();
     }
 
     @Deprecated
@@ -88,16 +89,19 @@ public class UDIGFeatureStore implements FeatureStore<FeatureType,Feature>, UDIG
             throws IOException {
         setTransactionInternal();
         wrapped.modifyFeatures(descriptors, values, filter);
+        edited();
     }
     
     public void modifyFeatures( Name[] names, Object[] values, Filter filter ) throws IOException {
         setTransactionInternal();
         wrapped.modifyFeatures(names, values, filter);
+        edited();
     }
     
     public void modifyFeatures( Name name, Object value, Filter filter ) throws IOException {
         setTransactionInternal();
         wrapped.modifyFeatures(name, value, filter);
+        edited();
     }
 
     @Deprecated
@@ -121,12 +125,22 @@ public class UDIGFeatureStore implements FeatureStore<FeatureType,Feature>, UDIG
             }
         }
         wrapped.modifyFeatures(attribute, value, selectFilter);
+        edited();
     }
 
     public void setFeatures( FeatureReader<FeatureType, Feature> features )
             throws IOException {
         setTransactionInternal();
         wrapped.setFeatures(features);
+        edited();
+    }
+
+    /**
+     * Tells the map transaction that it can not be committed in chunks as complex features are
+     * not recorded.
+     */
+    private void edited() {
+        ChunkedCommit.unjournaled(wrapped.getTransaction());
     }
 
     public void setTransaction( Transaction transaction ) {
@@ -234,7 +248,9 @@ public class UDIGFeatureStore implements FeatureStore<FeatureType,Feature>, UDIG
     public List<FeatureId> addFeatures( FeatureCollection<FeatureType, Feature> features )
             throws IOException {
         setTransactionInternal();
-        return wrapped.addFeatures(features);
+        List<FeatureId> ids = wrapped.addFeatures(features);
+        edited();
+        return ids;
     }
 
     // Jody -This was unused
@@ -92,6 +92,7 @@ public class UDIGSimpleFeatureStore implements SimpleFeatureStore, UDIGStore {
 
     public void removeFeatures( Filter filter ) throws IOException {
         setTransactionInternal();
+        ChunkedCommit.removed(wrapped, filter);
         wrapped.removeFeatures(filter);
         
         fireLayerEditEvent( FeatureEvent.Type.REMOVED, null, filter );
@@ -101,28 +102,33 @@ public class UDIGSimpleFeatureStore implements SimpleFeatureStore, UDIGStore {
     public void modifyFeatures( AttributeDescriptor[] descriptors, Object[] values, Filter filter )
             throws IOException {
         setTransactionInternal();
+        ChunkedCommit.modified(wrapped, filter);
         wrapped.modifyFeatures(descriptors, values, filter);
         fireLayerEditEvent( FeatureEvent.Type.CHANGED, null, filter );
     }
     
     public void modifyFeatures( Name[] names, Object[] values, Filter filter ) throws IOException {
         setTransactionInternal();
+        ChunkedCommit.modified(wrapped, filter);
         wrapped.modifyFeatures(names, values, filter);
         fireLayerEditEvent( FeatureEvent.Type.CHANGED, null, filter );
     }
     
     public void modifyFeatures( Name name, Object value, Filter filter ) throws IOException {
         setTransactionInternal();
+        ChunkedCommit.modified(wrapped, filter);
         wrapped.modifyFeatures(name, value, filter);
         fireLayerEditEvent( FeatureEvent.Type.CHANGED, null, filter );
     }
     public void modifyFeatures( String name, Object value, Filter filter ) throws IOException {
         setTransactionInternal();
+        ChunkedCommit.modified(wrapped, filter);
         wrapped.modifyFeatures(name, value, filter);
         fireLayerEditEvent( FeatureEvent.Type.CHANGED, null, filter );        
     } 
     public void modifyFeatures( String names[], Object values[], Filter filter ) throws IOException {
         setTransactionInternal();
+        ChunkedCommit.modified(wrapped, filter);
         wrapped.modifyFeatures(names, values, filter);
         fireLayerEditEvent( FeatureEvent.Type.CHANGED, null, filter );        
     }
@@ -147,6 +153,7 @@ public class UDIGSimpleFeatureStore implements SimpleFeatureStore, UDIGStore {
                 throw new IOException(msg);
             }
         }
+        ChunkedCommit.modified(wrapped, selectFilter);
         wrapped.modifyFeatures(attribute, value, selectFilter);
         fireLayerEditEvent( FeatureEvent.Type.CHANGED, null, selectFilter );
     }
@@ -171,6 +178,7 @@ public class UDIGSimpleFeatureStore implements SimpleFeatureStore, UDIGStore {
     public void setFeatures( FeatureReader<SimpleFeatureType, SimpleFeature> features )
             throws IOException {
         setTransactionInternal();
+        ChunkedCommit.unjournaled(wrapped.getTransaction());
         wrapped.setFeatures(features);
         fireLayerEditEvent( FeatureEvent.Type.CHANGED, null, Filter.INCLUDE );
     }
@@ -282,6 +290,7 @@ public class UDIGSimpleFeatureStore implements SimpleFeatureStore, UDIGStore {
             throws IOException {
         setTransactionInternal();
         List<FeatureId> ids = wrapped.addFeatures(features);
+        ChunkedCommit.added(wrapped, ids);
         
         FilterFactory2 ff = CommonFactoryFinder.getFilterFactory2();
         Id filter = ff.id( new HashSet<FeatureId>( ids ) );
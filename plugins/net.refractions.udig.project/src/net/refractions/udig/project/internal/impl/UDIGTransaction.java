@@ -20,11 +20,18 @@ import org.geotools.data.Transaction;
 /**
  * This class helps protect the system from others trying to commit or close the transaction
  * programmatically rather than working through the EditManager API.
+ * <p>
+ * The transaction also records the features edited with it so that the EditManager can commit
+ * them in chunks (see {@link #setChunkSize(int)}).
+ * </p>
  * 
  * @author jones
  * @since 1.0.0
  */
 public class UDIGTransaction extends DefaultTransaction implements Transaction {
+
+    private final ChunkedCommit chunkedCommit = new ChunkedCommit();
+
     @Override
     public void commit() throws IOException {
         throw new IllegalStateException(Messages.UDIGTransaction_commitException); 
@@ -42,10 +49,42 @@ public class UDIGTransaction extends DefaultTransaction implements Transaction {
 
     public void commitInternal() throws IOException {
         super.commit();
+        chunkedCommit.clear();
     }
 
     public void rollbackInternal() throws IOException {
         super.rollback();
+        chunkedCommit.clear();
+    }
+
+    /**
+     * Sets the number of edits the EditManager commits per transaction. 0 (the default) commits
+     * all the edits of the map at once.
+     * <p>
+     * Each chunk is committed on its own: if a chunk fails the chunks before it stay committed
+     * and the next commit resumes with the failed chunk. The map keeps the edits until all the
+     * chunks are written.
+     * </p>
+     * 
+     * @param chunkSize number of edits per chunk or 0
+     */
+    public void setChunkSize( int chunkSize ) {
+        chunkedCommit.setChunkSize(chunkSize);
+    }
+
+    /**
+     * @return the number of edits per chunk or 0 if the edits are committed at once.
+     * @see #setChunkSize(int)
+     */
+    public int getChunkSize() {
+        return chunkedCommit.getChunkSize();
+    }
+
+    /**
+     * @return the edits recorded for a chunked commit
+     */
+    ChunkedCommit getChunkedCommit() {
+        return chunkedCommit;
     }
 
     synchronized void closeInternal() {
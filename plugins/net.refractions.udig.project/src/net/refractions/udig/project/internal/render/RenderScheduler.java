@@ -0,0 +1,243 @@
+/* uDig - User Friendly Desktop Internet GIS client
+ * http://udig.refractions.net
+ * (C) 2012, Refractions Research Inc.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * (http://www.eclipse.org/legal/epl-v10.html), and the Refractions BSD
+ * License v1.0 (http://udig.refractions.net/files/bsd3-v10.html).
+ */
+package net.refractions.udig.project.internal.render;
+
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+import net.refractions.udig.project.internal.ProjectPlugin;
+import net.refractions.udig.project.internal.Trace;
+import net.refractions.udig.project.render.AbstractRenderMetrics;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+
+/**
+ * Limits how many layers are rendered at the same time.
+ * <p>
+ * Each layer is still rendered by its own render job, but before drawing the job asks for a slot
+ * and waits until one is free. There is a slot per processor. When several layers are waiting
+ * the cheapest layer goes first (as estimated by its {@link AbstractRenderMetrics}) so that
+ * quick layers show up on the screen while slow layers, such as web services, are still drawing.
+ * Layers with the same estimated cost are ordered by how long they took the last time they were
+ * rendered.
+ * </p>
+ * <p>
+ * The time each layer took to render and the time until the first layer of a refresh was done
+ * (the first time the composite image is updated) are recorded and traced with
+ * {@link Trace#RENDER}.
+ * </p>
+ *
+ * @since 1.4.0
+ */
+public class RenderScheduler {
+
+    /** cost used for layers without render metrics */
+    public static final long DEFAULT_COST = AbstractRenderMetrics.LATENCY_LOCAL
+            + AbstractRenderMetrics.DRAW_DATA_RAW;
+
+    /** how often (in ms) a waiting job checks if it was canceled */
+    private static final int WAIT_PERIOD = 100;
+
+    /** number of layers whose render time is remembered */
+    private static final int MAX_RENDER_TIMES = 256;
+
+    private static final RenderScheduler DEFAULT = new RenderScheduler(Runtime.getRuntime()
+            .availableProcessors());
+
+    /**
+     * A slot handed out by {@link RenderScheduler#acquire(String, long, IProgressMonitor)}; it
+     * must be given back with {@link RenderScheduler#release(Slot)}.
+     */
+    public static final class Slot {
+        private final String name;
+        private final long cost;
+        private final long expected;
+        private final long order;
+        private long started;
+
+        private Slot( String name, long cost, long expected, long order ) {
+            this.name = name;
+            this.cost = cost;
+            this.expected = expected;
+            this.order = order;
+        }
+
+        /**
+         * @return the name of the layer the slot was asked for
+         */
+        public String getName() {
+            return name;
+        }
+    }
+
+    private static final Comparator<Slot> CHEAPEST_FIRST = new Comparator<Slot>(){
+        public int compare( Slot o1, Slot o2 ) {
+            if (o1.cost != o2.cost)
+                return o1.cost < o2.cost ? -1 : 1;
+            if (o1.expected != o2.expected)
+                return o1.expected < o2.expected ? -1 : 1;
+            return o1.order < o2.order ? -1 : (o1.order == o2.order ? 0 : 1);
+        }
+    };
+
+    private final int threads;
+
+    private final PriorityQueue<Slot> waiting = new PriorityQueue<Slot>(16, CHEAPEST_FIRST);
+
+    private final Map<String, Long> renderTimes = new LinkedHashMap<String, Long>(16, 0.75f, true){
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry( Map.Entry<String, Long> eldest ) {
+            return size() > MAX_RENDER_TIMES;
+        }
+    };
+
+    private int running;
+    private long order;
+
+    /** when the current refresh started, that is when the scheduler was last idle */
+    private long refreshStarted;
+    private boolean painted;
+    private long timeToFirstPaint = -1;
+
+    /**
+     * Creates a scheduler; normally {@link #getDefault()} is used.
+     *
+     * @param threads number of layers that are rendered at the same time
+     */
+    public RenderScheduler( int threads ) {
+        this.threads = Math.max(1, threads);
+    }
+
+    /**
+     * @return the scheduler shared by all maps
+     */
+    public static RenderScheduler getDefault() {
+        return DEFAULT;
+    }
+
+    /**
+     * Estimates how expensive rendering with the metrics is. Lower is cheaper.
+     *
+     * @param metrics metrics of the renderer
+     * @return the estimated cost
+     */
+    public static long estimateCost( AbstractRenderMetrics metrics ) {
+        if (metrics == null) {
+            return DEFAULT_COST;
+        }
+        return metrics.getLatencyMetric() + metrics.getDrawingTimeMetric();
+    }
+
+    /**
+     * Waits for a free slot. Slots are handed out cheapest first.
+     *
+     * @param name name of the layer, used to record its render time
+     * @param cost see {@link #estimateCost(AbstractRenderMetrics)}
+     * @param monitor checked while waiting, may be null
+     * @return the slot or null if the monitor was canceled while waiting
+     * @throws InterruptedException
+     */
+    public synchronized Slot acquire( String name, long cost, IProgressMonitor monitor )
+            throws InterruptedException {
+        if (running == 0 && waiting.isEmpty()) {
+            refreshStarted = System.currentTimeMillis();
+            painted = false;
+        }
+        Long last = renderTimes.get(name);
+        Slot slot = new Slot(name, cost, last == null ? 0 : last.longValue(), order++);
+        waiting.add(slot);
+        boolean granted = false;
+        try {
+            while( waiting.peek() != slot || running >= threads ) {
+                if (monitor != null && monitor.isCanceled()) {
+                    return null;
+                }
+                wait(WAIT_PERIOD);
+            }
+            waiting.poll();
+            running++;
+            granted = true;
+            slot.started = System.currentTimeMillis();
+            return slot;
+        } finally {
+            if (!granted) {
+                waiting.remove(slot);
+                // the next slot in line may be able to go now
+                notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Gives back a slot once the layer is rendered and records how long it took.
+     *
+     * @param slot slot returned by {@link #acquire(String, long, IProgressMonitor)}
+     */
+    public synchronized void release( Slot slot ) {
+        long now = System.currentTimeMillis();
+        long renderTime = now - slot.started;
+        running--;
+        renderTimes.put(slot.name, renderTime);
+        ProjectPlugin.trace(Trace.RENDER, RenderScheduler.class, slot.name
+                + " rendered in " + renderTime + "ms", null); //$NON-NLS-1$ //$NON-NLS-2$
+        if (!painted) {
+            painted = true;
+            timeToFirstPaint = now - refreshStarted;
+            ProjectPlugin.trace(Trace.RENDER, RenderScheduler.class,
+                    "Time to first paint " + timeToFirstPaint + "ms", null); //$NON-NLS-1$ //$NON-NLS-2$
+        }
+        notifyAll();
+    }
+
+    /**
+     * @return number of layers rendered at the same time
+     */
+    public int getThreads() {
+        return threads;
+    }
+
+    /**
+     * @return number of layers being rendered right now
+     */
+    public synchronized int getRunning() {
+        return running;
+    }
+
+    /**
+     * @return number of layers waiting for a slot
+     */
+    public synchronized int getWaiting() {
+        return waiting.size();
+    }
+
+    /**
+     * The time (in ms) between the start of the last refresh and the first layer being done.
+     *
+     * @return time to first paint or -1 if nothing was rendered yet
+     */
+    public synchronized long getTimeToFirstPaint() {
+        return timeToFirstPaint;
+    }
+
+    /**
+     * The time (in ms) the layer took the last time it was rendered.
+     *
+     * @param name name of the layer
+     * @return render time or -1 if the layer has not been rendered
+     */
+    public synchronized long getRenderTime( String name ) {
+        Long time = renderTimes.get(name);
+        return time == null ? -1 : time.longValue();
+    }
+}
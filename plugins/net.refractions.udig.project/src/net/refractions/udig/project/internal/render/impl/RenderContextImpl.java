@@ -17,6 +17,7 @@ import javax.media.jai.TileCache;
 import net.refractions.udig.catalog.IGeoResource;
 import net.refractions.udig.project.ILayer;
 import net.refractions.udig.project.ProjectBlackboardConstants;
+import net.refractions.udig.project.internal.FidSelection;
 import net.refractions.udig.project.internal.Layer;
 import net.refractions.udig.project.internal.ProjectPlugin;
 import net.refractions.udig.project.internal.Trace;
@@ -333,7 +334,12 @@ public class RenderContextImpl extends AbstractContextImpl implements RenderCont
         
         Filter newFilter;
         try {
-            if( query.getFilter()==Filter.INCLUDE){
+            if( query.getFilter() instanceof FidSelection && editFilter instanceof Id ){
+                // leave the features being edited out of the ids rather than adding a Not filter
+                FidSelection selection=FidSelection.valueOf((Id) query.getFilter());
+                selection.removeAll((Id) editFilter);
+                newFilter=selection.isEmpty() ? Filter.EXCLUDE : selection;
+            }else if( query.getFilter()==Filter.INCLUDE){
                 newFilter=ff.not((Filter) editFilter);
             }else{
                 editFilter=ff.not((Filter) editFilter);
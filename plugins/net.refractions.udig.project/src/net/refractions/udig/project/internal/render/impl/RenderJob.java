@@ -13,16 +13,25 @@ package net.refractions.udig.project.internal.render.impl;
 import java.awt.Dimension;
 import java.awt.Graphics2D;
 import java.awt.Rectangle;
+import java.awt.geom.AffineTransform;
+import java.util.Iterator;
 import java.util.Queue;
 import java.util.concurrent.LinkedBlockingQueue;
 
 import net.refractions.udig.project.ILayer;
 import net.refractions.udig.project.internal.Messages;
+import net.refractions.udig.project.internal.Layer;
 import net.refractions.udig.project.internal.ProjectPlugin;
+import net.refractions.udig.project.internal.Trace;
+import net.refractions.udig.project.internal.render.RenderContext;
 import net.refractions.udig.project.internal.render.RenderExecutor;
 import net.refractions.udig.project.internal.render.RenderManager;
+import net.refractions.udig.project.internal.render.RenderScheduler;
 import net.refractions.udig.project.internal.render.Renderer;
+import net.refractions.udig.project.internal.render.RendererCreator;
 import net.refractions.udig.project.internal.render.SelectionLayer;
+import net.refractions.udig.project.render.AbstractRenderMetrics;
+import net.refractions.udig.project.render.ILabelPainter;
 import net.refractions.udig.project.render.IRenderContext;
 import net.refractions.udig.project.render.IRenderer;
 import net.refractions.udig.project.render.displayAdapter.IMapDisplay;
@@ -59,6 +68,15 @@ public class RenderJob extends Job {
      */
     private Queue<ReferencedEnvelope> requests = new LinkedBlockingQueue<ReferencedEnvelope>(); 
 
+    /**
+     * Estimated cost of the renderer, see {@link RenderScheduler#estimateCost(AbstractRenderMetrics)}.
+     * -1 until it is first needed.
+     */
+    private long cost = -1;
+
+    /** world area being rendered when only part of the layer is rendered */
+    private Envelope labelArea;
+
     /**
      * Creates an new instance of AbstractRenderer.RenderThread
      */
@@ -111,6 +129,7 @@ public class RenderJob extends Job {
         
         monitor.beginTask(Messages.RenderExecutorImpl_1, IProgressMonitor.UNKNOWN);
         if( context2.getLayer()!=null ) {
+            labelArea = bounds;
             initializeLabelPainter(context2);
         }
 
@@ -125,8 +144,16 @@ public class RenderJob extends Job {
     	if( !(context2.getLayer() instanceof SelectionLayer) ) {
 	        String layerId = getLayerId(context2);
 	
-	        context2.getLabelPainter().clear(layerId);
-	        context2.getLabelPainter().startLayer(layerId);
+	        ILabelPainter labelPainter = context2.getLabelPainter();
+	        AffineTransform worldToScreen = context2.worldToScreenTransform();
+	        if (worldToScreen != null && labelPainter instanceof UDIGLabelCache) {
+	            // keep the labels that are still valid after a pan or a partial render
+	            ((UDIGLabelCache) labelPainter).clear(layerId, worldToScreen, context2
+	                    .getImageBounds(), labelArea);
+	        } else {
+	            labelPainter.clear(layerId);
+	        }
+	        labelPainter.startLayer(layerId);
     	}
     }
 
@@ -219,8 +246,20 @@ public class RenderJob extends Job {
                 	System.out.println("We combined requests down to nothing?");
                 	continue;
                 }
-                startRendering(bounds, monitor);
-                postRendering();
+                RenderScheduler.Slot slot = acquireSlot(monitor);
+                if (slot == null && !(executor.getRenderer() instanceof CompositeRendererImpl)) {
+                    // canceled while waiting for the other layers
+                    executor.getRenderer().setState(RenderExecutorImpl.CANCELLED);
+                    executor.setState(RenderExecutorImpl.CANCELLED);
+                    break;
+                }
+                try {
+                    startRendering(bounds, monitor);
+                    postRendering();
+                } finally {
+                    if (slot != null)
+                        RenderScheduler.getDefault().release(slot);
+                }
             } catch (Throwable renderError) {
                 handleException(renderError);
                 renderError.printStackTrace();
@@ -230,6 +269,60 @@ public class RenderJob extends Job {
         return Status.OK_STATUS;
     }
     
+    /**
+     * Waits until the {@link RenderScheduler} lets this layer render.
+     * <p>
+     * Composite renderers do not wait since they only wait for their children and paint their
+     * images.
+     * </p>
+     * 
+     * @return the slot to release once rendered, or null if the job was canceled or is a
+     *         composite renderer
+     */
+    private RenderScheduler.Slot acquireSlot( IProgressMonitor monitor ) throws InterruptedException {
+        if (executor.getRenderer() instanceof CompositeRendererImpl) {
+            return null;
+        }
+        String name = executor.getRenderer().getName();
+        IRenderContext context = executor.getContext();
+        if (context != null && context.getLayer() != null) {
+            name = getLayerId(context);
+        }
+        return RenderScheduler.getDefault().acquire(name, getCost(), monitor);
+    }
+
+    /**
+     * Estimates the cost of rendering from the preferred render metrics of the layer.
+     * 
+     * @return the cost, see {@link RenderScheduler#estimateCost(AbstractRenderMetrics)}
+     */
+    protected long getCost() {
+        if (cost != -1) {
+            return cost;
+        }
+        cost = RenderScheduler.DEFAULT_COST;
+        IRenderContext context = executor.getContext();
+        try {
+            if (context instanceof RenderContext
+                    && context.getRenderManager() instanceof RenderManager) {
+                Layer layer = ((RenderContext) context).getLayerInternal();
+                RendererCreator creator = ((RenderManager) context.getRenderManager())
+                        .getRendererCreator();
+                if (layer != null && creator != null) {
+                    // the metrics are in order of preference
+                    Iterator<AbstractRenderMetrics> metrics = creator.getAvailableRendererMetrics(
+                            layer).iterator();
+                    if (metrics.hasNext()) {
+                        cost = RenderScheduler.estimateCost(metrics.next());
+                    }
+                }
+            }
+        } catch (RuntimeException e) {
+            ProjectPlugin.trace(Trace.RENDER, getClass(), "Unable to estimate render cost", e); //$NON-NLS-1$
+        }
+        return cost;
+    }
+
     private synchronized ReferencedEnvelope combineRequests() throws TransformException, FactoryException {
         CoordinateReferenceSystem targetCRS = getExecutor().getContext().getCRS();
     	ReferencedEnvelope bounds = new ReferencedEnvelope( targetCRS );
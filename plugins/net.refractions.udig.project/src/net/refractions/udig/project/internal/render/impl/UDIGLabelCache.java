@@ -11,19 +11,42 @@ package net.refractions.udig.project.internal.render.impl;
 
 import java.awt.Graphics2D;
 import java.awt.Rectangle;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.NoninvertibleTransformException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
 
+import net.refractions.udig.project.internal.ProjectPlugin;
 import net.refractions.udig.project.render.ILabelPainter;
 
 import org.geotools.geometry.GeometryFactoryFinder;
 import org.geotools.geometry.jts.JTS;
 import org.geotools.geometry.jts.JTSFactoryFinder;
+import org.geotools.geometry.jts.LiteShape2;
+import org.geotools.referencing.operation.transform.AffineTransform2D;
 import org.geotools.renderer.label.LabelCacheImpl;
 import org.geotools.renderer.lite.LabelCache;
 import org.geotools.renderer.lite.SynchronizedLabelCache;
+import org.geotools.styling.TextSymbolizer;
+import org.geotools.util.NumberRange;
+import org.opengis.feature.Feature;
 
+import com.vividsolutions.jts.geom.Envelope;
+import com.vividsolutions.jts.geom.Geometry;
 import com.vividsolutions.jts.geom.GeometryFactory;
+import com.vividsolutions.jts.geom.util.AffineTransformation;
+import com.vividsolutions.jts.index.quadtree.Quadtree;
 
 
 /**
@@ -32,6 +55,21 @@ import com.vividsolutions.jts.geom.GeometryFactory;
  * <p>
  * Also over-rides end so that geotools renderers don't cause the rendering and we can do it once at the end.
  * </p>
+ * <p>
+ * Labels are not put in the wrapped cache right away. Each layer collects its labels without
+ * locking the cache so layers rendered at the same time do not wait on each other; the labels of
+ * a layer are handed to the wrapped cache when the layer ends (or when the labels are drawn).
+ * </p>
+ * <p>
+ * The labels of each layer are kept in world coordinates, indexed by their bounds, so that they
+ * survive a render of the layer: see {@link #clear(String, AffineTransform, Envelope, Envelope)}.
+ * The wrapped cache holds them in the screen coordinates of a reference transform and a pan only
+ * offsets the graphics they are drawn on, so a pan hands no label to the wrapped cache again; a
+ * label the render puts again at the same place is dropped and only new labels are added. The
+ * wrapped cache can only clear a whole layer, so when labels of a layer are removed or moved the
+ * layer is handed to it again from the index, without rendering it. The wrapped
+ * {@link LabelCacheImpl} still places all the labels when they are drawn.
+ * </p>
  * 
  * @author Jesse
  * @since 1.1.0
@@ -41,6 +79,90 @@ public class UDIGLabelCache extends SynchronizedLabelCache implements ILabelPain
 
     private LabelCache wrappedLabelCache;
 
+    /** labels of each layer by layer id */
+    private final ConcurrentMap<String, LayerLabels> layers = new ConcurrentHashMap<String, LayerLabels>();
+
+    /** the transform of the last render, null until a render sets it */
+    private AffineTransform worldToScreen;
+
+    /**
+     * the transform of the shapes in the wrapped cache; differs from {@link #worldToScreen} by a
+     * translation after a pan
+     */
+    private AffineTransform reference;
+
+    /**
+     * The transform a layer is rendered with, the labels it puts are in its screen coordinates.
+     */
+    private static final class Frame {
+        final AffineTransform worldToScreen;
+        final AffineTransformation screenToWorld;
+
+        Frame( AffineTransform worldToScreen ) throws NoninvertibleTransformException {
+            this.worldToScreen = new AffineTransform(worldToScreen);
+            AffineTransform inverse = worldToScreen.createInverse();
+            screenToWorld = new AffineTransformation(inverse.getScaleX(), inverse.getShearX(),
+                    inverse.getTranslateX(), inverse.getShearY(), inverse.getScaleY(), inverse
+                            .getTranslateY());
+        }
+    }
+
+    /**
+     * The arguments of a call to
+     * {@link LabelCache#put(String, TextSymbolizer, Feature, LiteShape2, NumberRange)}, with the
+     * geometry in world coordinates.
+     */
+    private static final class Label {
+        /** the feature and symbolizer, a label with the same key replaces this one */
+        final Object key;
+        final TextSymbolizer symbolizer;
+        final Feature feature;
+        final Geometry world;
+        final NumberRange<Double> scaleRange;
+        /** the shape on the screen */
+        LiteShape2 shape;
+        /** the transform of the shape, null if the label was put without a transform */
+        AffineTransform shapeTransform;
+
+        Label( TextSymbolizer symbolizer, Feature feature, Geometry world, LiteShape2 shape,
+                AffineTransform shapeTransform, NumberRange<Double> scaleRange ) {
+            this.symbolizer = symbolizer;
+            this.feature = feature;
+            this.world = world;
+            this.shape = shape;
+            this.shapeTransform = shapeTransform;
+            this.scaleRange = scaleRange;
+            if (feature.getIdentifier() == null) {
+                key = this;
+            } else {
+                key = Arrays.asList(feature.getIdentifier().getID(), symbolizer);
+            }
+        }
+
+        Envelope getBounds() {
+            return world.getEnvelopeInternal();
+        }
+    }
+
+    /**
+     * The labels of a layer. Labels are added to <code>added</code> without locking and are moved
+     * to the index when they are put in the wrapped cache; everything else is changed while
+     * holding the lock of the layer labels.
+     */
+    private static final class LayerLabels {
+        final Queue<Label> added = new ConcurrentLinkedQueue<Label>();
+        /** labels in the wrapped cache by key in the order they were first put */
+        final Map<Object, Label> labels = new LinkedHashMap<Object, Label>();
+        /** the labels by their world bounds */
+        final Quadtree index = new Quadtree();
+        /** the transform the layer is rendered with, null if it is not known */
+        volatile Frame frame;
+        /** true if labels were removed or moved so the layer must be put in the wrapped cache again */
+        boolean rebuild;
+        /** true if the map was panned since the layer was last rendered */
+        boolean translated;
+    }
+
     /**
      * 
      */
@@ -66,16 +188,149 @@ public class UDIGLabelCache extends SynchronizedLabelCache implements ILabelPain
         super.startLayer(layerId);
     }
 
+    /**
+     * Collects the label for the layer; it is put in the wrapped cache when the layer ends.
+     */
+    @Override
+    public void put( String layerId, TextSymbolizer symbolizer, Feature feature,
+            LiteShape2 shape, NumberRange<Double> scaleRange ) {
+        LayerLabels labels = getLayerLabels(layerId);
+        Frame frame = labels.frame;
+        Geometry world;
+        AffineTransform transform;
+        if (frame == null) {
+            world = shape.getGeometry();
+            transform = null;
+        } else {
+            world = frame.screenToWorld.transform(shape.getGeometry());
+            transform = frame.worldToScreen;
+        }
+        labels.added.add(new Label(symbolizer, feature, world, shape, transform, scaleRange));
+    }
+
+    private LayerLabels getLayerLabels( String layerId ) {
+        LayerLabels labels = layers.get(layerId);
+        if (labels == null) {
+            LayerLabels created = new LayerLabels();
+            labels = layers.putIfAbsent(layerId, created);
+            if (labels == null)
+                labels = created;
+        }
+        return labels;
+    }
+
+    /**
+     * Puts the labels collected for the layer in the wrapped cache. Called while holding the
+     * lock of the cache.
+     */
+    private void flush( String layerId ) {
+        LayerLabels labels = layers.get(layerId);
+        if (labels == null) {
+            return;
+        }
+        // labels closer than half a pixel did not move
+        double tolerance = reference == null ? 0 : 0.5 / Math.sqrt(Math.abs(reference
+                .getDeterminant()));
+        synchronized (labels) {
+            List<Label> added = new ArrayList<Label>();
+            Label label;
+            while( (label = labels.added.poll()) != null ) {
+                Label existing = labels.labels.get(label.key);
+                if (existing == null) {
+                    labels.labels.put(label.key, label);
+                    labels.index.insert(label.getBounds(), label);
+                    added.add(label);
+                } else if (!existing.world.equalsExact(label.world, tolerance)) {
+                    // a label put again keeps its place so it is placed as before
+                    labels.labels.put(label.key, label);
+                    labels.index.remove(existing.getBounds(), existing);
+                    labels.index.insert(label.getBounds(), label);
+                    labels.rebuild = true;
+                }
+            }
+            Collection<Label> toPut = added;
+            if (labels.rebuild) {
+                wrappedLabelCache.clear(layerId);
+                toPut = labels.labels.values();
+                labels.rebuild = false;
+            }
+            for( Label put : toPut ) {
+                LiteShape2 shape = getShape(put);
+                if (shape != null) {
+                    wrappedLabelCache.put(layerId, put.symbolizer, put.feature, shape,
+                            put.scaleRange);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the shape of the label in the coordinates of the reference transform, creating it
+     * from the world geometry if the label was put with another transform. Labels put without a
+     * transform are used as they are.
+     */
+    private LiteShape2 getShape( Label label ) {
+        if (reference != null && label.shapeTransform != null
+                && !reference.equals(label.shapeTransform)) {
+            try {
+                label.shape = new LiteShape2((Geometry) label.world.clone(),
+                        new AffineTransform2D(reference), null, false);
+                label.shapeTransform = reference;
+            } catch (Exception e) {
+                ProjectPlugin.log("Unable to move label", e); //$NON-NLS-1$
+                return null;
+            }
+        }
+        return label.shape;
+    }
+
+    private void flush() {
+        for( String layerId : layers.keySet() ) {
+            flush(layerId);
+        }
+    }
+
+    @Override
+    public synchronized List orderedLabels() {
+        flush();
+        return super.orderedLabels();
+    }
+
     @Override
     public synchronized void stop() {
         activeLayers.clear();
         super.stop();
     }
 
+    /**
+     * Draws the labels; after a pan the graphics is offset from the reference transform of the
+     * shapes in the wrapped cache to the transform of the last render.
+     */
     @Override
     public synchronized void end( Graphics2D graphics, Rectangle displayArea ) {
         if (activeLayers.isEmpty()) {
-            super.end(graphics, displayArea);
+            flush();
+            double dx = 0;
+            double dy = 0;
+            if (reference != null && worldToScreen != null) {
+                dx = worldToScreen.getTranslateX() - reference.getTranslateX();
+                dy = worldToScreen.getTranslateY() - reference.getTranslateY();
+            }
+            if (dx == 0 && dy == 0) {
+                super.end(graphics, displayArea);
+            } else {
+                Graphics2D offset = (Graphics2D) graphics.create();
+                try {
+                    offset.translate(dx, dy);
+                    Rectangle area = new Rectangle(displayArea);
+                    area.translate((int) Math.floor(-dx), (int) Math.floor(-dy));
+                    area.width++;
+                    area.height++;
+                    super.end(offset, area);
+                } finally {
+                    offset.dispose();
+                }
+            }
             //System.out.println("Labels are rendered");
         } else {
             //System.out.println("Labels are NOT rendered");
@@ -84,19 +339,146 @@ public class UDIGLabelCache extends SynchronizedLabelCache implements ILabelPain
 
     @Override
     public synchronized void clear() {
-        if (activeLayers.isEmpty())
+        if (activeLayers.isEmpty()) {
+            layers.clear();
             super.clear();
+        }
     }
 
     @Override
     public synchronized void clear( String layerId ) {
-        if (!activeLayers.contains(layerId))
+        if (!activeLayers.contains(layerId)) {
+            layers.remove(layerId);
             super.clear(layerId);
+        }
+    }
+
+    /**
+     * Prepares the labels of a layer that is about to be rendered; use instead of
+     * {@link #clear(String)} so labels are kept when they are still valid.
+     * <ul>
+     * <li>If only an area is rendered the labels of the features in the area are removed, the
+     * other labels are kept.</li>
+     * <li>If the whole layer is rendered after the map was panned the labels move with the map;
+     * the labels the render puts again replace them if they moved. Labels outside of the viewport
+     * are removed once there are more of them than in the viewport.</li>
+     * <li>Otherwise (a zoom, a change of style) the labels of the layer are cleared.</li>
+     * </ul>
+     * 
+     * @param layerId id of the layer
+     * @param transform transform from world to screen coordinates of the render
+     * @param viewport world bounds of the render
+     * @param area world area that is rendered again, or null if the whole layer is rendered
+     */
+    public synchronized void clear( String layerId, AffineTransform transform, Envelope viewport,
+            Envelope area ) {
+        if (activeLayers.contains(layerId)) {
+            return;
+        }
+        Frame frame;
+        try {
+            frame = new Frame(transform);
+        } catch (NoninvertibleTransformException e) {
+            clear(layerId);
+            return;
+        }
+        setWorldToScreen(transform);
+        LayerLabels labels = layers.get(layerId);
+        boolean translated = false;
+        if (labels != null) {
+            synchronized (labels) {
+                translated = labels.translated;
+                labels.translated = false;
+            }
+        }
+        boolean keep = labels != null && (area != null || translated);
+        if (!keep) {
+            clear(layerId);
+        }
+        labels = getLayerLabels(layerId);
+        labels.frame = frame;
+        if (!keep) {
+            return;
+        }
+        flush(layerId);
+        synchronized (labels) {
+            if (area != null) {
+                // only the features in the area are rendered again
+                Geometry region = JTS.toGeometry(area);
+                for( Object candidate : labels.index.query(area) ) {
+                    Label label = (Label) candidate;
+                    if (label.getBounds().intersects(area) && region.intersects(label.world)) {
+                        remove(labels, label);
+                    }
+                }
+            } else {
+                // the render puts the labels in the viewport again
+                Set<Label> inside = new HashSet<Label>();
+                for( Object candidate : labels.index.query(viewport) ) {
+                    Label label = (Label) candidate;
+                    if (label.getBounds().intersects(viewport)) {
+                        inside.add(label);
+                    }
+                }
+                if (labels.labels.size() - inside.size() > inside.size()) {
+                    for( Iterator<Label> iter = labels.labels.values().iterator(); iter.hasNext(); ) {
+                        Label label = iter.next();
+                        if (!inside.contains(label)) {
+                            labels.index.remove(label.getBounds(), label);
+                            iter.remove();
+                            labels.rebuild = true;
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    private static void remove( LayerLabels labels, Label label ) {
+        if (labels.labels.get(label.key) == label) {
+            labels.labels.remove(label.key);
+            labels.index.remove(label.getBounds(), label);
+            labels.rebuild = true;
+        }
+    }
+
+    /**
+     * Changes the transform of the last render. After a pan the labels keep their shapes in the
+     * reference transform and are drawn offset; otherwise the transform becomes the reference and
+     * the layers are put in the wrapped cache again when their labels are next flushed.
+     */
+    private void setWorldToScreen( AffineTransform transform ) {
+        AffineTransform current = worldToScreen;
+        if (transform.equals(current)) {
+            return;
+        }
+        boolean panned = current != null && sameScale(current, transform);
+        worldToScreen = new AffineTransform(transform);
+        if (!panned) {
+            reference = worldToScreen;
+        }
+        for( LayerLabels labels : layers.values() ) {
+            synchronized (labels) {
+                labels.translated = panned;
+                if (!panned) {
+                    labels.rebuild = true;
+                }
+            }
+        }
+    }
+
+    private static boolean sameScale( AffineTransform a, AffineTransform b ) {
+        double tolerance = 1e-9 * Math.max(Math.abs(a.getScaleX()), Math.abs(a.getScaleY()));
+        return Math.abs(a.getScaleX() - b.getScaleX()) <= tolerance
+                && Math.abs(a.getScaleY() - b.getScaleY()) <= tolerance
+                && Math.abs(a.getShearX() - b.getShearX()) <= tolerance
+                && Math.abs(a.getShearY() - b.getShearY()) <= tolerance;
     }
 
     @Override
     public synchronized void endLayer( String layerId, Graphics2D graphics, Rectangle displayArea ) {
         activeLayers.remove(layerId);
+        flush(layerId);
         super.endLayer(layerId, graphics, displayArea);
     }
 
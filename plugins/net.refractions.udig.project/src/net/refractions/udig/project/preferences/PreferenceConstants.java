@@ -56,6 +56,12 @@ public class PreferenceConstants {
 
     public static final String P_MAX_UNDO = "P_MAX_UNDO"; //$NON-NLS-1$
 
+    /**
+     * Number of edits the commit of a map writes per transaction; 0 to write all the edits in one
+     * transaction.
+     */
+    public static final String P_COMMIT_CHUNK_SIZE = "P_COMMIT_CHUNK_SIZE"; //$NON-NLS-1$
+
     public static final String P_DEFAULT_FEATURE_EDITOR = "P_DEFAULT_FEATURE_EDITOR"; //$NON-NLS-1$
     
 
@@ -63,6 +69,12 @@ public class PreferenceConstants {
      * The on/off switch for using tiled rendering
      */
     public static final String P_TILED_RENDERING = "P_TILED_RENDERING";  //$NON-NLS-1$
+
+    /**
+     * Number of tile images kept when tiles leave the screen with tiled rendering, so they are not
+     * created again when the tiles come back on screen.
+     */
+    public static final String P_TILE_IMAGE_CACHE_SIZE = "P_TILE_IMAGE_CACHE_SIZE"; //$NON-NLS-1$
     
     /**
      * The property value for the preferred scale to ZOOM IN when extents of the layer
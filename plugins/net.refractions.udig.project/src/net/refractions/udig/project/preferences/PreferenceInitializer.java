@@ -33,6 +33,7 @@ public class PreferenceInitializer extends AbstractPreferenceInitializer {
 		store.setDefault(PreferenceConstants.P_DEFAULT_CRS, -1);
         store.setDefault(PreferenceConstants.P_TRANSPARENCY, true);
         store.setDefault(PreferenceConstants.P_TILING_RENDERER, false);
+        store.setDefault(PreferenceConstants.P_TILE_IMAGE_CACHE_SIZE, 32);
         store.setDefault(PreferenceConstants.P_HIGHLIGHT, PreferenceConstants.P_HIGHLIGHT_NONE);
         store.setDefault(PreferenceConstants.P_DEFAULT_PALETTE, "Dark2"); //$NON-NLS-1$
         store.setDefault(PreferenceConstants.P_STYLE_DEFAULT_PERPENDICULAR_OFFSET, "10"); //$NON-NLS-1$
@@ -40,6 +41,7 @@ public class PreferenceInitializer extends AbstractPreferenceInitializer {
         store.setDefault(PreferenceConstants.P_PROJECT_DELETE_FILES, true);
         store.setDefault(PreferenceConstants.P_SHOW_ANIMATIONS, true);
         store.setDefault(PreferenceConstants.P_MAX_UNDO, 10);
+        store.setDefault(PreferenceConstants.P_COMMIT_CHUNK_SIZE, 0);
         store.setDefault(PreferenceConstants.P_DEFAULT_FEATURE_EDITOR, P_DEFAULT_FEATURE_EDITOR_VALUE );
         
         PreferenceConverter.setDefault(store, PreferenceConstants.P_BACKGROUND, new RGB(255,255,255));
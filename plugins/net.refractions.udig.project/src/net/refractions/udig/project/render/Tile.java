@@ -196,6 +196,18 @@ public class Tile {
 		return swtImage;
 	}
 	
+	/**
+	 * Returns true if the SWT image of the tile is created and not disposed, in which case
+	 * getSWTImage() returns it without creating a new one.
+	 *
+	 * @return true if the tile holds an SWT image
+	 */
+	public boolean hasSWTImage() {
+		synchronized (SWTLock) {
+			return swtImage != null && !swtImage.isDisposed();
+		}
+	}
+	
 	/**
 	 * Gets the buffered image (representing the tile) from the render executor.
 	 *
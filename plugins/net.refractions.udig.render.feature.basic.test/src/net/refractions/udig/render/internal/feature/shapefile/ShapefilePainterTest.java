@@ -0,0 +1,334 @@
+/*
+ *    uDig - User Friendly Desktop Internet GIS client
+ *    http://udig.refractions.net
+ *    (C) 2012, Refractions Research Inc.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * (http://www.eclipse.org/legal/epl-v10.html), and the Refractions BSD
+ * License v1.0 (http://udig.refractions.net/files/bsd3-v10.html).
+ */
+package net.refractions.udig.render.internal.feature.shapefile;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.PathIterator;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import net.refractions.udig.render.internal.feature.shapefile.ShapefileGeometryReader.ScreenGeometry;
+
+import org.eclipse.core.runtime.NullProgressMonitor;
+import org.geotools.data.DataUtilities;
+import org.geotools.data.shapefile.ShapefileDataStore;
+import org.geotools.data.simple.SimpleFeatureSource;
+import org.geotools.data.simple.SimpleFeatureStore;
+import org.geotools.feature.simple.SimpleFeatureBuilder;
+import org.geotools.geometry.jts.JTSFactoryFinder;
+import org.geotools.geometry.jts.ReferencedEnvelope;
+import org.geotools.map.FeatureLayer;
+import org.geotools.map.MapContent;
+import org.geotools.renderer.shape.ShapefileRenderer;
+import org.geotools.styling.SLD;
+import org.geotools.styling.Style;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Ignore;
+import org.junit.Test;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.Envelope;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.GeometryFactory;
+
+@SuppressWarnings("nls")
+public class ShapefilePainterTest {
+
+    /** 20x20 world units on a 200x200 image */
+    private static final AffineTransform WORLD_TO_SCREEN = new AffineTransform(10, 0, 0, -10, 0,
+            200);
+
+    private File directory;
+    private GeometryFactory factory = JTSFactoryFinder.getGeometryFactory(null);
+
+    @Before
+    public void setUp() throws Exception {
+        directory = File.createTempFile("shapefile", "test");
+        directory.delete();
+        directory.mkdirs();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        for( File file : directory.listFiles() ) {
+            file.delete();
+        }
+        directory.delete();
+    }
+
+    private Geometry square( double x, double y ) {
+        return factory.createPolygon(factory.createLinearRing(new Coordinate[]{
+                new Coordinate(x, y), new Coordinate(x, y + 10), new Coordinate(x + 10, y + 10),
+                new Coordinate(x + 10, y), new Coordinate(x, y)}), null);
+    }
+
+    /**
+     * Writes a shapefile of squares 0 to 3 at (0,0), (10,0), (0,10) and (10,10).
+     */
+    private File createSquares() throws Exception {
+        SimpleFeatureType type = DataUtilities.createType("squares", "the_geom:Polygon,name:String");
+        List<SimpleFeature> features = new ArrayList<SimpleFeature>();
+        for( int i = 0; i < 4; i++ ) {
+            features.add(SimpleFeatureBuilder.build(type, new Object[]{
+                    square(10 * (i % 2), 10 * (i / 2)), "square" + i}, null));
+        }
+        return write("squares", type, features);
+    }
+
+    private File write( String name, SimpleFeatureType type, List<SimpleFeature> features )
+            throws Exception {
+        File file = new File(directory, name + ".shp");
+        ShapefileDataStore store = new ShapefileDataStore(file.toURI().toURL());
+        try {
+            store.createSchema(type);
+            SimpleFeatureStore featureStore = (SimpleFeatureStore) store.getFeatureSource();
+            featureStore.addFeatures(DataUtilities.collection(features));
+        } finally {
+            store.dispose();
+        }
+        return file;
+    }
+
+    /**
+     * Writes a quadtree whose root has two children: the left squares and the right squares.
+     */
+    private void writeQuadTree( File shp ) throws Exception {
+        ByteBuffer buffer = ByteBuffer.allocate(1024).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.put(new byte[]{'S', 'Q', 'T', 1, 1, 0, 0, 0});
+        buffer.putInt(4);
+        buffer.putInt(2);
+        int childSize = 4 + 32 + 4 + 8 + 4;
+        putNode(buffer, 2 * childSize, new Envelope(0, 20, 0, 20), new int[0], 2);
+        putNode(buffer, 0, new Envelope(0, 10, 0, 20), new int[]{0, 2}, 0);
+        putNode(buffer, 0, new Envelope(10, 20, 0, 20), new int[]{1, 3}, 0);
+        String name = shp.getName();
+        FileOutputStream out = new FileOutputStream(new File(directory, name.substring(0, name
+                .length() - 4) + ".qix"));
+        try {
+            out.write(buffer.array(), 0, buffer.position());
+        } finally {
+            out.close();
+        }
+    }
+
+    private static void putNode( ByteBuffer buffer, int childrenSize, Envelope bounds, int[] ids,
+            int children ) {
+        buffer.putInt(childrenSize);
+        buffer.putDouble(bounds.getMinX());
+        buffer.putDouble(bounds.getMinY());
+        buffer.putDouble(bounds.getMaxX());
+        buffer.putDouble(bounds.getMaxY());
+        buffer.putInt(ids.length);
+        for( int id : ids ) {
+            buffer.putInt(id);
+        }
+        buffer.putInt(children);
+    }
+
+    @Test
+    public void testDecode() throws Exception {
+        ShapefileGeometryReader reader = new ShapefileGeometryReader(createSquares());
+        try {
+            assertEquals(4, reader.getRecordCount());
+            assertEquals(ShapefileGeometryReader.POLYGON, reader.getShapeType());
+            assertFalse(reader.hasSpatialIndex());
+
+            Envelope area = new Envelope(1, 2, 1, 2);
+            ScreenGeometry geometry = new ScreenGeometry();
+            int decoded = 0;
+            for( int record : reader.query(area) ) {
+                if (reader.decode(record, area, WORLD_TO_SCREEN, 1, geometry)) {
+                    decoded++;
+                    assertEquals(new Rectangle(0, 100, 100, 100), geometry.path.getBounds());
+                }
+            }
+            assertEquals(1, decoded);
+        } finally {
+            reader.close();
+        }
+    }
+
+    @Test
+    public void testQuadTree() throws Exception {
+        File shp = createSquares();
+        writeQuadTree(shp);
+        ShapefileGeometryReader reader = new ShapefileGeometryReader(shp);
+        try {
+            assertTrue(reader.hasSpatialIndex());
+            assertEquals(Arrays.toString(new int[]{0, 2}), Arrays.toString(reader
+                    .query(new Envelope(1, 2, 1, 2))));
+            assertEquals(Arrays.toString(new int[]{0, 1, 2, 3}), Arrays.toString(reader
+                    .query(new Envelope(9, 11, 1, 2))));
+        } finally {
+            reader.close();
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void testUnsupportedShapeType() throws Exception {
+        File shp = createSquares();
+        // MultiPatch
+        RandomAccessFile file = new RandomAccessFile(shp, "rw");
+        try {
+            file.seek(32);
+            file.write(new byte[]{31, 0, 0, 0});
+        } finally {
+            file.close();
+        }
+        new ShapefileGeometryReader(shp).close();
+    }
+
+    @Test
+    public void testDecimation() throws Exception {
+        SimpleFeatureType type = DataUtilities.createType("lines", "the_geom:LineString");
+        // 1000 points within two pixels, then one far away
+        Coordinate[] coordinates = new Coordinate[1001];
+        for( int i = 0; i < 1000; i++ ) {
+            coordinates[i] = new Coordinate(1 + i * 0.0002, 1);
+        }
+        coordinates[1000] = new Coordinate(15, 1);
+        List<SimpleFeature> features = new ArrayList<SimpleFeature>();
+        features.add(SimpleFeatureBuilder.build(type, new Object[]{factory
+                .createLineString(coordinates)}, null));
+
+        ShapefileGeometryReader reader = new ShapefileGeometryReader(write("lines", type, features));
+        try {
+            assertEquals(ShapefileGeometryReader.ARC, reader.getShapeType());
+            ScreenGeometry geometry = new ScreenGeometry();
+            assertTrue(reader.decode(0, null, WORLD_TO_SCREEN, 1, geometry));
+            int segments = 0;
+            for( PathIterator iter = geometry.path.getPathIterator(null); !iter.isDone(); iter
+                    .next() ) {
+                segments++;
+            }
+            assertTrue("segments " + segments, segments <= 4);
+            assertEquals(150.0, geometry.path.getBounds2D().getMaxX(), 0.001);
+        } finally {
+            reader.close();
+        }
+    }
+
+    @Test
+    public void testPaint() throws Exception {
+        Style style = SLD.createPolygonStyle(Color.BLACK, Color.RED, 1);
+        assertTrue(ShapefilePainter.canPaint(style));
+        ShapefilePainter painter = new ShapefilePainter(style, 1000);
+        assertTrue(painter.isSupported());
+
+        ShapefileGeometryReader reader = new ShapefileGeometryReader(createSquares());
+        try {
+            BufferedImage image = new BufferedImage(200, 200, BufferedImage.TYPE_INT_ARGB);
+            Graphics2D graphics = image.createGraphics();
+            int painted = painter.paint(graphics, reader, new Envelope(0, 20, 0, 20),
+                    WORLD_TO_SCREEN, 1, new NullProgressMonitor());
+            graphics.dispose();
+
+            assertEquals(4, painted);
+            assertEquals(Color.RED.getRGB(), image.getRGB(50, 50));
+            assertEquals(Color.RED.getRGB(), image.getRGB(150, 150));
+        } finally {
+            reader.close();
+        }
+    }
+
+    @Test
+    public void testAttributeStyle() throws Exception {
+        Style style = SLD.createPolygonStyle(Color.BLACK, Color.RED, 1, "name", null);
+        assertFalse(ShapefilePainter.canPaint(style));
+    }
+
+    /**
+     * Compares the time to draw a large shapefile, the whole of it and the centre, with the
+     * GeoTools ShapefileRenderer and with the ShapefilePainter. The shapefile is given with
+     * -Dshapefile.benchmark=/path/to/file.shp; ignored as it is a benchmark rather than a test.
+     */
+    @Ignore
+    @Test
+    public void benchmarkRender() throws Exception {
+        File file = new File(System.getProperty("shapefile.benchmark"));
+        ShapefileDataStore store = new ShapefileDataStore(file.toURI().toURL());
+        SimpleFeatureSource source = store.getFeatureSource();
+        Style style = SLD.createPolygonStyle(Color.BLACK, Color.ORANGE, 1);
+        int width = 1920;
+        int height = 1080;
+
+        ReferencedEnvelope all = source.getBounds();
+        ReferencedEnvelope centre = new ReferencedEnvelope(all);
+        centre.expandBy(-all.getWidth() * 0.45, -all.getHeight() * 0.45);
+        for( ReferencedEnvelope bounds : new ReferencedEnvelope[]{all, centre} ) {
+            // keep the aspect ratio of the image
+            double size = Math.max(bounds.getWidth() / width, bounds.getHeight() / height);
+            AffineTransform worldToScreen = new AffineTransform(1 / size, 0, 0, -1 / size,
+                    -bounds.getMinX() / size, bounds.getMaxY() / size);
+            ReferencedEnvelope area = new ReferencedEnvelope(bounds.getMinX(), bounds.getMinX()
+                    + width * size, bounds.getMaxY() - height * size, bounds.getMaxY(), bounds
+                    .getCoordinateReferenceSystem());
+
+            MapContent map = new MapContent();
+            map.addLayer(new FeatureLayer(source, style));
+            ShapefileRenderer renderer = new ShapefileRenderer();
+            renderer.setMapContent(map);
+            long geotools = Long.MAX_VALUE;
+            for( int i = 0; i < 3; i++ ) {
+                BufferedImage image = new BufferedImage(width, height,
+                        BufferedImage.TYPE_INT_ARGB);
+                Graphics2D graphics = image.createGraphics();
+                long start = System.currentTimeMillis();
+                renderer.paint(graphics, new Rectangle(width, height), area);
+                geotools = Math.min(geotools, System.currentTimeMillis() - start);
+                graphics.dispose();
+            }
+            map.dispose();
+
+            ShapefileGeometryReader reader = new ShapefileGeometryReader(file);
+            long fast = Long.MAX_VALUE;
+            int painted = 0;
+            try {
+                for( int i = 0; i < 3; i++ ) {
+                    BufferedImage image = new BufferedImage(width, height,
+                            BufferedImage.TYPE_INT_ARGB);
+                    Graphics2D graphics = image.createGraphics();
+                    long start = System.currentTimeMillis();
+                    ShapefilePainter painter = new ShapefilePainter(style, 1);
+                    painted = painter.paint(graphics, reader, area, worldToScreen, 1,
+                            new NullProgressMonitor());
+                    fast = Math.min(fast, System.currentTimeMillis() - start);
+                    graphics.dispose();
+                }
+            } finally {
+                reader.close();
+            }
+            System.out.println(file.getName() + " (" + (file.length() >> 20) + "MB, index "
+                    + reader.hasSpatialIndex() + ") " + (bounds == all ? "all" : "centre")
+                    + ": ShapefileRenderer " + geotools + "ms, ShapefilePainter " + fast
+                    + "ms (" + painted + " shapes)");
+        }
+        store.dispose();
+    }
+}
@@ -0,0 +1,94 @@
+/*
+ *    uDig - User Friendly Desktop Internet GIS client
+ *    http://udig.refractions.net
+ *    (C) 2012, Refractions Research Inc.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * (http://www.eclipse.org/legal/epl-v10.html), and the Refractions BSD
+ * License v1.0 (http://udig.refractions.net/files/bsd3-v10.html).
+ */
+package net.refractions.udig.render.internal.gridcoverage.basic;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.awt.image.BufferedImage;
+import java.net.URL;
+
+import net.refractions.udig.catalog.ID;
+import net.refractions.udig.render.internal.gridcoverage.basic.CoverageTileCache.Key;
+
+import org.junit.Before;
+import org.junit.Test;
+
+@SuppressWarnings("nls")
+public class CoverageTileCacheTest {
+
+    private static final int TILE_BYTES = CoverageTileCache.TILE_SIZE
+            * CoverageTileCache.TILE_SIZE * 4;
+
+    private CoverageTileCache cache;
+    private ID resource;
+    private BufferedImage tile;
+
+    @Before
+    public void setUp() throws Exception {
+        cache = new CoverageTileCache(3 * TILE_BYTES);
+        resource = new ID(new URL("http://localhost/data/image.tif#image"));
+        tile = new BufferedImage(CoverageTileCache.TILE_SIZE, CoverageTileCache.TILE_SIZE,
+                BufferedImage.TYPE_INT_ARGB);
+    }
+
+    @Test
+    public void testHitAndMiss() {
+        cache.put(new Key(resource, 10, "style", 0, 1, 2), tile);
+
+        assertSame(tile, cache.get(new Key(resource, 10, "style", 0, 1, 2)));
+        assertNull(cache.get(new Key(resource, 10, "style", 0, 2, 1)));
+        assertNull(cache.get(new Key(resource, 10, "style", 1, 1, 2)));
+        assertNull(cache.get(new Key(resource, 10, "other", 0, 1, 2)));
+    }
+
+    @Test
+    public void testModifiedIsMiss() {
+        cache.put(new Key(resource, 10, "style", 0, 0, 0), tile);
+
+        // the file was written since the tile was read
+        assertNull(cache.get(new Key(resource, 20, "style", 0, 0, 0)));
+    }
+
+    @Test
+    public void testLeastRecentlyUsedThrownAway() {
+        cache.put(new Key(resource, 0, null, 0, 0, 0), tile);
+        cache.put(new Key(resource, 0, null, 0, 1, 0), tile);
+        cache.put(new Key(resource, 0, null, 0, 2, 0), tile);
+        // used so it is kept
+        cache.get(new Key(resource, 0, null, 0, 0, 0));
+        cache.put(new Key(resource, 0, null, 0, 3, 0), tile);
+
+        assertEquals(3, cache.size());
+        assertEquals(3L * TILE_BYTES, cache.getBytes());
+        assertSame(tile, cache.get(new Key(resource, 0, null, 0, 0, 0)));
+        assertNull(cache.get(new Key(resource, 0, null, 0, 1, 0)));
+    }
+
+    @Test
+    public void testClear() throws Exception {
+        ID other = new ID(new URL("http://localhost/data/other.tif#other"));
+        cache.put(new Key(resource, 0, null, 0, 0, 0), tile);
+        cache.put(new Key(resource, 5, null, 0, 1, 0), CoverageTileCache.EMPTY);
+        cache.put(new Key(other, 0, null, 0, 0, 0), tile);
+
+        assertEquals(2, cache.clear(resource));
+        assertNull(cache.get(new Key(resource, 0, null, 0, 0, 0)));
+        assertEquals(1, cache.size());
+        assertEquals(TILE_BYTES, cache.getBytes());
+
+        // clearing a service clears its resources
+        assertEquals(1, cache.clear(new ID(new URL("http://localhost/data/other.tif"))));
+        assertEquals(0, cache.size());
+        assertEquals(0, cache.getBytes());
+    }
+}
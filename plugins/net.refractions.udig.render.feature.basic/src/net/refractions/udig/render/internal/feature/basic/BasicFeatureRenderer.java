@@ -119,7 +119,12 @@ public class BasicFeatureRenderer extends RendererImpl {
      *      org.eclipse.core.runtime.IProgressMonitor)
      */
     public void render( Graphics2D destination, IProgressMonitor monitor ) throws RenderException {
-        render(destination, getContext().getImageBounds(), monitor, false);
+        // draw only the render bounds if set, for instance when printing in bands
+        ReferencedEnvelope bounds = getRenderBounds();
+        if (bounds == null || bounds.isNull()) {
+            bounds = getContext().getImageBounds();
+        }
+        render(destination, bounds, monitor, false);
     }
 
     private final static int NOT_INITIALIZED = -2;
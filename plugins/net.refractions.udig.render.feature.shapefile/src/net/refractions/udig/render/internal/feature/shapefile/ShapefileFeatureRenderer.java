@@ -9,18 +9,53 @@
  */
 package net.refractions.udig.render.internal.feature.shapefile;
 
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Point;
+import java.awt.Rectangle;
 import java.awt.RenderingHints;
+import java.awt.geom.AffineTransform;
+import java.io.File;
+import java.io.IOException;
 import java.util.HashMap;
 
+import net.refractions.udig.catalog.ID;
+import net.refractions.udig.catalog.IService;
+import net.refractions.udig.project.ILayer;
+import net.refractions.udig.project.ProjectBlackboardConstants;
+import net.refractions.udig.project.internal.ProjectPlugin;
+import net.refractions.udig.project.internal.StyleBlackboard;
+import net.refractions.udig.project.internal.render.SelectionLayer;
+import net.refractions.udig.project.preferences.PreferenceConstants;
+import net.refractions.udig.project.render.IRenderContext;
+import net.refractions.udig.project.render.RenderException;
 import net.refractions.udig.render.internal.feature.basic.BasicFeatureRenderer;
 
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.NullProgressMonitor;
+import org.geotools.data.Query;
+import org.geotools.data.simple.SimpleFeatureSource;
+import org.geotools.geometry.jts.ReferencedEnvelope;
 import org.geotools.map.MapContext;
+import org.geotools.referencing.CRS;
 import org.geotools.renderer.GTRenderer;
 import org.geotools.renderer.shape.ShapefileRenderer;
+import org.geotools.styling.Style;
+import org.opengis.feature.simple.SimpleFeatureType;
+import org.opengis.filter.Filter;
+import org.opengis.referencing.crs.CoordinateReferenceSystem;
+
+import com.vividsolutions.jts.geom.Coordinate;
 
 /**
  * The default victim renderer. Based on the Lite-Renderer from Geotools.
- * 
+ * <p>
+ * When the style does not use the attributes of the features, nothing filters or reprojects
+ * them and the map has no uncommitted edits, the geometries are drawn by a
+ * {@link ShapefilePainter} straight from the memory mapped shapefile; otherwise the GeoTools
+ * {@link ShapefileRenderer} is used, which reads through the transaction of the map.
+ * </p>
+ *
  * @author Jesse Eichar
  * @version $Revision: 1.9 $
  */
@@ -49,4 +84,170 @@ public class ShapefileFeatureRenderer extends BasicFeatureRenderer {
         return renderer;
     }
 
-}
\ No newline at end of file
+    @Override
+    public void render( Graphics2D destination, IProgressMonitor monitor ) throws RenderException {
+        ReferencedEnvelope bounds = getRenderBounds();
+        if (bounds == null || bounds.isNull()) {
+            bounds = getContext().getImageBounds();
+        }
+        if (!renderFast(destination, bounds, monitor, false)) {
+            super.render(destination, monitor);
+        }
+    }
+
+    @Override
+    public void render( IProgressMonitor monitor ) throws RenderException {
+        Graphics2D graphics = getContext().getImage().createGraphics();
+        try {
+            if (renderFast(graphics, getRenderBounds(), monitor, true)) {
+                return;
+            }
+        } finally {
+            graphics.dispose();
+        }
+        super.render(monitor);
+    }
+
+    /**
+     * Draws the layer with a {@link ShapefilePainter} if the style and query allow it.
+     *
+     * @param clear true to clear the area drawn first
+     * @return false if the layer has to be drawn by the GeoTools renderer
+     */
+    private boolean renderFast( Graphics2D graphics, ReferencedEnvelope bounds,
+            IProgressMonitor monitor, boolean clear ) throws RenderException {
+        if (monitor == null) {
+            monitor = new NullProgressMonitor();
+        }
+        IRenderContext context = getContext();
+        ILayer layer = context.getLayer();
+        try {
+            if (layer instanceof SelectionLayer
+                    || layer.getStyleBlackboard().contains(
+                            ProjectBlackboardConstants.LAYER__STYLE_FILTER)) {
+                return false;
+            }
+            if (layer.getMap().getEditManager().isEditing()) {
+                return false; // the shapefile does not have the edits of the transaction
+            }
+            Query query = context.getFeatureQuery();
+            if (query != null && query.getFilter() != null && query.getFilter() != Filter.INCLUDE) {
+                return false; // selection or features being edited
+            }
+            SimpleFeatureSource featureSource = layer.getResource(SimpleFeatureSource.class,
+                    monitor);
+            if (featureSource == null) {
+                return false;
+            }
+            SimpleFeatureType schema = featureSource.getSchema();
+            CoordinateReferenceSystem dataCRS = schema.getCoordinateReferenceSystem();
+            if (schema.getGeometryDescriptor() == null || dataCRS == null
+                    || !CRS.equalsIgnoreMetadata(dataCRS, layer.getCRS())
+                    || !CRS.equalsIgnoreMetadata(dataCRS, context.getCRS())) {
+                return false;
+            }
+            Style style = getStyle((StyleBlackboard) layer.getStyleBlackboard(), featureSource);
+            if (!ShapefilePainter.canPaint(style)) {
+                return false;
+            }
+            double scale = context.getViewportModel().getScaleDenominator();
+            ShapefilePainter painter = new ShapefilePainter(style, scale);
+            if (!painter.isSupported()) {
+                return false;
+            }
+            ShapefileGeometryReader shapefile = openReader(monitor);
+            if (shapefile == null) {
+                return false;
+            }
+            try {
+                paint(graphics, bounds, monitor, clear, painter, shapefile);
+            } finally {
+                // unmapped right away so the shapefile can be written
+                shapefile.close();
+            }
+            return true;
+        } catch (IOException e) {
+            RendererPlugin.log("Drawing " + layer.getName() + " with GeoTools", e); //$NON-NLS-1$ //$NON-NLS-2$
+            return false;
+        } catch (RenderException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new RenderException(e.getClass() + " occured during rendering: " //$NON-NLS-1$
+                    + e.getLocalizedMessage(), e);
+        }
+    }
+
+    /**
+     * Draws the shapes of the shapefile that are in the bounds.
+     */
+    private void paint( Graphics2D graphics, ReferencedEnvelope bounds,
+            IProgressMonitor monitor, boolean clear, ShapefilePainter painter,
+            ShapefileGeometryReader shapefile ) throws Exception {
+        IRenderContext context = getContext();
+        ILayer layer = context.getLayer();
+        context.setStatus(ILayer.WAIT);
+        ReferencedEnvelope validBounds = validateBounds(bounds, monitor, context);
+        if (validBounds.isNull()) {
+            context.setStatus(ILayer.DONE);
+            return;
+        }
+        Point min = context.worldToPixel(new Coordinate(validBounds.getMinX(), validBounds
+                .getMinY()));
+        Point max = context.worldToPixel(new Coordinate(validBounds.getMaxX(), validBounds
+                .getMaxY()));
+        Rectangle paintArea = new Rectangle(Math.min(min.x, max.x), Math.min(min.y, max.y),
+                Math.abs(max.x - min.x), Math.abs(max.y - min.y));
+        if (clear) {
+            graphics.setBackground(new Color(0, 0, 0, 0));
+            graphics.clearRect(paintArea.x, paintArea.y, paintArea.width, paintArea.height);
+        }
+        if (bounds != null && !bounds.isNull()) {
+            graphics.setClip(paintArea);
+        }
+        // read the records whose strokes and marks reach into the area
+        ReferencedEnvelope area = new ReferencedEnvelope(validBounds);
+        if (paintArea.width > 0) {
+            area.expandBy(painter.getBuffer() * validBounds.getWidth() / paintArea.width);
+        }
+
+        boolean antiAliasing = ProjectPlugin.getPlugin().getPreferenceStore().getBoolean(
+                PreferenceConstants.P_ANTI_ALIASING);
+        graphics.setRenderingHint(RenderingHints.KEY_ANTIALIASING, antiAliasing
+                ? RenderingHints.VALUE_ANTIALIAS_ON
+                : RenderingHints.VALUE_ANTIALIAS_OFF);
+        graphics.setRenderingHint(RenderingHints.KEY_RENDERING,
+                RenderingHints.VALUE_RENDER_SPEED);
+        graphics.setRenderingHint(RenderingHints.KEY_STROKE_CONTROL,
+                RenderingHints.VALUE_STROKE_PURE);
+
+        AffineTransform worldToScreen = context.getViewportModel().worldToScreenTransform(
+                context.getImageBounds(), context.getImageSize());
+        // with anti-aliasing half pixels show
+        double tolerance = antiAliasing ? 0.5 : 1;
+        long start = System.currentTimeMillis();
+        int painted = painter.paint(graphics, shapefile, area, worldToScreen, tolerance,
+                monitor);
+        RendererPlugin.trace(layer.getName() + ": " + painted + " shapes painted in " //$NON-NLS-1$ //$NON-NLS-2$
+                + (System.currentTimeMillis() - start) + "ms without reading attributes", null); //$NON-NLS-1$
+        context.setStatus(ILayer.DONE);
+        context.setStatusMessage(null);
+    }
+
+    /**
+     * @return a reader of the shapefile of the layer, to be closed once drawn, or null if the
+     *         layer is not a local shapefile
+     */
+    private ShapefileGeometryReader openReader( IProgressMonitor monitor ) throws IOException {
+        IService service = getContext().getGeoResource().service(monitor);
+        ID id = service == null ? null : service.getID();
+        if (id == null || !id.isFile()) {
+            return null;
+        }
+        File file = id.toFile();
+        if (file == null || !file.exists()) {
+            return null;
+        }
+        return new ShapefileGeometryReader(file);
+    }
+
+}
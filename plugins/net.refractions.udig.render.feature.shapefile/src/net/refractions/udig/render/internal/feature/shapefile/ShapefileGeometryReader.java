@@ -0,0 +1,661 @@
+/*
+ *    uDig - User Friendly Desktop Internet GIS client
+ *    http://udig.refractions.net
+ *    (C) 2012, Refractions Research Inc.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * (http://www.eclipse.org/legal/epl-v10.html), and the Refractions BSD
+ * License v1.0 (http://udig.refractions.net/files/bsd3-v10.html).
+ */
+package net.refractions.udig.render.internal.feature.shapefile;
+
+import java.awt.geom.AffineTransform;
+import java.awt.geom.GeneralPath;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+import com.vividsolutions.jts.geom.Envelope;
+
+/**
+ * Reads the geometries of a shapefile straight from the memory mapped <code>.shp</code> and
+ * <code>.shx</code> files, without reading the <code>.dbf</code> and without creating features or
+ * JTS geometries.
+ * <p>
+ * The records in an area are found with the <code>.qix</code> quadtree when there is one, by
+ * checking the bounds of every record otherwise. Records are decoded into screen coordinates,
+ * leaving out the points closer than a tolerance to the previous point drawn, so a polygon of
+ * thousands of points that covers a few pixels only costs a few path segments.
+ * </p>
+ * <p>
+ * Files larger than 2GB are mapped in segments; a record that crosses the end of a segment is read
+ * with the file channel. The files are unmapped when the reader is closed so that they can be
+ * written again (Windows refuses to change a mapped file); keep a reader open only while drawing.
+ * A reader is not thread safe.
+ * </p>
+ *
+ * @since 1.4.0
+ */
+public class ShapefileGeometryReader {
+
+    /** shape types, the Z and M variants are reduced to these */
+    public static final int NULL = 0;
+    public static final int POINT = 1;
+    public static final int ARC = 3;
+    public static final int POLYGON = 5;
+    public static final int MULTIPOINT = 8;
+
+    /** size of the segments the .shp file is mapped in */
+    private static final long SEGMENT_SIZE = 1L << 30;
+    /** each segment maps this much of the next one so few records are read with the channel */
+    private static final long SEGMENT_OVERLAP = 1L << 24;
+
+    private static final int HEADER_SIZE = 100;
+
+    private final File shpFile;
+    private final long lastModified;
+    private final long length;
+
+    private final RandomAccessFile shp;
+    private final FileChannel shpChannel;
+    private final MappedByteBuffer[] segments;
+    private MappedByteBuffer shx;
+    private final int recordCount;
+    private final int shapeType;
+    private final Envelope bounds;
+
+    private MappedByteBuffer qix;
+    /** value to subtract from the ids of the quadtree to get record numbers */
+    private int qixIdBase;
+
+    private ByteBuffer spill = ByteBuffer.allocate(0);
+    private final double[] matrix = new double[6];
+
+    /**
+     * Opens the shapefile; the <code>.shx</code> file must exist, the <code>.qix</code> file is
+     * used if it is there and matches the shapefile.
+     *
+     * @param shpFile the .shp file
+     * @throws IOException if the files can not be read or are not shapefiles
+     */
+    public ShapefileGeometryReader( File shpFile ) throws IOException {
+        this.shpFile = shpFile;
+        this.lastModified = shpFile.lastModified();
+        this.length = shpFile.length();
+
+        File shxFile = sibling(shpFile, "shx"); //$NON-NLS-1$
+        if (shxFile == null) {
+            throw new IOException("No index (.shx) for " + shpFile); //$NON-NLS-1$
+        }
+        shp = new RandomAccessFile(shpFile, "r"); //$NON-NLS-1$
+        try {
+            shpChannel = shp.getChannel();
+            segments = new MappedByteBuffer[(int) ((length + SEGMENT_SIZE - 1) / SEGMENT_SIZE)];
+            shx = map(shxFile);
+
+            if (length < HEADER_SIZE) {
+                throw new IOException(shpFile + " is not a shapefile"); //$NON-NLS-1$
+            }
+            ByteBuffer header = segment(0);
+            if (header.order(ByteOrder.BIG_ENDIAN).getInt(0) != 9994) {
+                throw new IOException(shpFile + " is not a shapefile"); //$NON-NLS-1$
+            }
+            header.order(ByteOrder.LITTLE_ENDIAN);
+            shapeType = toShapeType(header.getInt(32));
+            if (shapeType < 0) {
+                throw new IOException("Unsupported shape type " + header.getInt(32) + " in " + shpFile); //$NON-NLS-1$ //$NON-NLS-2$
+            }
+            bounds = new Envelope(header.getDouble(36), header.getDouble(52),
+                    header.getDouble(44), header.getDouble(60));
+            recordCount = (int) ((shx.capacity() - HEADER_SIZE) / 8);
+
+            File qixFile = sibling(shpFile, "qix"); //$NON-NLS-1$
+            if (qixFile != null && qixFile.lastModified() >= lastModified
+                    && qixFile.length() < Integer.MAX_VALUE) {
+                openQuadTree(qixFile);
+            }
+        } catch (IOException e) {
+            close();
+            throw e;
+        }
+    }
+
+    /**
+     * @return the shape type with the Z and M variants reduced, or -1 if the type (MultiPatch or
+     *         unknown) is not supported
+     */
+    private static int toShapeType( int type ) {
+        switch( type ) {
+        case 0:
+            return NULL;
+        case 1:
+        case 11:
+        case 21:
+            return POINT;
+        case 3:
+        case 13:
+        case 23:
+            return ARC;
+        case 5:
+        case 15:
+        case 25:
+            return POLYGON;
+        case 8:
+        case 18:
+        case 28:
+            return MULTIPOINT;
+        default:
+            return -1;
+        }
+    }
+
+    /**
+     * @return the type of the shapes of the file, one of {@link #POINT}, {@link #ARC},
+     *         {@link #POLYGON}, {@link #MULTIPOINT} or {@link #NULL}
+     */
+    public int getShapeType() {
+        return shapeType;
+    }
+
+    /**
+     * @return the number of records of the file
+     */
+    public int getRecordCount() {
+        return recordCount;
+    }
+
+    /**
+     * @return the bounds of the shapes of the file
+     */
+    public Envelope getBounds() {
+        return new Envelope(bounds);
+    }
+
+    /**
+     * @return true if the records are found with the .qix spatial index
+     */
+    public boolean hasSpatialIndex() {
+        return qix != null;
+    }
+
+    /**
+     * @return true if the file changed since it was opened
+     */
+    public boolean isStale() {
+        return shpFile.lastModified() != lastModified || shpFile.length() != length;
+    }
+
+    /**
+     * Closes the file and unmaps the mapped files.
+     */
+    public void close() {
+        try {
+            shp.close();
+        } catch (IOException e) {
+            // nothing more can be done
+        }
+        for( int i = 0; segments != null && i < segments.length; i++ ) {
+            unmap(segments[i]);
+            segments[i] = null;
+        }
+        unmap(shx);
+        shx = null;
+        unmap(qix);
+        qix = null;
+    }
+
+    /**
+     * Releases the memory of a mapped buffer right away; the JDK only does it when the buffer is
+     * garbage collected and the file stays locked until then. Must not be called while the buffer
+     * may still be read.
+     */
+    private static void unmap( MappedByteBuffer buffer ) {
+        if (buffer == null) {
+            return;
+        }
+        try {
+            Method cleanerMethod = buffer.getClass().getMethod("cleaner"); //$NON-NLS-1$
+            cleanerMethod.setAccessible(true);
+            Object cleaner = cleanerMethod.invoke(buffer);
+            if (cleaner != null) {
+                cleaner.getClass().getMethod("clean").invoke(cleaner); //$NON-NLS-1$
+            }
+        } catch (Exception e) {
+            // not a Sun JDK, the buffer is released when it is garbage collected
+        }
+    }
+
+    /**
+     * Returns the records whose bounds may intersect the area, in the order of the file.
+     *
+     * @param area the area in the coordinates of the file or null for all records
+     * @return the record numbers
+     */
+    public int[] query( Envelope area ) {
+        if (area == null || area.contains(bounds)) {
+            int[] all = new int[recordCount];
+            for( int i = 0; i < all.length; i++ ) {
+                all[i] = i;
+            }
+            return all;
+        }
+        if (!area.intersects(bounds)) {
+            return new int[0];
+        }
+        IntList records = new IntList();
+        if (qix != null) {
+            visit(16, area, records);
+            records.sortUnique();
+        } else {
+            for( int i = 0; i < recordCount; i++ ) {
+                records.add(i);
+            }
+        }
+        return records.toArray();
+    }
+
+    /**
+     * Decodes a record in screen coordinates: the parts of lines and polygons into the path of the
+     * geometry, points into its points.
+     *
+     * @param record the record number
+     * @param area the area drawn, records outside of it are skipped; may be null
+     * @param worldToScreen transform from the coordinates of the file to the screen
+     * @param tolerance distance in pixels under which a point is not drawn after the previous one
+     * @param geometry receives the decoded shape
+     * @return false if the record is empty or outside of the area
+     * @throws IOException if the record can not be read
+     */
+    public boolean decode( int record, Envelope area, AffineTransform worldToScreen,
+            double tolerance, ScreenGeometry geometry ) throws IOException {
+        geometry.clear();
+        if (record < 0 || record >= recordCount) {
+            return false;
+        }
+        long offset = (shx.getInt(HEADER_SIZE + 8 * record) & 0xFFFFFFFFL) * 2 + 8;
+        int contentLength = shx.getInt(HEADER_SIZE + 8 * record + 4) * 2;
+        if (contentLength < 4 || offset + contentLength > length) {
+            return false;
+        }
+        ByteBuffer buffer;
+        int p;
+        int segment = (int) (offset / SEGMENT_SIZE);
+        MappedByteBuffer mapped = segment(segment);
+        int local = (int) (offset - segment * SEGMENT_SIZE);
+        if (local + contentLength <= mapped.capacity()) {
+            buffer = mapped;
+            p = local;
+        } else {
+            buffer = read(offset, contentLength);
+            p = 0;
+        }
+
+        int type = toShapeType(buffer.getInt(p));
+        if (type == NULL || type < 0) {
+            return false;
+        }
+        worldToScreen.getMatrix(matrix);
+        if (type == POINT) {
+            double x = buffer.getDouble(p + 4);
+            double y = buffer.getDouble(p + 12);
+            if (area != null && !area.contains(x, y)) {
+                return false;
+            }
+            geometry.addPoint(screenX(x, y), screenY(x, y));
+            return true;
+        }
+        if (area != null
+                && (buffer.getDouble(p + 20) < area.getMinX()
+                        || buffer.getDouble(p + 4) > area.getMaxX()
+                        || buffer.getDouble(p + 28) < area.getMinY() || buffer.getDouble(p + 12) > area
+                        .getMaxY())) {
+            return false;
+        }
+        if (type == MULTIPOINT) {
+            int numPoints = buffer.getInt(p + 36);
+            int points = p + 40;
+            for( int i = 0; i < numPoints; i++ ) {
+                double x = buffer.getDouble(points + 16 * i);
+                double y = buffer.getDouble(points + 16 * i + 8);
+                geometry.addPoint(screenX(x, y), screenY(x, y));
+            }
+            return numPoints > 0;
+        }
+
+        int numParts = buffer.getInt(p + 36);
+        int numPoints = buffer.getInt(p + 40);
+        int parts = p + 44;
+        int points = parts + 4 * numParts;
+        GeneralPath path = geometry.path;
+        for( int part = 0; part < numParts; part++ ) {
+            int start = buffer.getInt(parts + 4 * part);
+            int end = part + 1 < numParts ? buffer.getInt(parts + 4 * (part + 1)) : numPoints;
+            float lastX = 0;
+            float lastY = 0;
+            for( int i = start; i < end; i++ ) {
+                double x = buffer.getDouble(points + 16 * i);
+                double y = buffer.getDouble(points + 16 * i + 8);
+                float sx = screenX(x, y);
+                float sy = screenY(x, y);
+                if (i == start) {
+                    path.moveTo(sx, sy);
+                } else if (i == end - 1 || Math.abs(sx - lastX) >= tolerance
+                        || Math.abs(sy - lastY) >= tolerance) {
+                    path.lineTo(sx, sy);
+                } else {
+                    continue;
+                }
+                lastX = sx;
+                lastY = sy;
+            }
+            if (type == POLYGON && end > start) {
+                path.closePath();
+            }
+        }
+        geometry.hasPath = numPoints > 0;
+        return geometry.hasPath;
+    }
+
+    private float screenX( double x, double y ) {
+        return (float) (matrix[0] * x + matrix[2] * y + matrix[4]);
+    }
+
+    private float screenY( double x, double y ) {
+        return (float) (matrix[1] * x + matrix[3] * y + matrix[5]);
+    }
+
+    /**
+     * Reads a record that crosses the end of a mapped segment.
+     */
+    private ByteBuffer read( long offset, int contentLength ) throws IOException {
+        if (spill.capacity() < contentLength) {
+            spill = ByteBuffer.allocate(contentLength).order(ByteOrder.LITTLE_ENDIAN);
+        }
+        spill.clear();
+        spill.limit(contentLength);
+        while( spill.hasRemaining() ) {
+            if (shpChannel.read(spill, offset + spill.position()) < 0) {
+                throw new IOException("Unexpected end of " + shpFile); //$NON-NLS-1$
+            }
+        }
+        return spill;
+    }
+
+    private MappedByteBuffer segment( int index ) throws IOException {
+        MappedByteBuffer segment = segments[index];
+        if (segment == null) {
+            long start = index * SEGMENT_SIZE;
+            long size = Math.min(SEGMENT_SIZE + SEGMENT_OVERLAP, length - start);
+            segment = shpChannel.map(FileChannel.MapMode.READ_ONLY, start, size);
+            segment.order(ByteOrder.LITTLE_ENDIAN);
+            segments[index] = segment;
+        }
+        return segment;
+    }
+
+    private static MappedByteBuffer map( File file ) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r"); //$NON-NLS-1$
+        try {
+            FileChannel channel = raf.getChannel();
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            buffer.order(ByteOrder.BIG_ENDIAN);
+            return buffer;
+        } finally {
+            // the mapping stays valid once the file is closed
+            raf.close();
+        }
+    }
+
+    /**
+     * @return the file with the same name and another extension, in lower or upper case, or null
+     */
+    private static File sibling( File file, String extension ) {
+        String name = file.getName();
+        int dot = name.lastIndexOf('.');
+        String base = dot < 0 ? name : name.substring(0, dot);
+        File lower = new File(file.getParentFile(), base + "." + extension); //$NON-NLS-1$
+        if (lower.exists()) {
+            return lower;
+        }
+        File upper = new File(file.getParentFile(), base + "." + extension.toUpperCase()); //$NON-NLS-1$
+        return upper.exists() ? upper : null;
+    }
+
+    /**
+     * Maps the quadtree if its byte order and numbering can be worked out, it is ignored otherwise.
+     * <p>
+     * The file starts with "SQT", a byte order, a version, 3 reserved bytes, the number of shapes
+     * and the depth of the tree; each node has the size of its children, its bounds, the ids of
+     * its shapes and the number of its children followed by the children.
+     * </p>
+     */
+    private void openQuadTree( File qixFile ) throws IOException {
+        MappedByteBuffer buffer = map(qixFile);
+        if (buffer.capacity() < 16 || buffer.get(0) != 'S' || buffer.get(1) != 'Q'
+                || buffer.get(2) != 'T') {
+            unmap(buffer);
+            return;
+        }
+        // the byte order flag differs between writers, the number of shapes tells
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        if (buffer.getInt(8) != recordCount) {
+            buffer.order(ByteOrder.BIG_ENDIAN);
+            if (buffer.getInt(8) != recordCount) {
+                unmap(buffer);
+                return;
+            }
+        }
+        // some writers number the shapes from 1; check a few ids against the bounds of the nodes
+        IntList samples = new IntList();
+        sample(buffer, 16, samples);
+        int matches0 = 0;
+        int matches1 = 0;
+        for( int i = 0; i < samples.size(); i += 2 ) {
+            int id = samples.get(i);
+            int node = samples.get(i + 1);
+            if (inNode(buffer, node, id)) {
+                matches0++;
+            }
+            if (inNode(buffer, node, id - 1)) {
+                matches1++;
+            }
+        }
+        int count = samples.size() / 2;
+        if (count > 0 && matches0 == count) {
+            qixIdBase = 0;
+        } else if (count > 0 && matches1 == count) {
+            qixIdBase = 1;
+        } else {
+            unmap(buffer);
+            return;
+        }
+        qix = buffer;
+    }
+
+    /**
+     * Collects up to 16 pairs of shape id and node position.
+     *
+     * @return the position after the node
+     */
+    private int sample( ByteBuffer buffer, int node, IntList samples ) {
+        int numShapes = buffer.getInt(node + 36);
+        int ids = node + 40;
+        for( int i = 0; i < numShapes && samples.size() < 32; i++ ) {
+            samples.add(buffer.getInt(ids + 4 * i));
+            samples.add(node);
+        }
+        int numChildren = buffer.getInt(ids + 4 * numShapes);
+        int children = ids + 4 * numShapes + 4;
+        int child = children;
+        for( int i = 0; i < numChildren && samples.size() < 32; i++ ) {
+            child = sample(buffer, child, samples);
+        }
+        return children + buffer.getInt(node);
+    }
+
+    /**
+     * @return true if the bounds of the record are in the bounds of the node
+     */
+    private boolean inNode( ByteBuffer buffer, int node, int record ) {
+        if (record < 0 || record >= recordCount) {
+            return false;
+        }
+        try {
+            long offset = (shx.getInt(HEADER_SIZE + 8 * record) & 0xFFFFFFFFL) * 2 + 8;
+            int contentLength = shx.getInt(HEADER_SIZE + 8 * record + 4) * 2;
+            if (offset + contentLength > length || contentLength < 20) {
+                return false;
+            }
+            int segment = (int) (offset / SEGMENT_SIZE);
+            ByteBuffer mapped = segment(segment);
+            int p = (int) (offset - segment * SEGMENT_SIZE);
+            if (p + contentLength > mapped.capacity()) {
+                mapped = read(offset, contentLength);
+                p = 0;
+            }
+            int type = toShapeType(mapped.getInt(p));
+            Envelope record2;
+            if (type == NULL || type < 0) {
+                return true;
+            } else if (type == POINT) {
+                record2 = new Envelope(mapped.getDouble(p + 4), mapped.getDouble(p + 4),
+                        mapped.getDouble(p + 12), mapped.getDouble(p + 12));
+            } else {
+                record2 = new Envelope(mapped.getDouble(p + 4), mapped.getDouble(p + 20),
+                        mapped.getDouble(p + 12), mapped.getDouble(p + 28));
+            }
+            Envelope nodeBounds = new Envelope(buffer.getDouble(node + 4),
+                    buffer.getDouble(node + 20), buffer.getDouble(node + 12),
+                    buffer.getDouble(node + 28));
+            return nodeBounds.intersects(record2);
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Adds the shapes of the node and its children that may intersect the area.
+     *
+     * @return the position after the node
+     */
+    private int visit( int node, Envelope area, IntList records ) {
+        int numShapes = qix.getInt(node + 36);
+        int ids = node + 40;
+        int numChildren = qix.getInt(ids + 4 * numShapes);
+        int children = ids + 4 * numShapes + 4;
+        int next = children + qix.getInt(node);
+        if (qix.getDouble(node + 4) > area.getMaxX() || qix.getDouble(node + 20) < area.getMinX()
+                || qix.getDouble(node + 12) > area.getMaxY()
+                || qix.getDouble(node + 28) < area.getMinY()) {
+            return next;
+        }
+        for( int i = 0; i < numShapes; i++ ) {
+            int record = qix.getInt(ids + 4 * i) - qixIdBase;
+            if (record >= 0 && record < recordCount) {
+                records.add(record);
+            }
+        }
+        int child = children;
+        for( int i = 0; i < numChildren; i++ ) {
+            child = visit(child, area, records);
+        }
+        return next;
+    }
+
+    /**
+     * The shape of a record in screen coordinates, reused from one record to the next.
+     */
+    public static final class ScreenGeometry {
+        /** the parts of a line or polygon */
+        public final GeneralPath path = new GeneralPath(GeneralPath.WIND_EVEN_ODD);
+        boolean hasPath;
+        /** x and y of the points of a point or multipoint */
+        private float[] points = new float[16];
+        private int pointCount;
+
+        void clear() {
+            path.reset();
+            hasPath = false;
+            pointCount = 0;
+        }
+
+        void addPoint( float x, float y ) {
+            if (2 * pointCount + 2 > points.length) {
+                points = Arrays.copyOf(points, points.length * 2);
+            }
+            points[2 * pointCount] = x;
+            points[2 * pointCount + 1] = y;
+            pointCount++;
+        }
+
+        /**
+         * @return true if the record is a line or polygon
+         */
+        public boolean hasPath() {
+            return hasPath;
+        }
+
+        /**
+         * @return the number of points of a point or multipoint
+         */
+        public int getPointCount() {
+            return pointCount;
+        }
+
+        public float getX( int point ) {
+            return points[2 * point];
+        }
+
+        public float getY( int point ) {
+            return points[2 * point + 1];
+        }
+    }
+
+    /**
+     * A growable array of ints.
+     */
+    private static final class IntList {
+        private int[] values = new int[64];
+        private int size;
+
+        void add( int value ) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+
+        int get( int index ) {
+            return values[index];
+        }
+
+        int size() {
+            return size;
+        }
+
+        /**
+         * Sorts the values and removes the duplicates, a shape may be in several nodes.
+         */
+        void sortUnique() {
+            Arrays.sort(values, 0, size);
+            int unique = 0;
+            for( int i = 0; i < size; i++ ) {
+                if (unique == 0 || values[i] != values[unique - 1]) {
+                    values[unique++] = values[i];
+                }
+            }
+            size = unique;
+        }
+
+        int[] toArray() {
+            return Arrays.copyOf(values, size);
+        }
+    }
+}
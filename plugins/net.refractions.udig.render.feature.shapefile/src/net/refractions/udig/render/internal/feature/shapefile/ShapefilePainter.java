@@ -0,0 +1,288 @@
+/*
+ *    uDig - User Friendly Desktop Internet GIS client
+ *    http://udig.refractions.net
+ *    (C) 2012, Refractions Research Inc.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * (http://www.eclipse.org/legal/epl-v10.html), and the Refractions BSD
+ * License v1.0 (http://udig.refractions.net/files/bsd3-v10.html).
+ */
+package net.refractions.udig.render.internal.feature.shapefile;
+
+import java.awt.BasicStroke;
+import java.awt.Composite;
+import java.awt.Graphics2D;
+import java.awt.Paint;
+import java.awt.Shape;
+import java.awt.Stroke;
+import java.awt.geom.AffineTransform;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import net.refractions.udig.render.internal.feature.shapefile.ShapefileGeometryReader.ScreenGeometry;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.geotools.renderer.style.LineStyle2D;
+import org.geotools.renderer.style.MarkStyle2D;
+import org.geotools.renderer.style.PolygonStyle2D;
+import org.geotools.renderer.style.SLDStyleFactory;
+import org.geotools.renderer.style.Style2D;
+import org.geotools.styling.FeatureTypeStyle;
+import org.geotools.styling.LineSymbolizer;
+import org.geotools.styling.PointSymbolizer;
+import org.geotools.styling.PolygonSymbolizer;
+import org.geotools.styling.Rule;
+import org.geotools.styling.Style;
+import org.geotools.styling.StyleAttributeExtractor;
+import org.geotools.styling.Symbolizer;
+import org.geotools.util.NumberRange;
+import org.opengis.filter.Filter;
+
+import com.vividsolutions.jts.geom.Envelope;
+
+/**
+ * Paints the geometries of a {@link ShapefileGeometryReader} with a style that does not depend on
+ * the attributes of the features: rules without filters and point, line and polygon symbolizers
+ * made of literals. Such a style is turned into Java2D paints and strokes once and every record is
+ * drawn with them, so the .dbf file is never read.
+ * <p>
+ * The feature type styles are painted one after the other over all the records, like the
+ * GeoTools renderers do.
+ * </p>
+ *
+ * @since 1.4.0
+ */
+public class ShapefilePainter {
+
+    /** records painted between two checks of the monitor */
+    private static final int CANCEL_CHECK_INTERVAL = 1024;
+
+    private final List<List<Style2D>> passes = new ArrayList<List<Style2D>>();
+    private boolean supported = true;
+    private double buffer;
+
+    /**
+     * Prepares the painting of the rules of the style that apply at the scale.
+     *
+     * @param style a style accepted by {@link #canPaint(Style)}
+     * @param scaleDenominator the scale the records are painted at
+     */
+    public ShapefilePainter( Style style, double scaleDenominator ) {
+        SLDStyleFactory factory = new SLDStyleFactory();
+        NumberRange<Double> scaleRange = NumberRange.create(scaleDenominator, scaleDenominator);
+        for( FeatureTypeStyle featureTypeStyle : style.featureTypeStyles() ) {
+            List<Rule> active = new ArrayList<Rule>();
+            List<Rule> elseRules = new ArrayList<Rule>();
+            for( Rule rule : featureTypeStyle.rules() ) {
+                if (scaleDenominator < rule.getMinScaleDenominator()
+                        || scaleDenominator >= rule.getMaxScaleDenominator()) {
+                    continue;
+                }
+                if (rule.isElseFilter()) {
+                    elseRules.add(rule);
+                } else {
+                    active.add(rule);
+                }
+            }
+            // every feature matches the rules without filter, so else rules only apply alone
+            if (active.isEmpty()) {
+                active = elseRules;
+            }
+            List<Style2D> pass = new ArrayList<Style2D>();
+            for( Rule rule : active ) {
+                for( Symbolizer symbolizer : rule.symbolizers() ) {
+                    Style2D style2D = factory.createStyle(null, symbolizer, scaleRange);
+                    if (style2D == null) {
+                        continue;
+                    }
+                    if (!isSupported(style2D)) {
+                        supported = false;
+                        return;
+                    }
+                    buffer = Math.max(buffer, getSize(style2D));
+                    pass.add(style2D);
+                }
+            }
+            if (!pass.isEmpty()) {
+                passes.add(pass);
+            }
+        }
+    }
+
+    /**
+     * Returns true if the style can be painted without the attributes of the features: all rules
+     * apply to every feature and the symbolizers only use literals and the default geometry (a
+     * geometry property would be reported as an attribute).
+     */
+    public static boolean canPaint( Style style ) {
+        if (style == null) {
+            return false;
+        }
+        for( FeatureTypeStyle featureTypeStyle : style.featureTypeStyles() ) {
+            if (featureTypeStyle.getTransformation() != null) {
+                return false;
+            }
+            for( Rule rule : featureTypeStyle.rules() ) {
+                Filter filter = rule.getFilter();
+                if (filter != null && filter != Filter.INCLUDE) {
+                    return false;
+                }
+                for( Symbolizer symbolizer : rule.symbolizers() ) {
+                    if (!(symbolizer instanceof PolygonSymbolizer
+                            || symbolizer instanceof LineSymbolizer || symbolizer instanceof PointSymbolizer)) {
+                        return false;
+                    }
+                }
+            }
+        }
+        StyleAttributeExtractor extractor = new StyleAttributeExtractor();
+        style.accept(extractor);
+        return extractor.getAttributeNameSet().isEmpty();
+    }
+
+    /**
+     * @return false if a symbolizer turned into something this painter can not draw, such as an
+     *         external graphic or a graphic fill
+     */
+    public boolean isSupported() {
+        return supported;
+    }
+
+    /**
+     * @return true if there is nothing to paint at this scale
+     */
+    public boolean isEmpty() {
+        return passes.isEmpty();
+    }
+
+    /**
+     * @return the number of pixels strokes and marks extend past the geometries
+     */
+    public int getBuffer() {
+        return (int) Math.ceil(buffer / 2) + 1;
+    }
+
+    /**
+     * Paints the records of the area.
+     *
+     * @param graphics destination
+     * @param reader the shapefile
+     * @param area the area painted in the coordinates of the shapefile
+     * @param worldToScreen transform from the coordinates of the shapefile to the graphics
+     * @param tolerance distance in pixels under which a point is not drawn after the previous one
+     * @param monitor checked for cancellation
+     * @return the number of records painted
+     * @throws IOException if the shapefile can not be read
+     */
+    public int paint( Graphics2D graphics, ShapefileGeometryReader reader, Envelope area,
+            AffineTransform worldToScreen, double tolerance, IProgressMonitor monitor )
+            throws IOException {
+        if (passes.isEmpty()) {
+            return 0;
+        }
+        int[] records = reader.query(area);
+        ScreenGeometry geometry = new ScreenGeometry();
+        Paint paint = graphics.getPaint();
+        Stroke stroke = graphics.getStroke();
+        Composite composite = graphics.getComposite();
+        int painted = 0;
+        try {
+            for( List<Style2D> pass : passes ) {
+                painted = 0;
+                for( int i = 0; i < records.length; i++ ) {
+                    if (i % CANCEL_CHECK_INTERVAL == 0 && monitor.isCanceled()) {
+                        return painted;
+                    }
+                    if (!reader.decode(records[i], area, worldToScreen, tolerance, geometry)) {
+                        continue;
+                    }
+                    for( Style2D style : pass ) {
+                        paint(graphics, geometry, style);
+                    }
+                    painted++;
+                }
+            }
+        } finally {
+            graphics.setPaint(paint);
+            graphics.setStroke(stroke);
+            graphics.setComposite(composite);
+        }
+        return painted;
+    }
+
+    private void paint( Graphics2D graphics, ScreenGeometry geometry, Style2D style ) {
+        if (style instanceof MarkStyle2D) {
+            MarkStyle2D mark = (MarkStyle2D) style;
+            if (geometry.hasPath()) {
+                // a mark on a line or polygon is drawn at the start of the first part
+                float[] coords = new float[6];
+                geometry.path.getPathIterator(null).currentSegment(coords);
+                paintShape(graphics, markShape(mark, coords[0], coords[1]), mark);
+            } else {
+                for( int i = 0; i < geometry.getPointCount(); i++ ) {
+                    paintShape(graphics, markShape(mark, geometry.getX(i), geometry.getY(i)),
+                            mark);
+                }
+            }
+        } else if (geometry.hasPath()) {
+            paintShape(graphics, geometry.path, (LineStyle2D) style);
+        }
+    }
+
+    private static void paintShape( Graphics2D graphics, Shape shape, LineStyle2D style ) {
+        if (style instanceof PolygonStyle2D) {
+            PolygonStyle2D polygon = (PolygonStyle2D) style;
+            if (polygon.getFill() != null) {
+                graphics.setPaint(polygon.getFill());
+                graphics.setComposite(polygon.getFillComposite());
+                graphics.fill(shape);
+            }
+        }
+        if (style.getStroke() != null && style.getContour() != null) {
+            graphics.setPaint(style.getContour());
+            graphics.setStroke(style.getStroke());
+            graphics.setComposite(style.getContourComposite());
+            graphics.draw(shape);
+        }
+    }
+
+    private static Shape markShape( MarkStyle2D mark, float x, float y ) {
+        AffineTransform transform = AffineTransform.getTranslateInstance(x, y);
+        transform.rotate(mark.getRotation());
+        transform.scale(mark.getSize(), -mark.getSize());
+        return transform.createTransformedShape(mark.getShape());
+    }
+
+    private static boolean isSupported( Style2D style ) {
+        if (style instanceof MarkStyle2D) {
+            return ((MarkStyle2D) style).getShape() != null;
+        }
+        if (style instanceof PolygonStyle2D && ((PolygonStyle2D) style).getGraphicFill() != null) {
+            return false;
+        }
+        if (style instanceof LineStyle2D) {
+            LineStyle2D line = (LineStyle2D) style;
+            return line.getGraphicStroke() == null;
+        }
+        return false;
+    }
+
+    /**
+     * @return the width of the stroke or size of the mark in pixels
+     */
+    private static double getSize( Style2D style ) {
+        double size = 0;
+        if (style instanceof MarkStyle2D) {
+            size = ((MarkStyle2D) style).getSize();
+        }
+        if (style instanceof LineStyle2D) {
+            Stroke stroke = ((LineStyle2D) style).getStroke();
+            if (stroke instanceof BasicStroke) {
+                size = Math.max(size, ((BasicStroke) stroke).getLineWidth());
+            }
+        }
+        return size;
+    }
+}
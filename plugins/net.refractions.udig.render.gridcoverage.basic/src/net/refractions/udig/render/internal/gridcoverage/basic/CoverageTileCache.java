@@ -0,0 +1,196 @@
+/*
+ *    uDig - User Friendly Desktop Internet GIS client
+ *    http://udig.refractions.net
+ *    (C) 2012, Refractions Research Inc.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * (http://www.eclipse.org/legal/epl-v10.html), and the Refractions BSD
+ * License v1.0 (http://udig.refractions.net/files/bsd3-v10.html).
+ */
+package net.refractions.udig.render.internal.gridcoverage.basic;
+
+import java.awt.image.BufferedImage;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import net.refractions.udig.catalog.ID;
+
+/**
+ * Decoded raster tiles shared by all {@link GridCoverageReaderRenderer}s, kept until the memory
+ * they use goes over a limit; the least recently used tiles are thrown away first.
+ * <p>
+ * A tile is a square of {@link #TILE_SIZE} pixels on a grid that is aligned on the origin of the
+ * map CRS. Each overview level has its own grid; the resolution of level <code>n</code> is the
+ * native resolution of the raster times 2<sup>n</sup>.
+ * </p>
+ * <p>
+ * Tiles are keyed on the modification time of the raster so a file written since it was read is
+ * read again; {@link RendererPlugin} also throws away the tiles of a resource the catalog reports
+ * as changed or removed.
+ * </p>
+ *
+ * @since 1.4.0
+ */
+public final class CoverageTileCache {
+
+    /** width and height of a tile in pixels */
+    public static final int TILE_SIZE = 256;
+
+    /** stored for tiles that have no data so they are not read again */
+    public static final BufferedImage EMPTY = new BufferedImage(1, 1, BufferedImage.TYPE_INT_ARGB);
+
+    private static final long MAX_BYTES = Math.min(128L * 1024 * 1024, Runtime.getRuntime()
+            .maxMemory() / 8);
+
+    private static final CoverageTileCache INSTANCE = new CoverageTileCache(MAX_BYTES);
+
+    /**
+     * Identifies a tile: the resource, its version and how it is drawn, the overview level and
+     * the position of the tile in the grid of the level.
+     */
+    public static final class Key {
+        private final Object resource;
+        private final long modified;
+        private final Object style;
+        private final int level;
+        private final long column;
+        private final long row;
+
+        /**
+         * @param resource identifies the raster, usually its {@link ID}
+         * @param modified modification time of the raster, 0 if not known
+         * @param style the CRS and anything else that changes how the tile looks
+         * @param level overview level
+         * @param column column of the tile in the grid of the level
+         * @param row row of the tile in the grid of the level
+         */
+        public Key( Object resource, long modified, Object style, int level, long column,
+                long row ) {
+            this.resource = resource;
+            this.modified = modified;
+            this.style = style;
+            this.level = level;
+            this.column = column;
+            this.row = row;
+        }
+
+        @Override
+        public int hashCode() {
+            int result = resource.hashCode();
+            result = 31 * result + (int) (modified ^ (modified >>> 32));
+            result = 31 * result + (style == null ? 0 : style.hashCode());
+            result = 31 * result + level;
+            result = 31 * result + (int) (column ^ (column >>> 32));
+            result = 31 * result + (int) (row ^ (row >>> 32));
+            return result;
+        }
+
+        @Override
+        public boolean equals( Object obj ) {
+            if (this == obj)
+                return true;
+            if (!(obj instanceof Key))
+                return false;
+            Key other = (Key) obj;
+            return level == other.level && modified == other.modified && column == other.column && row == other.row
+                    && resource.equals(other.resource)
+                    && (style == null ? other.style == null : style.equals(other.style));
+        }
+    }
+
+    private final long maxBytes;
+    private long bytes;
+
+    private final LinkedHashMap<Key, BufferedImage> tiles = new LinkedHashMap<Key, BufferedImage>(
+            256, 0.75f, true);
+
+    /**
+     * @param maxBytes memory the tiles may use before the least recently used are thrown away
+     */
+    public CoverageTileCache( long maxBytes ) {
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * @return the cache shared by all renderers
+     */
+    public static CoverageTileCache getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * @param key
+     * @return the tile, {@link #EMPTY} if the tile has no data or null if it is not in the cache
+     */
+    public synchronized BufferedImage get( Key key ) {
+        return tiles.get(key);
+    }
+
+    /**
+     * Adds the tile, throwing away the least recently used tiles if the cache is full.
+     *
+     * @param key
+     * @param tile the tile or {@link #EMPTY}
+     */
+    public synchronized void put( Key key, BufferedImage tile ) {
+        BufferedImage old = tiles.put(key, tile);
+        if (old != null) {
+            bytes -= sizeOf(old);
+        }
+        bytes += sizeOf(tile);
+        Iterator<Map.Entry<Key, BufferedImage>> iterator = tiles.entrySet().iterator();
+        while( bytes > maxBytes && iterator.hasNext() ) {
+            BufferedImage eldest = iterator.next().getValue();
+            iterator.remove();
+            bytes -= sizeOf(eldest);
+        }
+    }
+
+    /**
+     * Throws away all the tiles of a resource, whatever their version; if the id is the id of a
+     * service the tiles of all its resources are thrown away.
+     *
+     * @param id as passed to {@link Key#Key(Object, long, Object, int, long, long)} or the id of
+     *        the service of the resources
+     * @return the number of tiles thrown away
+     */
+    public synchronized int clear( ID id ) {
+        int removed = 0;
+        Iterator<Map.Entry<Key, BufferedImage>> iterator = tiles.entrySet().iterator();
+        while( iterator.hasNext() ) {
+            Map.Entry<Key, BufferedImage> entry = iterator.next();
+            Object resource = entry.getKey().resource;
+            if (resource.equals(id)
+                    || (!id.isChild() && resource instanceof ID && id.equals((ID) resource, true))) {
+                bytes -= sizeOf(entry.getValue());
+                iterator.remove();
+                removed++;
+            }
+        }
+        return removed;
+    }
+
+    /**
+     * @return the number of tiles in the cache
+     */
+    public synchronized int size() {
+        return tiles.size();
+    }
+
+    /**
+     * @return the memory used by the tiles in bytes
+     */
+    public synchronized long getBytes() {
+        return bytes;
+    }
+
+    private static long sizeOf( BufferedImage image ) {
+        if (image == EMPTY) {
+            // just the entry
+            return 64;
+        }
+        return (long) image.getWidth() * image.getHeight() * 4;
+    }
+}
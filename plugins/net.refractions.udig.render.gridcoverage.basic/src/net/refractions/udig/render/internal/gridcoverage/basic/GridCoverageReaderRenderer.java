@@ -12,29 +12,36 @@ package net.refractions.udig.render.internal.gridcoverage.basic;
 import java.awt.AlphaComposite;
 import java.awt.Color;
 import java.awt.Composite;
+import java.awt.Dimension;
 import java.awt.Graphics2D;
-import java.awt.Point;
 import java.awt.Rectangle;
 import java.awt.RenderingHints;
 import java.awt.geom.AffineTransform;
 import java.awt.geom.NoninvertibleTransformException;
+import java.awt.image.BufferedImage;
 import java.awt.image.RenderedImage;
+import java.io.File;
 import java.io.IOException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 
 import javax.media.jai.InterpolationNearest;
 import javax.media.jai.JAI;
 import javax.media.jai.TileCache;
 
+import net.refractions.udig.catalog.ID;
 import net.refractions.udig.catalog.IGeoResource;
+import net.refractions.udig.catalog.rasterings.RasterPyramid;
 import net.refractions.udig.project.ILayer;
 import net.refractions.udig.project.internal.ProjectPlugin;
 import net.refractions.udig.project.internal.StyleBlackboard;
 import net.refractions.udig.project.internal.render.impl.RendererImpl;
 import net.refractions.udig.project.render.IRenderContext;
 import net.refractions.udig.project.render.RenderException;
-import net.refractions.udig.project.render.displayAdapter.IMapDisplay;
 import net.refractions.udig.render.gridcoverage.basic.internal.Messages;
 import net.refractions.udig.ui.graphics.SLDs;
 
@@ -46,10 +53,11 @@ import org.geotools.coverage.grid.GridEnvelope2D;
 import org.geotools.coverage.grid.GridGeometry2D;
 import org.geotools.coverage.grid.io.AbstractGridCoverage2DReader;
 import org.geotools.coverage.grid.io.AbstractGridFormat;
+import org.geotools.coverage.grid.io.OverviewPolicy;
+import org.geotools.data.DataUtilities;
 import org.geotools.factory.CommonFactoryFinder;
 import org.geotools.factory.Hints;
-import org.geotools.geometry.DirectPosition2D;
-import org.geotools.geometry.Envelope2D;
+import org.geotools.geometry.GeneralEnvelope;
 import org.geotools.geometry.jts.ReferencedEnvelope;
 import org.geotools.image.ImageWorker;
 import org.geotools.referencing.CRS;
@@ -73,7 +81,6 @@ import org.opengis.referencing.crs.CoordinateReferenceSystem;
 import org.opengis.referencing.operation.MathTransform;
 import org.opengis.referencing.operation.TransformException;
 
-import com.vividsolutions.jts.geom.Coordinate;
 import com.vividsolutions.jts.geom.Envelope;
 
 /**
@@ -90,6 +97,10 @@ import com.vividsolutions.jts.geom.Envelope;
  * </ul>
  * Now that raster symbolizer support is available in GeoTools we may be able to do better
  * and handle things like color maps?
+ * <p>
+ * The raster is read in tiles of a grid that matches an overview level of the raster, the finest
+ * level that is not finer than the screen. Tiles are kept in a {@link CoverageTileCache} shared by
+ * all layers so that after a pan only the newly exposed tiles are read.
  * 
  * @author Jesse Eichar
  * @author Andrea Aime
@@ -97,6 +108,14 @@ import com.vividsolutions.jts.geom.Envelope;
  * @version 1.2.0
  */
 public class GridCoverageReaderRenderer extends RendererImpl {
+
+    /** finest overview level, used when zoomed in past the native resolution */
+    private static final int MIN_LEVEL = -8;
+
+    private static final int MAX_LEVEL = 30;
+
+    /** largest number of tiles across or down that are read at once */
+    static final int MAX_WINDOW = 8;
     
     /** Renderer using a simple JAI chain */
     public GridCoverageReaderRenderer(){
@@ -134,20 +153,20 @@ public class GridCoverageReaderRenderer extends RendererImpl {
             if( envelope == null || envelope.isNull()){
                 envelope = context.getImageBounds();
             }
-            Point upperLeft = currentContext.worldToPixel( new Coordinate( envelope.getMinX(), envelope.getMinY()) );
-            Point bottomRight = currentContext.worldToPixel( new Coordinate( envelope.getMaxX(), envelope.getMaxY()) );
-            Rectangle screenSize = new Rectangle( upperLeft );
-            screenSize.add( bottomRight );
-        	IMapDisplay mapDisplay = currentContext.getMapDisplay();
             
-        	 
              AbstractGridCoverage2DReader reader = (AbstractGridCoverage2DReader) geoResource.resolve( AbstractGridCoverage2DReader.class, monitor);
              if( reader == null ){
                  return; // unable to connect!
              }
+             ReferencedEnvelope nativeBounds = getNativeBounds(reader);
              CoordinateReferenceSystem destinationCRS = currentContext.getCRS();
+             if( destinationCRS == null || CRS.getHorizontalCRS(destinationCRS) == null ){
+                 destinationCRS = nativeBounds.getCoordinateReferenceSystem();
+             }
              ReferencedEnvelope bounds = (ReferencedEnvelope) currentContext.getImageBounds();
              bounds=bounds.transform(destinationCRS, true);
+             envelope = transform(envelope, destinationCRS);
+             ReferencedEnvelope coverageBounds = transform(nativeBounds, destinationCRS);
              
              ParameterValueGroup group = geoResource.resolve( ParameterValueGroup.class, monitor);
              if(group==null){
@@ -164,105 +183,109 @@ public class GridCoverageReaderRenderer extends RendererImpl {
                      // do nothing
                  }
              }
-             ParameterValue<?> readGridGeometry2DParam = group.parameter(AbstractGridFormat.READ_GRIDGEOMETRY2D.getName().toString());
-
-//            GridEnvelope range = new GridEnvelope2D(0, 0, mapDisplay.getWidth(), mapDisplay.getHeight());
-//            MathTransform displayToLayer = currentContext.worldToScreenMathTransform().inverse();
-//            ReferencingFactoryFinder.getMathTransformFactory(null).createConcatenatedTransform(displayToLayer,
-//                    currentContext.getLayer().mapToLayerTransform());
-//            GridGeometry2D geom = new GridGeometry2D(range, displayToLayer, destinationCRS);
-//            readGridGeometry2DParam.setValue(geom);
-
-            GridEnvelope2D gridEnvelope = new GridEnvelope2D(0, 0, mapDisplay.getWidth(), mapDisplay.getHeight());
-            org.opengis.geometry.Envelope env;
-            double west= bounds.getMinX();
-            double east= bounds.getMaxX();
-            double south= bounds.getMinY();
-            double north= bounds.getMaxY();
-            if (destinationCRS != null) {
-                env = new ReferencedEnvelope(west, east, south, north, destinationCRS);
-            } else {
-                DirectPosition2D minDp = new DirectPosition2D(west, south);
-                DirectPosition2D maxDp = new DirectPosition2D(east, north);
-                env = new Envelope2D(minDp, maxDp);
+             try{
+                 // read from the overview closest to (but not coarser than) the tile resolution
+                 group.parameter(AbstractGridFormat.OVERVIEW_POLICY.getName().toString()).setValue(OverviewPolicy.QUALITY);
+             }catch (ParameterNotFoundException e) {
+                 // the format has no overviews
+             }
+
+            RasterSymbolizer rasterSymbolizer = null;
+            try {
+                Style style = grabStyle();
+                Rule rule = SLDs.getRasterSymbolizerRule(style);
+                
+                final double currentScale = currentContext.getViewportModel().getScaleDenominator();                
+                double minScale = rule.getMinScaleDenominator();
+                double maxScale = rule.getMaxScaleDenominator();
+                if (currentScale < minScale || maxScale < currentScale) {
+                    return;
+                }
+                rasterSymbolizer = SLD.rasterSymbolizer(style);
+            } catch(Exception e) {
+                // no usable style, draw with the default symbolizer
+            }
+            if (rasterSymbolizer == null) {
+                rasterSymbolizer = CommonFactoryFinder.getStyleFactory(null).createRasterSymbolizer();
             }
-            readGridGeometry2DParam.setValue(new GridGeometry2D(gridEnvelope, env));
+            // check if there is a color to mask
+            String maskColor = getContext().getLayer().getStyleBlackboard().getString("raster-color-mask"); //$NON-NLS-1$
 
              currentContext.setStatus(ILayer.WORKING);
              setState( STARTING );
              
-             ParameterValue[] parameterValues = group.values().toArray(new ParameterValue[0]);
-            GridCoverage2D coverage = (GridCoverage2D) reader.read(parameterValues);
-             if(coverage!=null){	            
-	            //setting rendering hints
-                 //
-	            RenderingHints hints = new RenderingHints(new HashMap<RenderingHints.Key,Object>());
-	            hints.add(new RenderingHints(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_SPEED));
-	            hints.add(new RenderingHints(RenderingHints.KEY_DITHERING, RenderingHints.VALUE_DITHER_DISABLE));
-	            hints.add(new RenderingHints(RenderingHints.KEY_ALPHA_INTERPOLATION, RenderingHints.VALUE_ALPHA_INTERPOLATION_SPEED));
-	            hints.add(new RenderingHints(RenderingHints.KEY_COLOR_RENDERING, RenderingHints.VALUE_COLOR_RENDER_SPEED));
-	            hints.add(new RenderingHints(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_NEAREST_NEIGHBOR));
-	            hints.add(new RenderingHints(RenderingHints.KEY_STROKE_CONTROL, RenderingHints.VALUE_STROKE_PURE));
-	            hints.add(new RenderingHints(RenderingHints.KEY_FRACTIONALMETRICS, RenderingHints.VALUE_FRACTIONALMETRICS_OFF));
-	            hints.add(new RenderingHints(JAI.KEY_INTERPOLATION,new InterpolationNearest()));
-	            graphics.addRenderingHints(hints);
-	            
-	            // JG: Store title cache on the layer blackboard so it can last between runs.
-	            //     Performance question: may do better to have a single larger tile cache on the map blackboard?
-	            //
-	            final TileCache tempCache=currentContext.getTileCache();
-	            hints.add(new RenderingHints(JAI.KEY_TILE_CACHE,tempCache));
-	            //hints.add( new Hints( Hints.RESAMPLE_TOLERANCE, 0.000000000001 )); 
-                
-	            if( CRS.getHorizontalCRS(destinationCRS) == null ){
-	                destinationCRS = coverage.getCoordinateReferenceSystem2D();
-	            }
-	            //
-	            AffineTransform worldToScreen = null; // we are leting the GridCoverageRenderer sort that out
-	            
-	            //draw
-	            try {
-	                Style style = grabStyle();
-	                Rule rule = SLDs.getRasterSymbolizerRule(style);
-	                
-	                final double currentScale = currentContext.getViewportModel().getScaleDenominator();                
-	                double minScale = rule.getMinScaleDenominator();
-	                double maxScale = rule.getMaxScaleDenominator();
-	                if (minScale <= currentScale && currentScale <= maxScale ) {
-	                    final GridCoverageRenderer paint = new GridCoverageRenderer( destinationCRS, envelope, screenSize,worldToScreen,hints );
-	                    final RasterSymbolizer rasterSymbolizer = SLD.rasterSymbolizer(style);
-
-	                    // check if there is a color to mask
-	                    Object maskColor = getContext().getLayer().getStyleBlackboard().getString("raster-color-mask"); //$NON-NLS-1$	                    
-                        if (maskColor instanceof String) {
-                            // create a color mask
-                            String[] colorSplit = ((String) maskColor).split(":"); //$NON-NLS-1$
-                            Color color = new Color(Integer.parseInt(colorSplit[0]), Integer.parseInt(colorSplit[1]),
-                                    Integer.parseInt(colorSplit[2]));
-                            RenderedImage image = coverage.getRenderedImage();
-                            ImageWorker iw = new ImageWorker(image);
-                            iw.makeColorTransparent(color);
-                            image = iw.getRenderedImage();
-                            GridCoverageFactory gcF = CoverageFactoryFinder.getGridCoverageFactory(null);
-                            coverage = gcF.create(coverage.getName(), image, coverage.getCoordinateReferenceSystem(), coverage
-                                    .getGridGeometry().getGridToCRS(), coverage.getSampleDimensions(), null, null);
-                        }
-	                
-	                    //setState( RENDERING );
-	                    paint.paint( graphics, coverage, rasterSymbolizer );                        
-	                    setState( DONE );
-	                }
-	                
-	            } catch(Exception e) {
-	                final GridCoverageRenderer paint = new GridCoverageRenderer( destinationCRS, envelope, screenSize,worldToScreen,hints );
-	                RasterSymbolizer rasterSymbolizer = CommonFactoryFinder.getStyleFactory(null).createRasterSymbolizer();
-	                
-	                //setState( RENDERING );
-	                paint.paint( graphics, coverage, rasterSymbolizer );
-                    setState( DONE );
-	            }
-	            //tempCache.flush();
-			}
+            RenderingHints hints = createHints(currentContext);
+            graphics.addRenderingHints(hints);
+
+            // work out the overview level and the tiles that cover the area being drawn
+            Dimension imageSize = currentContext.getImageSize();
+            double screenResolution = bounds.getWidth() / imageSize.width;
+            double nativeResolution = getNativeResolution(reader, coverageBounds);
+            int level = getLevel(screenResolution, nativeResolution);
+            double tileSpan = CoverageTileCache.TILE_SIZE * getLevelResolution(level, screenResolution, nativeResolution);
+            
+            Envelope area = envelope.intersection(coverageBounds);
+            if (area.isNull() || area.getWidth() == 0 || area.getHeight() == 0) {
+                setState( DONE );
+                return;
+            }
+            long minColumn = (long) Math.floor(area.getMinX() / tileSpan);
+            long minRow = (long) Math.floor(area.getMinY() / tileSpan);
+            int columns = (int) Math.max(1, Math.ceil(area.getMaxX() / tileSpan) - minColumn);
+            int rows = (int) Math.max(1, Math.ceil(area.getMaxY() / tileSpan) - minRow);
+            
+            // tiles are shared between layers of the same resource drawn the same way
+            ID resourceKey = geoResource.getID();
+            long modified = getModified(reader, resourceKey);
+            // overviews built in the background are used once they are complete
+            RasterPyramid pyramid = geoResource.resolve(RasterPyramid.class, monitor);
+            Object styleKey = Arrays.asList(destinationCRS, rasterSymbolizer, maskColor);
+            CoverageTileCache cache = CoverageTileCache.getInstance();
+            BufferedImage[][] tiles = new BufferedImage[rows][columns];
+            boolean[][] missing = new boolean[rows][columns];
+            for( int row = 0; row < rows; row++ ) {
+                for( int column = 0; column < columns; column++ ) {
+                    tiles[row][column] = cache.get(new CoverageTileCache.Key(resourceKey, modified, styleKey, level, minColumn + column, minRow + row));
+                    missing[row][column] = tiles[row][column] == null;
+                }
+            }
+
+            // read only the tiles that are not in the cache, for instance the strips exposed by a pan
+            for( Rectangle window : planWindows(missing) ) {
+                if (monitor.isCanceled()) {
+                    return;
+                }
+                ReferencedEnvelope windowBounds = new ReferencedEnvelope(
+                        (minColumn + window.x) * tileSpan, (minColumn + window.x + window.width) * tileSpan,
+                        (minRow + window.y) * tileSpan, (minRow + window.y + window.height) * tileSpan, destinationCRS);
+                BufferedImage image = readWindow(reader, pyramid, group, windowBounds, window.width, window.height, hints, rasterSymbolizer, maskColor);
+                for( int row = window.y; row < window.y + window.height; row++ ) {
+                    for( int column = window.x; column < window.x + window.width; column++ ) {
+                        // the top of the image is the last row
+                        BufferedImage tile = cut(image, (column - window.x) * CoverageTileCache.TILE_SIZE,
+                                (window.y + window.height - 1 - row) * CoverageTileCache.TILE_SIZE);
+                        tiles[row][column] = tile;
+                        cache.put(new CoverageTileCache.Key(resourceKey, modified, styleKey, level, minColumn + column, minRow + row), tile);
+                    }
+                }
+            }
+
+            //draw
+            AffineTransform worldToScreen = RendererUtilities.worldToScreenTransform(bounds, new Rectangle(imageSize));
+            double scale = tileSpan / CoverageTileCache.TILE_SIZE;
+            for( int row = 0; row < rows; row++ ) {
+                for( int column = 0; column < columns; column++ ) {
+                    BufferedImage tile = tiles[row][column];
+                    if (tile == null || tile == CoverageTileCache.EMPTY) {
+                        continue;
+                    }
+                    AffineTransform tileToScreen = new AffineTransform(worldToScreen);
+                    tileToScreen.translate((minColumn + column) * tileSpan, (minRow + row + 1) * tileSpan);
+                    tileToScreen.scale(scale, -scale);
+                    graphics.drawImage(tile, tileToScreen, null);
+                }
+            }
+            setState( DONE );
         } catch (Exception e1) {
             throw new RenderException(e1);
         }
@@ -272,6 +295,210 @@ public class GridCoverageReaderRenderer extends RendererImpl {
         }
     }
 
+    private static RenderingHints createHints( IRenderContext currentContext ) {
+        //setting rendering hints
+        //
+        RenderingHints hints = new RenderingHints(new HashMap<RenderingHints.Key,Object>());
+        hints.add(new RenderingHints(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_SPEED));
+        hints.add(new RenderingHints(RenderingHints.KEY_DITHERING, RenderingHints.VALUE_DITHER_DISABLE));
+        hints.add(new RenderingHints(RenderingHints.KEY_ALPHA_INTERPOLATION, RenderingHints.VALUE_ALPHA_INTERPOLATION_SPEED));
+        hints.add(new RenderingHints(RenderingHints.KEY_COLOR_RENDERING, RenderingHints.VALUE_COLOR_RENDER_SPEED));
+        hints.add(new RenderingHints(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_NEAREST_NEIGHBOR));
+        hints.add(new RenderingHints(RenderingHints.KEY_STROKE_CONTROL, RenderingHints.VALUE_STROKE_PURE));
+        hints.add(new RenderingHints(RenderingHints.KEY_FRACTIONALMETRICS, RenderingHints.VALUE_FRACTIONALMETRICS_OFF));
+        hints.add(new RenderingHints(JAI.KEY_INTERPOLATION,new InterpolationNearest()));
+        
+        // JG: Store title cache on the layer blackboard so it can last between runs.
+        //     Performance question: may do better to have a single larger tile cache on the map blackboard?
+        //
+        final TileCache tempCache=currentContext.getTileCache();
+        hints.add(new RenderingHints(JAI.KEY_TILE_CACHE,tempCache));
+        return hints;
+    }
+
+    private static ReferencedEnvelope getNativeBounds( AbstractGridCoverage2DReader reader ) {
+        GeneralEnvelope original = reader.getOriginalEnvelope();
+        return new ReferencedEnvelope(original.getMinimum(0), original.getMaximum(0), original
+                .getMinimum(1), original.getMaximum(1), original.getCoordinateReferenceSystem());
+    }
+
+    private static ReferencedEnvelope transform( ReferencedEnvelope envelope,
+            CoordinateReferenceSystem crs ) throws TransformException, FactoryException {
+        CoordinateReferenceSystem envelopeCRS = envelope.getCoordinateReferenceSystem();
+        if (envelopeCRS == null || crs == null || CRS.equalsIgnoreMetadata(envelopeCRS, crs)) {
+            return new ReferencedEnvelope(envelope, crs);
+        }
+        return envelope.transform(crs, true);
+    }
+
+    /**
+     * The size of a pixel of the full resolution raster in the units of the map.
+     */
+    /**
+     * @return the modification time of the file read, 0 if the raster is not a file
+     */
+    private static long getModified( AbstractGridCoverage2DReader reader, ID id ) {
+        Object source = reader.getSource();
+        File file = null;
+        if (source instanceof File) {
+            file = (File) source;
+        } else if (source instanceof URL) {
+            file = DataUtilities.urlToFile((URL) source);
+        } else if (id != null && id.isFile()) {
+            file = id.toFile();
+        }
+        return file == null ? 0 : file.lastModified();
+    }
+
+    private static double getNativeResolution( AbstractGridCoverage2DReader reader,
+            ReferencedEnvelope coverageBounds ) {
+        GridEnvelope range = reader.getOriginalGridRange();
+        return Math.min(coverageBounds.getWidth() / range.getSpan(0), coverageBounds.getHeight()
+                / range.getSpan(1));
+    }
+
+    /**
+     * The finest overview level that is no finer than needed for the screen; level 0 is the
+     * native resolution and each level up halves the resolution.
+     */
+    static int getLevel( double screenResolution, double nativeResolution ) {
+        if (!(nativeResolution > 0) || Double.isInfinite(nativeResolution)) {
+            return 0;
+        }
+        double level = Math.floor(Math.log(screenResolution / nativeResolution) / Math.log(2));
+        return (int) Math.max(MIN_LEVEL, Math.min(MAX_LEVEL, level));
+    }
+
+    private static double getLevelResolution( int level, double screenResolution,
+            double nativeResolution ) {
+        if (!(nativeResolution > 0) || Double.isInfinite(nativeResolution)) {
+            return screenResolution;
+        }
+        return nativeResolution * Math.pow(2, level);
+    }
+
+    /**
+     * Groups the missing tiles into rectangles of at most {@link #MAX_WINDOW} tiles a side that
+     * are each read at once.
+     *
+     * @param missing missing tiles by row and column
+     * @return the windows to read in tiles
+     */
+    static List<Rectangle> planWindows( boolean[][] missing ) {
+        List<Rectangle> windows = new ArrayList<Rectangle>();
+        int rows = missing.length;
+        boolean[][] todo = new boolean[rows][];
+        for( int row = 0; row < rows; row++ ) {
+            todo[row] = missing[row].clone();
+        }
+        for( int row = 0; row < rows; row++ ) {
+            int columns = todo[row].length;
+            for( int column = 0; column < columns; column++ ) {
+                if (!todo[row][column]) {
+                    continue;
+                }
+                int width = 1;
+                while( column + width < columns && width < MAX_WINDOW && todo[row][column + width] ) {
+                    width++;
+                }
+                int height = 1;
+                while( row + height < rows && height < MAX_WINDOW
+                        && allTrue(todo[row + height], column, width) ) {
+                    height++;
+                }
+                for( int r = row; r < row + height; r++ ) {
+                    Arrays.fill(todo[r], column, column + width, false);
+                }
+                windows.add(new Rectangle(column, row, width, height));
+            }
+        }
+        return windows;
+    }
+
+    private static boolean allTrue( boolean[] values, int from, int length ) {
+        for( int i = from; i < from + length; i++ ) {
+            if (!values[i])
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Reads and draws the part of the raster covering a window of tiles, from the overviews of
+     * the raster when they have the resolution needed.
+     */
+    private BufferedImage readWindow( AbstractGridCoverage2DReader reader, RasterPyramid pyramid,
+            ParameterValueGroup group, ReferencedEnvelope windowBounds, int columns, int rows,
+            RenderingHints hints, RasterSymbolizer rasterSymbolizer, String maskColor )
+            throws Exception {
+        int width = columns * CoverageTileCache.TILE_SIZE;
+        int height = rows * CoverageTileCache.TILE_SIZE;
+        ParameterValue<?> readGridGeometry2DParam = group.parameter(AbstractGridFormat.READ_GRIDGEOMETRY2D.getName().toString());
+        readGridGeometry2DParam.setValue(new GridGeometry2D(new GridEnvelope2D(0, 0, width, height), (org.opengis.geometry.Envelope) windowBounds));
+
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        ParameterValue[] parameterValues = group.values().toArray(new ParameterValue[0]);
+        GridCoverage2D coverage = null;
+        if (pyramid != null) {
+            coverage = pyramid.read(windowBounds, width, height);
+        }
+        if (coverage == null) {
+            coverage = (GridCoverage2D) reader.read(parameterValues);
+        }
+        if (coverage == null) {
+            return image;
+        }
+        try {
+            if (maskColor != null) {
+                // create a color mask
+                String[] colorSplit = maskColor.split(":"); //$NON-NLS-1$
+                Color color = new Color(Integer.parseInt(colorSplit[0]), Integer.parseInt(colorSplit[1]),
+                        Integer.parseInt(colorSplit[2]));
+                RenderedImage masked = coverage.getRenderedImage();
+                ImageWorker iw = new ImageWorker(masked);
+                iw.makeColorTransparent(color);
+                masked = iw.getRenderedImage();
+                GridCoverageFactory gcF = CoverageFactoryFinder.getGridCoverageFactory(null);
+                coverage = gcF.create(coverage.getName(), masked, coverage.getCoordinateReferenceSystem(), coverage
+                        .getGridGeometry().getGridToCRS(), coverage.getSampleDimensions(), null, null);
+            }
+            Graphics2D graphics = image.createGraphics();
+            try {
+                graphics.addRenderingHints(hints);
+                GridCoverageRenderer paint = new GridCoverageRenderer(windowBounds.getCoordinateReferenceSystem(),
+                        windowBounds, new Rectangle(width, height), null, hints);
+                paint.paint(graphics, coverage, rasterSymbolizer);
+            } finally {
+                graphics.dispose();
+            }
+        } finally {
+            coverage.dispose(true);
+        }
+        return image;
+    }
+
+    /**
+     * Copies a tile out of a window, returns {@link CoverageTileCache#EMPTY} if the tile is
+     * transparent.
+     */
+    private static BufferedImage cut( BufferedImage image, int x, int y ) {
+        int size = CoverageTileCache.TILE_SIZE;
+        int[] pixels = image.getRGB(x, y, size, size, null, 0, size);
+        boolean empty = true;
+        for( int pixel : pixels ) {
+            if ((pixel >>> 24) != 0) {
+                empty = false;
+                break;
+            }
+        }
+        if (empty) {
+            return CoverageTileCache.EMPTY;
+        }
+        BufferedImage tile = new BufferedImage(size, size, BufferedImage.TYPE_INT_ARGB);
+        tile.setRGB(0, 0, size, size, pixels, 0, size);
+        return tile;
+    }
+
     /**
      *  grab the style from the blackboard, otherwise return null
      */
@@ -12,6 +12,15 @@
 package net.refractions.udig.render.internal.gridcoverage.basic;
 
 
+import java.io.IOException;
+
+import net.refractions.udig.catalog.CatalogPlugin;
+import net.refractions.udig.catalog.IResolve;
+import net.refractions.udig.catalog.IResolveChangeEvent;
+import net.refractions.udig.catalog.IResolveChangeListener;
+import net.refractions.udig.catalog.IResolveDelta;
+import net.refractions.udig.catalog.IResolveDeltaVisitor;
+
 import org.eclipse.core.runtime.IStatus;
 import org.eclipse.core.runtime.Plugin;
 import org.eclipse.core.runtime.Status;
@@ -56,10 +65,39 @@ public class RendererPlugin extends Plugin {
         getDefault().getLog().log(new Status(IStatus.INFO, ID, 0, message, e));
     }
     
+    /**
+     * Throws away the cached tiles of resources that are changed or removed from the catalog.
+     */
+    private final IResolveChangeListener tileCacheListener = new IResolveChangeListener(){
+        public void changed( IResolveChangeEvent event ) {
+            IResolveDelta delta = event.getDelta();
+            if (delta == null) {
+                return;
+            }
+            try {
+                delta.accept(new IResolveDeltaVisitor(){
+                    public boolean visit( IResolveDelta child ) {
+                        IResolve resolve = child.getResolve();
+                        if (resolve != null && child.getKind() != IResolveDelta.Kind.ADDED
+                                && child.getKind() != IResolveDelta.Kind.NO_CHANGE
+                                && resolve.getID() != null) {
+                            CoverageTileCache.getInstance().clear(resolve.getID());
+                        }
+                        return true;
+                    }
+                });
+            } catch (IOException e) {
+                log(e);
+            }
+        }
+    };
+
 	public void start(BundleContext context) throws Exception {
 		super.start(context);
+		CatalogPlugin.getDefault().getLocalCatalog().addCatalogListener(tileCacheListener);
 	}
 	public void stop(BundleContext context) throws Exception {
+		CatalogPlugin.getDefault().getLocalCatalog().removeCatalogListener(tileCacheListener);
 		super.stop(context);
 	}
 	
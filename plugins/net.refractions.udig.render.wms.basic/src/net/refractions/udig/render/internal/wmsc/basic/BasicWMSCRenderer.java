@@ -28,6 +28,7 @@ import net.refractions.udig.catalog.internal.PreferenceConstants;
 import net.refractions.udig.catalog.internal.wms.WmsPlugin;
 import net.refractions.udig.catalog.wmsc.server.Tile;
 import net.refractions.udig.catalog.wmsc.server.TileListener;
+import net.refractions.udig.catalog.wmsc.server.TileImageReadWriter;
 import net.refractions.udig.catalog.wmsc.server.TileRange;
 import net.refractions.udig.catalog.wmsc.server.TileRangeInMemory;
 import net.refractions.udig.catalog.wmsc.server.TileRangeOnDisk;
@@ -84,7 +85,7 @@ public class BasicWMSCRenderer extends RendererImpl implements IRenderer {
      * Static thread pools that will be reused for each renderer that gets created
      */
     private static TileWorkerQueue requestTileWorkQueue = new TileWorkerQueue();
-    private static TileWorkerQueue writeTileWorkQueue = new TileWorkerQueue();
+    private static TileWorkerQueue writeTileWorkQueue = TileWorkerQueue.createWriteQueue();
 
     /**
      * Use a blocking queue to keep track of and notice when tiles are ready to draw
@@ -151,9 +152,13 @@ public class BasicWMSCRenderer extends RendererImpl implements IRenderer {
             TileRange range = null;
             String value = CatalogPlugin.getDefault().getPreferenceStore()
                     .getString(PreferenceConstants.P_WMSCTILE_CACHING);
-            if (value.equals(WMSCTileCaching.ONDISK.toString())) {
+            if (WMSCTileCaching.isOnDisk(value)) {
+                String dir = CatalogPlugin.getDefault().getPreferenceStore()
+                        .getString(PreferenceConstants.P_WMSCTILE_DISKDIR);
+                boolean singleFile = value.equals(WMSCTileCaching.ONDISK_SINGLEFILE.toString());
                 range = new TileRangeOnDisk(server, tileset, bnds, tilesInRange,
-                        requestTileWorkQueue, writeTileWorkQueue);
+                        requestTileWorkQueue, writeTileWorkQueue,
+                        new TileImageReadWriter(server, dir, singleFile));
             } else {
                 range = new TileRangeInMemory(server, tileset, bnds, tilesInRange,
                         requestTileWorkQueue);
@@ -22,7 +22,22 @@ public enum WMSCTileCaching {
      * On disk, all tiles are stored on disk in the set location based on the
      * WMS-C server they were fetched from, the layer name, and the resolution
      */
-    ONDISK
+    ONDISK,
+    /**
+     * On disk, all tiles of a tileset are stored in a single indexed file in the set
+     * location, rather than a file per tile
+     */
+    ONDISK_SINGLEFILE;
+    
+    /**
+     * Checks if the caching preference value stores tiles on disk
+     * 
+     * @param value preference value
+     * @return true for ONDISK and ONDISK_SINGLEFILE
+     */
+    public static boolean isOnDisk( String value ) {
+        return ONDISK.toString().equals(value) || ONDISK_SINGLEFILE.toString().equals(value);
+    }
     
 }
 
@@ -10,10 +10,17 @@
  */
 package net.refractions.udig.render.internal.wmsc.basic;
 
+import java.io.File;
+import java.io.IOException;
+import java.text.MessageFormat;
+
 import net.refractions.udig.catalog.CatalogPlugin;
 import net.refractions.udig.catalog.internal.PreferenceConstants;
+import net.refractions.udig.catalog.wmsc.server.SingleFileTileStore;
+import net.refractions.udig.catalog.wmsc.server.TileCache;
 import net.refractions.udig.catalog.wmsc.server.TileImageReadWriter;
 import net.refractions.udig.catalog.wmsc.server.TileWorkerQueue;
+import net.refractions.udig.render.wms.basic.WMSPlugin;
 import net.refractions.udig.render.wms.basic.internal.Messages;
 
 import org.eclipse.jface.preference.DirectoryFieldEditor;
@@ -24,9 +31,13 @@ import org.eclipse.jface.util.PropertyChangeEvent;
 import org.eclipse.swt.SWT;
 import org.eclipse.swt.events.SelectionAdapter;
 import org.eclipse.swt.events.SelectionEvent;
+import org.eclipse.swt.layout.GridData;
 import org.eclipse.swt.widgets.Button;
+import org.eclipse.swt.widgets.DirectoryDialog;
 import org.eclipse.swt.widgets.Display;
+import org.eclipse.swt.widgets.Label;
 import org.eclipse.swt.widgets.MessageBox;
+import org.eclipse.swt.widgets.Shell;
 import org.eclipse.ui.IWorkbench;
 import org.eclipse.ui.IWorkbenchPreferencePage;
 
@@ -41,6 +52,9 @@ public class WMSCTilePreferencesPage extends FieldEditorPreferencePage implement
 	private DirectoryFieldEditor diskCacheFieldEditor;
 	private RadioGroupFieldEditor cachingRadioFieldEditor;
 	private Button cacheClearBtn;
+	private Button cacheImportBtn;
+	private Button cacheExportBtn;
+	private Label cacheStatsLabel;
 	
     public WMSCTilePreferencesPage() {
         super(GRID); 
@@ -60,6 +74,18 @@ public class WMSCTilePreferencesPage extends FieldEditorPreferencePage implement
 		conRequestsFieldEditor.setEmptyStringAllowed(true);
         addField(conRequestsFieldEditor);		
 		
+		// size of the shared in-memory tile cache
+		IntegerFieldEditor memoryCacheFieldEditor = new IntegerFieldEditor(PreferenceConstants.P_WMSCTILE_MEMORY_CACHE_SIZE, 
+		        Messages.WMSCTilePreferencePage_memoryCacheSize,
+		        getFieldEditorParent());
+		memoryCacheFieldEditor.setValidRange(1, Integer.MAX_VALUE);
+		addField(memoryCacheFieldEditor);
+		
+		// hit/miss/eviction counters of the in-memory tile cache
+		cacheStatsLabel = new Label(getFieldEditorParent(), SWT.NONE);
+		cacheStatsLabel.setLayoutData(new GridData(SWT.FILL, SWT.CENTER, true, false, 2, 1));
+		updateCacheStats();
+		
 		// in-mem or on-disk caching?
 		cachingRadioFieldEditor = new RadioGroupFieldEditor(
                 PreferenceConstants.P_WMSCTILE_CACHING,
@@ -67,13 +93,13 @@ public class WMSCTilePreferencesPage extends FieldEditorPreferencePage implement
                 1,
                 new String[][]{
                         {Messages.WMSCTilePreferencePage_inmemory, WMSCTileCaching.INMEMORY.toString()},
-                        {Messages.WMSCTilePreferencePage_ondisk, WMSCTileCaching.ONDISK.toString()}
+                        {Messages.WMSCTilePreferencePage_ondisk, WMSCTileCaching.ONDISK.toString()},
+                        {Messages.WMSCTilePreferencePage_ondiskSingleFile, WMSCTileCaching.ONDISK_SINGLEFILE.toString()}
                         }, 
                         getFieldEditorParent(), true);
         addField(cachingRadioFieldEditor);
         String value = CatalogPlugin.getDefault().getPreferenceStore().getString(PreferenceConstants.P_WMSCTILE_CACHING);
-        boolean diskOn = false;
-		if (value.equals(WMSCTileCaching.ONDISK.toString())) diskOn = true;        
+        boolean diskOn = WMSCTileCaching.isOnDisk(value);
         
 		// only enable the disk-caching preferences if disk caching is turned on
         diskCacheFieldEditor = new DirectoryFieldEditor(PreferenceConstants.P_WMSCTILE_DISKDIR,
@@ -106,16 +132,71 @@ public class WMSCTilePreferencesPage extends FieldEditorPreferencePage implement
             }
         });
         cacheClearBtn.setEnabled(diskOn);
+        
+        // seed the single file tile stores from, or copy them to, another directory
+        cacheImportBtn = new Button(getFieldEditorParent(), SWT.PUSH);
+        cacheImportBtn.setText(Messages.WMSCTilePreferencePage_importcachebtn);
+        cacheImportBtn.addSelectionListener(new SelectionAdapter() {
+            public void widgetSelected(SelectionEvent e) {
+                copyCache(true);
+            }
+        });
+        cacheImportBtn.setEnabled(diskOn);
+        
+        cacheExportBtn = new Button(getFieldEditorParent(), SWT.PUSH);
+        cacheExportBtn.setText(Messages.WMSCTilePreferencePage_exportcachebtn);
+        cacheExportBtn.addSelectionListener(new SelectionAdapter() {
+            public void widgetSelected(SelectionEvent e) {
+                copyCache(false);
+            }
+        });
+        cacheExportBtn.setEnabled(diskOn);
 	}
 	
 	/**
-	 * clear the tile cache for the given dir
+	 * Imports the single file tile stores of a directory chosen by the user into the
+	 * cache, or exports the stores of the cache to it.
 	 * 
+	 * @param importing true to import into the cache, false to export it
 	 */
-	private boolean clearCache() {
-		// Make a TileImageReadWriter with the base directory based on the current
-		// value of the disk cache location (even if it is not "set" yet since the current
-		// value is what the user sees) otherwise use the current setting.
+	private void copyCache(boolean importing) {
+	    String dir = getCacheDir();
+	    Shell shell = Display.getCurrent().getActiveShell();
+	    MessageBox mb = new MessageBox(shell, SWT.OK);
+	    mb.setText(importing ? Messages.WMSCTilePreferencePage_importcachebtn : Messages.WMSCTilePreferencePage_exportcachebtn);
+	    if (dir == null) {
+	        mb.setMessage(Messages.WMSCTilePreferencePage_copycacheError);
+	        mb.open();
+	        return;
+	    }
+	    DirectoryDialog dialog = new DirectoryDialog(shell);
+	    String other = dialog.open();
+	    if (other == null) {
+	        return;
+	    }
+	    File cacheDir = new File(dir);
+	    File otherDir = new File(other);
+	    try {
+	        int count;
+	        if (importing) {
+	            count = SingleFileTileStore.copyStores(otherDir, cacheDir);
+	        } else {
+	            count = SingleFileTileStore.copyStores(cacheDir, otherDir);
+	        }
+	        mb.setMessage(MessageFormat.format(Messages.WMSCTilePreferencePage_copycacheSuccess, count));
+	    } catch (IOException ex) {
+	        WMSPlugin.log("Error copying tile cache: " + ex.getMessage(), ex); //$NON-NLS-1$
+	        mb.setMessage(Messages.WMSCTilePreferencePage_copycacheError);
+	    }
+	    mb.open();
+	}
+	
+	/**
+	 * The cache location the user sees, falling back on the current setting.
+	 * 
+	 * @return cache directory or null if none is set
+	 */
+	private String getCacheDir() {
 		String dir = diskCacheFieldEditor.getStringValue();
 		
 		String setDir = CatalogPlugin.getDefault().getPreferenceStore().getString(PreferenceConstants.P_WMSCTILE_DISKDIR);
@@ -123,12 +204,49 @@ public class WMSCTilePreferencesPage extends FieldEditorPreferencePage implement
 			dir = setDir;
 		}
 		else if (dir.equals("")) {
+			return null;
+		}
+		return dir;
+	}
+	
+	/**
+	 * clear the tile cache for the given dir
+	 * 
+	 */
+	private boolean clearCache() {
+		// Make a TileImageReadWriter with the base directory based on the current
+		// value of the disk cache location (even if it is not "set" yet since the current
+		// value is what the user sees) otherwise use the current setting.
+		String dir = getCacheDir();
+		if (dir == null) {
 			return false;
 		}
 		TileImageReadWriter tileReadWriter = new TileImageReadWriter(null, dir);
 		return tileReadWriter.clearCache();
 	}	
 
+	/**
+	 * Show the current statistics of the shared in-memory tile cache
+	 */
+	private void updateCacheStats() {
+	    TileCache cache = TileCache.getInstance();
+	    long megabyte = 1024 * 1024;
+	    cacheStatsLabel.setText(MessageFormat.format(Messages.WMSCTilePreferencePage_memoryCacheStats,
+	            cache.getTileCount(), cache.getSize() / megabyte, cache.getMaximumSize() / megabyte,
+	            cache.getHits(), cache.getMisses(), cache.getEvictions()));
+	}
+	
+	@Override
+	public boolean performOk() {
+	    boolean ok = super.performOk();
+	    if (ok) {
+	        int size = getPreferenceStore().getInt(PreferenceConstants.P_WMSCTILE_MEMORY_CACHE_SIZE);
+	        TileCache.getInstance().setMaximumSize(size * 1024L * 1024L);
+	        updateCacheStats();
+	    }
+	    return ok;
+	}
+
 	public void init(IWorkbench arg0) {
 	}
 
@@ -142,10 +260,11 @@ public class WMSCTilePreferencesPage extends FieldEditorPreferencePage implement
 		super.propertyChange(event);
 		if (event.getSource().equals(cachingRadioFieldEditor)) {
 			String value = ((String)event.getNewValue()).toString();
-			boolean diskOn = false;
-			if (value.equals(WMSCTileCaching.ONDISK.toString())) diskOn = true;
+			boolean diskOn = WMSCTileCaching.isOnDisk(value);
 			diskCacheFieldEditor.setEnabled(diskOn, getFieldEditorParent());
 			cacheClearBtn.setEnabled(diskOn);
+			cacheImportBtn.setEnabled(diskOn);
+			cacheExportBtn.setEnabled(diskOn);
 		}
 	}
     
@@ -29,12 +29,19 @@ public class Messages extends NLS {
 	public static String WMSCTilePreferencePage_caching_desc;
 	public static String WMSCTilePreferencePage_inmemory;
 	public static String WMSCTilePreferencePage_ondisk;
+	public static String WMSCTilePreferencePage_ondiskSingleFile;
 	public static String WMSCTilePreferencePage_disklabel;
 	public static String WMSCTilePreferencePage_clearcachebtn;
 	public static String WMSCTilePreferencePage_clearcacheConfirm;
 	public static String WMSCTilePreferencePage_clearcacheError;
 	public static String WMSCTilePreferencePage_clearcacheSuccess;
+	public static String WMSCTilePreferencePage_importcachebtn;
+	public static String WMSCTilePreferencePage_exportcachebtn;
+	public static String WMSCTilePreferencePage_copycacheError;
+	public static String WMSCTilePreferencePage_copycacheSuccess;
 	public static String WMSCTilePreferencePage_maxConRequests;
+	public static String WMSCTilePreferencePage_memoryCacheSize;
+	public static String WMSCTilePreferencePage_memoryCacheStats;
     
 	static {
 		// initialize resource bundle
@@ -16,6 +16,7 @@ import java.awt.Graphics2D;
 import java.awt.Point;
 import java.awt.Rectangle;
 import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.Map;
@@ -87,7 +88,7 @@ public class BasicWMTRenderer extends RendererImpl {
      * Static thread pools that will be reused for each renderer that gets created
      */
     private static TileWorkerQueue requestTileWorkQueue = new TileWorkerQueue();
-    private static TileWorkerQueue writeTileWorkQueue = new TileWorkerQueue();
+    private static TileWorkerQueue writeTileWorkQueue = TileWorkerQueue.createWriteQueue();
     
     /**
      * Use a blocking queue to keep track of and notice when tiles are ready to draw
@@ -356,9 +357,10 @@ public class BasicWMTRenderer extends RendererImpl {
         TileSet tileset = new WMTTileSetWrapper(wmtSource);
     
         String value = CatalogPlugin.getDefault().getPreferenceStore().getString(PreferenceConstants.P_WMSCTILE_CACHING);
-        if (value.equals(WMSCTileCaching.ONDISK.toString())) {
+        if (WMSCTileCaching.isOnDisk(value)) {
             String dir = CatalogPlugin.getDefault().getPreferenceStore().getString(PreferenceConstants.P_WMSCTILE_DISKDIR);
-            WMTTileImageReadWriter tileReadWriter = new WMTTileImageReadWriter(dir);
+            boolean singleFile = value.equals(WMSCTileCaching.ONDISK_SINGLEFILE.toString());
+            WMTTileImageReadWriter tileReadWriter = new WMTTileImageReadWriter(dir, singleFile);
             
             range = new TileRangeOnDisk(null, tileset, renderJob.getMapExtentTileCrs(), 
                     tileList, requestTileWorkQueue, writeTileWorkQueue, tileReadWriter);
@@ -441,12 +443,18 @@ public class BasicWMTRenderer extends RendererImpl {
             return;
         }
         
-        // create a gridcoverage from the tile image        
-        GridCoverageFactory factory = new GridCoverageFactory();
-        
         // get the tile bounds in the CRS the tiles were drawn in
         ReferencedEnvelope tileBndsMercatorRef = renderJob.projectTileToTileProjectedCrs(tile.getExtent());
         
+        if (renderJob.isTilesProjectedToMapAxisAligned()) {
+            // the tile maps onto the screen by scaling only, no need for a coverage
+            renderTileDirect(graphics, tile, tileBndsMercatorRef, renderJob);
+            return;
+        }
+        
+        // create a gridcoverage from the tile image        
+        GridCoverageFactory factory = new GridCoverageFactory();
+        
         GridCoverage2D coverage = (GridCoverage2D) factory.create("GridCoverage", tile.getBufferedImage(), tileBndsMercatorRef); //$NON-NLS-1$        
          
         Envelope2D coveragebounds = coverage.getEnvelope2D();
@@ -489,6 +497,56 @@ public class BasicWMTRenderer extends RendererImpl {
         }
     }
     
+    /**
+     * Draws the cached tile image straight onto the graphics, this is used when the map 
+     * is in the CRS the tiles were projected in (or one that only differs by scale and offset),
+     * so that the tile-to-screen mapping is a plain scaled copy.
+     *
+     * @param graphics graphics to draw onto
+     * @param tile tile with a loaded image
+     * @param tileBndsProjected tile bounds in the CRS the tiles were projected in
+     * @param renderJob
+     * @throws Exception
+     */
+    private void renderTileDirect(Graphics2D graphics, WMTTile tile, 
+            ReferencedEnvelope tileBndsProjected, WMTRenderJob renderJob) throws Exception {
+        // reproject tile bounds to map CRS (affine, so the corners stay corners)
+        ReferencedEnvelope bnds = renderJob.projectTileProjectedToMapCrs(tileBndsProjected);
+        
+        // determine screen coordinates of tiles
+        Point upperLeft = getContext().worldToPixel(new Coordinate(bnds.getMinX(), bnds.getMinY()));
+        Point bottomRight = getContext().worldToPixel(new Coordinate(bnds.getMaxX(), bnds.getMaxY()));
+        Rectangle tileSize = new Rectangle(upperLeft);
+        tileSize.add(bottomRight);
+        
+        try {
+            drawTileImage(graphics, tile.getBufferedImage(), tileSize);
+            
+            if (TESTING) {
+                /* for testing draw border around tiles */
+                graphics.setColor(Color.BLACK);
+                graphics.drawRect(tileSize.x, tileSize.y, tileSize.width, tileSize.height);
+                graphics.drawString(tile.getId(), ((int)tileSize.getMaxX()-113), 
+                        ((int)tileSize.getMaxY()-113));
+            }
+        } catch (Throwable t) {
+            WMTPlugin.log("Error Rendering tile. Painting Tile directly " +  tile.getId(), t); //$NON-NLS-1$
+        }
+    }
+    
+    /**
+     * Scales the tile image into the given screen area, the first image row is 
+     * drawn at the top of the area (the maximum y value of the tile bounds).
+     * 
+     * @param graphics graphics to draw onto
+     * @param image tile image
+     * @param screenArea the area of the tile in screen coordinates
+     */
+    public static void drawTileImage(Graphics2D graphics, BufferedImage image, Rectangle screenArea) {
+        graphics.drawImage(image, screenArea.x, screenArea.y, 
+                screenArea.width, screenArea.height, null);
+    }
+    
     /**
      * Clears the area of the tile on the graphics
      * 
@@ -0,0 +1,154 @@
+/*
+ *    uDig - User Friendly Desktop Internet GIS client
+ *    http://udig.refractions.net
+ *    (C) 2012, Refractions Research Inc.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * (http://www.eclipse.org/legal/epl-v10.html), and the Refractions BSD
+ * License v1.0 (http://udig.refractions.net/files/bsd3-v10.html).
+ */
+package net.refractions.udig.tests.catalog.wmt;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+
+import net.refractions.udig.catalog.internal.wmt.WMTRenderJob;
+import net.refractions.udig.catalog.internal.wmt.wmtsource.WMTSource;
+import net.refractions.udig.render.internal.wmt.basic.BasicWMTRenderer;
+
+import org.geotools.coverage.grid.GridCoverage2D;
+import org.geotools.coverage.grid.GridCoverageFactory;
+import org.geotools.geometry.jts.ReferencedEnvelope;
+import org.geotools.referencing.CRS;
+import org.geotools.referencing.crs.DefaultGeographicCRS;
+import org.geotools.referencing.operation.transform.AffineTransform2D;
+import org.geotools.renderer.lite.RendererUtilities;
+import org.geotools.renderer.lite.gridcoverage2d.GridCoverageRenderer;
+import org.geotools.styling.RasterSymbolizer;
+import org.geotools.styling.StyleBuilder;
+import org.junit.Ignore;
+import org.junit.Test;
+import org.opengis.referencing.crs.CoordinateReferenceSystem;
+
+/**
+ * Tests the direct blit path of the WMT renderer against the grid coverage path.
+ */
+public class WMTTileRenderTest {
+
+    private static final int TILE_SIZE = 256;
+
+    /** one OSM tile at zoom level 10 in Google's Mercator */
+    private ReferencedEnvelope tileBounds = new ReferencedEnvelope(
+            0, 39135.76, 0, 39135.76, WMTSource.CRS_EPSG_900913);
+
+    @Test
+    public void testIsAxisAligned() throws Exception {
+        assertTrue(WMTRenderJob.isAxisAligned(null));
+        assertTrue(WMTRenderJob.isAxisAligned(new AffineTransform2D(
+                AffineTransform.getScaleInstance(2, 3))));
+        assertFalse(WMTRenderJob.isAxisAligned(new AffineTransform2D(
+                AffineTransform.getRotateInstance(Math.PI / 4))));
+        // mirrored y-axis would turn the tile upside down
+        assertFalse(WMTRenderJob.isAxisAligned(new AffineTransform2D(
+                AffineTransform.getScaleInstance(1, -1))));
+        // Mercator -> WGS84 needs real reprojection
+        assertFalse(WMTRenderJob.isAxisAligned(CRS.findMathTransform(
+                WMTSource.CRS_EPSG_900913, DefaultGeographicCRS.WGS84)));
+    }
+
+    @Test
+    public void testDirectBlitMatchesCoverage() throws Exception {
+        BufferedImage tile = createTile();
+        Rectangle screenArea = new Rectangle(10, 20, TILE_SIZE, TILE_SIZE);
+
+        BufferedImage direct = createScreen();
+        Graphics2D graphics = direct.createGraphics();
+        BasicWMTRenderer.drawTileImage(graphics, tile, screenArea);
+        graphics.dispose();
+
+        BufferedImage coverage = createScreen();
+        graphics = coverage.createGraphics();
+        paintCoverage(graphics, tile, screenArea, new StyleBuilder().createRasterSymbolizer());
+        graphics.dispose();
+
+        // sample the centre of each quadrant, edges may differ by interpolation
+        int[] offsets = new int[]{TILE_SIZE / 4, TILE_SIZE * 3 / 4};
+        for( int x : offsets ) {
+            for( int y : offsets ) {
+                assertEquals(coverage.getRGB(screenArea.x + x, screenArea.y + y),
+                        direct.getRGB(screenArea.x + x, screenArea.y + y));
+            }
+        }
+    }
+
+    /**
+     * Compares the tiles/sec of the direct blit path against the grid coverage path;
+     * ignored as it is a benchmark rather than a test.
+     */
+    @Ignore
+    @Test
+    public void benchmarkRenderTile() throws Exception {
+        BufferedImage tile = createTile();
+        BufferedImage screen = createScreen();
+        RasterSymbolizer style = new StyleBuilder().createRasterSymbolizer();
+        Rectangle screenArea = new Rectangle(0, 0, TILE_SIZE + TILE_SIZE / 2, TILE_SIZE + TILE_SIZE / 2);
+        int tiles = 2000;
+
+        Graphics2D graphics = screen.createGraphics();
+        long start = System.nanoTime();
+        for( int i = 0; i < tiles; i++ ) {
+            BasicWMTRenderer.drawTileImage(graphics, tile, screenArea);
+        }
+        long direct = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        for( int i = 0; i < tiles; i++ ) {
+            paintCoverage(graphics, tile, screenArea, style);
+        }
+        long coverage = System.nanoTime() - start;
+        graphics.dispose();
+
+        System.out.println("direct blit:   " + (tiles * 1e9 / direct) + " tiles/sec"); //$NON-NLS-1$ //$NON-NLS-2$
+        System.out.println("grid coverage: " + (tiles * 1e9 / coverage) + " tiles/sec"); //$NON-NLS-1$ //$NON-NLS-2$
+    }
+
+    /**
+     * Same steps as BasicWMTRenderer.renderTile takes when the tiles have to be reprojected.
+     */
+    private void paintCoverage( Graphics2D graphics, BufferedImage tile, Rectangle screenArea,
+            RasterSymbolizer style ) throws Exception {
+        CoordinateReferenceSystem crs = tileBounds.getCoordinateReferenceSystem();
+        GridCoverage2D coverage = new GridCoverageFactory().create("GridCoverage", tile, tileBounds); //$NON-NLS-1$
+        AffineTransform worldToScreen = RendererUtilities.worldToScreenTransform(tileBounds, screenArea, crs);
+        GridCoverageRenderer paint = new GridCoverageRenderer(crs, tileBounds, screenArea, worldToScreen);
+        paint.paint(graphics, coverage, style);
+    }
+
+    private BufferedImage createTile() {
+        BufferedImage tile = new BufferedImage(TILE_SIZE, TILE_SIZE, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D graphics = tile.createGraphics();
+        int half = TILE_SIZE / 2;
+        graphics.setColor(Color.RED);
+        graphics.fillRect(0, 0, half, half);
+        graphics.setColor(Color.GREEN);
+        graphics.fillRect(half, 0, half, half);
+        graphics.setColor(Color.BLUE);
+        graphics.fillRect(0, half, half, half);
+        graphics.setColor(Color.YELLOW);
+        graphics.fillRect(half, half, half, half);
+        graphics.dispose();
+        return tile;
+    }
+
+    private BufferedImage createScreen() {
+        return new BufferedImage(TILE_SIZE * 2, TILE_SIZE * 2, BufferedImage.TYPE_INT_ARGB);
+    }
+}
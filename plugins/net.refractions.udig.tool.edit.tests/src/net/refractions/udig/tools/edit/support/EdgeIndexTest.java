@@ -0,0 +1,121 @@
+/*
+ *    uDig - User Friendly Desktop Internet GIS client
+ *    http://udig.refractions.net
+ *    (C) 2012, Refractions Research Inc.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * (http://www.eclipse.org/legal/epl-v10.html), and the Refractions BSD
+ * License v1.0 (http://udig.refractions.net/files/bsd3-v10.html).
+ */
+package net.refractions.udig.tools.edit.support;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+public class EdgeIndexTest {
+
+    /**
+     * The index must find the same edge as walking all the edges, including for clicks far
+     * outside the shape and for lines (no closing edge).
+     */
+    @Test
+    public void testSameAsLinearSearch() throws Exception {
+        PrimitiveShape shape = new TestHandler().getEditBlackboard().getGeoms().get(0).getShell();
+        Random random = new Random(42);
+        int numPoints = 500;
+        int[] xs = new int[numPoints];
+        int[] ys = new int[numPoints];
+        for( int i = 0; i < numPoints; i++ ) {
+            // mostly short edges with the odd edge across the whole shape
+            if (i > 0 && random.nextInt(50) != 0) {
+                xs[i] = xs[i - 1] + random.nextInt(41) - 20;
+                ys[i] = ys[i - 1] + random.nextInt(41) - 20;
+            } else {
+                xs[i] = random.nextInt(2000) - 200;
+                ys[i] = random.nextInt(2000) - 200;
+            }
+        }
+        EdgeIndex index = new EdgeIndex(xs, ys, numPoints);
+
+        for( int i = 0; i < 500; i++ ) {
+            Point click = Point.valueOf(random.nextInt(4000) - 1000, random.nextInt(4000) - 1000);
+            for( boolean polygon : new boolean[]{true, false} ) {
+                ClosestEdge expected = linearSearch(xs, ys, click, polygon, shape);
+                ClosestEdge actual = index.getClosestEdge(click, polygon, shape);
+                assertEquals(expected.getDistanceToEdge(), actual.getDistanceToEdge(), 0);
+                assertEquals(expected.getIndexOfPrevious(), actual.getIndexOfPrevious());
+                assertEquals(expected.getPointOnLine(), actual.getPointOnLine());
+            }
+        }
+    }
+
+    /**
+     * Zoomed in on a large polygon the screen locations span millions of pixels; the grid must
+     * stay small and still find the closest edge.
+     */
+    @Test
+    public void testLargeShape() throws Exception {
+        PrimitiveShape shape = new TestHandler().getEditBlackboard().getGeoms().get(0).getShell();
+        int numPoints = 2000;
+        int[] xs = new int[numPoints];
+        int[] ys = new int[numPoints];
+        for( int i = 0; i < numPoints; i++ ) {
+            double angle = 2 * Math.PI * i / numPoints;
+            xs[i] = (int) (5000000 * Math.cos(angle));
+            ys[i] = (int) (5000000 * Math.sin(angle));
+        }
+        EdgeIndex index = new EdgeIndex(xs, ys, numPoints);
+
+        Random random = new Random(42);
+        for( int i = 0; i < 200; i++ ) {
+            int vertex = random.nextInt(numPoints);
+            Point click = Point.valueOf(xs[vertex] + random.nextInt(201) - 100, ys[vertex]
+                    + random.nextInt(201) - 100);
+            ClosestEdge expected = linearSearch(xs, ys, click, true, shape);
+            ClosestEdge actual = index.getClosestEdge(click, true, shape);
+            assertEquals(expected.getDistanceToEdge(), actual.getDistanceToEdge(), 0);
+            assertEquals(expected.getIndexOfPrevious(), actual.getIndexOfPrevious());
+        }
+    }
+
+    @Test
+    public void testSinglePoint() throws Exception {
+        PrimitiveShape shape = new TestHandler().getEditBlackboard().getGeoms().get(0).getShell();
+        EdgeIndex index = new EdgeIndex(new int[]{10}, new int[]{10}, 1);
+        assertNull(index.getClosestEdge(Point.valueOf(20, 20), true, shape));
+        assertNull(index.getClosestEdge(Point.valueOf(10, 10), false, shape));
+    }
+
+    /**
+     * Same search as PrimitiveShape does for small shapes.
+     */
+    private ClosestEdge linearSearch( int[] xs, int[] ys, Point click, boolean polygon,
+            PrimitiveShape shape ) {
+        int n = xs.length;
+        int lastIndex = polygon ? n - 1 : 0;
+        double mindist = Double.MAX_VALUE;
+        int prev = -1;
+        Point closestPoint = null;
+        for( int i = polygon ? 0 : 1; i < n; i++ ) {
+            Point point = EditUtils.instance.closestPointOnEdge(Point.valueOf(xs[lastIndex],
+                    ys[lastIndex]), Point.valueOf(xs[i], ys[i]), click);
+            if (point != null) {
+                long x = click.getX() - point.getX();
+                long y = click.getY() - point.getY();
+                double dist = Math.sqrt(x * x + y * y);
+                if (dist < mindist) {
+                    mindist = dist;
+                    prev = lastIndex;
+                    closestPoint = point;
+                }
+            }
+            lastIndex = i;
+        }
+        return new ClosestEdge(mindist, prev, closestPoint, shape);
+    }
+}
@@ -46,6 +46,7 @@ import org.geotools.referencing.CRS;
 import org.geotools.referencing.crs.DefaultGeographicCRS;
 import org.geotools.referencing.operation.transform.IdentityTransform;
 import org.junit.Before;
+import org.junit.Ignore;
 import org.junit.Test;
 import org.opengis.feature.simple.SimpleFeature;
 import org.opengis.referencing.operation.MathTransform;
@@ -1061,6 +1062,47 @@ public class EditBlackboardTest {
         assertEquals(Point.valueOf(15,10), shell.getPoint(4));
     }
     
+    /**
+     * Times the common blackboard operations on a polygon with 50k vertices; ignored as
+     * it is a benchmark rather than a test.
+     */
+    @Ignore
+    @Test
+    public void benchmarkLargePolygon() throws Exception {
+        int vertices = 50000;
+        Coordinate[] coords = new Coordinate[vertices + 1];
+        for( int i = 0; i < vertices; i++ ) {
+            double angle = 2 * Math.PI * i / vertices;
+            coords[i] = new Coordinate(800 + 700 * Math.cos(angle), 600 + 500 * Math.sin(angle));
+        }
+        coords[vertices] = coords[0];
+        GeometryFactory factory = new GeometryFactory();
+        Polygon polygon = factory.createPolygon(factory.createLinearRing(coords), null);
+        EditBlackboard map = new EditBlackboard(1600, 1200, new AffineTransform(), layerToWorld);
+
+        long start = System.nanoTime();
+        map.setGeometries(polygon, null);
+        long setGeometries = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        for( int i = 0; i < 100; i++ ) {
+            map.getCandidates(100 + i, 600, true);
+        }
+        long candidates = System.nanoTime() - start;
+
+        PrimitiveShape shell = map.getGeoms().get(0).getShell();
+        map.selectionAddAll(shell.getPoints().subList(0, 1000));
+        start = System.nanoTime();
+        for( int i = 0; i < 100; i++ ) {
+            map.moveSelection(1, 1, map.getSelection());
+        }
+        long move = System.nanoTime() - start;
+
+        System.out.println("setGeometries: " + setGeometries / 1000000 + "ms"); //$NON-NLS-1$ //$NON-NLS-2$
+        System.out.println("getCandidates: " + candidates / 1000000 + "ms for 100 calls"); //$NON-NLS-1$ //$NON-NLS-2$
+        System.out.println("moveSelection: " + move / 1000000 + "ms for 100 calls"); //$NON-NLS-1$ //$NON-NLS-2$
+    }
+    
     class EventListener implements EditBlackboardListener{
         EditBlackboardEvent event;
         List<EditBlackboardEvent> batched;
@@ -11,11 +11,18 @@
 package net.refractions.udig.tools.edit.support;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
 
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
+import org.junit.Ignore;
 import org.junit.Test;
 
 public class PointTest {
@@ -52,4 +59,88 @@ public class PointTest {
         
     }
 
+    @Test
+    public void testInterned() throws Exception {
+        // start empty so the cache is not dropped half way
+        Point.clearCache();
+        assertSame(Point.valueOf(0, 0), Point.valueOf(0, 0));
+        assertSame(Point.valueOf(-10, 1900), Point.valueOf(-10, 1900));
+        assertSame(Point.valueOf(2559, 1439), Point.valueOf(2559, 1439));
+        assertEquals(Point.valueOf(100000, 5), Point.valueOf(100000, 5));
+
+        // all threads must get the same instance
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<Point[]>> results = new ArrayList<Future<Point[]>>();
+            for( int i = 0; i < 4; i++ ) {
+                results.add(executor.submit(new Callable<Point[]>(){
+                    public Point[] call() throws Exception {
+                        Point[] points = new Point[1000];
+                        for( int j = 0; j < points.length; j++ ) {
+                            points[j] = Point.valueOf(3000 + j, 2000 - j);
+                        }
+                        return points;
+                    }
+                }));
+            }
+            Point[] first = results.get(0).get();
+            for( Future<Point[]> result : results ) {
+                Point[] points = result.get();
+                for( int j = 0; j < points.length; j++ ) {
+                    assertSame(first[j], points[j]);
+                }
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testCacheBounded() throws Exception {
+        Point.clearCache();
+        Point first = Point.valueOf(0, 0);
+        // one point in each block along the rows until the cache is dropped
+        for( int i = 0; i < Point.MAX_BLOCKS + 10; i++ ) {
+            Point.valueOf((i % 100) * 64, (i / 100) * 64);
+            assertTrue(Point.getBlockCount() <= Point.MAX_BLOCKS);
+        }
+        assertEquals(first, Point.valueOf(0, 0));
+        Point.clearCache();
+        assertEquals(0, Point.getBlockCount());
+    }
+
+    /**
+     * Reports how many points per second several threads can look up; ignored as
+     * it is a benchmark rather than a test.
+     */
+    @Ignore
+    @Test
+    public void benchmarkValueOf() throws Exception {
+        final int threads = 4;
+        final int lookups = 10000000;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Callable<Integer>> tasks = new ArrayList<Callable<Integer>>();
+            for( int i = 0; i < threads; i++ ) {
+                tasks.add(new Callable<Integer>(){
+                    public Integer call() throws Exception {
+                        Random random = new Random();
+                        int sum = 0;
+                        for( int j = 0; j < lookups; j++ ) {
+                            sum += Point.valueOf(random.nextInt(1920), random.nextInt(1200)).getX();
+                        }
+                        return sum;
+                    }
+                });
+            }
+            long start = System.nanoTime();
+            executor.invokeAll(tasks);
+            long time = System.nanoTime() - start;
+            System.out.println("Point.valueOf: " + (threads * (double) lookups * 1e9 / time) //$NON-NLS-1$
+                    + " points/sec with " + threads + " threads"); //$NON-NLS-1$ //$NON-NLS-2$
+        } finally {
+            executor.shutdown();
+        }
+    }
+
 }
@@ -18,6 +18,7 @@ import net.refractions.udig.project.command.AbstractCommand;
 import net.refractions.udig.project.command.UndoableMapCommand;
 import net.refractions.udig.project.internal.Layer;
 import net.refractions.udig.project.internal.commands.edit.AddFeatureCommand;
+import net.refractions.udig.project.internal.impl.EditBatch;
 import net.refractions.udig.tool.edit.internal.Messages;
 import net.refractions.udig.tools.edit.support.EditBlackboard;
 import net.refractions.udig.tools.edit.support.EditGeom;
@@ -126,6 +127,7 @@ public class CreateAndSelectNewFeature extends AbstractCommand implements Undoab
     }
 
     private void fireFeatureEvent( boolean prev ) {
+        EditBatch.flushFeatureChanges(layer);
         List<FeatureEvent> featureChanges = layer.getFeatureChanges();
 
         layer.eSetDeliver(prev);
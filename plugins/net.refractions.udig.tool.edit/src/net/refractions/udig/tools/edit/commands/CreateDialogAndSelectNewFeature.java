@@ -18,6 +18,7 @@ import net.refractions.udig.project.command.AbstractCommand;
 import net.refractions.udig.project.command.UndoableMapCommand;
 import net.refractions.udig.project.internal.Layer;
 import net.refractions.udig.project.internal.commands.edit.AddFeatureCommand;
+import net.refractions.udig.project.internal.impl.EditBatch;
 import net.refractions.udig.project.ui.ApplicationGIS;
 import net.refractions.udig.project.ui.PlatformGIS;
 import net.refractions.udig.project.ui.feature.FeaturePanelEntry;
@@ -137,6 +138,7 @@ public class CreateDialogAndSelectNewFeature extends AbstractCommand implements
     }
 
     private void fireFeatureEvent( boolean prev ) {
+        EditBatch.flushFeatureChanges(layer);
         List<FeatureEvent> featureChanges = layer.getFeatureChanges();
 
         layer.eSetDeliver(prev);
@@ -104,7 +104,7 @@ public class DrawPointCommand extends AbstractDrawCommand implements MapMouseMot
             rect.x=p.getX()-radius;
             rect.y=p.getY()-radius;
             
-            if( overPoint && p==shape.getPoint(0) ){
+            if( overPoint && p.equals(shape.getPoint(0)) ){
                 drawOverPoint(rect, isSelected(p));
             }else{
                 setZoomedRect(rect, p, 0);                    
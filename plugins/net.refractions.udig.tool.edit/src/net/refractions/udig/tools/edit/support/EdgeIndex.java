@@ -0,0 +1,243 @@
+/* uDig - User Friendly Desktop Internet GIS client
+ * http://udig.refractions.net
+ * (C) 2012, Refractions Research Inc.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * (http://www.eclipse.org/legal/epl-v10.html), and the Refractions BSD
+ * License v1.0 (http://udig.refractions.net/files/bsd3-v10.html).
+ */
+package net.refractions.udig.tools.edit.support;
+
+/**
+ * A grid index over the edges of a {@link PrimitiveShape} so the closest edge to a point can be
+ * found by looking at the few cells around the point rather than walking every edge.
+ * <p>
+ * The screen locations of the vertices are copied into packed int arrays and each edge is
+ * registered with the grid cells its bounding box covers. Edge <em>k</em> joins vertex
+ * <em>k-1</em> and vertex <em>k</em>; edge 0 is the closing edge from the last vertex to the first
+ * and is only used if the shape is treated as a polygon.
+ * </p>
+ * <p>
+ * The index is a snapshot; the shape discards it whenever its points change.
+ * </p>
+ * <p>
+ * Cells are {@link #CELL_SIZE} pixels wide unless the shape spans so many pixels (zoomed in on a
+ * large polygon) that the grid would have more than about four cells per vertex; the cells are
+ * then made larger so the grid stays proportional to the number of vertices.
+ * </p>
+ *
+ * @since 1.4.0
+ */
+final class EdgeIndex {
+
+    /** width and height of a grid cell in pixels when the shape is small enough */
+    static final int CELL_SIZE = 32;
+
+    /** the grid has at most this many cells per vertex, or {@link #MIN_CELLS} */
+    private static final int CELLS_PER_POINT = 4;
+
+    private static final int MIN_CELLS = 64;
+
+    /** edges covering more cells than this are always checked rather than registered in cells */
+    private static final int MAX_CELLS_PER_EDGE = 256;
+
+    /**
+     * distances are measured to the truncated point on the edge so may be up to sqrt(2) pixels
+     * short; this margin keeps the search from stopping too early
+     */
+    private static final int ROUNDING_MARGIN = 2;
+
+    private final int numPoints;
+    private final int[] xs;
+    private final int[] ys;
+
+    /** width and height of a grid cell in pixels */
+    private final int cellSize;
+    private final int minCellX;
+    private final int minCellY;
+    private final int cols;
+    private final int rows;
+
+    /** edges of cell c are cellEdges[cellStart[c]] to cellEdges[cellStart[c + 1] - 1] */
+    private final int[] cellStart;
+    private final int[] cellEdges;
+    private final int[] overflowEdges;
+
+    EdgeIndex( int[] xs, int[] ys, int numPoints ) {
+        this.numPoints = numPoints;
+        this.xs = xs;
+        this.ys = ys;
+
+        int minX = Integer.MAX_VALUE, minY = Integer.MAX_VALUE;
+        int maxX = Integer.MIN_VALUE, maxY = Integer.MIN_VALUE;
+        for( int i = 0; i < numPoints; i++ ) {
+            minX = Math.min(minX, xs[i]);
+            minY = Math.min(minY, ys[i]);
+            maxX = Math.max(maxX, xs[i]);
+            maxY = Math.max(maxY, ys[i]);
+        }
+        if (numPoints == 0) {
+            minX = minY = maxX = maxY = 0;
+        }
+        long maxCells = Math.max(MIN_CELLS, (long) CELLS_PER_POINT * numPoints);
+        int size = CELL_SIZE;
+        while( size < (1 << 30)
+                && (((long) maxX - minX) / size + 2) * (((long) maxY - minY) / size + 2) > maxCells ) {
+            size *= 2;
+        }
+        cellSize = size;
+        minCellX = cell(minX);
+        minCellY = cell(minY);
+        cols = cell(maxX) - minCellX + 1;
+        rows = cell(maxY) - minCellY + 1;
+
+        // count the edges of each cell then fill them in (compressed rows)
+        int[] counts = new int[cols * rows + 1];
+        int overflow = 0;
+        for( int k = 0; k < numPoints; k++ ) {
+            int c0 = cell(Math.min(xs[prev(k)], xs[k])) - minCellX;
+            int c1 = cell(Math.max(xs[prev(k)], xs[k])) - minCellX;
+            int r0 = cell(Math.min(ys[prev(k)], ys[k])) - minCellY;
+            int r1 = cell(Math.max(ys[prev(k)], ys[k])) - minCellY;
+            if ((c1 - c0 + 1) * (r1 - r0 + 1) > MAX_CELLS_PER_EDGE) {
+                overflow++;
+                continue;
+            }
+            for( int r = r0; r <= r1; r++ ) {
+                for( int c = c0; c <= c1; c++ ) {
+                    counts[r * cols + c + 1]++;
+                }
+            }
+        }
+        cellStart = new int[cols * rows + 1];
+        for( int i = 1; i < cellStart.length; i++ ) {
+            cellStart[i] = cellStart[i - 1] + counts[i];
+        }
+        cellEdges = new int[cellStart[cellStart.length - 1]];
+        overflowEdges = new int[overflow];
+        int[] next = new int[cols * rows];
+        System.arraycopy(cellStart, 0, next, 0, next.length);
+        overflow = 0;
+        for( int k = 0; k < numPoints; k++ ) {
+            int c0 = cell(Math.min(xs[prev(k)], xs[k])) - minCellX;
+            int c1 = cell(Math.max(xs[prev(k)], xs[k])) - minCellX;
+            int r0 = cell(Math.min(ys[prev(k)], ys[k])) - minCellY;
+            int r1 = cell(Math.max(ys[prev(k)], ys[k])) - minCellY;
+            if ((c1 - c0 + 1) * (r1 - r0 + 1) > MAX_CELLS_PER_EDGE) {
+                overflowEdges[overflow++] = k;
+                continue;
+            }
+            for( int r = r0; r <= r1; r++ ) {
+                for( int c = c0; c <= c1; c++ ) {
+                    cellEdges[next[r * cols + c]++] = k;
+                }
+            }
+        }
+    }
+
+    int getNumPoints() {
+        return numPoints;
+    }
+
+    private int prev( int k ) {
+        return k == 0 ? numPoints - 1 : k - 1;
+    }
+
+    private int cell( int coordinate ) {
+        // floor division so negative screen locations fall in the right cell
+        return coordinate >= 0 ? coordinate / cellSize : -((-coordinate - 1) / cellSize) - 1;
+    }
+
+    /**
+     * Finds the edge closest to the click. Equidistant edges resolve to the lowest edge, which
+     * is the edge a walk over all the edges of the shape would find first.
+     *
+     * @param click reference point
+     * @param polygon true if the closing edge from the last to the first vertex is included
+     * @param shape the shape that was indexed
+     * @return the closest edge or null if there is none
+     */
+    ClosestEdge getClosestEdge( Point click, boolean polygon, PrimitiveShape shape ) {
+        Search search = new Search(click, polygon);
+        for( int k : overflowEdges ) {
+            search.check(k);
+        }
+
+        int clickCol = cell(click.getX()) - minCellX;
+        int clickRow = cell(click.getY()) - minCellY;
+        // rings closer than the grid hold no cells
+        int firstRing = Math.max(Math.max(-clickCol, clickCol - cols + 1), Math.max(-clickRow,
+                clickRow - rows + 1));
+        firstRing = Math.max(0, firstRing);
+        int lastRing = Math.max(Math.max(clickCol, cols - 1 - clickCol), Math.max(clickRow, rows
+                - 1 - clickRow));
+
+        for( int ring = firstRing; ring <= lastRing; ring++ ) {
+            // every edge outside the rings searched so far is at least this far away
+            if (search.closestPoint != null
+                    && search.mindist < (double) ring * cellSize - cellSize - ROUNDING_MARGIN) {
+                break;
+            }
+            int c0 = clickCol - ring, c1 = clickCol + ring;
+            int r0 = clickRow - ring, r1 = clickRow + ring;
+            for( int c = Math.max(0, c0); c <= Math.min(cols - 1, c1); c++ ) {
+                checkCell(search, c, r0);
+                if (r1 != r0)
+                    checkCell(search, c, r1);
+            }
+            for( int r = Math.max(0, r0 + 1); r <= Math.min(rows - 1, r1 - 1); r++ ) {
+                checkCell(search, c0, r);
+                if (c1 != c0)
+                    checkCell(search, c1, r);
+            }
+        }
+
+        if (search.closestPoint == null)
+            return null;
+        return new ClosestEdge(search.mindist, prev(search.closestEdge), search.closestPoint, shape);
+    }
+
+    private void checkCell( Search search, int col, int row ) {
+        if (col < 0 || col >= cols || row < 0 || row >= rows)
+            return;
+        int cell = row * cols + col;
+        for( int i = cellStart[cell]; i < cellStart[cell + 1]; i++ ) {
+            search.check(cellEdges[i]);
+        }
+    }
+
+    /**
+     * State of one closest edge search.
+     */
+    private class Search {
+        final Point click;
+        final boolean polygon;
+        double mindist = Double.MAX_VALUE;
+        int closestEdge = -1;
+        Point closestPoint;
+
+        Search( Point click, boolean polygon ) {
+            this.click = click;
+            this.polygon = polygon;
+        }
+
+        void check( int k ) {
+            if (k == 0 && !polygon)
+                return;
+            Point point = EditUtils.instance.closestPointOnEdge(Point.valueOf(xs[prev(k)],
+                    ys[prev(k)]), Point.valueOf(xs[k], ys[k]), click);
+            if (point == null)
+                return;
+            // in long as a zoomed in shape may span more pixels than an int square holds
+            long x = click.getX() - point.getX();
+            long y = click.getY() - point.getY();
+            double dist = Math.sqrt(x * x + y * y);
+            if (dist < mindist || (dist == mindist && k < closestEdge)) {
+                mindist = dist;
+                closestEdge = k;
+                closestPoint = point;
+            }
+        }
+    }
+}
@@ -47,6 +47,8 @@ public class EditBlackboard {
     private volatile int width;
     private boolean collapseVertices;
     PointCoordCalculator pointCoordCalculator;
+    /** unmodified copy of pointCoordCalculator shared by the LazyCoords */
+    private volatile PointCoordCalculator calculatorSnapshot;
     private volatile int batchingEvents = 0;
     private List<EditBlackboardEvent> batchedEvents = new LinkedList<EditBlackboardEvent>();
 
@@ -802,6 +804,22 @@ public class EditBlackboard {
         return pointCoordCalculator.toCoord(point);
     }
 
+    /**
+     * Returns a copy of the current calculator. The copy is never modified so all the
+     * coordinates added while the transforms stay the same can share it.
+     * 
+     * @return copy of the current calculator
+     */
+    PointCoordCalculator getCalculatorSnapshot() {
+        // Since all copies are equal this race condition doesn't matter.
+        PointCoordCalculator snapshot = calculatorSnapshot;
+        if (snapshot == null) {
+            snapshot = new PointCoordCalculator(pointCoordCalculator);
+            calculatorSnapshot = snapshot;
+        }
+        return snapshot;
+    }
+
     /**
      * Transforms a Coordinate into the point location it would occupy on the screen.
      * 
@@ -840,6 +858,7 @@ public class EditBlackboard {
 
             pointCoordCalculator.toScreen.setTransform(newToScreen);
             pointCoordCalculator.toWorld.setTransform(calculator.toWorld);
+            calculatorSnapshot = null;
 
             if (EditPlugin.isDebugging(EditPlugin.RUN_ASSERTIONS))
                 for( EditGeom geom : geometries ) {
@@ -983,7 +1002,7 @@ public class EditBlackboard {
      * @return the point closest to location or null if no point exists.
      */
     public synchronized Point overVertex( Point location, int radius, boolean ignore ) {
-        if (!ignore && getCoords(location.getX(), location.getY()).size() != 0)
+        if (!ignore && hasCoords(location.getX(), location.getY()))
             return location;
         for( int i = 1; i <= radius; i++ ) {
             Point result = findVertex(location, i);
@@ -1151,6 +1170,14 @@ public class EditBlackboard {
         }
     }
 
+    /**
+     * Checks for coordinates at the location without creating a list of them.
+     */
+    private boolean hasCoords( int x, int y ) {
+        List<LazyCoord> list = coordMapping.get(Point.valueOf(x, y));
+        return list != null && !list.isEmpty();
+    }
+
     /**
      * Searchs for a vertext in a square i pixels away from the location.
      * 
@@ -1167,22 +1194,22 @@ public class EditBlackboard {
         final int minY = location.getY() - i;
 
         for( int x = minX; x <= maxX; x++ ) {
-            if (getCoords(x, minY).size() > 0)
+            if (hasCoords(x, minY))
                 return Point.valueOf(x, minY);
         }
 
         for( int y = minY + 1; y <= maxY; y++ ) {
-            if (getCoords(maxX, y).size() > 0)
+            if (hasCoords(maxX, y))
                 return Point.valueOf(maxX, y);
         }
 
         for( int x = maxX - 1; x >= minX; x-- ) {
-            if (getCoords(x, maxY).size() > 0)
+            if (hasCoords(x, maxY))
                 return Point.valueOf(x, maxY);
         }
 
         for( int y = maxY - 1; y >= minY; y-- ) {
-            if (getCoords(minX, y).size() > 0)
+            if (hasCoords(minX, y))
                 return Point.valueOf(minX, y);
         }
 
@@ -1249,6 +1276,7 @@ public class EditBlackboard {
             }
 
             pointCoordCalculator.setMapToLayer(mapToLayer);
+            calculatorSnapshot = null;
 
             if (EditPlugin.isDebugging(EditPlugin.RUN_ASSERTIONS))
                 for( EditGeom geom : geometries ) {
@@ -35,7 +35,7 @@ public class LazyCoord extends Coordinate {
 
     public LazyCoord( Point point2, Coordinate coord2, EditBlackboard bb2 ) {
         this.start = point2;
-        pointCoordCalculator = new PointCoordCalculator(bb2.pointCoordCalculator);
+        pointCoordCalculator = bb2.getCalculatorSnapshot();
         this.blackboard = bb2;
         this.coord = coord2;
         Coordinate calculated = pointCoordCalculator.toCoord(start);
@@ -72,7 +72,7 @@ public class LazyCoord extends Coordinate {
         coord.y = coord.y + startEndDelta[1]-differenceY;
         super.x=coord.x;
         super.y=coord.y;
-        pointCoordCalculator = new PointCoordCalculator(blackboard.pointCoordCalculator);
+        pointCoordCalculator = blackboard.getCalculatorSnapshot();
         start = p;
 
         return new Coordinate(this);
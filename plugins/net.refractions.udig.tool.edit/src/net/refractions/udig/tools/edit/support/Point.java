@@ -9,11 +9,13 @@
  */
 package net.refractions.udig.tools.edit.support;
 
-
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 /**
- * A point implementation.  Each point for a given location is a singleton and immutable so points can be 
- * compared with ==.
+ * A point implementation.  Points are immutable and points on the screen are interned, however
+ * points off screen may not be and the cache is dropped when it grows too large, so compare
+ * points with equals.
  * 
  * @author jones
  * @since 1.1.0
@@ -33,25 +35,83 @@ public class Point{
     public int getX(){ return x; }
     public int getY(){ return y; }
 
-    private static final Point[][] cache=new Point[256][256];
+    /** smallest coordinate that is interned, allows for shapes extending off screen */
+    private static final int MIN = -1024;
+    /** number of coordinates interned along each axis, enough for large screens */
+    private static final int RANGE = 8192;
+    /** points are interned in square blocks of BLOCK_SIZE x BLOCK_SIZE that are created on demand */
+    private static final int BLOCK_BITS = 6;
+    private static final int BLOCK_SIZE = 1 << BLOCK_BITS;
+    private static final int BLOCKS = RANGE >> BLOCK_BITS;
+    /** blocks kept before the cache is dropped, about a 2048x2048 area of points */
+    static final int MAX_BLOCKS = 1024;
+
+    /**
+     * Cache of points; blocks and points are published with compare and set so looking up
+     * a point never blocks and only the blocks of the screen areas actually edited use memory.
+     */
+    private static final AtomicReferenceArray<AtomicReferenceArray<Point>> cache = new AtomicReferenceArray<AtomicReferenceArray<Point>>(
+            BLOCKS * BLOCKS);
+    /** number of blocks in the cache */
+    private static final AtomicInteger blockCount = new AtomicInteger();
+
     /**
-     * Get a point for location x,y 
+     * Get a point for location x,y. Locations within the screen (and a margin around it) are
+     * interned so the same instance is returned for every call.  This method is safe to call
+     * from any thread and does not lock.
      *
      * @return a point for location x,y
      */
-    public synchronized static Point valueOf(int x, int y){
-        if( x>-1 && x<256 &&
-                y>-1 && y<256 ){
-            if( cache[x][y]==null ){
-                cache[x][y]=new Point(x,y);
+    public static Point valueOf( int x, int y ) {
+        int col = x - MIN;
+        int row = y - MIN;
+        if (col < 0 || col >= RANGE || row < 0 || row >= RANGE) {
+            return new Point(x, y);
+        }
+        int blockIndex = (row >> BLOCK_BITS) * BLOCKS + (col >> BLOCK_BITS);
+        AtomicReferenceArray<Point> block = cache.get(blockIndex);
+        if (block == null) {
+            if (blockCount.get() >= MAX_BLOCKS) {
+                clearCache();
+            }
+            block = new AtomicReferenceArray<Point>(BLOCK_SIZE * BLOCK_SIZE);
+            if (cache.compareAndSet(blockIndex, null, block)) {
+                blockCount.incrementAndGet();
+            } else {
+                block = cache.get(blockIndex);
+                if (block == null) {
+                    return new Point(x, y); // dropped by another thread just now
+                }
             }
-            return cache[x][y];
         }
-        
-        return new Point(x,y);
-        
+        int index = ((row & (BLOCK_SIZE - 1)) << BLOCK_BITS) | (col & (BLOCK_SIZE - 1));
+        Point point = block.get(index);
+        if (point == null) {
+            block.compareAndSet(index, null, new Point(x, y));
+            point = block.get(index);
+        }
+        return point;
     }
     
+    /**
+     * Drops the cached points so their memory can be reclaimed; points looked up afterwards are
+     * new instances.
+     */
+    static void clearCache() {
+        for( int i = 0; i < BLOCKS * BLOCKS; i++ ) {
+            if (cache.getAndSet(i, null) != null) {
+                blockCount.decrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * @return the number of blocks of points cached
+     */
+    static int getBlockCount() {
+        return blockCount.get();
+    }
+
     @Override
     public boolean equals( Object obj ) {
         if( obj==this)
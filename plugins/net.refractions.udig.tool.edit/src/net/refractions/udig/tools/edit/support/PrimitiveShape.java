@@ -50,8 +50,13 @@ public class PrimitiveShape implements Iterable<Point>, Shape {
     private final AtomicReference<Mutator> mutable = new AtomicReference<Mutator>();
     private final EditGeom owner;
     private Envelope envelope;
+    /** grid index of the edges, built on demand and dropped when the points change */
+    private volatile EdgeIndex edgeIndex;
     String type = "SHELL"; //$NON-NLS-1$
 
+    /** shapes with fewer points are searched edge by edge */
+    static final int EDGE_INDEX_THRESHOLD = 128;
+
     public PrimitiveShape( EditGeom owner ) {
         this.owner = owner;
     }
@@ -124,6 +129,7 @@ public class PrimitiveShape implements Iterable<Point>, Shape {
          * @param coords corresponding coordinate or null.
          */
         public List<LazyCoord> addPoint( int i, Point p, List<Coordinate> coords ) {
+            edgeIndex = null;
             List<Coordinate> c = coords;
             PointCoordMap bag = getBag(i, p);
             if (c == null)
@@ -142,7 +148,7 @@ public class PrimitiveShape implements Iterable<Point>, Shape {
                 index = 0;
             else if (bag.coords.size() > 1) {
                 LazyCoord lazyCoord = bag.coords.get(bag.coords.size() - 2);
-                index = coordinates.indexOf(lazyCoord) + 1;
+                index = indexAfter(lazyCoord);
             } else if (i == 0) {
                 index = 0;
             } else {
@@ -151,7 +157,7 @@ public class PrimitiveShape implements Iterable<Point>, Shape {
                 if (lastbag == bag)
                     lastbag = points.get(i - 2);
 
-                index = coordinates.indexOf(lastbag.coords.get(lastbag.coords.size() - 1)) + 1;
+                index = indexAfter(lastbag.coords.get(lastbag.coords.size() - 1));
             }
 
             for( LazyCoord coord : lazyCoords ) {
@@ -163,6 +169,17 @@ public class PrimitiveShape implements Iterable<Point>, Shape {
             return lazyCoords;
         }
 
+        /**
+         * Returns the index following the coordinate. Points are usually appended so the
+         * coordinate is checked against the last coordinate before searching the list.
+         */
+        private int indexAfter( LazyCoord coord ) {
+            int last = coordinates.size() - 1;
+            if (last > -1 && coordinates.get(last) == coord)
+                return last + 1;
+            return coordinates.indexOf(coord) + 1;
+        }
+
         private List<LazyCoord> addAll( int i, List<LazyCoord> coordinates, Point p,
                 List<Coordinate> c ) {
             int j = i;
@@ -209,6 +226,7 @@ public class PrimitiveShape implements Iterable<Point>, Shape {
          * @param i index of point to remove
          */
         public Point removePoint( int i ) {
+            edgeIndex = null;
             PointCoordMap p = points.remove(i);
             pointsToModel.remove(p.point);
             List<LazyCoord> coords = p.coords;
@@ -255,6 +273,7 @@ public class PrimitiveShape implements Iterable<Point>, Shape {
             }
 
             PointCoordMap shapePoint = mods.remove(firstBag);
+            edgeIndex = null;
             points.remove(shapePoint);
             coordinates.removeAll(shapePoint.coords);
             getEditGeom().setChanged(true);
@@ -271,6 +290,7 @@ public class PrimitiveShape implements Iterable<Point>, Shape {
         }
 
         public LazyCoord removePoint( int pointIndex, Coordinate coord ) {
+            edgeIndex = null;
 
             PointCoordMap p = points.get(pointIndex);
             LazyCoord lcoord = null;
@@ -309,6 +329,7 @@ public class PrimitiveShape implements Iterable<Point>, Shape {
          * Resets shape
          */
         public void clear() {
+            edgeIndex = null;
             getEditGeom().setChanged(true);
             coordinates.clear();
             points.clear();
@@ -352,6 +373,7 @@ public class PrimitiveShape implements Iterable<Point>, Shape {
                 }
 
                 public void remove() {
+                    edgeIndex = null;
                     iter.remove();
                 }
 
@@ -367,6 +389,7 @@ public class PrimitiveShape implements Iterable<Point>, Shape {
                     }
                     maps.add(current);
                     current.point = o;
+                    edgeIndex = null;
                     getEditGeom().setChanged(true);
                 }
 
@@ -374,6 +397,7 @@ public class PrimitiveShape implements Iterable<Point>, Shape {
 
                     ArrayList<LazyCoord> list = new ArrayList<LazyCoord>();
                     list.add(new LazyCoord(o, getEditBlackboard().toCoord(o), getEditBlackboard()));
+                    edgeIndex = null;
                     iter.add(new PointCoordMap(o, list));
                     getEditGeom().setChanged(true);
                 }
@@ -420,6 +444,7 @@ public class PrimitiveShape implements Iterable<Point>, Shape {
                 public void remove() {
                     iter.remove();
                     PointCoordMap bag = coordsToModel.remove(current);
+                    edgeIndex = null;
                     points.remove(bag.point);
                 }
 
@@ -439,6 +464,7 @@ public class PrimitiveShape implements Iterable<Point>, Shape {
          *
          */
         public void reverse() {
+            edgeIndex = null;
             Collections.reverse(points);
             Collections.reverse(coordinates);
         }
@@ -473,6 +499,9 @@ public class PrimitiveShape implements Iterable<Point>, Shape {
         private HashMap<Point, List<Point>> transformInternal(
                 PointCoordCalculator pointCoordCalculator ) {
             List<PointCoordMap> oldPoints = points;
+            edgeIndex = null;
+            // the coordinates share a copy of the calculator, which is never modified
+            PointCoordCalculator calculatorCopy = new PointCoordCalculator(pointCoordCalculator);
 
             HashMap<Point, List<Point>> oldPointToNew = new HashMap<Point, List<Point>>();
 
@@ -505,7 +534,7 @@ public class PrimitiveShape implements Iterable<Point>, Shape {
                         iter.remove();
                     }
 
-                    c.pointCoordCalculator = new PointCoordCalculator(pointCoordCalculator);
+                    c.pointCoordCalculator = calculatorCopy;
                     c.start = newPoint;
 
                     List<Point> pointMapping = oldPointToNew.get(oldPoint);
@@ -557,6 +586,9 @@ public class PrimitiveShape implements Iterable<Point>, Shape {
 
         private Map< ? extends Point, ? extends List<Point>> translate( AffineTransform oldToNew, PointCoordCalculator pointCoordCalculator ) {
             List<PointCoordMap> oldPoints = points;
+            edgeIndex = null;
+            // the coordinates share a copy of the calculator, which is never modified
+            PointCoordCalculator calculatorCopy = new PointCoordCalculator(pointCoordCalculator);
 
             HashMap<Point, List<Point>> oldPointToNew = new HashMap<Point, List<Point>>();
 
@@ -581,7 +613,7 @@ public class PrimitiveShape implements Iterable<Point>, Shape {
                         iter.remove();
                     }
 
-                    c.pointCoordCalculator = new PointCoordCalculator(pointCoordCalculator);
+                    c.pointCoordCalculator = calculatorCopy;
                     c.start = newPoint;
 
                     List<Point> pointMapping = oldPointToNew.get(oldPoint);
@@ -641,6 +673,7 @@ public class PrimitiveShape implements Iterable<Point>, Shape {
          */
         public void move( Point start, Point end, LazyCoord coord ) {
 
+            edgeIndex = null;
             PointCoordMap toRemove = null;
 
             for( PointCoordMap map : pointsToModel.get(start) ) {
@@ -792,6 +825,7 @@ public class PrimitiveShape implements Iterable<Point>, Shape {
         }
 
         public void move( int deltaX, int deltaY ) {
+            edgeIndex = null;
             Map<Point, List<PointCoordMap>> newPointsToModel = new HashMap<Point, List<PointCoordMap>>();
 
             for( Point point : this ) {
@@ -956,6 +990,10 @@ public class PrimitiveShape implements Iterable<Point>, Shape {
             return null;
         }
 
+        if (getNumPoints() >= EDGE_INDEX_THRESHOLD) {
+            return getEdgeIndex().getClosestEdge(click, startIndex == 0, this);
+        }
+
         double mindist = Double.MAX_VALUE;
 
         int prev = -1;
@@ -986,6 +1024,33 @@ public class PrimitiveShape implements Iterable<Point>, Shape {
         return new ClosestEdge(mindist, prev, closestPoint, this);
     }
 
+    /**
+     * Returns the edge index of the shape, building it if the points changed since it was last
+     * used.
+     */
+    private EdgeIndex getEdgeIndex() {
+        EdgeIndex index = edgeIndex;
+        if (index != null)
+            return index;
+        // the points are modified while holding the blackboard's lock
+        synchronized (getEditBlackboard()) {
+            index = edgeIndex;
+            if (index != null)
+                return index;
+            int numPoints = points.size();
+            int[] xs = new int[numPoints];
+            int[] ys = new int[numPoints];
+            for( int i = 0; i < numPoints; i++ ) {
+                Point point = points.get(i).point;
+                xs[i] = point.getX();
+                ys[i] = point.getY();
+            }
+            index = new EdgeIndex(xs, ys, numPoints);
+            edgeIndex = index;
+            return index;
+        }
+    }
+
     /**
      * Returns the bounding box of the Shape in pixel space.
      * 
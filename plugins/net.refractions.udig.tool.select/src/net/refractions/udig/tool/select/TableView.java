@@ -353,6 +353,7 @@ public class TableView extends ViewPart implements ISelectionProvider, IUDIGView
         
         table = new FeatureTableControl(provider);        
         table.createTableControl( parent );
+        table.setStatusLineManager(getViewSite().getActionBars().getStatusLineManager());
         table.setSelectionColor(new IProvider<RGB>(){
 
             public RGB get(Object... params) {
@@ -1113,6 +1114,9 @@ public class TableView extends ViewPart implements ISelectionProvider, IUDIGView
                     attributeCombo.select(0);
                     
                     AdaptableFeatureCollection adaptableCollection = new AdaptableFeatureCollection(features);
+                    // lets the table read large layers a page at a time
+                    adaptableCollection.addAdapter(featureSource);
+                    adaptableCollection.addAdapter(query);
 
                     if( featureSource instanceof FeatureStore )
                         enableEditing(featureTypeCellModifier, query, adaptableCollection);
@@ -0,0 +1,130 @@
+/*
+ *    uDig - User Friendly Desktop Internet GIS client
+ *    http://udig.refractions.net
+ *    (C) 2012, Refractions Research Inc.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * (http://www.eclipse.org/legal/epl-v10.html), and the Refractions BSD
+ * License v1.0 (http://udig.refractions.net/files/bsd3-v10.html).
+ */
+package net.refractions.udig.ui;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+
+import net.refractions.udig.ui.graphics.AWTSWTImageUtils;
+
+import org.eclipse.swt.graphics.ImageData;
+import org.eclipse.swt.graphics.RGB;
+import org.junit.Ignore;
+import org.junit.Test;
+
+@SuppressWarnings("nls")
+public class AWTSWTImageUtilsTest {
+
+    private static final int[] TYPES = new int[]{BufferedImage.TYPE_3BYTE_BGR,
+            BufferedImage.TYPE_4BYTE_ABGR, BufferedImage.TYPE_4BYTE_ABGR_PRE,
+            BufferedImage.TYPE_INT_RGB, BufferedImage.TYPE_INT_BGR, BufferedImage.TYPE_INT_ARGB,
+            BufferedImage.TYPE_INT_ARGB_PRE};
+
+    private static BufferedImage createImage( int type, int width, int height ) {
+        BufferedImage image = new BufferedImage(width, height, type);
+        Graphics2D graphics = image.createGraphics();
+        graphics.setColor(Color.RED);
+        graphics.fillRect(0, 0, width / 2, height);
+        graphics.setColor(Color.BLUE);
+        graphics.fillRect(width / 2, 0, width - width / 2, height);
+        graphics.dispose();
+        return image;
+    }
+
+    @Test
+    public void testColors() throws Exception {
+        for( int type : TYPES ) {
+            BufferedImage image = createImage(type, 4, 2);
+            ImageData data = AWTSWTImageUtils.createImageData(image);
+
+            assertEquals("type " + type, new RGB(255, 0, 0), data.palette.getRGB(data.getPixel(0, 1)));
+            assertEquals("type " + type, new RGB(0, 0, 255), data.palette.getRGB(data.getPixel(3, 1)));
+            if (image.getColorModel().hasAlpha()) {
+                assertEquals("type " + type, 255, data.getAlpha(3, 1));
+            } else {
+                assertNull("type " + type, data.alphaData);
+            }
+        }
+    }
+
+    @Test
+    public void testAlpha() throws Exception {
+        int[] types = new int[]{BufferedImage.TYPE_4BYTE_ABGR, BufferedImage.TYPE_INT_ARGB};
+        for( int type : types ) {
+            BufferedImage image = new BufferedImage(3, 1, type);
+            image.setRGB(0, 0, 0x80ff0000);
+            image.setRGB(1, 0, 0xff00ff00);
+            ImageData data = AWTSWTImageUtils.createImageData(image);
+
+            assertEquals("type " + type, 0x80, data.getAlpha(0, 0));
+            assertEquals("type " + type, new RGB(255, 0, 0), data.palette.getRGB(data.getPixel(0, 0)));
+            assertEquals("type " + type, 0xff, data.getAlpha(1, 0));
+            assertEquals("type " + type, 0, data.getAlpha(2, 0));
+        }
+    }
+
+    @Test
+    public void testSubimage() throws Exception {
+        int[] types = new int[]{BufferedImage.TYPE_3BYTE_BGR, BufferedImage.TYPE_INT_ARGB};
+        for( int type : types ) {
+            BufferedImage image = createImage(type, 8, 4).getSubimage(2, 1, 4, 2);
+            ImageData data = AWTSWTImageUtils.createImageData(image);
+
+            assertEquals("type " + type, 4, data.width);
+            assertEquals("type " + type, new RGB(255, 0, 0), data.palette.getRGB(data.getPixel(1, 1)));
+            assertEquals("type " + type, new RGB(0, 0, 255), data.palette.getRGB(data.getPixel(2, 1)));
+        }
+    }
+
+    @Test
+    public void testReuse() throws Exception {
+        BufferedImage image = createImage(BufferedImage.TYPE_INT_ARGB, 4, 2);
+        ImageData data = AWTSWTImageUtils.createImageData(image, null);
+        byte[] alpha = data.alphaData;
+
+        assertSame(data, AWTSWTImageUtils.createImageData(image, data));
+        assertSame(alpha, data.alphaData);
+
+        BufferedImage larger = createImage(BufferedImage.TYPE_INT_ARGB, 8, 2);
+        ImageData other = AWTSWTImageUtils.createImageData(larger, data);
+        assertEquals(8, other.width);
+        assertEquals(new RGB(0, 0, 255), other.palette.getRGB(other.getPixel(7, 0)));
+    }
+
+    /**
+     * Measures the time to convert a screen sized frame for each image type, converting into
+     * the ImageData of the previous frame; ignored as it is a benchmark rather than a test.
+     */
+    @Ignore
+    @Test
+    public void benchmarkCreateImageData() throws Exception {
+        int frames = 50;
+        for( int type : TYPES ) {
+            BufferedImage image = createImage(type, 3840, 2160);
+            ImageData data = null;
+            // warm up
+            for( int i = 0; i < 5; i++ ) {
+                data = AWTSWTImageUtils.createImageData(image, data);
+            }
+            long start = System.nanoTime();
+            for( int i = 0; i < frames; i++ ) {
+                data = AWTSWTImageUtils.createImageData(image, data);
+            }
+            long time = System.nanoTime() - start;
+            System.out.println("type " + type + ": " + (time / frames / 1000000.0) + " ms/frame");
+        }
+    }
+}
@@ -0,0 +1,111 @@
+/* uDig - User Friendly Desktop Internet GIS client
+ * http://udig.refractions.net
+ * (C) 2012, Refractions Research Inc.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * (http://www.eclipse.org/legal/epl-v10.html), and the Refractions BSD
+ * License v1.0 (http://udig.refractions.net/files/bsd3-v10.html).
+ */
+package net.refractions.udig.ui;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.geotools.data.DataUtilities;
+import org.geotools.data.FeatureSource;
+import org.geotools.data.Query;
+import org.geotools.data.memory.MemoryDataStore;
+import org.geotools.feature.simple.SimpleFeatureBuilder;
+import org.geotools.filter.text.cql2.CQL;
+import org.junit.Before;
+import org.junit.Test;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+import org.opengis.filter.Filter;
+
+@SuppressWarnings("nls")
+public class PagedFeatureListTest {
+
+    /** enough features for a partial last page */
+    private static final int COUNT = PagedFeatureList.PAGE_SIZE * 2 + 10;
+
+    private FeatureSource<SimpleFeatureType, SimpleFeature> source;
+    private PagedFeatureList list;
+
+    @Before
+    public void setUp() throws Exception {
+        SimpleFeatureType type = DataUtilities.createType("type", "name:String,id:int");
+        SimpleFeature[] features = new SimpleFeature[COUNT];
+        for( int i = 0; i < COUNT; i++ ) {
+            features[i] = SimpleFeatureBuilder.build(type, new Object[]{"feature" + i, i},
+                    "feature" + i);
+        }
+        source = new MemoryDataStore(features).getFeatureSource("type");
+        list = new PagedFeatureList(source, new Query("type"), COUNT);
+    }
+
+    @Test
+    public void testReadsEveryFeatureOnce() throws Exception {
+        assertEquals(COUNT, list.size());
+        Set<String> fids = new HashSet<String>();
+        for( SimpleFeature feature : list ) {
+            assertNotNull(feature);
+            fids.add(feature.getID());
+        }
+        assertEquals(COUNT, fids.size());
+        assertEquals(list.get(PagedFeatureList.PAGE_SIZE + 1).getID(), list.get(
+                PagedFeatureList.PAGE_SIZE + 1).getID());
+    }
+
+    @Test
+    public void testRefresh() throws Exception {
+        list.get(0);
+        list.refresh(-10);
+        assertEquals(COUNT - 10, list.size());
+        assertNotNull(list.get(COUNT - 11));
+        list.refresh(20);
+        // features past the end of the query are not there
+        assertNull(list.get(COUNT + 5));
+    }
+
+    @Test
+    public void testGetFeatures() throws Exception {
+        List<SimpleFeature> found = list.getFeatures(Arrays.asList("feature3", "feature700",
+                "missing"));
+        assertEquals(2, found.size());
+        assertEquals(COUNT, list.count());
+        assertTrue(list.getFeatures(new HashSet<String>()).isEmpty());
+    }
+
+    @Test
+    public void testLoadedRows() throws Exception {
+        assertNull(list.getLoaded(PagedFeatureList.PAGE_SIZE + 3));
+        Set<String> fids = new HashSet<String>(Arrays.asList(list.get(
+                PagedFeatureList.PAGE_SIZE + 3).getID()));
+        assertEquals(list.get(PagedFeatureList.PAGE_SIZE + 3), list
+                .getLoaded(PagedFeatureList.PAGE_SIZE + 3));
+        assertEquals(PagedFeatureList.PAGE_SIZE + 3, list.indexOfLoaded(fids));
+        assertEquals(-1, list.indexOfLoaded(new HashSet<String>(Arrays.asList("missing"))));
+    }
+
+    @Test
+    public void testIdQuery() throws Exception {
+        Query query = list.idQuery(CQL.toFilter("id < 20"));
+        query.setStartIndex(5);
+        query.setMaxFeatures(10);
+        assertEquals(10, source.getFeatures(query).size());
+
+        query = list.idQuery(Filter.INCLUDE);
+        query.setStartIndex(COUNT - 4);
+        query.setMaxFeatures(10);
+        assertEquals(4, source.getFeatures(query).size());
+    }
+}
@@ -31,6 +31,20 @@ public class AttributeComparator implements Comparator<SimpleFeature>, Serializa
         this.xpath=xpath;
     }
 
+    /**
+     * @return the attribute compared
+     */
+    public String getXPath() {
+        return xpath;
+    }
+
+    /**
+     * @return true if the smallest values are sorted first
+     */
+    public boolean isAscending() {
+        return sortDir == 1;
+    }
+
     @SuppressWarnings("unchecked")
     public int compare(SimpleFeature f0, SimpleFeature f1) {
         
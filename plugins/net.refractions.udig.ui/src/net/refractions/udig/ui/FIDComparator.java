@@ -39,6 +39,13 @@ public class FIDComparator implements Comparator<SimpleFeature>, Serializable {
             throw new IllegalArgumentException("dir must be SWT.UP or SWT.DOWN was: "+dir); //$NON-NLS-1$
     }
     
+    /**
+     * @return true if the smallest fids are sorted first
+     */
+    public boolean isAscending() {
+        return dir == 1;
+    }
+
     public int compare( SimpleFeature o1, SimpleFeature o2 ) {
         
         String id1 = o1.getID();
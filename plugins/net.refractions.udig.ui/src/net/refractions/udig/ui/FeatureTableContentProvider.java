@@ -9,9 +9,11 @@
  */
 package net.refractions.udig.ui;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
@@ -34,6 +36,7 @@ import org.eclipse.swt.widgets.Display;
 import org.eclipse.swt.widgets.Scrollable;
 import org.eclipse.swt.widgets.Table;
 import org.eclipse.ui.PlatformUI;
+import org.geotools.factory.CommonFactoryFinder;
 import org.geotools.feature.CollectionEvent;
 import org.geotools.feature.CollectionListener;
 import org.geotools.feature.FeatureCollection;
@@ -41,6 +44,9 @@ import org.geotools.feature.FeatureCollections;
 import org.geotools.feature.FeatureIterator;
 import org.opengis.feature.simple.SimpleFeature;
 import org.opengis.feature.simple.SimpleFeatureType;
+import org.opengis.filter.FilterFactory;
+import org.opengis.filter.sort.SortBy;
+import org.opengis.filter.sort.SortOrder;
 
 class FeatureTableContentProvider implements ILazyContentProvider, IProvider<Collection<SimpleFeature>> {
 
@@ -64,6 +70,19 @@ class FeatureTableContentProvider implements ILazyContentProvider, IProvider<Col
             TableViewer viewer = FeatureTableContentProvider.this.owningFeatureTableControl
                     .getViewer();
 
+            if (features instanceof PagedFeatureList) {
+                // the pages are read again from the feature source
+                int change = 0;
+                if (event.getEventType() == CollectionEvent.FEATURES_ADDED)
+                    change = changed.length;
+                else if (event.getEventType() == CollectionEvent.FEATURES_REMOVED)
+                    change = -changed.length;
+                ((PagedFeatureList) features).refresh(change);
+                viewer.setItemCount(features.size());
+                viewer.getTable().clearAll();
+                return;
+            }
+
             switch( event.getEventType() ) {
             case CollectionEvent.FEATURES_ADDED:
                 for( int i = 0; i < changed.length; i++ ) {
@@ -108,10 +127,11 @@ class FeatureTableContentProvider implements ILazyContentProvider, IProvider<Col
     // Memory bound cache of features for table
     // May be sorted according to FID or any of the attributes so don't rely on any given order because
     // its liable to change.  User Lookup instead for quickly locating a features
-    List<SimpleFeature> features = Collections.synchronizedList( new ArrayList<SimpleFeature>());
+    // For large feature sources this is a PagedFeatureList that reads the features as they are shown
+    volatile List<SimpleFeature> features = Collections.synchronizedList( new ArrayList<SimpleFeature>());
 
     /**
-     * Contains same features as Features but sorted by id
+     * Contains same features as Features but sorted by id.  Empty if the features are paged.
      */
     Map<String, SimpleFeature> lookup = new HashMap<String, SimpleFeature>();
     /**
@@ -149,7 +169,7 @@ class FeatureTableContentProvider implements ILazyContentProvider, IProvider<Col
                     return;
                 }
             }
-            features.clear();
+            clearFeatures();
 
             if (oldInput != null) {
             	FeatureCollection<SimpleFeatureType, SimpleFeature> old = ((FeatureCollection<SimpleFeatureType, SimpleFeature>) oldInput);
@@ -183,7 +203,7 @@ class FeatureTableContentProvider implements ILazyContentProvider, IProvider<Col
             
             disposed=true;
         }
-        features.clear();
+        clearFeatures();
 
         if (monitor != NULL) {
             monitor.setCanceled(true);
@@ -201,23 +221,113 @@ class FeatureTableContentProvider implements ILazyContentProvider, IProvider<Col
             }
         }
     }
+    private void clearFeatures() {
+        if (features instanceof PagedFeatureList) {
+            features = Collections.synchronizedList(new ArrayList<SimpleFeature>());
+        } else {
+            features.clear();
+        }
+        lookup.clear();
+    }
     public Collection<SimpleFeature> get(Object... params) {
         return features;
     }
-    public void updateElement( int index ) {
-        if (index >= features.size()) {
+    public void updateElement( final int index ) {
+        List<SimpleFeature> current = features;
+        if (index >= current.size()) {
             owningFeatureTableControl.getViewer().replace("", index); //$NON-NLS-1$
         } else if (monitor != NULL && index == 0 && !updating) {
             owningFeatureTableControl.getViewer().replace(FeatureTableControl.LOADING, 0);
         } else {
             int resolvedIndex=index;
             if( owningFeatureTableControl.getViewer().getTable().getSortDirection()==SWT.UP )
-                resolvedIndex=features.size()-index-1;
-            SimpleFeature feature = features.get(resolvedIndex);
+                resolvedIndex=current.size()-index-1;
+            SimpleFeature feature;
+            if (current instanceof PagedFeatureList) {
+                // read the page in the background and redraw the row when it arrives
+                final Table table = owningFeatureTableControl.getViewer().getTable();
+                feature = ((PagedFeatureList) current).getIfLoaded(resolvedIndex, new Runnable(){
+                    public void run() {
+                        table.getDisplay().asyncExec(new Runnable(){
+                            public void run() {
+                                if (!table.isDisposed() && index < table.getItemCount())
+                                    table.clear(index);
+                            }
+                        });
+                    }
+                });
+                if (feature == null) {
+                    owningFeatureTableControl.getViewer().replace(FeatureTableControl.LOADING, index);
+                    return;
+                }
+            } else {
+                feature = current.get(resolvedIndex);
+            }
             owningFeatureTableControl.getViewer().replace(feature, index);
         }
     }
 
+    /**
+     * Returns the index in {@link #features} of a row of the table, the table shows the features
+     * in reverse when it is sorted {@link SWT#UP}.
+     */
+    int toFeatureIndex( int row ) {
+        if( owningFeatureTableControl.getViewer().getTable().getSortDirection()==SWT.UP )
+            return features.size()-row-1;
+        return row;
+    }
+
+    /**
+     * Returns the feature shown in a row of the table without reading from the feature source.
+     *
+     * @param row row of the table
+     * @return the feature or null if there is no such row or its page is not in memory
+     */
+    SimpleFeature getLoadedFeature( int row ) {
+        List<SimpleFeature> current = features;
+        int index = toFeatureIndex(row);
+        if (index < 0 || index >= current.size())
+            return null;
+        if (current instanceof PagedFeatureList)
+            return ((PagedFeatureList) current).getLoaded(index);
+        return current.get(index);
+    }
+
+    /**
+     * Sorts the features.  Paged features are sorted by the feature source if it is able to.
+     *
+     * @param comparator comparator sorting the features from the first row to the last
+     * @return false if the features could not be sorted
+     */
+    boolean sort( Comparator<SimpleFeature> comparator ) {
+        List<SimpleFeature> current = features;
+        if (current instanceof PagedFeatureList) {
+            PagedFeatureList paged = (PagedFeatureList) current;
+            SortBy[] sortBy = toSortBy(comparator);
+            if (sortBy == null || !paged.canSort(sortBy))
+                return false;
+            paged.setSortBy(sortBy);
+            return true;
+        }
+        Collections.sort(current, comparator);
+        return true;
+    }
+
+    private SortBy[] toSortBy( Comparator<SimpleFeature> comparator ) {
+        if (comparator instanceof FIDComparator) {
+            return new SortBy[]{((FIDComparator) comparator).isAscending()
+                    ? SortBy.NATURAL_ORDER
+                    : SortBy.REVERSE_ORDER};
+        }
+        if (comparator instanceof AttributeComparator) {
+            AttributeComparator attributeComparator = (AttributeComparator) comparator;
+            FilterFactory factory = CommonFactoryFinder.getFilterFactory(null);
+            return new SortBy[]{factory.sort(attributeComparator.getXPath(), attributeComparator
+                    .isAscending() ? SortOrder.ASCENDING : SortOrder.DESCENDING)};
+        }
+        return null;
+    }
+
     private class ContentLoader implements ISafeRunnable {
 
         private final FeatureCollection<SimpleFeatureType, SimpleFeature> input;
@@ -235,6 +345,14 @@ class FeatureTableContentProvider implements ILazyContentProvider, IProvider<Col
                 return;
             UiPlugin.trace(Trace.FEATURE_TABLE, FeatureTableContentProvider.class, 
                     "Starting ContentLoader", null); //$NON-NLS-1$
+            PagedFeatureList paged = PagedFeatureList.create(input);
+            if (paged != null) {
+                // only the visible rows are read
+                features = paged;
+                updateTable(input, true);
+                setEnabled(true);
+                return;
+            }
             setEnabled(false);
             int i = 0;
             final int[] monitorUpdate = new int[1];
@@ -469,7 +587,14 @@ class FeatureTableContentProvider implements ILazyContentProvider, IProvider<Col
                 }
                 
                 startLoading();
-                
+
+                if (features instanceof PagedFeatureList) {
+                    PagedFeatureList paged = (PagedFeatureList) features;
+                    paged.refresh(paged.count() - paged.size());
+                    updateTable(true);
+                    return;
+                }
+
                 SimpleFeatureType schema = newFeatures.getSchema();
                 FeatureIterator<SimpleFeature> iter=newFeatures.features();
                 try{
@@ -552,6 +677,8 @@ class FeatureTableContentProvider implements ILazyContentProvider, IProvider<Col
      * An exception will be thrown otherwise.
      */
     public void assertInternallyConsistent(){
+        if( features instanceof PagedFeatureList )
+            return; // nothing is kept in memory
         if( features.size()!=lookup.size())
             throw new AssertionError("lookup table has "+lookup.size()+" features while feature list has "+features.size()+" features"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
         
@@ -575,6 +702,20 @@ class FeatureTableContentProvider implements ILazyContentProvider, IProvider<Col
             @SuppressWarnings("unchecked")
             public void run() {
                 Collection<String> selectionFids = owningFeatureTableControl.getSelectionProvider().getSelectionFids();
+                if (features instanceof PagedFeatureList) {
+                    PagedFeatureList paged = (PagedFeatureList) features;
+                    try {
+                        List<SimpleFeature> selected = paged.getFeatures(selectionFids);
+                        deletedFeatures.addAll(selected);
+                        paged.refresh(-selected.size());
+                    } catch (IOException e) {
+                        UiPlugin.log("Error reading the selected features", e); //$NON-NLS-1$
+                    }
+                    selectionFids.clear();
+                    owningFeatureTableControl.getViewer().setItemCount(features.size());
+                    owningFeatureTableControl.getViewer().getTable().clearAll();
+                    return;
+                }
                 for( Iterator<SimpleFeature> iter = features.iterator(); iter.hasNext(); ) {
                     SimpleFeature feature =  iter.next();
                     if( selectionFids.contains(feature.getID()) ){
@@ -11,8 +11,10 @@
 package net.refractions.udig.ui;
 
 import java.lang.reflect.Array;
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
-import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
 import java.util.Set;
@@ -27,6 +29,7 @@ import net.refractions.udig.ui.internal.Messages;
 
 import org.eclipse.core.runtime.IAdaptable;
 import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.jface.action.IStatusLineManager;
 import org.eclipse.jface.action.MenuManager;
 import org.eclipse.jface.dialogs.MessageDialogWithToggle;
 import org.eclipse.jface.preference.IPreferenceStore;
@@ -57,6 +60,8 @@ import org.eclipse.swt.widgets.Table;
 import org.eclipse.swt.widgets.TableColumn;
 import org.eclipse.swt.widgets.Text;
 import org.eclipse.ui.part.PageBook;
+import org.geotools.data.Query;
+import org.geotools.factory.CommonFactoryFinder;
 import org.geotools.feature.FeatureCollection;
 import org.geotools.filter.text.cql2.CQL;
 import org.geotools.filter.text.cql2.CQLException;
@@ -64,6 +69,7 @@ import org.opengis.feature.simple.SimpleFeature;
 import org.opengis.feature.simple.SimpleFeatureType;
 import org.opengis.feature.type.AttributeDescriptor;
 import org.opengis.filter.Filter;
+import org.opengis.filter.FilterFactory;
 import org.opengis.filter.Id;
 import org.opengis.filter.identity.FeatureId;
 
@@ -144,6 +150,8 @@ public class FeatureTableControl implements ISelectionProvider {
 
     private boolean shown;
 
+    private IStatusLineManager statusLine;
+
     /**
      * Construct <code>FeatureTableControl</code>.
      * <p>
@@ -385,38 +393,50 @@ public class FeatureTableControl implements ISelectionProvider {
                 Collection<String> selectionFids = selectionProvider.getSelectionFids();
 
                 table.deselect(index);
+                boolean changed;
                 if ((e.stateMask & SWT.MOD2) != 0 && lastIndex != -1) {
                     if (lastIndex == index)
                         return;
-                    handleSelecteRange(table, index, provider, selectionFids);
+                    changed = handleSelecteRange(table, index, provider, selectionFids);
                 } else if ((e.stateMask & SWT.MOD1) != 0) {
-                    handleXORSelect(table, index, provider, selectionFids);
+                    changed = handleXORSelect(table, index, provider, selectionFids);
                 } else {
                     if (lastIndex == index)
                         return;
-                    handleDefault(table, index, provider, selectionFids);
+                    changed = handleDefault(table, index, provider, selectionFids);
                 }
 
-                selectionProvider.notifyListeners();
+                if (changed)
+                    selectionProvider.notifyListeners();
             }
 
-            private void handleDefault( final Table table, int index,
+            private boolean handleDefault( final Table table, int index,
                     FeatureTableContentProvider provider, Collection<String> selectionFids ) {
                 if (index == -1) {
                     selectionFids.clear();
                     table.clearAll();
                 } else {
-                    String fid = provider.features.get(index).getID();
+                    SimpleFeature feature = provider.getLoadedFeature(index);
+                    if (feature == null) {
+                        // the row is still loading so it has no feature id to select yet
+                        return false;
+                    }
                     selectionFids.clear();
-                    selectionFids.add(fid);
+                    selectionFids.add(feature.getID());
                     table.clearAll();
                 }
                 lastIndex = index;
+                return true;
             }
 
-            private void handleXORSelect( final Table table, int index,
+            private boolean handleXORSelect( final Table table, int index,
                     FeatureTableContentProvider provider, Collection<String> selectionFids ) {
-                String fid = provider.features.get(index).getID();
+                SimpleFeature feature = provider.getLoadedFeature(index);
+                if (feature == null) {
+                    // the row is still loading so it has no feature id to select yet
+                    return false;
+                }
+                String fid = feature.getID();
                 if (selectionFids.contains(fid)) {
                     selectionFids.remove(fid);
                 } else {
@@ -424,19 +444,31 @@ public class FeatureTableControl implements ISelectionProvider {
                 }
                 table.clear(index);
                 lastIndex = index;
+                return true;
             }
 
-            private void handleSelecteRange( final Table table, int index,
+            private boolean handleSelecteRange( final Table table, int index,
                     FeatureTableContentProvider provider, Collection<String> selectionFids ) {
-                selectionFids.clear();
-
                 int low = Math.min(lastIndex, index);
                 int high = Math.max(lastIndex, index);
                 if (low == -1 || high == -1) {
+                    selectionFids.clear();
                     table.clearAll();
-                    return;
+                    return true;
                 }
-                List<SimpleFeature> toAdd = provider.features.subList(low, high + 1);
+                List<SimpleFeature> features = provider.features;
+                if (features instanceof PagedFeatureList) {
+                    // the ids of the rows are read from the feature source in the background
+                    int first = Math.min(provider.toFeatureIndex(low), provider
+                            .toFeatureIndex(high));
+                    Query query = ((PagedFeatureList) features).idQuery(Filter.INCLUDE);
+                    query.setStartIndex(first);
+                    query.setMaxFeatures(high - low + 1);
+                    selectionProvider.select(query, false);
+                    return false;
+                }
+                selectionFids.clear();
+                List<SimpleFeature> toAdd = features.subList(low, high + 1);
                 boolean foundUnselectedItem = false;
                 int i = low;
                 for( SimpleFeature feature : toAdd ) {
@@ -448,6 +480,7 @@ public class FeatureTableControl implements ISelectionProvider {
                 if (foundUnselectedItem) {
                     table.clearAll();
                 }
+                return true;
             }
 
         });
@@ -810,9 +843,23 @@ public class FeatureTableControl implements ISelectionProvider {
 
         boolean sorted = false;
         if (!comparator.equals(currentComparator)) {
+            if (!provider.sort(comparator)) {
+                // the feature source cannot sort the features this way, say so rather than
+                // ignoring the click
+                if (statusLine != null) {
+                    statusLine.setErrorMessage(MessageFormat.format(
+                            Messages.FeatureTableControl_cannotSort,
+                            sortColumn == null ? "" : sortColumn.getText())); //$NON-NLS-1$
+                } else {
+                    Display.getCurrent().beep();
+                }
+                return;
+            }
+            if (statusLine != null) {
+                statusLine.setErrorMessage(null);
+            }
             sorted = true;
             currentComparator = comparator;
-            Collections.sort(provider.features, currentComparator);
         }
         Table table = tableViewer.getTable();
         if (table.getSortColumn() != sortColumn) {
@@ -832,6 +879,17 @@ public class FeatureTableControl implements ISelectionProvider {
 
     }
 
+    /**
+     * Sets the status line that tells the user when the features can not be sorted by a column,
+     * which happens when the table reads its features a page at a time from a feature source
+     * that can not sort them.
+     * 
+     * @param statusLine the status line of the part showing the table or null
+     */
+    public void setStatusLineManager( IStatusLineManager statusLine ) {
+        this.statusLine = statusLine;
+    }
+
     /**
      * Resorts the table using the last comparator. This is useful for cases where features have
      * been added to the table
@@ -845,7 +903,7 @@ public class FeatureTableControl implements ISelectionProvider {
         FeatureTableContentProvider provider = (FeatureTableContentProvider) tableViewer
                 .getContentProvider();
 
-        Collections.sort(provider.features, currentComparator);
+        provider.sort(currentComparator);
 
         tableViewer.getTable().deselectAll();
         if (refreshTable)
@@ -895,6 +953,10 @@ public class FeatureTableControl implements ISelectionProvider {
         FeatureTableContentProvider provider = (FeatureTableContentProvider) this.tableViewer
                 .getContentProvider();
         List<SimpleFeature> toSearch = provider.features;
+        if (toSearch instanceof PagedFeatureList) {
+            selectPaged((PagedFeatureList) toSearch, filter, selectAll);
+            return;
+        }
 
         IProgressMonitor progressMonitor = getSelectionProvider().progressMonitor;
         if (progressMonitor != null) {
@@ -929,7 +991,14 @@ public class FeatureTableControl implements ISelectionProvider {
      * select the features found that has the text. Only the attributes indicated are searched. If
      * {@link #ALL} is selected then all attributes will be searched
      * 
-     * @param text text to search for it will first be assumed that it is a reg ex expression
+     * <p>
+     * If the table reads its features a page at a time the feature source is searched instead; it
+     * matches the text (or each of its | separated parts) literally, ignoring case, against the
+     * text attributes.
+     * </p>
+     * 
+     * @param text text to search for it will first be assumed that it is a reg ex expression,
+     *        except for a paged table where it is matched literally with a like filter
      * @param attributes the attributes to search. See {@link #ALL}
      * @param selectAll if true all matched features will be selected otherwise just the first
      *        feature
@@ -937,16 +1006,20 @@ public class FeatureTableControl implements ISelectionProvider {
     public void select( String text, String[] attributes, boolean selectAll )
             throws PatternSyntaxException {
 
+        FeatureTableContentProvider provider = (FeatureTableContentProvider) this.tableViewer
+                .getContentProvider();
+        List<SimpleFeature> toSearch = provider.features;
+        if (toSearch instanceof PagedFeatureList) {
+            selectPaged((PagedFeatureList) toSearch, toFilter(text, attributes), selectAll);
+            return;
+        }
+
         Pattern pattern = compilePattern(text);
 
         if (pattern == null) {
             return;
         }
 
-        FeatureTableContentProvider provider = (FeatureTableContentProvider) this.tableViewer
-                .getContentProvider();
-        List<SimpleFeature> toSearch = provider.features;
-
         IProgressMonitor progressMonitor = getSelectionProvider().progressMonitor;
         if (progressMonitor != null) {
             progressMonitor.setCanceled(true);
@@ -975,6 +1048,49 @@ public class FeatureTableControl implements ISelectionProvider {
         selectionProvider.notifyListeners();
     }
 
+    /**
+     * Selects the features of a paged table that match the filter. The feature source is queried
+     * in the background as searching the rows would read every page.
+     */
+    private void selectPaged( PagedFeatureList paged, Filter filter, boolean selectAll ) {
+        Query query = paged.idQuery(filter);
+        if (!selectAll) {
+            query.setMaxFeatures(1);
+        }
+        selectionProvider.select(query, true);
+    }
+
+    /**
+     * Creates a filter matching the features that have the text in one of the attributes. The
+     * text is split on | like {@link #compilePattern(String)} does but the parts are matched
+     * literally.
+     */
+    private Filter toFilter( String text, String[] attributes ) {
+        FilterFactory factory = CommonFactoryFinder.getFilterFactory(null);
+        List<String> names = new ArrayList<String>();
+        if (attributes == ALL) {
+            for( AttributeDescriptor descriptor : features.getSchema().getAttributeDescriptors() ) {
+                // only text can be compared with like by every feature source
+                if (String.class.isAssignableFrom(descriptor.getType().getBinding())) {
+                    names.add(descriptor.getLocalName());
+                }
+            }
+        } else {
+            names.addAll(Arrays.asList(attributes));
+        }
+        List<Filter> filters = new ArrayList<Filter>();
+        for( String part : text.split("\\|") ) { //$NON-NLS-1$
+            String pattern = "*" + part.replaceAll("([*?!])", "!$1") + "*"; //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$
+            for( String name : names ) {
+                filters.add(factory.like(factory.property(name), pattern, "*", "?", "!", false)); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+            }
+        }
+        if (filters.isEmpty()) {
+            return Filter.EXCLUDE;
+        }
+        return filters.size() == 1 ? filters.get(0) : factory.or(filters);
+    }
+
     private Pattern compilePattern( final String text ) {
 
         String[] parts = text.split("\\|");
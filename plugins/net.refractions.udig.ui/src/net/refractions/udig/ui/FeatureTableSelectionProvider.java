@@ -97,6 +97,22 @@ class FeatureTableSelectionProvider implements ISelectionProvider {
     }
 
     void setSelection( final ISelection newSelection, final boolean reveal ) {
+        load(new SelectionLoader(newSelection, null, reveal));
+    }
+
+    /**
+     * Selects the features of a paged table that the query returns; the feature source is queried
+     * in the background rather than searching the rows of the table.
+     * 
+     * @param query query for the ids of the features to select, see
+     *        {@link PagedFeatureList#idQuery(Filter)}
+     * @param reveal if true the table scrolls to the first selected row if it is in memory
+     */
+    void select( Query query, boolean reveal ) {
+        load(new SelectionLoader(new StructuredSelection(), query, reveal));
+    }
+
+    private void load( SelectionLoader loader ) {
         checkWidget();
         if (progressMonitor != null) {
             progressMonitor.setCanceled(true);
@@ -121,7 +137,7 @@ class FeatureTableSelectionProvider implements ISelectionProvider {
             progressMonitor = progressMonitorProvider.get();
             progressMonitor.setCanceled(false);
 
-            PlatformGIS.run(new SelectionLoader(newSelection, reveal));
+            PlatformGIS.run(loader);
         }
     }
 
@@ -154,6 +170,17 @@ class FeatureTableSelectionProvider implements ISelectionProvider {
         return fac.id(ids);
     }
 
+    /**
+     * @return the features of the table if they are paged, otherwise null
+     */
+    private PagedFeatureList getPagedFeatures() {
+        if (owner.getViewer() == null)
+            return null;
+        List<SimpleFeature> features = ((FeatureTableContentProvider) owner.getViewer()
+                .getContentProvider()).features;
+        return features instanceof PagedFeatureList ? (PagedFeatureList) features : null;
+    }
+
     private void checkWidget() {
         if (Display.getCurrent() == null)
             SWT.error(SWT.ERROR_THREAD_INVALID_ACCESS);
@@ -162,10 +189,12 @@ class FeatureTableSelectionProvider implements ISelectionProvider {
     private class SelectionLoader implements ISafeRunnable {
 
         private final ISelection newSelection;
+        private final Query query;
         private final boolean reveal;
 
-        public SelectionLoader( ISelection newSelection, boolean reveal ) {
+        public SelectionLoader( ISelection newSelection, Query query, boolean reveal ) {
             this.newSelection = newSelection;
+            this.query = query;
             this.reveal = reveal;
         }
 
@@ -176,7 +205,7 @@ class FeatureTableSelectionProvider implements ISelectionProvider {
         public void run() throws Exception {
             startProgress();
             try {
-                if (newSelection.isEmpty()) {
+                if (query == null && newSelection.isEmpty()) {
                     if (owner.getViewer().getControl().isDisposed()){
                         done();
                         return;
@@ -196,10 +225,16 @@ class FeatureTableSelectionProvider implements ISelectionProvider {
 
                     });
 
-                } else if (newSelection instanceof IStructuredSelection) {
-                    IStructuredSelection structured = (IStructuredSelection) newSelection;
+                } else if (query != null || newSelection instanceof IStructuredSelection) {
                     final Set<String> fids = new HashSet<String>();
-                    obtainFidsFromSelection(structured, fids);
+                    if (query != null) {
+                        PagedFeatureList paged = getPagedFeatures();
+                        if (paged != null) {
+                            obtainFidsFromQuery(fids, paged.getSource(), query);
+                        }
+                    } else {
+                        obtainFidsFromSelection((IStructuredSelection) newSelection, fids);
+                    }
 
                     // selection is equivalent to last selection so return
                     if (selectionFids.equals(fids))
@@ -210,12 +245,18 @@ class FeatureTableSelectionProvider implements ISelectionProvider {
 
                     final List<SimpleFeature> features = provider.features;
                     int i = 0;
-                    synchronized( provider.features ){
-                        for( SimpleFeature feature : features ) {
-                            if (fids.contains(feature.getID())) {
-                                break;
+                    if (features instanceof PagedFeatureList) {
+                        // only the rows in memory are searched, the others would have to be read
+                        int loaded = ((PagedFeatureList) features).indexOfLoaded(fids);
+                        i = loaded == -1 ? features.size() : loaded;
+                    } else {
+                        synchronized( provider.features ){
+                            for( SimpleFeature feature : features ) {
+                                if (fids.contains(feature.getID())) {
+                                    break;
+                                }
+                                i++;
                             }
-                            i++;
                         }
                     }
                     
@@ -315,6 +356,9 @@ class FeatureTableSelectionProvider implements ISelectionProvider {
                 } else if (element instanceof IAdaptable) {
 
                     obtainFidsFromAdaptable(fids, (IAdaptable) element);
+                } else if (element instanceof Filter && getPagedFeatures() != null) {
+                    PagedFeatureList paged = getPagedFeatures();
+                    obtainFidsFromQuery(fids, paged.getSource(), paged.idQuery((Filter) element));
                 } else if (element instanceof Filter) {
                     UiPlugin
                             .log(
@@ -360,7 +404,10 @@ class FeatureTableSelectionProvider implements ISelectionProvider {
                 source = (FeatureSource<SimpleFeatureType, SimpleFeature>) adaptable.getAdapter(FeatureSource.class);
             }
 
-            if (source == null) {
+            PagedFeatureList paged = getPagedFeatures();
+            if (source == null && paged != null) {
+                obtainFidsFromQuery(fids, paged.getSource(), paged.idQuery(filter));
+            } else if (source == null) {
                 UiPlugin
                         .log(
                                 "last resource run filter on features in table view...  Might now work since table view" + //$NON-NLS-1$
@@ -382,27 +429,36 @@ class FeatureTableSelectionProvider implements ISelectionProvider {
                 defaultQuery.setPropertyNames( required.toArray(new String[0]) );
                 
                 // get features that are just fids no attributes
-                FeatureCollection<SimpleFeatureType, SimpleFeature>  features = source.getFeatures(defaultQuery);
-                long start=System.currentTimeMillis();
-                
-                FeatureIterator<SimpleFeature> featureIterator = features.features();
-                try {
-                    while( featureIterator.hasNext() ) {
-                        if (progressMonitor.isCanceled())
-                            throw new Abort();
-                        if( System.currentTimeMillis()-start>500){
-                            start=System.currentTimeMillis();
-                            owner.getViewer().getControl().getDisplay().asyncExec(new Runnable(){
-                                public void run() {
-                                    progressMonitor.subTask(fids.size()+" selected"); //$NON-NLS-1$
-                                }
-                            });
-                        }
-                        fids.add(featureIterator.next().getID());
+                obtainFidsFromQuery(fids, source, defaultQuery);
+            }
+        }
+
+        /**
+         * Adds the ids of the features the query returns.
+         */
+        private void obtainFidsFromQuery( final Set<String> fids,
+                FeatureSource<SimpleFeatureType, SimpleFeature> source, Query query )
+                throws IOException, Abort {
+            FeatureCollection<SimpleFeatureType, SimpleFeature>  features = source.getFeatures(query);
+            long start=System.currentTimeMillis();
+            
+            FeatureIterator<SimpleFeature> featureIterator = features.features();
+            try {
+                while( featureIterator.hasNext() ) {
+                    if (progressMonitor.isCanceled())
+                        throw new Abort();
+                    if( System.currentTimeMillis()-start>500){
+                        start=System.currentTimeMillis();
+                        owner.getViewer().getControl().getDisplay().asyncExec(new Runnable(){
+                            public void run() {
+                                progressMonitor.subTask(fids.size()+" selected"); //$NON-NLS-1$
+                            }
+                        });
                     }
-                } finally {
-                    featureIterator.close();
+                    fids.add(featureIterator.next().getID());
                 }
+            } finally {
+                featureIterator.close();
             }
         }
     }
@@ -0,0 +1,373 @@
+/* uDig - User Friendly Desktop Internet GIS client
+ * http://udig.refractions.net
+ * (C) 2012, Refractions Research Inc.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * (http://www.eclipse.org/legal/epl-v10.html), and the Refractions BSD
+ * License v1.0 (http://udig.refractions.net/files/bsd3-v10.html).
+ */
+package net.refractions.udig.ui;
+
+import java.io.IOException;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import net.refractions.udig.internal.ui.UiPlugin;
+
+import org.eclipse.core.runtime.IAdaptable;
+import org.eclipse.core.runtime.ISafeRunnable;
+import org.geotools.data.FeatureSource;
+import org.geotools.data.Query;
+import org.geotools.data.QueryCapabilities;
+import org.geotools.factory.CommonFactoryFinder;
+import org.geotools.feature.FeatureCollection;
+import org.geotools.feature.FeatureIterator;
+import org.geotools.filter.FilterAttributeExtractor;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+import org.opengis.filter.Filter;
+import org.opengis.filter.FilterFactory2;
+import org.opengis.filter.identity.FeatureId;
+import org.opengis.filter.sort.SortBy;
+
+/**
+ * The features of a query read from the feature source a page at a time as the table asks for
+ * them; only the most recently used pages are kept in memory.
+ * <p>
+ * Pages are read using the start index and maximum features of the {@link Query} so this is only
+ * used for feature sources that support an offset. Sorting is done by the feature source.
+ * </p>
+ * <p>
+ * The list cannot be modified; when the features change the pages are thrown away with
+ * {@link #refresh(int)} and read again.
+ * </p>
+ *
+ * @since 1.4.0
+ */
+class PagedFeatureList extends AbstractList<SimpleFeature> {
+
+    /** number of features read from the feature source at a time */
+    static final int PAGE_SIZE = 512;
+
+    /** number of pages kept in memory */
+    static final int MAX_PAGES = 16;
+
+    /** Collections smaller than this are loaded in memory */
+    static final int THRESHOLD = 10000;
+
+    private final FeatureSource<SimpleFeatureType, SimpleFeature> source;
+    private final Query query;
+    private volatile int size;
+    private volatile SortBy[] sortBy;
+
+    /** pages by page number in the order they were last used */
+    private final LinkedHashMap<Integer, List<SimpleFeature>> pages = new LinkedHashMap<Integer, List<SimpleFeature>>(
+            MAX_PAGES, 0.75f, true){
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry( Map.Entry<Integer, List<SimpleFeature>> eldest ) {
+            return size() > MAX_PAGES;
+        }
+    };
+
+    /** pages being read in the background and what to do once they are read */
+    private final Map<Integer, List<Runnable>> loading = new HashMap<Integer, List<Runnable>>();
+
+    /** incremented each time the pages are thrown away so stale reads are ignored */
+    private int generation;
+
+    PagedFeatureList( FeatureSource<SimpleFeatureType, SimpleFeature> source, Query query,
+            int size ) {
+        this.source = source;
+        this.query = query;
+        this.size = size;
+    }
+
+    /**
+     * Creates a paged list if the collection adapts to a {@link FeatureSource} and {@link Query}
+     * that supports paging and has enough features to make it worth it.
+     *
+     * @param input the input of the feature table
+     * @return a paged list or null if the features should be loaded in memory
+     */
+    @SuppressWarnings("unchecked")
+    static PagedFeatureList create( FeatureCollection<SimpleFeatureType, SimpleFeature> input ) {
+        if (!(input instanceof IAdaptable)) {
+            return null;
+        }
+        IAdaptable adaptable = (IAdaptable) input;
+        FeatureSource<SimpleFeatureType, SimpleFeature> source = (FeatureSource<SimpleFeatureType, SimpleFeature>) adaptable
+                .getAdapter(FeatureSource.class);
+        Query query = (Query) adaptable.getAdapter(Query.class);
+        if (source == null || query == null) {
+            return null;
+        }
+        QueryCapabilities capabilities = source.getQueryCapabilities();
+        if (capabilities == null || !capabilities.isOffsetSupported()) {
+            return null;
+        }
+        int size = input.size();
+        if (size < THRESHOLD) {
+            return null;
+        }
+        return new PagedFeatureList(source, query, size);
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the feature, reading its page from the feature source if needed.
+     *
+     * @return the feature or null if it could not be read
+     */
+    @Override
+    public SimpleFeature get( int index ) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size); //$NON-NLS-1$ //$NON-NLS-2$
+        }
+        int page = index / PAGE_SIZE;
+        List<SimpleFeature> features;
+        int readGeneration;
+        synchronized (this) {
+            features = pages.get(page);
+            readGeneration = generation;
+        }
+        if (features == null) {
+            features = read(page);
+            store(page, features, readGeneration);
+        }
+        int offset = index % PAGE_SIZE;
+        return offset < features.size() ? features.get(offset) : null;
+    }
+
+    /**
+     * Returns the feature if its page is in memory without reading it; for use in the display
+     * thread.
+     *
+     * @param index index of the feature
+     * @return the feature or null if its page is not in memory
+     */
+    synchronized SimpleFeature getLoaded( int index ) {
+        List<SimpleFeature> features = pages.get(index / PAGE_SIZE);
+        if (features == null) {
+            return null;
+        }
+        int offset = index % PAGE_SIZE;
+        return offset < features.size() ? features.get(offset) : null;
+    }
+
+    /**
+     * Finds the first feature with one of the ids in the pages that are in memory.
+     *
+     * @param fids feature ids
+     * @return index of the feature or -1 if none of the pages in memory contains one
+     */
+    synchronized int indexOfLoaded( Set<String> fids ) {
+        int found = -1;
+        for( Map.Entry<Integer, List<SimpleFeature>> entry : pages.entrySet() ) {
+            List<SimpleFeature> features = entry.getValue();
+            for( int i = 0; i < features.size(); i++ ) {
+                int index = entry.getKey() * PAGE_SIZE + i;
+                if ((found == -1 || index < found) && fids.contains(features.get(i).getID())) {
+                    found = index;
+                    break;
+                }
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Returns the feature if its page is in memory, otherwise the page is read in the background.
+     *
+     * @param index index of the feature
+     * @param whenLoaded run once the page has been read, if it was not in memory
+     * @return the feature or null if the page is not in memory
+     */
+    SimpleFeature getIfLoaded( int index, Runnable whenLoaded ) {
+        final int page = index / PAGE_SIZE;
+        final int readGeneration;
+        synchronized (this) {
+            List<SimpleFeature> features = pages.get(page);
+            if (features != null) {
+                int offset = index % PAGE_SIZE;
+                return offset < features.size() ? features.get(offset) : null;
+            }
+            List<Runnable> waiting = loading.get(page);
+            if (waiting != null) {
+                waiting.add(whenLoaded);
+                return null;
+            }
+            waiting = new ArrayList<Runnable>();
+            waiting.add(whenLoaded);
+            loading.put(page, waiting);
+            readGeneration = generation;
+        }
+        PlatformGIS.run(new ISafeRunnable(){
+            public void handleException( Throwable exception ) {
+                UiPlugin.log("Error loading features", exception); //$NON-NLS-1$
+            }
+            public void run() throws Exception {
+                List<Runnable> waiting;
+                try {
+                    store(page, read(page), readGeneration);
+                } finally {
+                    synchronized (PagedFeatureList.this) {
+                        waiting = loading.remove(page);
+                    }
+                }
+                if (waiting != null) {
+                    for( Runnable runnable : waiting ) {
+                        runnable.run();
+                    }
+                }
+            }
+        });
+        return null;
+    }
+
+    private synchronized void store( int page, List<SimpleFeature> features, int readGeneration ) {
+        if (readGeneration == generation) {
+            pages.put(page, features);
+        }
+    }
+
+    private List<SimpleFeature> read( int page ) {
+        Query pageQuery = new Query(query);
+        pageQuery.setStartIndex(page * PAGE_SIZE);
+        pageQuery.setMaxFeatures(PAGE_SIZE);
+        if (sortBy != null) {
+            pageQuery.setSortBy(sortBy);
+        }
+        List<SimpleFeature> features = new ArrayList<SimpleFeature>(PAGE_SIZE);
+        FeatureIterator<SimpleFeature> iterator = null;
+        try {
+            iterator = source.getFeatures(pageQuery).features();
+            while( iterator.hasNext() ) {
+                features.add(iterator.next());
+            }
+        } catch (IOException e) {
+            UiPlugin.log("Error loading features " + page * PAGE_SIZE, e); //$NON-NLS-1$
+            return Collections.emptyList();
+        } finally {
+            if (iterator != null)
+                iterator.close();
+        }
+        return features;
+    }
+
+    /**
+     * Creates a query for the ids of the features of the list that match the filter, in the order
+     * of the list. Set the start index and maximum features of the query to limit it to a range of
+     * rows.
+     *
+     * @param filter filter the features must match as well as the filter of the list
+     * @return a query for the feature source of the list
+     */
+    @SuppressWarnings("unchecked")
+    Query idQuery( Filter filter ) {
+        Query idQuery = new Query(query);
+        if (query.getFilter() != null && query.getFilter() != Filter.INCLUDE) {
+            filter = CommonFactoryFinder.getFilterFactory2(null).and(query.getFilter(), filter);
+        }
+        idQuery.setFilter(filter);
+        // only the attributes the filter needs, as the selection provider does
+        Set<String> required = (Set<String>) filter.accept(new FilterAttributeExtractor(), null);
+        idQuery.setPropertyNames(required.toArray(new String[required.size()]));
+        if (sortBy != null) {
+            idQuery.setSortBy(sortBy);
+        }
+        return idQuery;
+    }
+
+    /**
+     * @return the feature source the features are read from
+     */
+    FeatureSource<SimpleFeatureType, SimpleFeature> getSource() {
+        return source;
+    }
+
+    /**
+     * Counts the features of the query, for instance after features were added.
+     *
+     * @return number of features
+     */
+    int count() throws IOException {
+        return source.getFeatures(query).size();
+    }
+
+    /**
+     * Checks if the feature source can sort the features.
+     *
+     * @param sort the requested sort order
+     * @return true if the sort order can be used with {@link #setSortBy(SortBy[])}
+     */
+    boolean canSort( SortBy[] sort ) {
+        QueryCapabilities capabilities = source.getQueryCapabilities();
+        return capabilities != null && capabilities.supportsSorting(sort);
+    }
+
+    /**
+     * Changes the order the feature source returns the features in.
+     *
+     * @param sort sort order, see {@link #canSort(SortBy[])}
+     */
+    void setSortBy( SortBy[] sort ) {
+        this.sortBy = sort;
+        refresh(0);
+    }
+
+    /**
+     * Throws away the pages in memory so they are read again.
+     *
+     * @param sizeChange number of features that were added (or removed if negative)
+     */
+    synchronized void refresh( int sizeChange ) {
+        generation++;
+        pages.clear();
+        size = Math.max(0, size + sizeChange);
+    }
+
+    /**
+     * Reads the features with the ids from the feature source.
+     *
+     * @param fids feature ids
+     * @return the features that are still part of the query
+     */
+    List<SimpleFeature> getFeatures( Collection<String> fids ) throws IOException {
+        if (fids.isEmpty()) {
+            return Collections.emptyList();
+        }
+        FilterFactory2 factory = CommonFactoryFinder.getFilterFactory2(null);
+        Set<FeatureId> ids = new HashSet<FeatureId>();
+        for( String fid : fids ) {
+            ids.add(factory.featureId(fid));
+        }
+        Query idQuery = new Query(query);
+        Filter filter = query.getFilter() == null ? Filter.INCLUDE : query.getFilter();
+        idQuery.setFilter(factory.and(filter, factory.id(ids)));
+        List<SimpleFeature> features = new ArrayList<SimpleFeature>();
+        FeatureIterator<SimpleFeature> iterator = source.getFeatures(idQuery).features();
+        try {
+            while( iterator.hasNext() ) {
+                features.add(iterator.next());
+            }
+        } finally {
+            iterator.close();
+        }
+        return features;
+    }
+}
@@ -17,11 +17,16 @@ import java.awt.Transparency;
 import java.awt.geom.PathIterator;
 import java.awt.image.BufferedImage;
 import java.awt.image.ColorModel;
+import java.awt.image.ComponentSampleModel;
+import java.awt.image.DataBuffer;
 import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
 import java.awt.image.DirectColorModel;
 import java.awt.image.IndexColorModel;
 import java.awt.image.Raster;
 import java.awt.image.RenderedImage;
+import java.awt.image.SampleModel;
+import java.awt.image.SinglePixelPackedSampleModel;
 import java.awt.image.WritableRaster;
 
 import javax.swing.Icon;
@@ -309,26 +314,38 @@ public final class AWTSWTImageUtils {
         depth = 24;
         palette = new PaletteData(0xFF, 0xFF00, 0xFF0000);
         swtdata = new ImageData(width, height, depth, palette);
-        Raster raster = image.getData();
+        // a single tile is read in place, getData() would copy it
+        Raster raster;
+        if (image.getNumXTiles() == 1 && image.getNumYTiles() == 1) {
+            raster = image.getTile(image.getMinTileX(), image.getMinTileY());
+        } else {
+            raster = image.getData();
+        }
         int numbands = raster.getNumBands();
-        int[] awtdata = raster.getPixels(0, 0, width, height, new int[width * height * numbands]);
+        boolean alpha = numbands == 4 && transparent;
+        if (alpha) {
+            swtdata.alphaData = new byte[width * height];
+        }
+        // one scan line at a time rather than an int per sample of the whole image
+        int[] awtdata = new int[width * numbands];
         int step = swtdata.depth / 8;
     
         byte[] data = swtdata.data;
         swtdata.transparentPixel = -1;
         int baseindex = 0;
         for( int y = 0; y < height; y++ ) {
+            raster.getPixels(image.getMinX(), image.getMinY() + y, width, 1, awtdata);
             int idx = ((0 + y) * swtdata.bytesPerLine) + (0 * step);
+            int alphaidx = y * width;
     
             for( int x = 0; x < width; x++ ) {
-                int pixel = (x + (y * width));
-                baseindex = pixel * numbands;
+                baseindex = x * numbands;
     
                 data[idx++] = (byte) awtdata[baseindex + 2];
                 data[idx++] = (byte) awtdata[baseindex + 1];
                 data[idx++] = (byte) awtdata[baseindex];
-                if (numbands == 4 && transparent) {
-                    swtdata.setAlpha(x, y, awtdata[baseindex + 3]);
+                if (alpha) {
+                    swtdata.alphaData[alphaidx++] = (byte) awtdata[baseindex + 3];
                 }
             }
         }
@@ -385,42 +402,201 @@ public final class AWTSWTImageUtils {
      * @return an ImageData from the 0,0,width,height section of the source BufferedImage
      */
     public static ImageData createImageData( BufferedImage image ) {
+        return createImageData(image, null);
+    }
+
+    /**
+     * Creates an ImageData from the source BufferedImage reusing the buffers of an ImageData
+     * returned by an earlier call, for code that converts an image of the same size each frame.
+     * Since an SWT Image copies its ImageData the ImageData can be filled again once the Image
+     * is created.
+     * <p>
+     * The pixels are read straight from the data buffer of the image: the ImageData of a
+     * TYPE_3BYTE_BGR or TYPE_4BYTE_ABGR image shares the byte array of the image and the pixels of
+     * the int image types are copied one scan line at a time with their alpha going to the alpha
+     * plane. Other images are converted with {@link #createImageData(RenderedImage, boolean)}.
+     * </p>
+     *
+     * @param image source image.
+     * @param reuse an ImageData returned by an earlier call or null.
+     * @return an ImageData from the 0,0,width,height section of the source BufferedImage, reuse
+     *         if its buffers could be used
+     */
+    public static ImageData createImageData( BufferedImage image, ImageData reuse ) {
         AWTSWTImageUtils.checkAccess();
-        
+
+        ImageData data;
+        switch( image.getType() ) {
+        case BufferedImage.TYPE_3BYTE_BGR:
+            data = createByteImageData(image, 3, false, reuse);
+            break;
+        case BufferedImage.TYPE_4BYTE_ABGR:
+        case BufferedImage.TYPE_4BYTE_ABGR_PRE:
+            data = createByteImageData(image, 4, true, reuse);
+            break;
+        case BufferedImage.TYPE_INT_RGB:
+            data = createIntImageData(image, new PaletteData(0xff0000, 0x00ff00, 0x0000ff), false, reuse);
+            break;
+        case BufferedImage.TYPE_INT_BGR:
+            data = createIntImageData(image, new PaletteData(0x0000ff, 0x00ff00, 0xff0000), false, reuse);
+            break;
+        case BufferedImage.TYPE_INT_ARGB:
+        case BufferedImage.TYPE_INT_ARGB_PRE:
+            data = createIntImageData(image, new PaletteData(0xff0000, 0x00ff00, 0x0000ff), true, reuse);
+            break;
+        default:
+            data = null;
+        }
+        if (data != null) {
+            return data;
+        }
+        // else pixel by pixel
+        return createImageData((RenderedImage) image, image.getTransparency() != Transparency.OPAQUE);
+    }
+
+    /**
+     * Converts an image whose pixels are stored as bytes in B,G,R or A,B,G,R order; the ImageData
+     * shares the array of the image unless the image is a part of a larger raster.
+     *
+     * @return the ImageData or null if the raster is not laid out as expected
+     */
+    private static ImageData createByteImageData( BufferedImage image, int bands, boolean alpha,
+            ImageData reuse ) {
+        WritableRaster raster = image.getRaster();
+        SampleModel model = raster.getSampleModel();
+        if (!(model instanceof ComponentSampleModel)
+                || ((ComponentSampleModel) model).getPixelStride() != bands
+                || raster.getDataBuffer().getNumBanks() != 1) {
+            return null;
+        }
         int width = image.getWidth();
         int height = image.getHeight();
-        
-        if (image.getType() == BufferedImage.TYPE_3BYTE_BGR) {
-            int bands = image.getColorModel().getColorSpace().getNumComponents();
-            int depth = 24;
-            byte[] pixels = ((DataBufferByte) image.getRaster().getDataBuffer()).getData();
+        int scanline = ((ComponentSampleModel) model).getScanlineStride();
+        int offset = rasterOffset(raster);
+        byte[] pixels = ((DataBufferByte) raster.getDataBuffer()).getData();
+        int lineLength = width * bands;
 
-            PaletteData paletteData = new PaletteData(0x0000ff, 0x00ff00, 0xff0000);
-            
-            ImageData data = new ImageData(width, height, depth, paletteData, width * bands, pixels);
-            return data;
+        PaletteData paletteData = new PaletteData(0x0000ff, 0x00ff00, 0xff0000);
+        ImageData data;
+        if (offset == 0 && scanline == lineLength) {
+            data = new ImageData(width, height, bands * 8, paletteData, lineLength, pixels);
+        } else {
+            data = reusable(reuse, width, height, bands * 8, paletteData);
+            if (data == null) {
+                data = new ImageData(width, height, bands * 8, paletteData, lineLength,
+                        new byte[lineLength * height]);
+            }
+            for( int y = 0; y < height; y++ ) {
+                System.arraycopy(pixels, offset + y * scanline, data.data, y * data.bytesPerLine,
+                        lineLength);
+            }
+        }
+        if (alpha) {
+            byte[] alphaData = alphaData(reuse, width, height);
+            // the alpha is the first byte of each pixel
+            int index = 0;
+            for( int y = 0; y < height; y++ ) {
+                int pixel = offset + y * scanline;
+                for( int x = 0; x < width; x++ ) {
+                    alphaData[index++] = pixels[pixel];
+                    pixel += bands;
+                }
+            }
+            data.alphaData = alphaData;
+        } else {
+            data.alphaData = null;
         }
-        else if (image.getType() == BufferedImage.TYPE_4BYTE_ABGR) {
-            int bands = image.getColorModel().getColorSpace().getNumComponents() + 1;
-            int depth = 32;
-            byte[] pixels = ((DataBufferByte) image.getRaster().getDataBuffer()).getData();
+        return data;
+    }
 
-            PaletteData paletteData = new PaletteData(0x0000ff, 0x00ff00, 0xff0000);
-            
-            ImageData data = new ImageData(width, height, depth, paletteData, width * bands, pixels);
-            
-            // scanning darkly
-            for (int y = 0; y < height; y++) {
-                for (int x = 0; x < width; x++) {
-                    int pixel = image.getRGB(x, y);
-                    int alpha_value = (pixel >> 24) & 0x000000FF;
-                    data.setAlpha(x, y,  alpha_value );
+    /**
+     * Converts an image whose pixels are stored as one int each to a 32 bit ImageData; SWT reads
+     * the bytes of a 32 bit pixel most significant first so the ints are written in that order.
+     *
+     * @return the ImageData or null if the raster is not laid out as expected
+     */
+    private static ImageData createIntImageData( BufferedImage image, PaletteData palette,
+            boolean alpha, ImageData reuse ) {
+        WritableRaster raster = image.getRaster();
+        SampleModel model = raster.getSampleModel();
+        if (!(model instanceof SinglePixelPackedSampleModel)
+                || raster.getDataBuffer().getNumBanks() != 1) {
+            return null;
+        }
+        int width = image.getWidth();
+        int height = image.getHeight();
+        int scanline = ((SinglePixelPackedSampleModel) model).getScanlineStride();
+        int offset = rasterOffset(raster);
+        int[] pixels = ((DataBufferInt) raster.getDataBuffer()).getData();
+
+        ImageData data = reusable(reuse, width, height, 32, palette);
+        if (data == null) {
+            data = new ImageData(width, height, 32, palette, 4, new byte[width * 4 * height]);
+        }
+        byte[] bytes = data.data;
+        byte[] alphaData = alpha ? alphaData(reuse, width, height) : null;
+        int alphaIndex = 0;
+        for( int y = 0; y < height; y++ ) {
+            int pixel = offset + y * scanline;
+            int index = y * data.bytesPerLine;
+            for( int x = 0; x < width; x++ ) {
+                int value = pixels[pixel++];
+                bytes[index++] = (byte) (value >>> 24);
+                bytes[index++] = (byte) (value >>> 16);
+                bytes[index++] = (byte) (value >>> 8);
+                bytes[index++] = (byte) value;
+                if (alphaData != null) {
+                    alphaData[alphaIndex++] = (byte) (value >>> 24);
                 }
             }
-            return data;
         }
-        // else pixel by pixel
-        return createImageData((RenderedImage) image, image.getTransparency() != Transparency.OPAQUE);
+        data.alphaData = alphaData;
+        return data;
+    }
+
+    /**
+     * @return the index in the data buffer of the first sample of the image
+     */
+    private static int rasterOffset( Raster raster ) {
+        DataBuffer buffer = raster.getDataBuffer();
+        SampleModel model = raster.getSampleModel();
+        int x = -raster.getSampleModelTranslateX();
+        int y = -raster.getSampleModelTranslateY();
+        if (model instanceof SinglePixelPackedSampleModel) {
+            return buffer.getOffset() + ((SinglePixelPackedSampleModel) model).getOffset(x, y);
+        }
+        ComponentSampleModel component = (ComponentSampleModel) model;
+        int firstBand = Integer.MAX_VALUE;
+        for( int bandOffset : component.getBandOffsets() ) {
+            firstBand = Math.min(firstBand, bandOffset);
+        }
+        return buffer.getOffset() + component.getOffset(x, y) + firstBand;
+    }
+
+    /**
+     * @return reuse if its pixels can hold an image of the given size and layout, otherwise null
+     */
+    private static ImageData reusable( ImageData reuse, int width, int height, int depth,
+            PaletteData palette ) {
+        if (reuse == null || reuse.width != width || reuse.height != height
+                || reuse.depth != depth || !reuse.palette.isDirect
+                || reuse.palette.redMask != palette.redMask
+                || reuse.palette.greenMask != palette.greenMask
+                || reuse.palette.blueMask != palette.blueMask) {
+            return null;
+        }
+        return reuse;
+    }
+
+    /**
+     * @return the alpha plane of reuse if it has the right size, otherwise a new one
+     */
+    private static byte[] alphaData( ImageData reuse, int width, int height ) {
+        if (reuse != null && reuse.alphaData != null
+                && reuse.alphaData.length == width * height) {
+            return reuse.alphaData;
+        }
+        return new byte[width * height];
     }
 
     /**
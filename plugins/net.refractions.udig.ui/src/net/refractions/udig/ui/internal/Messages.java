@@ -42,6 +42,7 @@ public class Messages extends NLS {
     public static String FeatureTableContentProvider_updateTaskName;
     public static String FeatureTableContentProvider_updatingFeatures;
     public static String FeatureTableControl_1;
+    public static String FeatureTableControl_cannotSort;
     public static String FeatureTableControl_loading1;
     public static String FeatureTableControl_loading2;
     public static String FeatureTableControl_noEditor1;
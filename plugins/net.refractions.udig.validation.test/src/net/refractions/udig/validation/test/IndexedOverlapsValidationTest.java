@@ -0,0 +1,71 @@
+/*
+ *    uDig - User Friendly Desktop Internet GIS client
+ *    http://udig.refractions.net
+ *    (C) 2012, Refractions Research Inc.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * (http://www.eclipse.org/legal/epl-v10.html), and the Refractions BSD
+ * License v1.0 (http://udig.refractions.net/files/bsd3-v10.html).
+ */
+package net.refractions.udig.validation.test;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import net.refractions.udig.validation.GenericValidationResults;
+import net.refractions.udig.validation.IndexedOverlapsValidation;
+
+import org.eclipse.core.runtime.NullProgressMonitor;
+import org.geotools.data.DataUtilities;
+import org.geotools.data.FeatureSource;
+import org.geotools.feature.simple.SimpleFeatureBuilder;
+import org.geotools.geometry.jts.JTSFactoryFinder;
+import org.junit.Test;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.GeometryFactory;
+import com.vividsolutions.jts.geom.Polygon;
+
+@SuppressWarnings("nls")
+public class IndexedOverlapsValidationTest {
+
+    private static Polygon square( GeometryFactory factory, double x, double y, double size ) {
+        return factory.createPolygon(factory.createLinearRing(new Coordinate[]{
+                new Coordinate(x, y), new Coordinate(x + size, y),
+                new Coordinate(x + size, y + size), new Coordinate(x, y + size),
+                new Coordinate(x, y)}), null);
+    }
+
+    @Test
+    public void testOverlaps() throws Exception {
+        GeometryFactory factory = JTSFactoryFinder.getGeometryFactory(null);
+        SimpleFeatureType type = DataUtilities.createType("parcel", "*geom:Polygon,name:String");
+
+        // a grid of parcels that only touch, plus one parcel overlapping two of them
+        SimpleFeature[] features = new SimpleFeature[101];
+        for( int i = 0; i < 100; i++ ) {
+            features[i] = SimpleFeatureBuilder.build(type, new Object[]{
+                    square(factory, i % 10, i / 10, 1), "p" + i}, "parcel." + i);
+        }
+        features[100] = SimpleFeatureBuilder.build(type, new Object[]{
+                square(factory, 0.5, 0.25, 1), "overlap"}, "parcel.overlap");
+
+        FeatureSource<SimpleFeatureType, SimpleFeature> source = DataUtilities.source(features);
+        GenericValidationResults results = new GenericValidationResults();
+        new IndexedOverlapsValidation(null).validate(source, null, null, results,
+                new NullProgressMonitor());
+
+        Set<String> failed = new HashSet<String>();
+        for( SimpleFeature feature : results ) {
+            failed.add(feature.getID());
+        }
+        // parcels 0, 1, 10 and 11 are overlapped, each pair is reported for both features
+        assertEquals(8, results.failedFeatures.size());
+        assertEquals(5, failed.size());
+    }
+}
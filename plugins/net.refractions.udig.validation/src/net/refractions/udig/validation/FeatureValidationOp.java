@@ -3,7 +3,13 @@
  */
 package net.refractions.udig.validation;
 
-import java.util.Iterator;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import net.refractions.udig.project.ILayer;
 import net.refractions.udig.ui.PlatformGIS;
@@ -15,7 +21,10 @@ import org.eclipse.swt.widgets.Display;
 import org.eclipse.swt.widgets.Shell;
 import org.geotools.data.FeatureSource;
 import org.geotools.feature.FeatureCollection;
+import org.geotools.feature.FeatureIterator;
 import org.geotools.validation.FeatureValidation;
+import org.geotools.validation.Validation;
+import org.geotools.validation.ValidationResults;
 import org.opengis.feature.simple.SimpleFeature;
 import org.opengis.feature.simple.SimpleFeatureType;
 
@@ -27,6 +36,11 @@ import org.opengis.feature.simple.SimpleFeatureType;
  */
 abstract class FeatureValidationOp implements IOp {
     public GenericValidationResults results; //for testing
+
+    private static final int THREADS = Runtime.getRuntime().availableProcessors();
+
+    /** number of features validated by a task */
+    private static final int BATCH_SIZE = 256;
     
     /**
      * 
@@ -60,18 +74,7 @@ abstract class FeatureValidationOp implements IOp {
         final FeatureValidation featureValidation = getValidator();
         if (featureValidation == null) return;
         //IsValidGeometryValidation geometryValidation = new IsValidGeometryValidation();
-        SimpleFeatureType type;
-        
-        // iterate through the collection and validate each feature
-        Iterator iterator;
-        for( iterator = collection.iterator(); iterator.hasNext(); ){
-            SimpleFeature feature = (SimpleFeature) iterator.next();
-            type = feature.getFeatureType();
-            if (canValidate(type)) {
-                featureValidation.validate(feature, type, results);
-            }
-        }
-        collection.close( iterator );
+        validate(collection, featureValidation, monitor);
         
         OpUtils.setSelection(layer, results);
         //OpUtils.notifyUser(display, results);
@@ -80,6 +83,87 @@ abstract class FeatureValidationOp implements IOp {
         monitor.done();
 	}
 
+    /**
+     * Validates the features in batches on a thread pool while they are read; the results of
+     * each batch are added to {@link #results} on this thread in the order of the batches.
+     */
+    private void validate( FeatureCollection<SimpleFeatureType, SimpleFeature> collection,
+            final FeatureValidation featureValidation, IProgressMonitor monitor ) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        LinkedList<Future<BufferedResults>> batches = new LinkedList<Future<BufferedResults>>();
+        FeatureIterator<SimpleFeature> iterator = collection.features();
+        try {
+            List<SimpleFeature> batch = new ArrayList<SimpleFeature>(BATCH_SIZE);
+            while( iterator.hasNext() && !monitor.isCanceled() ) {
+                batch.add(iterator.next());
+                if (batch.size() == BATCH_SIZE || !iterator.hasNext()) {
+                    batches.add(executor.submit(validateBatch(batch, featureValidation)));
+                    batch = new ArrayList<SimpleFeature>(BATCH_SIZE);
+                }
+                // keeps the number of features in memory bounded
+                while( batches.size() > THREADS * 2 ) {
+                    batches.removeFirst().get().addTo(results);
+                }
+            }
+            while( !batches.isEmpty() ) {
+                batches.removeFirst().get().addTo(results);
+            }
+        } finally {
+            iterator.close();
+            executor.shutdownNow();
+        }
+    }
+
+    private Callable<BufferedResults> validateBatch( final List<SimpleFeature> batch,
+            final FeatureValidation featureValidation ) {
+        return new Callable<BufferedResults>(){
+            public BufferedResults call() throws Exception {
+                BufferedResults batchResults = new BufferedResults();
+                for( SimpleFeature feature : batch ) {
+                    SimpleFeatureType type = feature.getFeatureType();
+                    if (canValidate(type)) {
+                        featureValidation.validate(feature, type, batchResults);
+                    }
+                }
+                return batchResults;
+            }
+        };
+    }
+
+    /**
+     * Keeps the results of a batch until they can be added to the results of the op, which are
+     * not thread safe.
+     */
+    private static class BufferedResults implements ValidationResults {
+        private final List<Object[]> entries = new ArrayList<Object[]>();
+        private Validation validation;
+
+        public void setValidation( Validation validation ) {
+            this.validation = validation;
+        }
+
+        public void error( SimpleFeature feature, String message ) {
+            entries.add(new Object[]{Boolean.TRUE, feature, message});
+        }
+
+        public void warning( SimpleFeature feature, String message ) {
+            entries.add(new Object[]{Boolean.FALSE, feature, message});
+        }
+
+        void addTo( ValidationResults results ) {
+            if (validation != null) {
+                results.setValidation(validation);
+            }
+            for( Object[] entry : entries ) {
+                if (entry[0] == Boolean.TRUE) {
+                    results.error((SimpleFeature) entry[1], (String) entry[2]);
+                } else {
+                    results.warning((SimpleFeature) entry[1], (String) entry[2]);
+                }
+            }
+        }
+    }
+
 	/**
      * This method may be overridden for classes which need a dialog for user input
      * 
@@ -0,0 +1,292 @@
+/*
+ *    uDig - User Friendly Desktop Internet GIS client
+ *    http://udig.refractions.net
+ *    (C) 2012, Refractions Research Inc.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * (http://www.eclipse.org/legal/epl-v10.html), and the Refractions BSD
+ * License v1.0 (http://udig.refractions.net/files/bsd3-v10.html).
+ */
+package net.refractions.udig.validation;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.geotools.data.DefaultQuery;
+import org.geotools.data.FeatureSource;
+import org.geotools.factory.CommonFactoryFinder;
+import org.geotools.feature.FeatureIterator;
+import org.geotools.geometry.jts.ReferencedEnvelope;
+import org.geotools.validation.Validation;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+import org.opengis.filter.Filter;
+import org.opengis.filter.FilterFactory2;
+import org.opengis.filter.identity.FeatureId;
+
+import com.vividsolutions.jts.geom.Envelope;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.prep.PreparedGeometry;
+import com.vividsolutions.jts.geom.prep.PreparedGeometryFactory;
+import com.vividsolutions.jts.index.strtree.STRtree;
+
+/**
+ * An integrity validation that compares the features of a layer with the features of a second
+ * layer (or with the other features of the same layer) using a spatial index rather than
+ * comparing every pair of features.
+ * <p>
+ * The geometries of the second layer are put in an STR-tree; the extent of the first layer is
+ * cut in tiles that are validated on a thread pool, each feature being compared, as a
+ * {@link PreparedGeometry}, with the features whose envelope intersects its own. The errors of
+ * each tile are added to the results as soon as the tile is done.
+ * </p>
+ *
+ * @since 1.4.0
+ */
+public abstract class IndexedIntegrityValidation {
+
+    /** number of tiles each thread gets, so the threads stay busy when tiles are uneven */
+    private static final int TILES_PER_THREAD = 4;
+
+    private final Validation validation;
+
+    /**
+     * @param validation the validation this one replaces, used to describe the results; may be
+     *        null
+     */
+    protected IndexedIntegrityValidation( Validation validation ) {
+        this.validation = validation;
+    }
+
+    /**
+     * Compares two geometries whose envelopes intersect. Called from several threads at once.
+     *
+     * @param a geometry of the feature being validated
+     * @param b geometry of a feature of the second layer (never the same feature as a)
+     * @return true if the pair is an error
+     */
+    protected abstract boolean isError( PreparedGeometry a, Geometry b );
+
+    /**
+     * @param feature the feature that failed
+     * @param otherID the id of the feature it was compared with
+     * @return the message of the error
+     */
+    protected abstract String getMessage( SimpleFeature feature, String otherID );
+
+    /**
+     * Validates the features of sourceA in the envelope.
+     *
+     * @param sourceA the features validated
+     * @param sourceB the features they are compared with or null to compare the features of
+     *        sourceA with each other
+     * @param envelope the area validated or null for all features
+     * @param results receives the features that failed
+     * @param monitor
+     * @throws IOException if the features can not be read
+     */
+    public void validate( FeatureSource<SimpleFeatureType, SimpleFeature> sourceA,
+            FeatureSource<SimpleFeatureType, SimpleFeature> sourceB, ReferencedEnvelope envelope,
+            GenericValidationResults results, IProgressMonitor monitor ) throws IOException {
+        if (validation != null) {
+            results.setValidation(validation);
+        }
+        final List<Item> itemsA = read(sourceA, envelope);
+        List<Item> itemsB = sourceB == null ? itemsA : read(sourceB, envelope);
+        if (itemsA.isEmpty() || itemsB.isEmpty()) {
+            return;
+        }
+
+        final STRtree index = new STRtree();
+        for( Item item : itemsB ) {
+            index.insert(item.geometry.getEnvelopeInternal(), item);
+        }
+        // built now since queries from several threads must not build it
+        index.build();
+
+        int threads = Runtime.getRuntime().availableProcessors();
+        List<List<Item>> tiles = split(itemsA, threads * TILES_PER_THREAD);
+        monitor.beginTask("", tiles.size()); //$NON-NLS-1$
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            CompletionService<List<Item[]>> completion = new ExecutorCompletionService<List<Item[]>>(
+                    executor);
+            for( final List<Item> tile : tiles ) {
+                completion.submit(new Callable<List<Item[]>>(){
+                    public List<Item[]> call() throws Exception {
+                        return validate(tile, index);
+                    }
+                });
+            }
+            int done = 0;
+            while( done < tiles.size() ) {
+                if (monitor.isCanceled()) {
+                    return;
+                }
+                Future<List<Item[]>> future = completion.poll(200, TimeUnit.MILLISECONDS);
+                if (future == null) {
+                    continue;
+                }
+                done++;
+                report(sourceA, future.get(), results);
+                monitor.worked(1);
+            }
+        } catch (InterruptedException e) {
+            throw (IOException) new IOException(e.getLocalizedMessage()).initCause(e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            throw (IOException) new IOException(cause.getLocalizedMessage()).initCause(cause);
+        } finally {
+            executor.shutdownNow();
+            monitor.done();
+        }
+    }
+
+    /**
+     * @return the pairs of features of the tile that are errors
+     */
+    private List<Item[]> validate( List<Item> tile, STRtree index ) {
+        List<Item[]> errors = new ArrayList<Item[]>();
+        PreparedGeometryFactory factory = new PreparedGeometryFactory();
+        for( Item item : tile ) {
+            if (Thread.currentThread().isInterrupted()) {
+                break;
+            }
+            PreparedGeometry prepared = factory.create(item.geometry);
+            for( Object candidate : index.query(item.geometry.getEnvelopeInternal()) ) {
+                Item other = (Item) candidate;
+                if (other == item) {
+                    continue;
+                }
+                if (isError(prepared, other.geometry)) {
+                    errors.add(new Item[]{item, other});
+                }
+            }
+        }
+        return errors;
+    }
+
+    /**
+     * Reads the features that failed and adds them to the results.
+     */
+    private void report( FeatureSource<SimpleFeatureType, SimpleFeature> source,
+            List<Item[]> errors, GenericValidationResults results ) throws IOException {
+        if (errors.isEmpty()) {
+            return;
+        }
+        FilterFactory2 ff = CommonFactoryFinder.getFilterFactory2(null);
+        Set<FeatureId> ids = new HashSet<FeatureId>();
+        for( Item[] error : errors ) {
+            ids.add(ff.featureId(error[0].id));
+        }
+        Map<String, SimpleFeature> features = new HashMap<String, SimpleFeature>();
+        FeatureIterator<SimpleFeature> iter = source.getFeatures(ff.id(ids)).features();
+        try {
+            while( iter.hasNext() ) {
+                SimpleFeature feature = iter.next();
+                features.put(feature.getID(), feature);
+            }
+        } finally {
+            iter.close();
+        }
+        for( Item[] error : errors ) {
+            SimpleFeature feature = features.get(error[0].id);
+            if (feature != null) {
+                results.error(feature, getMessage(feature, error[1].id));
+            }
+        }
+    }
+
+    /**
+     * Reads the ids and geometries of the features in the envelope.
+     */
+    private static List<Item> read( FeatureSource<SimpleFeatureType, SimpleFeature> source,
+            ReferencedEnvelope envelope ) throws IOException {
+        String geometryName = source.getSchema().getGeometryDescriptor().getLocalName();
+        Filter filter = Filter.INCLUDE;
+        if (envelope != null && !envelope.isNull()) {
+            FilterFactory2 ff = CommonFactoryFinder.getFilterFactory2(null);
+            filter = ff.bbox(ff.property(geometryName), envelope);
+        }
+        DefaultQuery query = new DefaultQuery(source.getSchema().getTypeName(), filter,
+                new String[]{geometryName});
+
+        List<Item> items = new ArrayList<Item>();
+        FeatureIterator<SimpleFeature> iter = source.getFeatures(query).features();
+        try {
+            while( iter.hasNext() ) {
+                SimpleFeature feature = iter.next();
+                Object geometry = feature.getDefaultGeometry();
+                if (geometry instanceof Geometry && !((Geometry) geometry).isEmpty()) {
+                    items.add(new Item(feature.getID(), (Geometry) geometry));
+                }
+            }
+        } finally {
+            iter.close();
+        }
+        return items;
+    }
+
+    /**
+     * Splits the items in about count tiles of the same area according to the centre of their
+     * envelope; empty tiles are left out.
+     */
+    private static List<List<Item>> split( List<Item> items, int count ) {
+        Envelope extent = new Envelope();
+        for( Item item : items ) {
+            extent.expandToInclude(item.geometry.getEnvelopeInternal());
+        }
+        int side = Math.max(1, (int) Math.ceil(Math.sqrt(count)));
+        double width = Math.max(extent.getWidth(), Double.MIN_VALUE) / side;
+        double height = Math.max(extent.getHeight(), Double.MIN_VALUE) / side;
+
+        List<List<Item>> grid = new ArrayList<List<Item>>(side * side);
+        for( int i = 0; i < side * side; i++ ) {
+            grid.add(new ArrayList<Item>());
+        }
+        for( Item item : items ) {
+            Envelope env = item.geometry.getEnvelopeInternal();
+            int column = (int) ((env.centre().x - extent.getMinX()) / width);
+            int row = (int) ((env.centre().y - extent.getMinY()) / height);
+            column = Math.max(0, Math.min(side - 1, column));
+            row = Math.max(0, Math.min(side - 1, row));
+            grid.get(row * side + column).add(item);
+        }
+        List<List<Item>> tiles = new ArrayList<List<Item>>();
+        for( List<Item> tile : grid ) {
+            if (!tile.isEmpty()) {
+                tiles.add(tile);
+            }
+        }
+        return tiles;
+    }
+
+    /**
+     * The part of a feature that is kept in memory while validating.
+     */
+    private static class Item {
+        final String id;
+        final Geometry geometry;
+
+        Item( String id, Geometry geometry ) {
+            this.id = id;
+            this.geometry = geometry;
+        }
+    }
+}
@@ -0,0 +1,49 @@
+/*
+ *    uDig - User Friendly Desktop Internet GIS client
+ *    http://udig.refractions.net
+ *    (C) 2012, Refractions Research Inc.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * (http://www.eclipse.org/legal/epl-v10.html), and the Refractions BSD
+ * License v1.0 (http://udig.refractions.net/files/bsd3-v10.html).
+ */
+package net.refractions.udig.validation;
+
+import java.text.MessageFormat;
+
+import net.refractions.udig.validation.internal.Messages;
+
+import org.geotools.validation.relate.OverlapsIntegrity;
+import org.opengis.feature.simple.SimpleFeature;
+
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.prep.PreparedGeometry;
+
+/**
+ * Reports the features that overlap another feature; does the work of an
+ * {@link OverlapsIntegrity} that does not expect overlaps.
+ *
+ * @since 1.4.0
+ */
+public class IndexedOverlapsValidation extends IndexedIntegrityValidation {
+
+    /**
+     * @param validation the validation this one replaces, may be null
+     */
+    public IndexedOverlapsValidation( OverlapsIntegrity validation ) {
+        super(validation);
+    }
+
+    @Override
+    protected boolean isError( PreparedGeometry a, Geometry b ) {
+        // intersects is cheap on a prepared geometry and rules out most candidates
+        return a.intersects(b) && a.overlaps(b);
+    }
+
+    @Override
+    protected String getMessage( SimpleFeature feature, String otherID ) {
+        return MessageFormat.format(Messages.IndexedOverlapsValidation_overlaps, feature.getID(),
+                otherID);
+    }
+}
@@ -9,7 +9,9 @@
  */
 package net.refractions.udig.validation;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 import net.refractions.udig.project.ILayer;
@@ -44,6 +46,17 @@ public abstract class IntegrityValidationOp implements IOp  {
      * @return the appropriate integrity validator
      */
     abstract IntegrityValidation getValidator(ILayer[] layer);
+
+    /**
+     * Returns a validation that does the work of the validator with a spatial index, used
+     * instead of the validator when there is one.
+     *
+     * @param validator the validator returned by {@link #getValidator(ILayer[])}
+     * @return the indexed validation or null to run the validator
+     */
+    IndexedIntegrityValidation getIndexedValidator( IntegrityValidation validator ) {
+        return null;
+    }
     
     /** 
      * 
@@ -64,12 +77,14 @@ public abstract class IntegrityValidationOp implements IOp  {
         String nameSpace;
         String typeName;
         Map<String,FeatureSource<SimpleFeatureType, SimpleFeature>> map = new HashMap<String,FeatureSource<SimpleFeatureType, SimpleFeature>>();
+        List<FeatureSource<SimpleFeatureType, SimpleFeature>> sources = new ArrayList<FeatureSource<SimpleFeatureType, SimpleFeature>>();
         for (int i = 0; i < layer.length; i++) {
             nameSpace = layer[i].getSchema().getName().getNamespaceURI();
             typeName = layer[i].getSchema().getName().getLocalPart();
             source = layer[i].getResource(FeatureSource.class, monitor);
             //map = dataStoreID:typeName
             map.put(nameSpace+":"+typeName, source); //$NON-NLS-1$
+            sources.add(source);
         }
         
         GenericValidationResults results = new GenericValidationResults();
@@ -89,7 +104,13 @@ public abstract class IntegrityValidationOp implements IOp  {
         final IntegrityValidation integrityValidation = getValidator(layer);
         if (integrityValidation == null) return;
 
-        integrityValidation.validate(map, envelope, results);
+        IndexedIntegrityValidation indexed = getIndexedValidator(integrityValidation);
+        if (indexed != null) {
+            indexed.validate(sources.get(0), sources.size() > 1 ? sources.get(1) : null,
+                    envelope, results, monitor);
+        } else {
+            integrityValidation.validate(map, envelope, results);
+        }
         
         OpUtils.setSelection(layer[0], results);
         OpUtils.notifyUser(display, results);
@@ -38,4 +38,14 @@ public class ValidateOverlaps extends IntegrityValidationOp {
         }
         return overlapsIntegrity;
     }
+
+    @Override
+    IndexedIntegrityValidation getIndexedValidator( IntegrityValidation validator ) {
+        OverlapsIntegrity overlapsIntegrity = (OverlapsIntegrity) validator;
+        if (overlapsIntegrity.isExpected()) {
+            // every pair that does not overlap is an error, an index does not help
+            return null;
+        }
+        return new IndexedOverlapsValidation(overlapsIntegrity);
+    }
 }
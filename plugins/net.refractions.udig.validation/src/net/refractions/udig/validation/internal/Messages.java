@@ -17,6 +17,7 @@ public class Messages extends NLS {
 	private static final String BUNDLE_NAME = "net.refractions.udig.validation.internal.messages"; //$NON-NLS-1$
 	public static String ValidationTableLabelProvider_invalidColumn;
 	public static String OpUtils_results;
+	public static String IndexedOverlapsValidation_overlaps;
 	public static String OpUtils_notifyResult;
 	public static String GenericValidationResults_validationWarning;
 	public static String GenericValidationResults_validationError;